@@ -64,6 +64,7 @@ dependencies {
     
     // WorkManager for background tasks
     implementation("androidx.work:work-runtime:2.8.1")
+    implementation("androidx.concurrent:concurrent-futures:1.1.0")
     
     // Unit Testing
     testImplementation(libs.junit)
@@ -0,0 +1,164 @@
+package com.example.hifiwifi.ui.adapters;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.hifiwifi.models.ClassificationResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented benchmark comparing diffed updates against full rebinds on a large synthetic dataset.
+ * Timings are logged under the "AdapterDiffBenchmark" tag; assertions only cover the rebind counts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdapterDiffBenchmarkTest {
+    private static final String TAG = "AdapterDiffBenchmark";
+    private static final int ROOM_COUNT = 2000;
+    private static final int CHANGED_COUNT = 20;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    
+    private Context context;
+    
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+    
+    @Test
+    public void diffedUpdateOnlyNotifiesChangedRows() throws Exception {
+        List<ClassificationResult> initial = createRooms(ROOM_COUNT);
+        ClassificationAdapter adapter = new ClassificationAdapter(new ArrayList<>());
+        RecyclerView recyclerView = createRecyclerView(adapter);
+        submitAndWait(adapter, initial);
+        
+        AtomicInteger changedRows = new AtomicInteger();
+        AtomicInteger structuralChanges = new AtomicInteger();
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                changedRows.addAndGet(itemCount);
+            }
+            
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                structuralChanges.addAndGet(itemCount);
+            }
+            
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                structuralChanges.addAndGet(itemCount);
+            }
+            
+            @Override
+            public void onChanged() {
+                changedRows.addAndGet(ROOM_COUNT);
+            }
+        });
+        
+        List<ClassificationResult> updated = withUpdatedScores(initial, CHANGED_COUNT);
+        long diffStart = SystemClock.elapsedRealtimeNanos();
+        submitAndWait(adapter, updated);
+        long diffNanos = SystemClock.elapsedRealtimeNanos() - diffStart;
+        long diffedLayoutNanos = layout(recyclerView);
+        
+        assertEquals(CHANGED_COUNT, changedRows.get());
+        assertEquals(0, structuralChanges.get());
+        
+        // Baseline: what the adapters did before, a full notifyDataSetChanged
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(adapter::notifyDataSetChanged);
+        long fullLayoutNanos = layout(recyclerView);
+        
+        Log.i(TAG, String.format("%d rooms, %d changed: diff+commit %.2f ms, layout after diff %.2f ms, "
+                + "layout after notifyDataSetChanged %.2f ms", ROOM_COUNT, CHANGED_COUNT,
+                diffNanos / 1e6, diffedLayoutNanos / 1e6, fullLayoutNanos / 1e6));
+    }
+    
+    @Test
+    public void stableIdsSurviveReordering() throws Exception {
+        List<ClassificationResult> initial = createRooms(ROOM_COUNT);
+        ClassificationAdapter adapter = new ClassificationAdapter(new ArrayList<>());
+        submitAndWait(adapter, initial);
+        long firstId = adapter.getItemId(0);
+        
+        List<ClassificationResult> reversed = new ArrayList<>(initial);
+        java.util.Collections.reverse(reversed);
+        submitAndWait(adapter, reversed);
+        
+        assertEquals(firstId, adapter.getItemId(ROOM_COUNT - 1));
+    }
+    
+    private List<ClassificationResult> createRooms(int count) {
+        String[] grades = {"A", "B", "C", "D", "F"};
+        List<ClassificationResult> rooms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rooms.add(new ClassificationResult("room_" + i, "Room " + i, i % 100, (i * 7) % 100,
+                    (i * 13) % 100, grades[i % grades.length], i % 3 == 0 ? "green" : "yellow"));
+        }
+        return rooms;
+    }
+    
+    private List<ClassificationResult> withUpdatedScores(List<ClassificationResult> rooms, int changed) {
+        List<ClassificationResult> updated = new ArrayList<>(rooms);
+        int step = rooms.size() / changed;
+        for (int i = 0; i < changed; i++) {
+            ClassificationResult old = rooms.get(i * step);
+            updated.set(i * step, new ClassificationResult(old.getRoomId(), old.getRoomName(),
+                    (old.getGamingScore() + 1) % 100, old.getStreamingScore(), old.getVideoCallScore(),
+                    old.getOverallGrade(), old.getZone()));
+        }
+        return updated;
+    }
+    
+    private RecyclerView createRecyclerView(RecyclerView.Adapter<?> adapter) {
+        RecyclerView[] holder = new RecyclerView[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            RecyclerView recyclerView = new RecyclerView(context);
+            recyclerView.setLayoutManager(new LinearLayoutManager(context));
+            recyclerView.setAdapter(adapter);
+            holder[0] = recyclerView;
+        });
+        layout(holder[0]);
+        return holder[0];
+    }
+    
+    /**
+     * Run a measure/layout pass on the main thread, standing in for the frame after an update
+     */
+    private long layout(RecyclerView recyclerView) {
+        long[] elapsed = new long[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            recyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            recyclerView.layout(0, 0, WIDTH, HEIGHT);
+            elapsed[0] = SystemClock.elapsedRealtimeNanos() - start;
+        });
+        return elapsed[0];
+    }
+    
+    private void submitAndWait(ClassificationAdapter adapter, List<ClassificationResult> list) throws Exception {
+        CountDownLatch committed = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> adapter.submitList(list, committed::countDown));
+        assertTrue("Diff did not complete", committed.await(10, TimeUnit.SECONDS));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+}
@@ -8,51 +8,75 @@ import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
-import android.widget.LinearLayout;
-import android.widget.ScrollView;
-import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.events.MeasurementEventBus;
+import com.example.hifiwifi.events.QueuedAnalysisReceived;
+import com.example.hifiwifi.models.ChatMessage;
+import com.example.hifiwifi.repository.ChatRepository;
 import com.example.hifiwifi.repository.ClassificationRepository;
 import com.example.hifiwifi.services.HTTPService;
+import com.example.hifiwifi.services.PiSync;
+import com.example.hifiwifi.ui.adapters.ChatAdapter;
 import com.example.hifiwifi.viewmodels.ChatViewModel;
 import com.example.hifiwifi.viewmodels.RoomSelectViewModel;
 
-import java.util.List;
-
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ChatActivity extends AppCompatActivity {
 
     private static final String TAG = "ChatActivity";
 
-    private LinearLayout chatContainer;
+    // Number of stored messages read per page when scrolling back, aligned with the repository's page cache
+    private static final int PAGE_SIZE = ChatRepository.PAGE_SIZE;
+    // Start loading the previous page when this close to the oldest loaded message
+    private static final int PREFETCH_DISTANCE = 5;
+    // Upper bound on detached message views kept per view type
+    private static final int MAX_RECYCLED_VIEWS = 8;
+
+    private RecyclerView chatRecycler;
+    private LinearLayoutManager layoutManager;
+    private ChatAdapter chatAdapter;
     private EditText messageInput;
     private Button sendButton;
-    private ScrollView chatScroll;
     private ImageButton closeButton;
     private String roomName;
 
+    // Transcript state: the loaded tail of the room's conversation plus session-only status lines
+    private final List<ChatMessage> transcript = new ArrayList<>();
+    private ChatRepository chatRepository;
+    private ExecutorService pageExecutor;
+    private int firstLoadedIndex;
+    private boolean loadingOlder = false;
+    private ChatMessage thinkingMessage;
+
     // Services and ViewModels
     private HTTPService httpService;
     private RoomSelectViewModel roomSelectViewModel;
     private ChatViewModel chatViewModel;
     private ClassificationRepository classificationRepository;
+    private MeasurementEventBus.Subscription<QueuedAnalysisReceived> queuedAnalysisSubscription;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_chat);
 
-        chatContainer = findViewById(R.id.chatContainer);
+        chatRecycler = findViewById(R.id.chatRecycler);
         messageInput = findViewById(R.id.messageInput);
         sendButton = findViewById(R.id.sendButton);
-        chatScroll = findViewById(R.id.chatScroll);
         closeButton = findViewById(R.id.closeButton);
 
         // Initialize ViewModels
@@ -63,7 +87,7 @@ public class ChatActivity extends AppCompatActivity {
         classificationRepository = ClassificationRepository.getInstance();
 
         // Initialize HTTPService
-        httpService = new HTTPService();
+        httpService = new HTTPService(this);
         Log.d(TAG, "HTTPService initialized with base URL: " + httpService.getBaseUrl());
 
         // Get room name from intent or ViewModel
@@ -77,8 +101,23 @@ public class ChatActivity extends AppCompatActivity {
 
         Log.d(TAG, "ChatActivity opened for room: " + roomName);
 
+        // Show analyses of measurements that were queued while the Pi was unreachable
+        PiSync.getInstance(this);
+        queuedAnalysisSubscription = MeasurementEventBus.getInstance().subscribe(QueuedAnalysisReceived.class,
+            this::runOnUiThread, event -> {
+                if (roomName.equals(event.getMeasurement().roomName)) {
+                    addMessage(event.getResponse().toDisplayMessage(), false);
+                }
+            });
+
+        // Set up the transcript and load the most recent page of this room's conversation
+        chatRepository = ChatRepository.getInstance(this);
+        pageExecutor = Executors.newSingleThreadExecutor();
+        setupTranscript();
+        loadLatestMessages();
+
         // Welcome message
-        addMessage("👋 Hi! You're now viewing data for: " + roomName, false);
+        addStatusMessage("👋 Hi! You're now viewing data for: " + roomName);
 
         // Start HTTP service and send classification data
         startHTTPServiceAndSendData();
@@ -107,14 +146,14 @@ public class ChatActivity extends AppCompatActivity {
     private void startHTTPServiceAndSendData() {
         Log.d(TAG, "Starting HTTP service and preparing to send data");
 
-        // First check if Pi is reachable
-        addMessage("🔍 Checking connection to Raspberry Pi...", false);
+        // First find the Pi and check it is reachable
+        addStatusMessage("🔍 Looking for Raspberry Pi...");
 
-        httpService.checkHealth(new HTTPService.HTTPCallback() {
+        httpService.connect(new HTTPService.HTTPCallback() {
             @Override
             public void onHealthCheckSuccess() {
                 Log.i(TAG, "Health check successful - Pi is reachable");
-                addMessage("✅ Connected to Raspberry Pi!", false);
+                addStatusMessage("✅ Connected to Raspberry Pi!");
 
                 // Now send classification data for the selected room
                 sendClassificationDataToSLM();
@@ -128,14 +167,42 @@ public class ChatActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 Log.e(TAG, "Health check failed: " + error);
-                addMessage("❌ Cannot reach Raspberry Pi. Using local mode.", false);
+                addStatusMessage("❌ Cannot reach Raspberry Pi. Using local mode.");
                 Toast.makeText(ChatActivity.this,
                     "Cannot connect to Pi. Check connection.",
                     Toast.LENGTH_LONG).show();
+
+                // Keep the measurement so it is analyzed once the Pi is back
+                queueClassificationDataForSLM();
             }
         });
     }
 
+    /**
+     * Queue the latest classification for the selected room until the Pi is reachable
+     */
+    private void queueClassificationDataForSLM() {
+        List<ClassificationResult> roomClassifications =
+            classificationRepository.getClassificationsForRoom(roomName);
+        if (roomClassifications.isEmpty()) {
+            return;
+        }
+
+        ClassificationResult latestClassification = roomClassifications.get(roomClassifications.size() - 1);
+        MetricClassification metrics = latestClassification.getMetricClassification();
+        httpService.enqueueAnalysis(
+            roomName,
+            latestClassification.getActivityType(),
+            metrics.getSignalStrengthClassification().name(),
+            metrics.getLatencyClassification().name(),
+            metrics.getBandwidthClassification().name(),
+            metrics.getJitterClassification().name(),
+            metrics.getPacketLossClassification().name(),
+            latestClassification.getFrequencyBand() != null ? latestClassification.getFrequencyBand() : "unknown"
+        );
+        addStatusMessage("📥 Saved " + roomName + " measurement - it will be analyzed when the Pi is back.");
+    }
+
     /**
      * Send classification data for the selected room to the SLM
      */
@@ -148,8 +215,8 @@ public class ChatActivity extends AppCompatActivity {
 
         if (roomClassifications.isEmpty()) {
             Log.w(TAG, "No classification data available for room: " + roomName);
-            addMessage("ℹ️ No measurement data available for " + roomName +
-                      ". Please run a WiFi test first.", false);
+            addStatusMessage("ℹ️ No measurement data available for " + roomName +
+                      ". Please run a WiFi test first.");
             return;
         }
 
@@ -157,76 +224,72 @@ public class ChatActivity extends AppCompatActivity {
 
         // Get the most recent classification
         ClassificationResult latestClassification = roomClassifications.get(roomClassifications.size() - 1);
+        MetricClassification metrics = latestClassification.getMetricClassification();
 
-        // Prepare data for HTTP request
-        String activity = latestClassification.getActivityType();
-        String overallClass = latestClassification.getOverallClassification().name().toLowerCase();
-
-        // Convert metric classifications to lowercase strings
-        String signalClass = latestClassification.getMetricClassification()
-            .getSignalStrengthClassification().name().toLowerCase();
-        String latencyClass = latestClassification.getMetricClassification()
-            .getLatencyClassification().name().toLowerCase();
-        String bandwidthClass = latestClassification.getMetricClassification()
-            .getBandwidthClassification().name().toLowerCase();
-
-        // Determine recommendation action based on classification
-        String action = determineRecommendationAction(latestClassification);
-        String targetLocation = action.equals("move_location") ? "closer to router" : null;
-
-        Log.d(TAG, "Sending explanation request - Activity: " + activity +
-                   ", Overall: " + overallClass + ", Action: " + action);
+        Log.d(TAG, "Sending analysis request - Activity: " + latestClassification.getActivityType() +
+                   ", Overall: " + latestClassification.getOverallClassification());
 
-        addMessage("📊 Analyzing WiFi data for " + roomName + "...", false);
+        addStatusMessage("📊 Analyzing WiFi data for " + roomName + "...");
 
-        // Send explanation request to Pi
-        httpService.requestExplanation(
+        // The Pi picks the recommendation; HTTPService starts generating its explanation meanwhile
+        httpService.requestAnalysis(
             roomName,
-            activity,
-            signalClass,
-            latencyClass,
-            bandwidthClass,
-            action,
-            targetLocation,
+            latestClassification.getActivityType(),
+            metrics.getSignalStrengthClassification().name(),
+            metrics.getLatencyClassification().name(),
+            metrics.getBandwidthClassification().name(),
+            metrics.getJitterClassification().name(),
+            metrics.getPacketLossClassification().name(),
+            latestClassification.getFrequencyBand() != null ? latestClassification.getFrequencyBand() : "unknown",
             new HTTPService.HTTPCallback() {
+                @Override
+                public void onAnalysisReceived(HTTPService.AnalyzeResponse response) {
+                    Log.i(TAG, "Received analysis from SLM");
+                    addMessage(response.toDisplayMessage(), false);
+                    requestExplanation(response);
+                }
+
                 @Override
                 public void onExplanationReceived(String explanation) {
-                    Log.i(TAG, "Received explanation from SLM");
-                    addMessage(explanation, false);
+                    // Analysis results arrive through onAnalysisReceived
                 }
 
                 @Override
                 public void onHealthCheckSuccess() {
-                    // Not used for explanation request
+                    // Not used for analysis request
                 }
 
                 @Override
                 public void onError(String error) {
-                    Log.e(TAG, "Explanation request failed: " + error);
-                    addMessage("⚠️ Error getting AI analysis: " + error, false);
+                    Log.e(TAG, "Analysis request failed: " + error);
+                    addStatusMessage("⚠️ Error getting AI analysis: " + error);
                 }
             }
         );
     }
 
     /**
-     * Determine recommendation action based on classification
+     * Ask the Pi to explain its recommendation, which joins the explanation prefetched after the analysis
      */
-    private String determineRecommendationAction(ClassificationResult classification) {
-        // If acceptable for activity, recommend staying
-        if (classification.isAcceptableForActivity()) {
-            return "stay_current";
-        }
+    private void requestExplanation(HTTPService.AnalyzeResponse response) {
+        httpService.requestExplanation(response, new HTTPService.HTTPCallback() {
+            @Override
+            public void onExplanationReceived(String explanation) {
+                Log.i(TAG, "Received explanation from SLM");
+                addMessage(explanation, false);
+            }
 
-        // If signal strength is poor, recommend moving
-        int signalScore = classification.getMetricClassification()
-            .getSignalStrengthClassification().getScore();
-        if (signalScore <= 2) {
-            return "move_location";
-        }
+            @Override
+            public void onHealthCheckSuccess() {
+                // Not used for explanation request
+            }
 
-        // Otherwise recommend staying but with awareness of issues
-        return "stay_current";
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Explanation request failed: " + error);
+                addStatusMessage("⚠️ Error getting AI explanation: " + error);
+            }
+        });
     }
 
     /**
@@ -236,7 +299,7 @@ public class ChatActivity extends AppCompatActivity {
         Log.d(TAG, "User message: " + message);
 
         // Show thinking indicator
-        addMessage("🤔 Thinking...", false);
+        thinkingMessage = addStatusMessage("🤔 Thinking...");
 
         // Send message through ChatViewModel to HTTPService
         chatViewModel.sendMessageToSLM(
@@ -248,10 +311,8 @@ public class ChatActivity extends AppCompatActivity {
                 public void onResponse(String response) {
                     // Remove "Thinking..." message and add actual response
                     runOnUiThread(() -> {
-                        // Remove the last message (thinking indicator)
-                        if (chatContainer.getChildCount() > 0) {
-                            chatContainer.removeViewAt(chatContainer.getChildCount() - 1);
-                        }
+                        // Remove the thinking indicator
+                        removeThinkingMessage();
                         // Add SLM response
                         addMessage(response, false);
                         Log.i(TAG, "SLM response displayed");
@@ -262,12 +323,10 @@ public class ChatActivity extends AppCompatActivity {
                 public void onError(String error) {
                     // Remove "Thinking..." and show error
                     runOnUiThread(() -> {
-                        // Remove the last message (thinking indicator)
-                        if (chatContainer.getChildCount() > 0) {
-                            chatContainer.removeViewAt(chatContainer.getChildCount() - 1);
-                        }
+                        // Remove the thinking indicator
+                        removeThinkingMessage();
                         // Add error message
-                        addMessage("⚠️ Error: " + error, false);
+                        addStatusMessage("⚠️ Error: " + error);
                         Log.e(TAG, "SLM error: " + error);
                         
                         // Show toast for user feedback
@@ -280,32 +339,129 @@ public class ChatActivity extends AppCompatActivity {
         );
     }
 
+    /**
+     * Set up the recycled transcript list with a bounded view pool and paging on scroll-back
+     */
+    private void setupTranscript() {
+        chatAdapter = new ChatAdapter(new ArrayList<>());
+        layoutManager = new LinearLayoutManager(this);
+        layoutManager.setStackFromEnd(true);
+
+        chatRecycler.setLayoutManager(layoutManager);
+        chatRecycler.setAdapter(chatAdapter);
+        chatRecycler.setHasFixedSize(true);
+        chatRecycler.getRecycledViewPool().setMaxRecycledViews(ChatAdapter.VIEW_TYPE_USER, MAX_RECYCLED_VIEWS);
+        chatRecycler.getRecycledViewPool().setMaxRecycledViews(ChatAdapter.VIEW_TYPE_SLM, MAX_RECYCLED_VIEWS);
+
+        chatRecycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    loadOlderMessages();
+                }
+            }
+        });
+    }
+
+    /**
+     * Load the newest page of the room's stored conversation
+     */
+    private void loadLatestMessages() {
+        loadingOlder = true;
+        // The repository blocks until its index is loaded, so even the count is read off the main thread.
+        // Messages are stored on the same thread, so any sent while the page loads come after the
+        // count and aren't read back a second time.
+        pageExecutor.execute(() -> {
+            int count = chatRepository.getMessageCountForRoom(roomName);
+            int start = Math.max(0, count - PAGE_SIZE);
+            List<ChatMessage> page = chatRepository.getMessagesForRoom(roomName, start, count);
+            runOnUiThread(() -> {
+                firstLoadedIndex = start;
+                transcript.addAll(0, page);
+                loadingOlder = false;
+                showTranscript(true);
+            });
+        });
+    }
+
+    /**
+     * Load the page of stored messages preceding the oldest one on screen
+     */
+    private void loadOlderMessages() {
+        if (loadingOlder || firstLoadedIndex == 0) {
+            return;
+        }
+        loadingOlder = true;
+        int end = firstLoadedIndex;
+        int start = Math.max(0, end - PAGE_SIZE);
+        pageExecutor.execute(() -> {
+            List<ChatMessage> page = chatRepository.getMessagesForRoom(roomName, start, end);
+            runOnUiThread(() -> {
+                Log.d(TAG, "Loaded " + page.size() + " older message(s) for " + roomName);
+                firstLoadedIndex = start;
+                transcript.addAll(0, page);
+                loadingOlder = false;
+                showTranscript(false);
+            });
+        });
+    }
+
+    /**
+     * Show a conversation message and store it off the main thread
+     */
     private void addMessage(String message, boolean isUser) {
-        TextView msgView = new TextView(this);
-        msgView.setText(message);
-        msgView.setTextSize(16);
-        msgView.setPadding(20, 10, 20, 10);
-        msgView.setTextColor(isUser ? 0xFFFFFFFF : 0xFF000000);
-        msgView.setBackgroundResource(isUser ? R.drawable.bubble_user : R.drawable.bubble_ai);
-
-        LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(
-                LinearLayout.LayoutParams.WRAP_CONTENT,
-                LinearLayout.LayoutParams.WRAP_CONTENT);
-        params.setMargins(10, 10, 10, 10);
-        params.gravity = isUser ? android.view.Gravity.END : android.view.Gravity.START;
-        msgView.setLayoutParams(params);
-
-        chatContainer.addView(msgView);
-        chatScroll.post(() -> chatScroll.fullScroll(ScrollView.FOCUS_DOWN));
+        ChatMessage chatMessage = new ChatMessage(message, isUser, roomName);
+        transcript.add(chatMessage);
+        showTranscript(true);
+        try {
+            pageExecutor.execute(() -> chatRepository.addMessage(chatMessage));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Screen closed before the message could be stored");
+        }
+    }
+
+    /**
+     * Show a session-only status line that is not stored with the conversation
+     */
+    private ChatMessage addStatusMessage(String message) {
+        ChatMessage chatMessage = new ChatMessage(message, false, roomName);
+        transcript.add(chatMessage);
+        showTranscript(true);
+        return chatMessage;
+    }
+
+    private void removeThinkingMessage() {
+        if (thinkingMessage != null) {
+            transcript.remove(thinkingMessage);
+            thinkingMessage = null;
+        }
+    }
+
+    /**
+     * Submit the transcript to the adapter, optionally scrolling to the newest message once applied
+     */
+    private void showTranscript(boolean scrollToBottom) {
+        chatAdapter.updateMessages(transcript, scrollToBottom ? () -> {
+            if (chatAdapter.getItemCount() > 0) {
+                chatRecycler.scrollToPosition(chatAdapter.getItemCount() - 1);
+            }
+        } : null);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (queuedAnalysisSubscription != null) {
+            queuedAnalysisSubscription.unsubscribe();
+        }
         // Clean up HTTP service
         if (httpService != null) {
             Log.d(TAG, "Shutting down HTTP service");
             httpService.shutdown();
         }
+        if (pageExecutor != null) {
+            // Messages still waiting to be stored are written before the thread ends
+            pageExecutor.shutdown();
+        }
     }
 }
@@ -10,6 +10,8 @@ import android.widget.Button;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.example.hifiwifi.services.PiDiscovery;
+import com.example.hifiwifi.services.WiFiMeasurementService;
 import com.example.hifiwifi.viewmodels.MeasurementViewModel;
 import com.example.hifiwifi.viewmodels.WifiTestViewModel;
 import com.example.hifiwifi.models.NetworkMetrics;
@@ -60,6 +62,21 @@ public class WifiTestRunningActivity extends AppCompatActivity {
             currentActivityType = "general";
         }
         
+        // Test the link to the Pi as well as the internet once the Pi has been found,
+        // unless the caller asked for a specific mode
+        WiFiMeasurementService.ThroughputMode throughputMode = PiDiscovery.getCachedBaseUrl(this) != null
+            ? WiFiMeasurementService.ThroughputMode.BOTH
+            : WiFiMeasurementService.ThroughputMode.WAN;
+        String requestedMode = getIntent().getStringExtra("THROUGHPUT_MODE");
+        if (requestedMode != null) {
+            try {
+                throughputMode = WiFiMeasurementService.ThroughputMode.valueOf(requestedMode);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Unknown throughput mode '" + requestedMode + "', using " + throughputMode);
+            }
+        }
+        measurementViewModel.setThroughputMode(throughputMode);
+        
         // Store in ViewModel
         wifiTestViewModel.setRoomName(currentRoomName);
         wifiTestViewModel.setActivityType(currentActivityType);
@@ -130,6 +147,15 @@ public class WifiTestRunningActivity extends AppCompatActivity {
             }
         });
 
+        measurementViewModel.getIsWaitingForLink().observe(this, isWaiting -> {
+            if (isWaiting == null) return;
+            if (isWaiting) {
+                instructionText.setText("Waiting for another test to finish...");
+            } else if (Boolean.TRUE.equals(measurementViewModel.getIsMeasuring().getValue())) {
+                updateMeasurementState(true);
+            }
+        });
+
         measurementViewModel.getErrorMessage().observe(this, error -> {
             if (error != null && !error.isEmpty()) {
                 instructionText.setText("Error: " + error);
@@ -5,30 +5,45 @@ package com.example.hifiwifi.classifier;
  */
 public class ActivityImportance {
     private String activityType;
-    private double signalStrengthWeight;
-    private double latencyWeight;
-    private double bandwidthWeight;
-    private double jitterWeight;
-    private double packetLossWeight;
+    // Indexed by Metric.ordinal()
+    private final double[] weights = new double[Metric.count()];
+    // Bumped on every change, so results generated from these weights can tell they are stale
+    private volatile int version;
     
     public ActivityImportance() {
         this.activityType = "general";
-        this.signalStrengthWeight = 1.0;
-        this.latencyWeight = 1.0;
-        this.bandwidthWeight = 1.0;
-        this.jitterWeight = 1.0;
-        this.packetLossWeight = 1.0;
+        java.util.Arrays.fill(weights, 1.0);
     }
     
     public ActivityImportance(String activityType, double signalStrengthWeight,
                             double latencyWeight, double bandwidthWeight,
                             double jitterWeight, double packetLossWeight) {
+        this();
         this.activityType = activityType;
-        this.signalStrengthWeight = signalStrengthWeight;
-        this.latencyWeight = latencyWeight;
-        this.bandwidthWeight = bandwidthWeight;
-        this.jitterWeight = jitterWeight;
-        this.packetLossWeight = packetLossWeight;
+        setWeight(Metric.SIGNAL_STRENGTH, signalStrengthWeight);
+        setWeight(Metric.LATENCY, latencyWeight);
+        setWeight(Metric.BANDWIDTH, bandwidthWeight);
+        setWeight(Metric.JITTER, jitterWeight);
+        setWeight(Metric.PACKET_LOSS, packetLossWeight);
+    }
+    
+    /**
+     * Get the importance weight of a metric
+     */
+    public double getWeight(Metric metric) {
+        return weights[metric.ordinal()];
+    }
+    
+    /**
+     * Set the importance weight of a metric
+     */
+    public void setWeight(Metric metric, double weight) {
+        weights[metric.ordinal()] = weight;
+        version++;
+    }
+    
+    int getVersion() {
+        return version;
     }
     
     // Getters and Setters
@@ -38,73 +53,86 @@ public class ActivityImportance {
     
     public void setActivityType(String activityType) {
         this.activityType = activityType;
+        version++;
     }
     
     public double getSignalStrengthWeight() {
-        return signalStrengthWeight;
+        return getWeight(Metric.SIGNAL_STRENGTH);
     }
     
     public void setSignalStrengthWeight(double signalStrengthWeight) {
-        this.signalStrengthWeight = signalStrengthWeight;
+        setWeight(Metric.SIGNAL_STRENGTH, signalStrengthWeight);
     }
     
     public double getLatencyWeight() {
-        return latencyWeight;
+        return getWeight(Metric.LATENCY);
     }
     
     public void setLatencyWeight(double latencyWeight) {
-        this.latencyWeight = latencyWeight;
+        setWeight(Metric.LATENCY, latencyWeight);
     }
     
     public double getBandwidthWeight() {
-        return bandwidthWeight;
+        return getWeight(Metric.BANDWIDTH);
     }
     
     public void setBandwidthWeight(double bandwidthWeight) {
-        this.bandwidthWeight = bandwidthWeight;
+        setWeight(Metric.BANDWIDTH, bandwidthWeight);
     }
     
     public double getJitterWeight() {
-        return jitterWeight;
+        return getWeight(Metric.JITTER);
     }
     
     public void setJitterWeight(double jitterWeight) {
-        this.jitterWeight = jitterWeight;
+        setWeight(Metric.JITTER, jitterWeight);
     }
     
     public double getPacketLossWeight() {
-        return packetLossWeight;
+        return getWeight(Metric.PACKET_LOSS);
     }
     
     public void setPacketLossWeight(double packetLossWeight) {
-        this.packetLossWeight = packetLossWeight;
+        setWeight(Metric.PACKET_LOSS, packetLossWeight);
+    }
+    
+    /**
+     * Get the most important metric for this activity (earliest metric wins ties)
+     */
+    public Metric getMostImportant() {
+        Metric mostImportant = Metric.SIGNAL_STRENGTH;
+        for (Metric metric : Metric.all()) {
+            if (weights[metric.ordinal()] > weights[mostImportant.ordinal()]) {
+                mostImportant = metric;
+            }
+        }
+        return mostImportant;
+    }
+    
+    /**
+     * Get the least important metric for this activity (earliest metric wins ties)
+     */
+    public Metric getLeastImportant() {
+        Metric leastImportant = Metric.SIGNAL_STRENGTH;
+        for (Metric metric : Metric.all()) {
+            if (weights[metric.ordinal()] < weights[leastImportant.ordinal()]) {
+                leastImportant = metric;
+            }
+        }
+        return leastImportant;
     }
     
     /**
      * Get the most important metric for this activity
      */
     public String getMostImportantMetric() {
-        double maxWeight = Math.max(Math.max(Math.max(Math.max(
-            signalStrengthWeight, latencyWeight), bandwidthWeight), jitterWeight), packetLossWeight);
-        
-        if (maxWeight == signalStrengthWeight) return "signal_strength";
-        if (maxWeight == latencyWeight) return "latency";
-        if (maxWeight == bandwidthWeight) return "bandwidth";
-        if (maxWeight == jitterWeight) return "jitter";
-        return "packet_loss";
+        return getMostImportant().getKey();
     }
     
     /**
      * Get the least important metric for this activity
      */
     public String getLeastImportantMetric() {
-        double minWeight = Math.min(Math.min(Math.min(Math.min(
-            signalStrengthWeight, latencyWeight), bandwidthWeight), jitterWeight), packetLossWeight);
-        
-        if (minWeight == signalStrengthWeight) return "signal_strength";
-        if (minWeight == latencyWeight) return "latency";
-        if (minWeight == bandwidthWeight) return "bandwidth";
-        if (minWeight == jitterWeight) return "jitter";
-        return "packet_loss";
+        return getLeastImportant().getKey();
     }
 }
@@ -1,10 +1,16 @@
 package com.example.hifiwifi.classifier;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Class representing the final classification result with detailed reasoning
+ * Class representing the final classification result with detailed reasoning.
+ * Reasoning, recommendations and metric details are generated on first access and memoized,
+ * so results that are only inspected for their overall grade cost almost nothing to build.
+ * The memo remembers which inputs it was generated from, including in-place changes to the
+ * metric classification and activity importance, and is rebuilt when any of them change.
+ * Reasoning and recommendations set explicitly take precedence and are never regenerated.
  */
 public class ClassificationResult {
     private String roomId;
@@ -13,14 +19,15 @@ public class ClassificationResult {
     private WiFiClassification overallClassification;
     private MetricClassification metricClassification;
     private ActivityImportance activityImportance;
-    private String reasoning;
-    private String mostCriticalMetric;
-    private List<String> recommendations;
+    private String reasoning; // Set explicitly; generated when null
+    private Metric mostCriticalMetric;
+    private List<String> recommendations; // Set explicitly; generated when null
+    private volatile Generated generated; // Memo of generated values, see getGenerated()
+    private volatile int version; // Bumped by setters of inputs to generation
     private long timestamp;
     private String frequencyBand; // "2.4GHz" or "5GHz"
     
     public ClassificationResult() {
-        this.recommendations = new ArrayList<>();
         this.timestamp = System.currentTimeMillis();
         this.frequencyBand = "Unknown";
     }
@@ -35,10 +42,7 @@ public class ClassificationResult {
         this.overallClassification = overallClassification;
         this.metricClassification = metricClassification;
         this.activityImportance = activityImportance;
-        this.recommendations = new ArrayList<>();
         this.timestamp = System.currentTimeMillis();
-        generateReasoning();
-        generateRecommendations();
     }
     
     // Getters and Setters
@@ -56,6 +60,7 @@ public class ClassificationResult {
     
     public void setRoomName(String roomName) {
         this.roomName = roomName;
+        invalidateGenerated();
     }
     
     public String getActivityType() {
@@ -64,6 +69,7 @@ public class ClassificationResult {
     
     public void setActivityType(String activityType) {
         this.activityType = activityType;
+        invalidateGenerated();
     }
     
     public WiFiClassification getOverallClassification() {
@@ -72,6 +78,7 @@ public class ClassificationResult {
     
     public void setOverallClassification(WiFiClassification overallClassification) {
         this.overallClassification = overallClassification;
+        invalidateGenerated();
     }
     
     public MetricClassification getMetricClassification() {
@@ -80,6 +87,7 @@ public class ClassificationResult {
     
     public void setMetricClassification(MetricClassification metricClassification) {
         this.metricClassification = metricClassification;
+        invalidateGenerated();
     }
     
     public ActivityImportance getActivityImportance() {
@@ -88,10 +96,20 @@ public class ClassificationResult {
     
     public void setActivityImportance(ActivityImportance activityImportance) {
         this.activityImportance = activityImportance;
+        invalidateGenerated();
     }
     
     public String getReasoning() {
-        return reasoning;
+        if (reasoning != null || !canGenerate()) {
+            return reasoning;
+        }
+        Generated memo = getGenerated();
+        String result = memo.reasoning;
+        if (result == null) {
+            result = generateReasoning();
+            memo.reasoning = result;
+        }
+        return result;
     }
     
     public void setReasoning(String reasoning) {
@@ -99,19 +117,50 @@ public class ClassificationResult {
     }
     
     public String getMostCriticalMetric() {
+        return mostCriticalMetric != null ? mostCriticalMetric.getKey() : null;
+    }
+    
+    public Metric getMostCriticalMetricType() {
         return mostCriticalMetric;
     }
     
     public void setMostCriticalMetric(String mostCriticalMetric) {
+        this.mostCriticalMetric = Metric.fromKey(mostCriticalMetric);
+    }
+    
+    public void setMostCriticalMetric(Metric mostCriticalMetric) {
         this.mostCriticalMetric = mostCriticalMetric;
     }
     
+    /**
+     * Get the recommendations, read-only
+     */
     public List<String> getRecommendations() {
-        return recommendations;
+        if (recommendations != null) {
+            return recommendations;
+        }
+        if (!canGenerate()) {
+            return Collections.emptyList();
+        }
+        Generated memo = getGenerated();
+        List<String> result = memo.recommendations;
+        if (result == null) {
+            List<String> texts = new ArrayList<>();
+            for (Recommendation recommendation : generateRecommendations()) {
+                texts.add(recommendation.getText());
+            }
+            result = Collections.unmodifiableList(texts);
+            memo.recommendations = result;
+        }
+        return result;
     }
     
+    /**
+     * Replace the generated recommendations; null goes back to generating them
+     */
     public void setRecommendations(List<String> recommendations) {
-        this.recommendations = recommendations;
+        this.recommendations = recommendations != null
+            ? Collections.unmodifiableList(new ArrayList<>(recommendations)) : null;
     }
     
     public long getTimestamp() {
@@ -130,10 +179,68 @@ public class ClassificationResult {
         this.frequencyBand = frequencyBand;
     }
     
+    /**
+     * Check whether enough state is present to generate reasoning and recommendations
+     */
+    private boolean canGenerate() {
+        return roomName != null && activityType != null && overallClassification != null
+            && metricClassification != null && activityImportance != null;
+    }
+    
+    /**
+     * Drop memoized values so they are regenerated from the updated inputs
+     * Explicitly set reasoning and recommendations are kept.
+     */
+    private void invalidateGenerated() {
+        version++;
+    }
+    
+    /**
+     * Generated values and the versions of the inputs they were generated from
+     */
+    private static final class Generated {
+        final int version;
+        final MetricClassification metricClassification;
+        final int metricClassificationVersion;
+        final ActivityImportance activityImportance;
+        final int activityImportanceVersion;
+        volatile String reasoning;
+        volatile List<String> recommendations;
+        volatile MetricDetail[] metricDetails;
+        
+        Generated(ClassificationResult result) {
+            this.version = result.version;
+            this.metricClassification = result.metricClassification;
+            this.metricClassificationVersion = metricClassification != null ? metricClassification.getVersion() : 0;
+            this.activityImportance = result.activityImportance;
+            this.activityImportanceVersion = activityImportance != null ? activityImportance.getVersion() : 0;
+        }
+        
+        boolean isCurrent(ClassificationResult result) {
+            return version == result.version
+                && metricClassification == result.metricClassification
+                && (metricClassification == null || metricClassificationVersion == metricClassification.getVersion())
+                && activityImportance == result.activityImportance
+                && (activityImportance == null || activityImportanceVersion == activityImportance.getVersion());
+        }
+    }
+    
+    /**
+     * Get the memo for the current inputs, starting a new one if any input changed
+     */
+    private Generated getGenerated() {
+        Generated memo = generated;
+        if (memo == null || !memo.isCurrent(this)) {
+            memo = new Generated(this);
+            generated = memo;
+        }
+        return memo;
+    }
+    
     /**
      * Generate human-readable reasoning for the classification
      */
-    private void generateReasoning() {
+    private String generateReasoning() {
         StringBuilder reasonBuilder = new StringBuilder();
         
         reasonBuilder.append("WiFi classification for ").append(roomName)
@@ -143,146 +250,106 @@ public class ClassificationResult {
         reasonBuilder.append(overallClassification.getDisplayName()).append(" (");
         
         // Add reasoning based on most critical metrics
-        String mostImportantMetric = activityImportance.getMostImportantMetric();
-        WiFiClassification mostImportantClassification = getMetricClassificationByType(mostImportantMetric);
+        Metric mostImportantMetric = activityImportance.getMostImportant();
+        WiFiClassification mostImportantClassification = metricClassification.get(mostImportantMetric);
         
-        reasonBuilder.append(mostImportantMetric.replace("_", " ")).append(" is ")
+        reasonBuilder.append(mostImportantMetric.getLabel()).append(" is ")
                     .append(mostImportantClassification.getDisplayName().toLowerCase());
         
         // Add context about importance
-        if (mostImportantMetric.equals("latency") && activityType.equals("gaming")) {
+        if (mostImportantMetric == Metric.LATENCY && activityType.equals("gaming")) {
             reasonBuilder.append(" and latency is very important for gaming");
-        } else if (mostImportantMetric.equals("bandwidth") && activityType.equals("streaming")) {
+        } else if (mostImportantMetric == Metric.BANDWIDTH && activityType.equals("streaming")) {
             reasonBuilder.append(" and bandwidth is very important for streaming");
-        } else if (mostImportantMetric.equals("jitter") && activityType.equals("video_call")) {
+        } else if (mostImportantMetric == Metric.JITTER && activityType.equals("video_call")) {
             reasonBuilder.append(" and jitter is very important for video calls");
         }
         
         reasonBuilder.append(")");
         
-        this.reasoning = reasonBuilder.toString();
+        return reasonBuilder.toString();
     }
     
     /**
      * Generate recommendations based on the classification
      */
-    private void generateRecommendations() {
-        recommendations.clear();
-        
-        // Signal strength recommendations
-        if (metricClassification.getSignalStrengthClassification().getScore() <= 2) {
-            recommendations.add("Move closer to the router or consider a WiFi extender");
-            recommendations.add("Check for physical obstructions between device and router");
-        }
-        
-        // Latency recommendations
-        if (metricClassification.getLatencyClassification().getScore() <= 2) {
-            recommendations.add("Check for network congestion or switch to 5GHz band");
-            recommendations.add("Consider using a wired connection for better latency");
-        }
+    private List<Recommendation> generateRecommendations() {
+        List<Recommendation> recommendations = new ArrayList<>();
         
-        // Bandwidth recommendations
-        if (metricClassification.getBandwidthClassification().getScore() <= 2) {
-            recommendations.add("Upgrade your internet plan or check for bandwidth limits");
-            recommendations.add("Close unnecessary applications using bandwidth");
-        }
-        
-        // Jitter recommendations
-        if (metricClassification.getJitterClassification().getScore() <= 2) {
-            recommendations.add("Check for network interference or switch to a less congested channel");
-            recommendations.add("Consider using QoS settings on your router");
-        }
-        
-        // Packet loss recommendations
-        if (metricClassification.getPacketLossClassification().getScore() <= 2) {
-            recommendations.add("Check for network interference or hardware issues");
-            recommendations.add("Try restarting your router and modem");
+        // Metric-specific recommendations
+        for (Metric metric : Metric.all()) {
+            if (metricClassification.get(metric).getScore() <= 2) {
+                recommendations.addAll(metric.getRecommendations());
+            }
         }
         
         // Activity-specific recommendations
         if (activityType.equals("gaming") && overallClassification.getScore() <= 3) {
-            recommendations.add("Consider using a gaming router with QoS features");
-            recommendations.add("Use a wired connection for the best gaming experience");
+            recommendations.add(Recommendation.GAMING_ROUTER);
+            recommendations.add(Recommendation.WIRED_FOR_GAMING);
         } else if (activityType.equals("streaming") && overallClassification.getScore() <= 3) {
-            recommendations.add("Lower video quality settings if available");
-            recommendations.add("Schedule streaming during off-peak hours");
+            recommendations.add(Recommendation.LOWER_VIDEO_QUALITY);
+            recommendations.add(Recommendation.OFF_PEAK_STREAMING);
         } else if (activityType.equals("video_call") && overallClassification.getScore() <= 3) {
-            recommendations.add("Close other applications during video calls");
-            recommendations.add("Use a wired connection for important meetings");
+            recommendations.add(Recommendation.CLOSE_APPS_DURING_CALLS);
+            recommendations.add(Recommendation.WIRED_FOR_MEETINGS);
         }
+        
+        return recommendations;
     }
     
     /**
-     * Get metric classification by type
+     * Get detailed classification information for a specific metric
      */
-    private WiFiClassification getMetricClassificationByType(String metricType) {
-        switch (metricType) {
-            case "signal_strength":
-                return metricClassification.getSignalStrengthClassification();
-            case "latency":
-                return metricClassification.getLatencyClassification();
-            case "bandwidth":
-                return metricClassification.getBandwidthClassification();
-            case "jitter":
-                return metricClassification.getJitterClassification();
-            case "packet_loss":
-                return metricClassification.getPacketLossClassification();
-            default:
-                return WiFiClassification.MARGINAL;
+    public MetricDetail getMetricDetail(String metricType) {
+        Metric metric = Metric.fromKey(metricType);
+        if (metric == null) {
+            return new MetricDetail(metricType, WiFiClassification.MARGINAL, 1.0,
+                getReasoningForMetric(metricType.replace("_", " "), WiFiClassification.MARGINAL, 1.0));
         }
+        return getMetricDetail(metric);
     }
     
     /**
      * Get detailed classification information for a specific metric
      */
-    public MetricDetail getMetricDetail(String metricType) {
-        WiFiClassification classification = getMetricClassificationByType(metricType);
-        double importance = getImportanceForMetric(metricType);
-        String reasoning = getReasoningForMetric(metricType, classification, importance);
-        
-        return new MetricDetail(metricType, classification, importance, reasoning);
+    public MetricDetail getMetricDetail(Metric metric) {
+        return getMetricDetailsInternal()[metric.ordinal()];
     }
     
     /**
      * Get all metric details for comprehensive analysis
      */
     public MetricDetail[] getAllMetricDetails() {
-        return new MetricDetail[]{
-            getMetricDetail("signal_strength"),
-            getMetricDetail("latency"),
-            getMetricDetail("bandwidth"),
-            getMetricDetail("jitter"),
-            getMetricDetail("packet_loss")
-        };
+        return getMetricDetailsInternal().clone();
     }
     
     /**
-     * Get importance weight for a specific metric
+     * Get the memoized metric details, indexed by Metric.ordinal()
      */
-    private double getImportanceForMetric(String metricType) {
-        switch (metricType) {
-            case "signal_strength":
-                return activityImportance.getSignalStrengthWeight();
-            case "latency":
-                return activityImportance.getLatencyWeight();
-            case "bandwidth":
-                return activityImportance.getBandwidthWeight();
-            case "jitter":
-                return activityImportance.getJitterWeight();
-            case "packet_loss":
-                return activityImportance.getPacketLossWeight();
-            default:
-                return 1.0;
+    private MetricDetail[] getMetricDetailsInternal() {
+        Generated memo = getGenerated();
+        MetricDetail[] details = memo.metricDetails;
+        if (details == null) {
+            details = new MetricDetail[Metric.count()];
+            for (Metric metric : Metric.all()) {
+                WiFiClassification classification = metricClassification.get(metric);
+                double importance = activityImportance.getWeight(metric);
+                String reasoning = getReasoningForMetric(metric.getLabel(), classification, importance);
+                details[metric.ordinal()] = new MetricDetail(metric, classification, importance, reasoning);
+            }
+            memo.metricDetails = details;
         }
+        return details;
     }
     
     /**
      * Generate reasoning for a specific metric
      */
-    private String getReasoningForMetric(String metricType, WiFiClassification classification, double importance) {
+    private String getReasoningForMetric(String metricLabel, WiFiClassification classification, double importance) {
         StringBuilder reason = new StringBuilder();
         
-        reason.append(metricType.replace("_", " ")).append(" is ")
+        reason.append(metricLabel).append(" is ")
               .append(classification.getDisplayName().toLowerCase());
         
         // Add importance context
@@ -305,20 +372,10 @@ public class ClassificationResult {
     public String[] getWellPerformingMetrics() {
         java.util.List<String> wellPerforming = new java.util.ArrayList<>();
         
-        if (metricClassification.getSignalStrengthClassification().getScore() >= 4) {
-            wellPerforming.add("signal_strength");
-        }
-        if (metricClassification.getLatencyClassification().getScore() >= 4) {
-            wellPerforming.add("latency");
-        }
-        if (metricClassification.getBandwidthClassification().getScore() >= 4) {
-            wellPerforming.add("bandwidth");
-        }
-        if (metricClassification.getJitterClassification().getScore() >= 4) {
-            wellPerforming.add("jitter");
-        }
-        if (metricClassification.getPacketLossClassification().getScore() >= 4) {
-            wellPerforming.add("packet_loss");
+        for (Metric metric : Metric.all()) {
+            if (metricClassification.get(metric).getScore() >= 4) {
+                wellPerforming.add(metric.getKey());
+            }
         }
         
         return wellPerforming.toArray(new String[0]);
@@ -330,20 +387,10 @@ public class ClassificationResult {
     public String[] getPoorlyPerformingMetrics() {
         java.util.List<String> poorlyPerforming = new java.util.ArrayList<>();
         
-        if (metricClassification.getSignalStrengthClassification().getScore() <= 2) {
-            poorlyPerforming.add("signal_strength");
-        }
-        if (metricClassification.getLatencyClassification().getScore() <= 2) {
-            poorlyPerforming.add("latency");
-        }
-        if (metricClassification.getBandwidthClassification().getScore() <= 2) {
-            poorlyPerforming.add("bandwidth");
-        }
-        if (metricClassification.getJitterClassification().getScore() <= 2) {
-            poorlyPerforming.add("jitter");
-        }
-        if (metricClassification.getPacketLossClassification().getScore() <= 2) {
-            poorlyPerforming.add("packet_loss");
+        for (Metric metric : Metric.all()) {
+            if (metricClassification.get(metric).getScore() <= 2) {
+                poorlyPerforming.add(metric.getKey());
+            }
         }
         
         return poorlyPerforming.toArray(new String[0]);
@@ -353,19 +400,21 @@ public class ClassificationResult {
      * Get the most important metric that is performing poorly
      */
     public String getMostImportantPoorMetric() {
-        String[] poorMetrics = getPoorlyPerformingMetrics();
-        String mostImportantPoor = null;
+        Metric mostImportantPoor = null;
         double highestImportance = 0.0;
         
-        for (String metric : poorMetrics) {
-            double importance = getImportanceForMetric(metric);
+        for (Metric metric : Metric.all()) {
+            if (metricClassification.get(metric).getScore() > 2) {
+                continue;
+            }
+            double importance = activityImportance.getWeight(metric);
             if (importance > highestImportance) {
                 highestImportance = importance;
                 mostImportantPoor = metric;
             }
         }
         
-        return mostImportantPoor;
+        return mostImportantPoor != null ? mostImportantPoor.getKey() : null;
     }
     
     /**
@@ -376,7 +425,7 @@ public class ClassificationResult {
             overallClassification.getDisplayName(), 
             roomName, 
             activityType, 
-            reasoning);
+            getReasoning());
     }
     
     /**
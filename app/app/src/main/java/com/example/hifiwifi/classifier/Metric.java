@@ -0,0 +1,97 @@
+package com.example.hifiwifi.classifier;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Enum identifying the WiFi metrics the classifier works with.
+ * Per-metric values are stored in arrays indexed by ordinal(), so adding a metric here
+ * extends every classification and weight table without touching any switch statements.
+ * What every metric must define, its hysteresis band and its recommendations, is passed to the
+ * constructor, so a metric can't be added without them.
+ */
+public enum Metric {
+    SIGNAL_STRENGTH("signal_strength", 3.0, // dBm
+        Recommendation.MOVE_CLOSER, Recommendation.CHECK_OBSTRUCTIONS),
+    LATENCY("latency", 5.0, // ms
+        Recommendation.SWITCH_TO_5GHZ, Recommendation.WIRED_FOR_LATENCY),
+    BANDWIDTH("bandwidth", 3.0, // Mbps
+        Recommendation.UPGRADE_PLAN, Recommendation.CLOSE_BANDWIDTH_APPS),
+    JITTER("jitter", 1.0, // ms
+        Recommendation.CHANGE_CHANNEL, Recommendation.USE_QOS),
+    PACKET_LOSS("packet_loss", 0.05, // percent
+        Recommendation.CHECK_HARDWARE, Recommendation.RESTART_ROUTER);
+    
+    private static final Metric[] VALUES = values();
+    private static final Map<String, Metric> BY_KEY = new HashMap<>();
+    
+    static {
+        for (Metric metric : VALUES) {
+            BY_KEY.put(metric.key, metric);
+        }
+    }
+    
+    private final String key;
+    private final String label;
+    private final double hysteresisBand;
+    private final List<Recommendation> recommendations;
+    
+    Metric(String key, double hysteresisBand, Recommendation... recommendations) {
+        this.key = key;
+        this.label = key.replace("_", " ");
+        this.hysteresisBand = hysteresisBand;
+        this.recommendations = Collections.unmodifiableList(Arrays.asList(recommendations));
+    }
+    
+    /**
+     * Get the string identifier used in JSON and logs (e.g. "signal_strength")
+     */
+    public String getKey() {
+        return key;
+    }
+    
+    /**
+     * Get the human-readable name (e.g. "signal strength")
+     */
+    public String getLabel() {
+        return label;
+    }
+    
+    /**
+     * Default hysteresis band around classification thresholds, in the metric's own unit
+     */
+    public double getHysteresisBand() {
+        return hysteresisBand;
+    }
+    
+    /**
+     * Recommendations for when this metric performs poorly
+     */
+    public List<Recommendation> getRecommendations() {
+        return recommendations;
+    }
+    
+    /**
+     * Number of metrics, used to size ordinal-indexed arrays
+     */
+    public static int count() {
+        return VALUES.length;
+    }
+    
+    /**
+     * Get all metrics without cloning the values() array
+     */
+    static Metric[] all() {
+        return VALUES;
+    }
+    
+    /**
+     * Look up a metric by its string identifier, or null if unknown
+     */
+    public static Metric fromKey(String key) {
+        return key != null ? BY_KEY.get(key) : null;
+    }
+}
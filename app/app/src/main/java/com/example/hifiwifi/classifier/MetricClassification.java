@@ -4,18 +4,13 @@ package com.example.hifiwifi.classifier;
  * Class representing the classification of individual WiFi metrics
  */
 public class MetricClassification {
-    private WiFiClassification signalStrengthClassification;
-    private WiFiClassification latencyClassification;
-    private WiFiClassification bandwidthClassification;
-    private WiFiClassification jitterClassification;
-    private WiFiClassification packetLossClassification;
+    // Indexed by Metric.ordinal()
+    private final WiFiClassification[] classifications = new WiFiClassification[Metric.count()];
+    // Bumped on every change, so results generated from this classification can tell they are stale
+    private volatile int version;
     
     public MetricClassification() {
-        this.signalStrengthClassification = WiFiClassification.MARGINAL;
-        this.latencyClassification = WiFiClassification.MARGINAL;
-        this.bandwidthClassification = WiFiClassification.MARGINAL;
-        this.jitterClassification = WiFiClassification.MARGINAL;
-        this.packetLossClassification = WiFiClassification.MARGINAL;
+        java.util.Arrays.fill(classifications, WiFiClassification.MARGINAL);
     }
     
     public MetricClassification(WiFiClassification signalStrengthClassification,
@@ -23,52 +18,72 @@ public class MetricClassification {
                               WiFiClassification bandwidthClassification,
                               WiFiClassification jitterClassification,
                               WiFiClassification packetLossClassification) {
-        this.signalStrengthClassification = signalStrengthClassification;
-        this.latencyClassification = latencyClassification;
-        this.bandwidthClassification = bandwidthClassification;
-        this.jitterClassification = jitterClassification;
-        this.packetLossClassification = packetLossClassification;
+        this();
+        set(Metric.SIGNAL_STRENGTH, signalStrengthClassification);
+        set(Metric.LATENCY, latencyClassification);
+        set(Metric.BANDWIDTH, bandwidthClassification);
+        set(Metric.JITTER, jitterClassification);
+        set(Metric.PACKET_LOSS, packetLossClassification);
+    }
+    
+    /**
+     * Get the classification of a metric
+     */
+    public WiFiClassification get(Metric metric) {
+        return classifications[metric.ordinal()];
+    }
+    
+    /**
+     * Set the classification of a metric
+     */
+    public void set(Metric metric, WiFiClassification classification) {
+        classifications[metric.ordinal()] = classification;
+        version++;
+    }
+    
+    int getVersion() {
+        return version;
     }
     
     // Getters and Setters
     public WiFiClassification getSignalStrengthClassification() {
-        return signalStrengthClassification;
+        return get(Metric.SIGNAL_STRENGTH);
     }
     
     public void setSignalStrengthClassification(WiFiClassification signalStrengthClassification) {
-        this.signalStrengthClassification = signalStrengthClassification;
+        set(Metric.SIGNAL_STRENGTH, signalStrengthClassification);
     }
     
     public WiFiClassification getLatencyClassification() {
-        return latencyClassification;
+        return get(Metric.LATENCY);
     }
     
     public void setLatencyClassification(WiFiClassification latencyClassification) {
-        this.latencyClassification = latencyClassification;
+        set(Metric.LATENCY, latencyClassification);
     }
     
     public WiFiClassification getBandwidthClassification() {
-        return bandwidthClassification;
+        return get(Metric.BANDWIDTH);
     }
     
     public void setBandwidthClassification(WiFiClassification bandwidthClassification) {
-        this.bandwidthClassification = bandwidthClassification;
+        set(Metric.BANDWIDTH, bandwidthClassification);
     }
     
     public WiFiClassification getJitterClassification() {
-        return jitterClassification;
+        return get(Metric.JITTER);
     }
     
     public void setJitterClassification(WiFiClassification jitterClassification) {
-        this.jitterClassification = jitterClassification;
+        set(Metric.JITTER, jitterClassification);
     }
     
     public WiFiClassification getPacketLossClassification() {
-        return packetLossClassification;
+        return get(Metric.PACKET_LOSS);
     }
     
     public void setPacketLossClassification(WiFiClassification packetLossClassification) {
-        this.packetLossClassification = packetLossClassification;
+        set(Metric.PACKET_LOSS, packetLossClassification);
     }
     
     /**
@@ -77,13 +92,7 @@ public class MetricClassification {
     public WiFiClassification getWorstClassification() {
         WiFiClassification worst = WiFiClassification.EXCELLENT;
         
-        for (WiFiClassification classification : new WiFiClassification[]{
-            signalStrengthClassification,
-            latencyClassification,
-            bandwidthClassification,
-            jitterClassification,
-            packetLossClassification
-        }) {
+        for (WiFiClassification classification : classifications) {
             if (classification.getScore() < worst.getScore()) {
                 worst = classification;
             }
@@ -98,13 +107,7 @@ public class MetricClassification {
     public WiFiClassification getBestClassification() {
         WiFiClassification best = WiFiClassification.MARGINAL;
         
-        for (WiFiClassification classification : new WiFiClassification[]{
-            signalStrengthClassification,
-            latencyClassification,
-            bandwidthClassification,
-            jitterClassification,
-            packetLossClassification
-        }) {
+        for (WiFiClassification classification : classifications) {
             if (classification.getScore() > best.getScore()) {
                 best = classification;
             }
@@ -4,6 +4,7 @@ package com.example.hifiwifi.classifier;
  * Class representing detailed information about a specific metric classification
  */
 public class MetricDetail {
+    private Metric metric; // Null when the metric type is not a known Metric
     private String metricType;
     private WiFiClassification classification;
     private double importance;
@@ -18,21 +19,36 @@ public class MetricDetail {
     
     public MetricDetail(String metricType, WiFiClassification classification, 
                        double importance, String reasoning) {
+        this.metric = Metric.fromKey(metricType);
         this.metricType = metricType;
         this.classification = classification;
         this.importance = importance;
         this.reasoning = reasoning;
     }
     
+    public MetricDetail(Metric metric, WiFiClassification classification,
+                       double importance, String reasoning) {
+        this.metric = metric;
+        this.metricType = metric.getKey();
+        this.classification = classification;
+        this.importance = importance;
+        this.reasoning = reasoning;
+    }
+    
     // Getters and Setters
     public String getMetricType() {
         return metricType;
     }
     
     public void setMetricType(String metricType) {
+        this.metric = Metric.fromKey(metricType);
         this.metricType = metricType;
     }
     
+    public Metric getMetric() {
+        return metric;
+    }
+    
     public WiFiClassification getClassification() {
         return classification;
     }
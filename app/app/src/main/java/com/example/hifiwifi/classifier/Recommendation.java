@@ -0,0 +1,54 @@
+package com.example.hifiwifi.classifier;
+
+/**
+ * Enum of the fixed recommendation texts a ClassificationResult can produce.
+ * Backing recommendations with constants means building a result never allocates new strings.
+ */
+public enum Recommendation {
+    // Signal strength
+    MOVE_CLOSER("Move closer to the router or consider a WiFi extender"),
+    CHECK_OBSTRUCTIONS("Check for physical obstructions between device and router"),
+    
+    // Latency
+    SWITCH_TO_5GHZ("Check for network congestion or switch to 5GHz band"),
+    WIRED_FOR_LATENCY("Consider using a wired connection for better latency"),
+    
+    // Bandwidth
+    UPGRADE_PLAN("Upgrade your internet plan or check for bandwidth limits"),
+    CLOSE_BANDWIDTH_APPS("Close unnecessary applications using bandwidth"),
+    
+    // Jitter
+    CHANGE_CHANNEL("Check for network interference or switch to a less congested channel"),
+    USE_QOS("Consider using QoS settings on your router"),
+    
+    // Packet loss
+    CHECK_HARDWARE("Check for network interference or hardware issues"),
+    RESTART_ROUTER("Try restarting your router and modem"),
+    
+    // Gaming
+    GAMING_ROUTER("Consider using a gaming router with QoS features"),
+    WIRED_FOR_GAMING("Use a wired connection for the best gaming experience"),
+    
+    // Streaming
+    LOWER_VIDEO_QUALITY("Lower video quality settings if available"),
+    OFF_PEAK_STREAMING("Schedule streaming during off-peak hours"),
+    
+    // Video calls
+    CLOSE_APPS_DURING_CALLS("Close other applications during video calls"),
+    WIRED_FOR_MEETINGS("Use a wired connection for important meetings");
+    
+    private final String text;
+    
+    Recommendation(String text) {
+        this.text = text;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    @Override
+    public String toString() {
+        return text;
+    }
+}
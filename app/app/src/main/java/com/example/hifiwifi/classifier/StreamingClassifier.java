@@ -0,0 +1,132 @@
+package com.example.hifiwifi.classifier;
+
+import com.example.hifiwifi.models.NetworkMetrics;
+
+/**
+ * Stateful classifier for continuous monitoring.
+ * Each sample is folded into an exponentially weighted moving average per metric, and the
+ * smoothed values are classified with a hysteresis band around every threshold. A result is
+ * only emitted when a metric or the overall classification actually changes class, so a noisy
+ * reading sitting on a threshold doesn't make the grade flap.
+ */
+public class StreamingClassifier {
+    
+    // Default smoothing factor: weight given to the newest sample
+    public static final double DEFAULT_ALPHA = 0.3;
+    
+    private final WiFiClassifier classifier;
+    private final double alpha;
+    // Hysteresis bands, indexed by Metric.ordinal(); each starts at the metric's default
+    private final double[] bands = new double[Metric.count()];
+    
+    // Stream state, indexed by Metric.ordinal()
+    private final double[] smoothed = new double[Metric.count()];
+    private final WiFiClassification[] current = new WiFiClassification[Metric.count()];
+    private WiFiClassification currentOverall;
+    private String activityType;
+    private boolean hasSamples = false;
+    
+    public StreamingClassifier(WiFiClassifier classifier) {
+        this(classifier, DEFAULT_ALPHA);
+    }
+    
+    public StreamingClassifier(WiFiClassifier classifier, double alpha) {
+        if (alpha <= 0.0 || alpha > 1.0) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+        this.classifier = classifier;
+        this.alpha = alpha;
+        for (Metric metric : Metric.all()) {
+            bands[metric.ordinal()] = metric.getHysteresisBand();
+        }
+    }
+    
+    /**
+     * Set the hysteresis band for a metric, in the metric's own unit
+     */
+    public synchronized void setBand(Metric metric, double band) {
+        bands[metric.ordinal()] = band;
+    }
+    
+    /**
+     * Feed a new sample into the stream.
+     * @return a new ClassificationResult if any class changed, or null if the classification is unchanged
+     */
+    public synchronized ClassificationResult update(NetworkMetrics metrics, String roomId, String roomName,
+                                                    String activityType) {
+        if (this.activityType != null && !this.activityType.equals(activityType)) {
+            // Weights differ per activity, so the previous classes no longer apply
+            reset();
+        }
+        this.activityType = activityType;
+        
+        smooth(Metric.SIGNAL_STRENGTH, metrics.getCurrentSignalDbm());
+        smooth(Metric.LATENCY, metrics.getCurrentLatencyMs());
+        smooth(Metric.BANDWIDTH, metrics.getCurrentBandwidthMbps());
+        smooth(Metric.JITTER, metrics.getCurrentJitterMs());
+        smooth(Metric.PACKET_LOSS, metrics.getCurrentPacketLossPercent());
+        hasSamples = true;
+        
+        boolean changed = false;
+        MetricClassification metricClassification = new MetricClassification();
+        for (Metric metric : Metric.all()) {
+            int i = metric.ordinal();
+            WiFiClassification next = classifier.classifyWithHysteresis(metric, smoothed[i], current[i], bands[i]);
+            if (next != current[i]) {
+                current[i] = next;
+                changed = true;
+            }
+            metricClassification.set(metric, next);
+        }
+        
+        ActivityImportance activityImportance = ActivityImportanceFactory.getActivityImportance(activityType);
+        WiFiClassification overall = classifier.calculateWeightedClassification(metricClassification, activityImportance);
+        if (overall != currentOverall) {
+            currentOverall = overall;
+            changed = true;
+        }
+        
+        if (!changed) {
+            return null;
+        }
+        
+        ClassificationResult result = new ClassificationResult(roomId, roomName, activityType,
+            overall, metricClassification, activityImportance);
+        result.setMostCriticalMetric(classifier.getMostCriticalMetric(metricClassification, activityImportance));
+        result.setFrequencyBand(metrics.getFrequencyBand());
+        return result;
+    }
+    
+    /**
+     * Fold a sample into the moving average for a metric
+     */
+    private void smooth(Metric metric, double value) {
+        int i = metric.ordinal();
+        smoothed[i] = hasSamples ? smoothed[i] + alpha * (value - smoothed[i]) : value;
+    }
+    
+    /**
+     * Get the current smoothed value of a metric
+     */
+    public synchronized double getSmoothedValue(Metric metric) {
+        return smoothed[metric.ordinal()];
+    }
+    
+    /**
+     * Get the last emitted overall classification, or null before the first sample
+     */
+    public synchronized WiFiClassification getCurrentClassification() {
+        return currentOverall;
+    }
+    
+    /**
+     * Clear all stream state, e.g. when moving to a new room
+     */
+    public synchronized void reset() {
+        java.util.Arrays.fill(smoothed, 0.0);
+        java.util.Arrays.fill(current, null);
+        currentOverall = null;
+        activityType = null;
+        hasSamples = false;
+    }
+}
@@ -20,6 +20,13 @@ public enum WiFiClassification {
         return displayName;
     }
     
+    /**
+     * Get the single-letter grade used in compact SLM context (E, G, O, B, M)
+     */
+    public char getLetter() {
+        return displayName.charAt(0);
+    }
+    
     /**
      * Get numeric score for comparison (higher is better)
      */
@@ -1,5 +1,6 @@
 package com.example.hifiwifi.classifier;
 
+import com.example.hifiwifi.models.HopMetrics;
 import com.example.hifiwifi.models.NetworkMetrics;
 import com.example.hifiwifi.models.RoomMeasurement;
 
@@ -34,16 +35,51 @@ public class WiFiClassifier {
     private static final double OKAY_PACKET_LOSS_PERCENT = 1.0;
     private static final double BAD_PACKET_LOSS_PERCENT = 2.0;
     
+    // The wireless hop alone (phone to gateway) should answer within a few milliseconds
+    private static final double[] WIRELESS_HOP_LATENCY_MS = {5.0, 10.0, 30.0, 60.0};
+    // One lost probe out of ten is as likely a dropped SYN as a lossy link, so loss counts from two
+    private static final int WIRELESS_HOP_MIN_LOST_PROBES = 2;
+    
+    // Levels in threshold order; anything past the last threshold is MARGINAL
+    private static final WiFiClassification[] LEVELS = {
+        WiFiClassification.EXCELLENT,
+        WiFiClassification.GOOD,
+        WiFiClassification.OKAY,
+        WiFiClassification.BAD
+    };
+    
+    // Per-metric thresholds and direction, indexed by Metric.ordinal()
+    private static final double[][] THRESHOLDS = new double[Metric.count()][];
+    private static final boolean[] HIGHER_IS_BETTER = new boolean[Metric.count()];
+    
+    static {
+        register(Metric.SIGNAL_STRENGTH, true,
+            EXCELLENT_SIGNAL_DBM, GOOD_SIGNAL_DBM, OKAY_SIGNAL_DBM, BAD_SIGNAL_DBM);
+        register(Metric.LATENCY, false,
+            EXCELLENT_LATENCY_MS, GOOD_LATENCY_MS, OKAY_LATENCY_MS, BAD_LATENCY_MS);
+        register(Metric.BANDWIDTH, true,
+            EXCELLENT_BANDWIDTH_MBPS, GOOD_BANDWIDTH_MBPS, OKAY_BANDWIDTH_MBPS, BAD_BANDWIDTH_MBPS);
+        register(Metric.JITTER, false,
+            EXCELLENT_JITTER_MS, GOOD_JITTER_MS, OKAY_JITTER_MS, BAD_JITTER_MS);
+        register(Metric.PACKET_LOSS, false,
+            EXCELLENT_PACKET_LOSS_PERCENT, GOOD_PACKET_LOSS_PERCENT, OKAY_PACKET_LOSS_PERCENT, BAD_PACKET_LOSS_PERCENT);
+    }
+    
+    private static void register(Metric metric, boolean higherIsBetter, double... thresholds) {
+        THRESHOLDS[metric.ordinal()] = thresholds;
+        HIGHER_IS_BETTER[metric.ordinal()] = higherIsBetter;
+    }
+    
     /**
      * Classify individual WiFi metrics
      */
     public MetricClassification classifyMetrics(NetworkMetrics metrics) {
         return new MetricClassification(
-            classifySignalStrength(metrics.getCurrentSignalDbm()),
-            classifyLatency(metrics.getCurrentLatencyMs()),
-            classifyBandwidth(metrics.getCurrentBandwidthMbps()),
-            classifyJitter(metrics.getCurrentJitterMs()),
-            classifyPacketLoss(metrics.getCurrentPacketLossPercent())
+            classify(Metric.SIGNAL_STRENGTH, metrics.getCurrentSignalDbm()),
+            classify(Metric.LATENCY, metrics.getCurrentLatencyMs()),
+            classify(Metric.BANDWIDTH, metrics.getCurrentBandwidthMbps()),
+            classify(Metric.JITTER, metrics.getCurrentJitterMs()),
+            classify(Metric.PACKET_LOSS, metrics.getCurrentPacketLossPercent())
         );
     }
     
@@ -52,97 +88,106 @@ public class WiFiClassifier {
      */
     public MetricClassification classifyMetrics(RoomMeasurement measurement) {
         return new MetricClassification(
-            classifySignalStrength(measurement.getSignalStrengthDbm()),
-            classifyLatency(measurement.getLatencyMs()),
-            classifyBandwidth(measurement.getBandwidthMbps()),
-            classifyJitter(measurement.getJitterMs()),
-            classifyPacketLoss(measurement.getPacketLossPercent())
+            classify(Metric.SIGNAL_STRENGTH, measurement.getSignalStrengthDbm()),
+            classify(Metric.LATENCY, measurement.getLatencyMs()),
+            classify(Metric.BANDWIDTH, measurement.getBandwidthMbps()),
+            classify(Metric.JITTER, measurement.getJitterMs()),
+            classify(Metric.PACKET_LOSS, measurement.getPacketLossPercent())
         );
     }
     
     /**
-     * Classify signal strength based on dBm values
+     * Classify a single metric value against its thresholds
      */
-    private WiFiClassification classifySignalStrength(int signalDbm) {
-        if (signalDbm >= EXCELLENT_SIGNAL_DBM) {
-            return WiFiClassification.EXCELLENT;
-        } else if (signalDbm >= GOOD_SIGNAL_DBM) {
-            return WiFiClassification.GOOD;
-        } else if (signalDbm >= OKAY_SIGNAL_DBM) {
-            return WiFiClassification.OKAY;
-        } else if (signalDbm >= BAD_SIGNAL_DBM) {
-            return WiFiClassification.BAD;
-        } else {
-            return WiFiClassification.MARGINAL;
+    public WiFiClassification classify(Metric metric, double value) {
+        return classify(value, THRESHOLDS[metric.ordinal()], HIGHER_IS_BETTER[metric.ordinal()]);
+    }
+    
+    private static WiFiClassification classify(double value, double[] thresholds, boolean higherIsBetter) {
+        for (int i = 0; i < thresholds.length; i++) {
+            if (higherIsBetter ? value >= thresholds[i] : value <= thresholds[i]) {
+                return LEVELS[i];
+            }
         }
+        return WiFiClassification.MARGINAL;
     }
     
     /**
-     * Classify latency based on milliseconds
+     * Classify a metric value with a hysteresis band around each threshold.
+     * The classification only moves away from the previous one once the value has crossed
+     * the relevant threshold by more than the band, so values hovering on a threshold don't flap.
      */
-    private WiFiClassification classifyLatency(int latencyMs) {
-        if (latencyMs <= EXCELLENT_LATENCY_MS) {
-            return WiFiClassification.EXCELLENT;
-        } else if (latencyMs <= GOOD_LATENCY_MS) {
-            return WiFiClassification.GOOD;
-        } else if (latencyMs <= OKAY_LATENCY_MS) {
-            return WiFiClassification.OKAY;
-        } else if (latencyMs <= BAD_LATENCY_MS) {
-            return WiFiClassification.BAD;
-        } else {
-            return WiFiClassification.MARGINAL;
+    public WiFiClassification classifyWithHysteresis(Metric metric, double value,
+                                                     WiFiClassification previous, double band) {
+        if (previous == null) {
+            return classify(metric, value);
+        }
+        
+        // Shift the value against the direction of change before comparing to thresholds
+        double shift = HIGHER_IS_BETTER[metric.ordinal()] ? band : -band;
+        WiFiClassification upgraded = classify(metric, value - shift);
+        if (upgraded.getScore() > previous.getScore()) {
+            return upgraded;
+        }
+        WiFiClassification downgraded = classify(metric, value + shift);
+        if (downgraded.getScore() < previous.getScore()) {
+            return downgraded;
         }
+        return previous;
     }
     
     /**
-     * Classify bandwidth based on Mbps
+     * Get the hop that measures the Wi-Fi link on its own
+     * That is the gateway when it answered probes, otherwise the Raspberry Pi, which sits on the same LAN.
+     * @return the hop, or null if neither was reachable
      */
-    private WiFiClassification classifyBandwidth(double bandwidthMbps) {
-        if (bandwidthMbps >= EXCELLENT_BANDWIDTH_MBPS) {
-            return WiFiClassification.EXCELLENT;
-        } else if (bandwidthMbps >= GOOD_BANDWIDTH_MBPS) {
-            return WiFiClassification.GOOD;
-        } else if (bandwidthMbps >= OKAY_BANDWIDTH_MBPS) {
-            return WiFiClassification.OKAY;
-        } else if (bandwidthMbps >= BAD_BANDWIDTH_MBPS) {
-            return WiFiClassification.BAD;
-        } else {
-            return WiFiClassification.MARGINAL;
+    public HopMetrics getWirelessHop(NetworkMetrics metrics) {
+        if (metrics.getGatewayHop() != null && metrics.getGatewayHop().isReachable()) {
+            return metrics.getGatewayHop();
+        }
+        if (metrics.getPiHop() != null && metrics.getPiHop().isReachable()) {
+            return metrics.getPiHop();
         }
+        return null;
     }
     
     /**
-     * Classify jitter based on milliseconds
+     * Classify the wireless hop by the worse of its latency and its loss
+     * Loss is only graded once more than one probe went unanswered.
+     * @return the classification, or null if no local hop was reachable
      */
-    private WiFiClassification classifyJitter(double jitterMs) {
-        if (jitterMs <= EXCELLENT_JITTER_MS) {
-            return WiFiClassification.EXCELLENT;
-        } else if (jitterMs <= GOOD_JITTER_MS) {
-            return WiFiClassification.GOOD;
-        } else if (jitterMs <= OKAY_JITTER_MS) {
-            return WiFiClassification.OKAY;
-        } else if (jitterMs <= BAD_JITTER_MS) {
-            return WiFiClassification.BAD;
-        } else {
-            return WiFiClassification.MARGINAL;
+    public WiFiClassification classifyWirelessHop(NetworkMetrics metrics) {
+        HopMetrics hop = getWirelessHop(metrics);
+        if (hop == null) {
+            return null;
         }
+        WiFiClassification latency = classify(hop.getLatencyMs(), WIRELESS_HOP_LATENCY_MS, false);
+        if (hop.getProbesSent() - hop.getProbesAnswered() < WIRELESS_HOP_MIN_LOST_PROBES) {
+            return latency;
+        }
+        WiFiClassification loss = classify(Metric.PACKET_LOSS, hop.getLossPercent());
+        return latency.getScore() <= loss.getScore() ? latency : loss;
     }
     
     /**
-     * Classify packet loss based on percentage
+     * Whether the wireless hop alone is already bad, so internet tests can't tell us more about the room
      */
-    private WiFiClassification classifyPacketLoss(double packetLossPercent) {
-        if (packetLossPercent <= EXCELLENT_PACKET_LOSS_PERCENT) {
-            return WiFiClassification.EXCELLENT;
-        } else if (packetLossPercent <= GOOD_PACKET_LOSS_PERCENT) {
-            return WiFiClassification.GOOD;
-        } else if (packetLossPercent <= OKAY_PACKET_LOSS_PERCENT) {
-            return WiFiClassification.OKAY;
-        } else if (packetLossPercent <= BAD_PACKET_LOSS_PERCENT) {
-            return WiFiClassification.BAD;
-        } else {
-            return WiFiClassification.MARGINAL;
+    public boolean isWirelessHopBad(NetworkMetrics metrics) {
+        WiFiClassification wirelessHop = classifyWirelessHop(metrics);
+        return wirelessHop != null && wirelessHop.getScore() <= WiFiClassification.BAD.getScore();
+    }
+    
+    /**
+     * Latency added beyond the wireless hop, by the router, the ISP and the internet
+     * @return the upstream latency in ms, or -1 if either end wasn't reachable
+     */
+    public double getUpstreamLatencyMs(NetworkMetrics metrics) {
+        HopMetrics wirelessHop = getWirelessHop(metrics);
+        HopMetrics internetHop = metrics.getInternetHop();
+        if (wirelessHop == null || internetHop == null || !internetHop.isReachable()) {
+            return -1;
         }
+        return Math.max(0.0, internetHop.getLatencyMs() - wirelessHop.getLatencyMs());
     }
     
     /**
@@ -154,20 +199,11 @@ public class WiFiClassifier {
         double totalWeight = 0.0;
         
         // Calculate weighted score for each metric
-        weightedScore += metricClassification.getSignalStrengthClassification().getScore() * activityImportance.getSignalStrengthWeight();
-        totalWeight += activityImportance.getSignalStrengthWeight();
-        
-        weightedScore += metricClassification.getLatencyClassification().getScore() * activityImportance.getLatencyWeight();
-        totalWeight += activityImportance.getLatencyWeight();
-        
-        weightedScore += metricClassification.getBandwidthClassification().getScore() * activityImportance.getBandwidthWeight();
-        totalWeight += activityImportance.getBandwidthWeight();
-        
-        weightedScore += metricClassification.getJitterClassification().getScore() * activityImportance.getJitterWeight();
-        totalWeight += activityImportance.getJitterWeight();
-        
-        weightedScore += metricClassification.getPacketLossClassification().getScore() * activityImportance.getPacketLossWeight();
-        totalWeight += activityImportance.getPacketLossWeight();
+        for (Metric metric : Metric.all()) {
+            double weight = activityImportance.getWeight(metric);
+            weightedScore += metricClassification.get(metric).getScore() * weight;
+            totalWeight += weight;
+        }
         
         // Normalize the score
         double normalizedScore = weightedScore / totalWeight;
@@ -189,41 +225,9 @@ public class WiFiClassifier {
     /**
      * Get the most critical metric for the given activity
      */
-    public String getMostCriticalMetric(MetricClassification metricClassification, 
+    public Metric getMostCriticalMetric(MetricClassification metricClassification, 
                                       ActivityImportance activityImportance) {
-        String mostImportantMetric = activityImportance.getMostImportantMetric();
-        WiFiClassification worstClassification = metricClassification.getWorstClassification();
-        
-        // Check which metric has the worst classification among the important ones
-        WiFiClassification worstImportantClassification = WiFiClassification.EXCELLENT;
-        String criticalMetric = mostImportantMetric;
-        
-        if (mostImportantMetric.equals("signal_strength") && 
-            metricClassification.getSignalStrengthClassification().getScore() < worstImportantClassification.getScore()) {
-            worstImportantClassification = metricClassification.getSignalStrengthClassification();
-            criticalMetric = "signal_strength";
-        }
-        if (mostImportantMetric.equals("latency") && 
-            metricClassification.getLatencyClassification().getScore() < worstImportantClassification.getScore()) {
-            worstImportantClassification = metricClassification.getLatencyClassification();
-            criticalMetric = "latency";
-        }
-        if (mostImportantMetric.equals("bandwidth") && 
-            metricClassification.getBandwidthClassification().getScore() < worstImportantClassification.getScore()) {
-            worstImportantClassification = metricClassification.getBandwidthClassification();
-            criticalMetric = "bandwidth";
-        }
-        if (mostImportantMetric.equals("jitter") && 
-            metricClassification.getJitterClassification().getScore() < worstImportantClassification.getScore()) {
-            worstImportantClassification = metricClassification.getJitterClassification();
-            criticalMetric = "jitter";
-        }
-        if (mostImportantMetric.equals("packet_loss") && 
-            metricClassification.getPacketLossClassification().getScore() < worstImportantClassification.getScore()) {
-            worstImportantClassification = metricClassification.getPacketLossClassification();
-            criticalMetric = "packet_loss";
-        }
-        
-        return criticalMetric;
+        // The activity's most important metric is the one whose classification matters most
+        return activityImportance.getMostImportant();
     }
 }
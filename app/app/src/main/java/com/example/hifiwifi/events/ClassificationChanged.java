@@ -0,0 +1,18 @@
+package com.example.hifiwifi.events;
+
+import com.example.hifiwifi.classifier.ClassificationResult;
+
+/**
+ * Event published when a room's classification is new or has changed
+ */
+public class ClassificationChanged extends MeasurementEvent {
+    private final ClassificationResult result;
+    
+    public ClassificationChanged(ClassificationResult result) {
+        this.result = result;
+    }
+    
+    public ClassificationResult getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.hifiwifi.events;
+
+/**
+ * Base class for events published on the MeasurementEventBus
+ */
+public abstract class MeasurementEvent {
+    private final long timestamp;
+    
+    protected MeasurementEvent() {
+        this.timestamp = System.currentTimeMillis();
+    }
+    
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.hifiwifi.events;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process event bus carrying measurement and classification changes to repositories and UI.
+ * Every subscriber gets its own bounded queue drained on its own executor, so a slow subscriber
+ * never blocks the publisher or other subscribers. When a queue is full the subscription's
+ * overflow policy decides which event is dropped.
+ */
+public class MeasurementEventBus {
+
+    private static final String TAG = "MeasurementEventBus";
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * What to do when a subscriber's queue is full
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST, // Keep the newest events, e.g. for UI that only shows current state
+        DROP_NEWEST  // Keep the oldest events and reject new ones
+    }
+
+    /**
+     * Receives events of a subscribed type
+     */
+    public interface Listener<E extends MeasurementEvent> {
+        void onEvent(E event);
+    }
+
+    // Singleton instance
+    private static MeasurementEventBus instance;
+
+    private final CopyOnWriteArrayList<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Get singleton instance
+     */
+    public static synchronized MeasurementEventBus getInstance() {
+        if (instance == null) {
+            instance = new MeasurementEventBus();
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribe to events of a type using the default capacity, dropping the oldest events on overflow
+     */
+    public <E extends MeasurementEvent> Subscription<E> subscribe(Class<E> eventType, Executor executor,
+                                                                  Listener<? super E> listener) {
+        return subscribe(eventType, executor, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST, listener);
+    }
+
+    /**
+     * Subscribe to events of a type
+     * @param executor executor the listener is called on; events are delivered one at a time in publish order
+     * @param capacity maximum number of undelivered events held for this subscriber
+     */
+    public <E extends MeasurementEvent> Subscription<E> subscribe(Class<E> eventType, Executor executor,
+                                                                  int capacity, OverflowPolicy policy,
+                                                                  Listener<? super E> listener) {
+        Subscription<E> subscription = new Subscription<>(this, eventType, executor, capacity, policy, listener);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Publish an event to every subscriber of its type. Never blocks.
+     */
+    public void publish(MeasurementEvent event) {
+        if (event == null) {
+            return;
+        }
+        for (Subscription<?> subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Get the number of active subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * A subscriber's bounded queue and delivery state
+     */
+    public static final class Subscription<E extends MeasurementEvent> {
+        private final MeasurementEventBus bus;
+        private final Class<E> eventType;
+        private final Executor executor;
+        private final OverflowPolicy policy;
+        private final Listener<? super E> listener;
+        private final ArrayBlockingQueue<E> queue;
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private final AtomicLong droppedCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+        private volatile boolean active = true;
+
+        private Subscription(MeasurementEventBus bus, Class<E> eventType, Executor executor, int capacity,
+                             OverflowPolicy policy, Listener<? super E> listener) {
+            this.bus = bus;
+            this.eventType = eventType;
+            this.executor = executor;
+            this.policy = policy;
+            this.listener = listener;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void offer(MeasurementEvent event) {
+            if (!active || !eventType.isInstance(event)) {
+                return;
+            }
+            E typed = eventType.cast(event);
+
+            synchronized (queue) {
+                if (!queue.offer(typed)) {
+                    droppedCount.incrementAndGet();
+                    if (policy == OverflowPolicy.DROP_OLDEST) {
+                        queue.poll();
+                        queue.offer(typed);
+                    }
+                }
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                E event;
+                while (active && (event = queue.poll()) != null) {
+                    try {
+                        listener.onEvent(event);
+                    } catch (RuntimeException e) {
+                        failedCount.incrementAndGet();
+                        Log.e(TAG, "Listener for " + eventType.getSimpleName() + " failed", e);
+                    }
+                }
+                draining.set(false);
+
+                // An event may have arrived after the last poll but before the flag was cleared
+                if (!active || queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stop receiving events and discard any pending ones
+         */
+        public void unsubscribe() {
+            active = false;
+            queue.clear();
+            bus.subscriptions.remove(this);
+        }
+
+        /**
+         * Number of events dropped because the queue was full
+         */
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        /**
+         * Number of events whose listener threw an exception
+         */
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        /**
+         * Number of events waiting to be delivered
+         */
+        public int getPendingCount() {
+            return queue.size();
+        }
+    }
+}
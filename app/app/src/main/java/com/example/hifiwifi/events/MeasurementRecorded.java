@@ -0,0 +1,18 @@
+package com.example.hifiwifi.events;
+
+import com.example.hifiwifi.models.RoomMeasurement;
+
+/**
+ * Event published when a room measurement has completed
+ */
+public class MeasurementRecorded extends MeasurementEvent {
+    private final RoomMeasurement measurement;
+    
+    public MeasurementRecorded(RoomMeasurement measurement) {
+        this.measurement = measurement;
+    }
+    
+    public RoomMeasurement getMeasurement() {
+        return measurement;
+    }
+}
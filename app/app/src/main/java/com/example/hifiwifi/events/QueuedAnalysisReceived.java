@@ -0,0 +1,25 @@
+package com.example.hifiwifi.events;
+
+import com.example.hifiwifi.services.HTTPService;
+
+/**
+ * Event published when the Pi analyzed a measurement that waited in the outbound queue
+ */
+public class QueuedAnalysisReceived extends MeasurementEvent {
+    private final HTTPService.AnalyzeRequest.Measurement measurement;
+    private final HTTPService.AnalyzeResponse response;
+
+    public QueuedAnalysisReceived(HTTPService.AnalyzeRequest.Measurement measurement,
+                                  HTTPService.AnalyzeResponse response) {
+        this.measurement = measurement;
+        this.response = response;
+    }
+
+    public HTTPService.AnalyzeRequest.Measurement getMeasurement() {
+        return measurement;
+    }
+
+    public HTTPService.AnalyzeResponse getResponse() {
+        return response;
+    }
+}
@@ -1,9 +1,14 @@
 package com.example.hifiwifi.models;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Data model representing a chat message in the SLM conversation
  */
 public class ChatMessage {
+    // Disambiguates messages created within the same millisecond
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
     private String messageId;
     private String messageText;
     private boolean isFromUser;
@@ -15,10 +20,10 @@ public class ChatMessage {
     }
 
     public ChatMessage(String messageText, boolean isFromUser, String roomContext) {
-        this.messageId = String.valueOf(System.currentTimeMillis());
+        this.timestamp = System.currentTimeMillis();
+        this.messageId = timestamp + "-" + SEQUENCE.incrementAndGet();
         this.messageText = messageText;
         this.isFromUser = isFromUser;
-        this.timestamp = System.currentTimeMillis();
         this.roomContext = roomContext;
     }
 
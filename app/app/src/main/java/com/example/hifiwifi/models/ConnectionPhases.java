@@ -0,0 +1,91 @@
+package com.example.hifiwifi.models;
+
+/**
+ * Where the time of a test's HTTP requests went, averaged over the requests.
+ * Setup (DNS, TCP connect, TLS handshake) is averaged over the requests that opened a connection;
+ * time to first byte over every request; transfer over the requests that returned a body.
+ */
+public class ConnectionPhases {
+
+    private int requestCount;
+    private int newConnectionCount;
+    private double dnsMs;
+    private double tcpConnectMs;
+    private double tlsHandshakeMs;
+    private double timeToFirstByteMs; // Request sent to response headers received
+    private double transferMs; // First to last byte of the body
+    private long bytesTransferred;
+
+    public ConnectionPhases() {
+    }
+
+    public ConnectionPhases(int requestCount, int newConnectionCount, double dnsMs, double tcpConnectMs,
+                            double tlsHandshakeMs, double timeToFirstByteMs, double transferMs,
+                            long bytesTransferred) {
+        this.requestCount = requestCount;
+        this.newConnectionCount = newConnectionCount;
+        this.dnsMs = dnsMs;
+        this.tcpConnectMs = tcpConnectMs;
+        this.tlsHandshakeMs = tlsHandshakeMs;
+        this.timeToFirstByteMs = timeToFirstByteMs;
+        this.transferMs = transferMs;
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public int getNewConnectionCount() {
+        return newConnectionCount;
+    }
+
+    public double getDnsMs() {
+        return dnsMs;
+    }
+
+    public double getTcpConnectMs() {
+        return tcpConnectMs;
+    }
+
+    public double getTlsHandshakeMs() {
+        return tlsHandshakeMs;
+    }
+
+    public double getTimeToFirstByteMs() {
+        return timeToFirstByteMs;
+    }
+
+    public double getTransferMs() {
+        return transferMs;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * Time spent before a request could be sent on a new connection: DNS, TCP connect and TLS
+     */
+    public double getSetupMs() {
+        return dnsMs + tcpConnectMs + tlsHandshakeMs;
+    }
+
+    /**
+     * Whether connection setup takes longer than waiting for the first byte
+     * A TCP connect is one round trip, so setup well above first-byte time points at DNS or TLS
+     * rather than the air.
+     */
+    public boolean isSetupDominated() {
+        return newConnectionCount > 0 && getSetupMs() > timeToFirstByteMs;
+    }
+
+    @Override
+    public String toString() {
+        return requestCount + " requests: dns " + String.format("%.1f", dnsMs)
+            + "ms, tcp " + String.format("%.1f", tcpConnectMs)
+            + "ms, tls " + String.format("%.1f", tlsHandshakeMs)
+            + "ms, ttfb " + String.format("%.1f", timeToFirstByteMs)
+            + "ms, transfer " + String.format("%.1f", transferMs) + "ms";
+    }
+}
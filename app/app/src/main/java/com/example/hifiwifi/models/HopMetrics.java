@@ -0,0 +1,87 @@
+package com.example.hifiwifi.models;
+
+/**
+ * Latency and loss measured to one hop on the path from the phone to the internet
+ */
+public class HopMetrics {
+
+    /**
+     * The hops probed: the Wi-Fi gateway, the Raspberry Pi on the LAN, and an internet host
+     */
+    public enum Hop {
+        GATEWAY, PI, INTERNET
+    }
+
+    private Hop hop;
+    private String target; // "192.168.1.1:53"
+    private int probesSent;
+    private double[] rttSamplesMs; // Round-trip times of the probes that were answered
+
+    public HopMetrics() {
+        this.rttSamplesMs = new double[0];
+    }
+
+    public HopMetrics(Hop hop, String target, int probesSent, double[] rttSamplesMs) {
+        this.hop = hop;
+        this.target = target;
+        this.probesSent = probesSent;
+        this.rttSamplesMs = rttSamplesMs.clone();
+    }
+
+    public Hop getHop() {
+        return hop;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getProbesSent() {
+        return probesSent;
+    }
+
+    public int getProbesAnswered() {
+        return rttSamplesMs.length;
+    }
+
+    public double[] getRttSamplesMs() {
+        return rttSamplesMs.clone();
+    }
+
+    /**
+     * Whether any probe was answered; a hop that never answers may simply filter probes
+     */
+    public boolean isReachable() {
+        return rttSamplesMs.length > 0;
+    }
+
+    /**
+     * Mean round-trip time of the answered probes, or 0 if none were answered
+     */
+    public double getLatencyMs() {
+        if (rttSamplesMs.length == 0) {
+            return 0.0;
+        }
+        double sum = 0.0;
+        for (double sample : rttSamplesMs) {
+            sum += sample;
+        }
+        return sum / rttSamplesMs.length;
+    }
+
+    /**
+     * Percentage of probes that went unanswered
+     */
+    public double getLossPercent() {
+        if (probesSent == 0) {
+            return 0.0;
+        }
+        return ((probesSent - rttSamplesMs.length) * 100.0) / probesSent;
+    }
+
+    @Override
+    public String toString() {
+        return hop + " " + target + ": " + String.format("%.1f", getLatencyMs()) + "ms, "
+            + String.format("%.0f", getLossPercent()) + "% loss";
+    }
+}
@@ -12,6 +12,9 @@ public class NetworkMetrics {
     private boolean isCollecting;
     private String currentRoomName;
     private String frequencyBand; // "2.4GHz" or "5GHz"
+    private HopMetrics gatewayHop; // Phone to Wi-Fi gateway, null if not probed
+    private HopMetrics piHop; // Phone to Raspberry Pi, null if not probed
+    private HopMetrics internetHop; // Phone to internet host, null if not probed
 
     public NetworkMetrics() {
         this.currentSignalDbm = 0;
@@ -126,4 +129,45 @@ public class NetworkMetrics {
     public void setFrequencyBand(String frequencyBand) {
         this.frequencyBand = frequencyBand;
     }
+
+    public HopMetrics getGatewayHop() {
+        return gatewayHop;
+    }
+
+    public void setGatewayHop(HopMetrics gatewayHop) {
+        this.gatewayHop = gatewayHop;
+    }
+
+    public HopMetrics getPiHop() {
+        return piHop;
+    }
+
+    public void setPiHop(HopMetrics piHop) {
+        this.piHop = piHop;
+    }
+
+    public HopMetrics getInternetHop() {
+        return internetHop;
+    }
+
+    public void setInternetHop(HopMetrics internetHop) {
+        this.internetHop = internetHop;
+    }
+
+    /**
+     * Store a probed hop in the field for its position on the path
+     */
+    public void setHop(HopMetrics hopMetrics) {
+        switch (hopMetrics.getHop()) {
+            case GATEWAY:
+                gatewayHop = hopMetrics;
+                break;
+            case PI:
+                piHop = hopMetrics;
+                break;
+            case INTERNET:
+                internetHop = hopMetrics;
+                break;
+        }
+    }
 }
@@ -11,11 +11,16 @@ public class RoomMeasurement {
     private long timestamp;
     private int signalStrengthDbm;
     private int latencyMs;
-    private double bandwidthMbps;
+    private double bandwidthMbps; // Throughput used for classification: WAN when measured, otherwise LAN
+    private double wanBandwidthMbps; // Download from an internet server, 0 if not measured
+    private double lanBandwidthMbps; // Download from the Raspberry Pi, 0 if not measured
+    private double lanUploadMbps; // Upload to the Raspberry Pi, 0 if not measured
+    private double downloadCpuMsPerMb = -1; // CPU the phone spent reading the WAN download, -1 if unknown
     private double jitterMs;
     private double packetLossPercent;
     private String activityType; // "gaming", "streaming", "video_call", "general"
     private String frequencyBand; // "2.4GHz" or "5GHz"
+    private ConnectionPhases connectionPhases; // Where the test's request time went, null if not recorded
 
     public RoomMeasurement() {
         // Default constructor
@@ -138,6 +143,54 @@ public class RoomMeasurement {
         this.packetLossPercent = packetLossPercent;
     }
 
+    public double getWanBandwidthMbps() {
+        return wanBandwidthMbps;
+    }
+
+    public void setWanBandwidthMbps(double wanBandwidthMbps) {
+        this.wanBandwidthMbps = wanBandwidthMbps;
+    }
+
+    public double getLanBandwidthMbps() {
+        return lanBandwidthMbps;
+    }
+
+    public void setLanBandwidthMbps(double lanBandwidthMbps) {
+        this.lanBandwidthMbps = lanBandwidthMbps;
+    }
+
+    public double getLanUploadMbps() {
+        return lanUploadMbps;
+    }
+
+    public void setLanUploadMbps(double lanUploadMbps) {
+        this.lanUploadMbps = lanUploadMbps;
+    }
+
+    public double getDownloadCpuMsPerMb() {
+        return downloadCpuMsPerMb;
+    }
+
+    public void setDownloadCpuMsPerMb(double downloadCpuMsPerMb) {
+        this.downloadCpuMsPerMb = downloadCpuMsPerMb;
+    }
+
+    /**
+     * Whether the internet connection, rather than the Wi-Fi link, limits throughput
+     * A LAN download well above the WAN download means the room is fine and the ISP is the bottleneck.
+     */
+    public boolean isInternetLimited() {
+        return wanBandwidthMbps > 0 && lanBandwidthMbps > 2 * wanBandwidthMbps;
+    }
+
+    public ConnectionPhases getConnectionPhases() {
+        return connectionPhases;
+    }
+
+    public void setConnectionPhases(ConnectionPhases connectionPhases) {
+        this.connectionPhases = connectionPhases;
+    }
+
     public String getFrequencyBand() {
         return frequencyBand;
     }
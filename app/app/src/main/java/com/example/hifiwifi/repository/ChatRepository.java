@@ -1,93 +1,676 @@
 package com.example.hifiwifi.repository;
 
+import android.content.Context;
+import android.util.Log;
+
 import com.example.hifiwifi.models.ChatMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Repository for managing chat messages
- * Stores messages in-memory for current session
+ * Messages are appended to a segmented log on disk, one JSON record per line. Memory holds only
+ * a per-room index of record locations and an LRU cache of recently read pages, so it stays flat
+ * however long the conversation gets. All file access runs on a single IO thread in submission
+ * order, so a page read always sees every message appended before it.
  */
 public class ChatRepository {
     
-    private List<ChatMessage> messages;
+    private static final String TAG = "ChatRepository";
+    private static final String LOG_DIRECTORY = "chat_log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    // Messages per cached page; pages are aligned to multiples of this within a room
+    public static final int PAGE_SIZE = 32;
+    static final int DEFAULT_SEGMENT_MAX_BYTES = 256 * 1024;
+    static final int DEFAULT_MAX_SEGMENTS = 32;
+    static final int DEFAULT_MAX_CACHED_PAGES = 16;
+    
+    // Singleton instance
+    private static ChatRepository instance;
+    
+    private final File directory;
+    private final int segmentMaxBytes;
+    private final int maxSegments;
+    private final Gson gson = new Gson();
+    private final LinkedBlockingQueue<Runnable> ioQueue = new LinkedBlockingQueue<>();
+    private final ExecutorService ioExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, ioQueue);
+    private final CountDownLatch indexLoaded = new CountDownLatch(1);
+    
+    // Index and cache state, guarded by this
+    private final Map<String, RoomIndex> roomIndex = new HashMap<>();
+    private final LinkedHashMap<String, List<ChatMessage>> pageCache;
+    private int firstSegment = 0;
+    private int currentSegment = 0;
+    private long currentSegmentSize = 0;
+    private int messageCount = 0;
+    private ChatMessage lastMessage;
     
-    public ChatRepository() {
-        this.messages = new ArrayList<>();
+    // Writer state, only touched on the IO thread
+    private OutputStream segmentOut;
+    private int segmentOutNumber = -1;
+    
+    /**
+     * Create a repository logging to the given directory; the existing log is indexed in the background
+     */
+    public ChatRepository(File directory) {
+        this(directory, DEFAULT_SEGMENT_MAX_BYTES, DEFAULT_MAX_SEGMENTS, DEFAULT_MAX_CACHED_PAGES);
+    }
+    
+    ChatRepository(File directory, int segmentMaxBytes, int maxSegments, int maxCachedPages) {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.maxSegments = maxSegments;
+        this.pageCache = new LinkedHashMap<String, List<ChatMessage>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ChatMessage>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        ioExecutor.execute(this::loadIndex);
+    }
+    
+    /**
+     * Get singleton instance shared by the chat screen and ViewModels
+     */
+    public static synchronized ChatRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatRepository(new File(context.getApplicationContext().getFilesDir(), LOG_DIRECTORY));
+        }
+        return instance;
     }
     
     /**
      * Add a new chat message
+     * The record is written by the IO thread; the index is updated immediately
      */
     public void addMessage(ChatMessage message) {
-        messages.add(message);
+        byte[] record = (gson.toJson(message) + "\n").getBytes(StandardCharsets.UTF_8);
+        awaitIndex();
+        
+        int segment;
+        Integer expiredSegment = null;
+        synchronized (this) {
+            if (currentSegmentSize > 0 && currentSegmentSize + record.length > segmentMaxBytes) {
+                currentSegment++;
+                currentSegmentSize = 0;
+                if (currentSegment - firstSegment >= maxSegments) {
+                    expiredSegment = firstSegment;
+                    dropOldestSegment();
+                }
+            }
+            segment = currentSegment;
+            long location = pack(segment, currentSegmentSize);
+            currentSegmentSize += record.length;
+            
+            String room = message.getRoomContext();
+            RoomIndex index = roomIndex.get(room);
+            if (index == null) {
+                index = new RoomIndex();
+                roomIndex.put(room, index);
+            }
+            int position = index.size;
+            index.add(location);
+            messageCount++;
+            lastMessage = message;
+            
+            // Keep the room's cached tail page current rather than invalidating it
+            List<ChatMessage> tail = pageCache.get(pageKey(room, position / PAGE_SIZE));
+            if (tail != null && tail.size() == position % PAGE_SIZE) {
+                tail.add(message);
+            } else if (position % PAGE_SIZE == 0) {
+                List<ChatMessage> page = new ArrayList<>(PAGE_SIZE);
+                page.add(message);
+                pageCache.put(pageKey(room, position / PAGE_SIZE), page);
+            }
+        }
+        
+        Integer expired = expiredSegment;
+        ioExecutor.execute(() -> {
+            if (expired != null) {
+                deleteSegmentFile(expired);
+            }
+            writeRecord(segment, record);
+        });
     }
     
     /**
      * Add a user message
      */
-    public void addUserMessage(String messageText, String roomContext) {
+    public ChatMessage addUserMessage(String messageText, String roomContext) {
         ChatMessage message = new ChatMessage(messageText, true, roomContext);
         addMessage(message);
+        return message;
     }
     
     /**
      * Add an SLM response message
      */
-    public void addSLMMessage(String messageText, String roomContext) {
+    public ChatMessage addSLMMessage(String messageText, String roomContext) {
         ChatMessage message = new ChatMessage(messageText, false, roomContext);
         addMessage(message);
+        return message;
     }
     
     /**
      * Get all messages
+     * Reads the whole log; prefer paged reads for display
      */
     public List<ChatMessage> getMessages() {
-        return new ArrayList<>(messages);
+        awaitIndex();
+        return callOnIoThread(() -> {
+            flushSegmentOut();
+            List<ChatMessage> all = new ArrayList<>();
+            int first;
+            int last;
+            synchronized (this) {
+                first = firstSegment;
+                last = currentSegment;
+            }
+            for (int segment = first; segment <= last; segment++) {
+                File file = segmentFile(segment);
+                if (file.exists()) {
+                    scanSegment(file, (message, offset) -> all.add(message));
+                }
+            }
+            return all;
+        });
     }
     
     /**
      * Get messages for a specific room
      */
     public List<ChatMessage> getMessagesForRoom(String roomContext) {
-        List<ChatMessage> roomMessages = new ArrayList<>();
-        for (ChatMessage message : messages) {
-            if (roomContext.equals(message.getRoomContext())) {
-                roomMessages.add(message);
+        return getMessagesForRoom(roomContext, 0, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Get a page of a room's messages in chronological order
+     * May read from disk, so call off the main thread
+     * @param start index of the first message within the room's conversation
+     * @param end index after the last message; clamped to the conversation length
+     */
+    public List<ChatMessage> getMessagesForRoom(String roomContext, int start, int end) {
+        awaitIndex();
+        int size = getMessageCountForRoom(roomContext);
+        end = Math.min(end, size);
+        List<ChatMessage> messages = new ArrayList<>(Math.max(0, end - start));
+        if (start >= end) {
+            return messages;
+        }
+        
+        for (int page = start / PAGE_SIZE; page <= (end - 1) / PAGE_SIZE; page++) {
+            List<ChatMessage> pageMessages = getPage(roomContext, page);
+            int pageStart = page * PAGE_SIZE;
+            int from = Math.max(start - pageStart, 0);
+            int to = Math.min(end - pageStart, pageMessages.size());
+            for (int i = from; i < to; i++) {
+                messages.add(pageMessages.get(i));
             }
         }
-        return roomMessages;
+        return messages;
+    }
+    
+    /**
+     * Get the number of messages in a room's conversation
+     */
+    public int getMessageCountForRoom(String roomContext) {
+        awaitIndex();
+        synchronized (this) {
+            RoomIndex index = roomIndex.get(roomContext);
+            return index != null ? index.size : 0;
+        }
     }
     
     /**
      * Get the last message
      */
     public ChatMessage getLastMessage() {
-        if (messages.isEmpty()) {
-            return null;
+        awaitIndex();
+        synchronized (this) {
+            return lastMessage;
         }
-        return messages.get(messages.size() - 1);
     }
     
     /**
-     * Clear all messages
+     * Clear all messages, deleting the log from disk
      */
     public void clearMessages() {
-        messages.clear();
+        awaitIndex();
+        int first;
+        int last;
+        synchronized (this) {
+            first = firstSegment;
+            last = currentSegment;
+            roomIndex.clear();
+            pageCache.clear();
+            firstSegment = 0;
+            currentSegment = 0;
+            currentSegmentSize = 0;
+            messageCount = 0;
+            lastMessage = null;
+        }
+        ioExecutor.execute(() -> {
+            for (int segment = first; segment <= last; segment++) {
+                deleteSegmentFile(segment);
+            }
+        });
     }
     
     /**
      * Get message count
      */
     public int getMessageCount() {
-        return messages.size();
+        awaitIndex();
+        synchronized (this) {
+            return messageCount;
+        }
     }
     
     /**
      * Check if there are any messages
      */
     public boolean hasMessages() {
-        return !messages.isEmpty();
+        return getMessageCount() > 0;
+    }
+    
+    /**
+     * Wait until every queued write has reached the file system
+     */
+    void flush() {
+        callOnIoThread(() -> {
+            if (segmentOut != null) {
+                segmentOut.flush();
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Close the open segment and stop the IO thread
+     */
+    void close() {
+        ioExecutor.execute(this::closeSegmentOut);
+        ioExecutor.shutdown();
+    }
+    
+    /**
+     * Get a page of a room's messages from the cache, reading it from disk on a miss
+     */
+    private List<ChatMessage> getPage(String room, int page) {
+        String key = pageKey(room, page);
+        long[] locations;
+        synchronized (this) {
+            List<ChatMessage> cached = pageCache.get(key);
+            if (cached != null) {
+                return new ArrayList<>(cached);
+            }
+            RoomIndex index = roomIndex.get(room);
+            if (index == null) {
+                return new ArrayList<>();
+            }
+            int from = page * PAGE_SIZE;
+            int to = Math.min(from + PAGE_SIZE, index.size);
+            locations = Arrays.copyOfRange(index.locations, from, Math.max(from, to));
+        }
+        
+        List<ChatMessage> loaded = callOnIoThread(() -> readRecords(locations));
+        synchronized (this) {
+            // Only cache a complete read; a message appended meanwhile would be missing from it
+            RoomIndex index = roomIndex.get(room);
+            int expected = index != null ? Math.min(PAGE_SIZE, index.size - page * PAGE_SIZE) : -1;
+            if (loaded.size() == expected && !pageCache.containsKey(key)) {
+                pageCache.put(key, new ArrayList<>(loaded));
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Forget the oldest segment; room positions shift, so cached pages are dropped too
+     */
+    private void dropOldestSegment() {
+        int expired = firstSegment++;
+        for (RoomIndex index : roomIndex.values()) {
+            messageCount -= index.dropSegment(expired);
+        }
+        roomIndex.values().removeIf(index -> index.size == 0);
+        pageCache.clear();
+        Log.d(TAG, "Dropped chat log segment " + expired);
+    }
+    
+    /**
+     * Rebuild the room index by scanning the segments on disk
+     */
+    private void loadIndex() {
+        try {
+            File[] files = directory.listFiles();
+            int first = Integer.MAX_VALUE;
+            int last = -1;
+            if (files != null) {
+                for (File file : files) {
+                    int segment = segmentNumber(file);
+                    if (segment >= 0) {
+                        first = Math.min(first, segment);
+                        last = Math.max(last, segment);
+                    }
+                }
+            }
+            if (last < 0) {
+                return;
+            }
+            
+            int count = 0;
+            for (int segment = first; segment <= last; segment++) {
+                File file = segmentFile(segment);
+                if (!file.exists()) {
+                    continue;
+                }
+                int number = segment;
+                long validLength = scanSegment(file, (message, offset) -> {
+                    synchronized (this) {
+                        RoomIndex index = roomIndex.get(message.getRoomContext());
+                        if (index == null) {
+                            index = new RoomIndex();
+                            roomIndex.put(message.getRoomContext(), index);
+                        }
+                        index.add(pack(number, offset));
+                        messageCount++;
+                        lastMessage = message;
+                    }
+                });
+                if (validLength < file.length()) {
+                    // A write was cut short; drop the partial record so the next append starts on a fresh line
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                        raf.setLength(validLength);
+                    }
+                }
+                synchronized (this) {
+                    currentSegmentSize = validLength;
+                }
+            }
+            
+            synchronized (this) {
+                firstSegment = first;
+                currentSegment = last;
+                count = messageCount;
+            }
+            Log.d(TAG, "Indexed " + count + " chat message(s) in " + (last - first + 1) + " segment(s)");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to index chat log", e);
+        } finally {
+            indexLoaded.countDown();
+        }
+    }
+    
+    /**
+     * Receives each record found while scanning a segment
+     */
+    private interface RecordVisitor {
+        void visit(ChatMessage message, long offset);
+    }
+    
+    /**
+     * Read every complete record in a segment
+     * @return length of the segment up to the end of its last complete record
+     */
+    private long scanSegment(File file, RecordVisitor visitor) throws IOException {
+        long offset = 0;
+        long lineStart = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++, offset++) {
+                    if (buffer[i] != '\n') {
+                        line.write(buffer[i]);
+                        continue;
+                    }
+                    ChatMessage message = parseRecord(line.toByteArray());
+                    if (message != null) {
+                        visitor.visit(message, lineStart);
+                    }
+                    line.reset();
+                    lineStart = offset + 1;
+                }
+            }
+        }
+        return lineStart;
+    }
+    
+    /**
+     * Read the records at the given locations, in order
+     */
+    private List<ChatMessage> readRecords(long[] locations) throws IOException {
+        flushSegmentOut();
+        List<ChatMessage> messages = new ArrayList<>(locations.length);
+        RandomAccessFile file = null;
+        int openSegment = -1;
+        try {
+            for (long location : locations) {
+                int segment = segmentOf(location);
+                if (segment != openSegment) {
+                    if (file != null) {
+                        file.close();
+                    }
+                    file = new RandomAccessFile(segmentFile(segment), "r");
+                    openSegment = segment;
+                }
+                file.seek(offsetOf(location));
+                ChatMessage message = parseRecord(readLine(file));
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+        return messages;
+    }
+    
+    /**
+     * Read from the current file position up to the next newline, in chunks rather than byte by byte
+     */
+    private static byte[] readLine(RandomAccessFile file) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+        byte[] chunk = new byte[512];
+        int read;
+        while ((read = file.read(chunk)) != -1) {
+            for (int i = 0; i < read; i++) {
+                if (chunk[i] == '\n') {
+                    line.write(chunk, 0, i);
+                    return line.toByteArray();
+                }
+            }
+            line.write(chunk, 0, read);
+        }
+        return line.toByteArray();
+    }
+    
+    private ChatMessage parseRecord(byte[] record) {
+        if (record.length == 0) {
+            return null;
+        }
+        try {
+            return gson.fromJson(new String(record, StandardCharsets.UTF_8), ChatMessage.class);
+        } catch (JsonParseException e) {
+            Log.w(TAG, "Skipping unreadable chat record", e);
+            return null;
+        }
+    }
+    
+    private void writeRecord(int segment, byte[] record) {
+        try {
+            if (segment != segmentOutNumber) {
+                closeSegmentOut();
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create " + directory);
+                }
+                segmentOut = new BufferedOutputStream(new FileOutputStream(segmentFile(segment), true));
+                segmentOutNumber = segment;
+            }
+            segmentOut.write(record);
+            
+            // Flush once the queue drains so a burst of messages costs a single write
+            if (ioQueue.isEmpty()) {
+                segmentOut.flush();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write chat record", e);
+        }
+    }
+    
+    private void flushSegmentOut() throws IOException {
+        if (segmentOut != null) {
+            segmentOut.flush();
+        }
+    }
+    
+    private void closeSegmentOut() {
+        if (segmentOut != null) {
+            try {
+                segmentOut.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close chat log segment", e);
+            }
+            segmentOut = null;
+            segmentOutNumber = -1;
+        }
+    }
+    
+    private void deleteSegmentFile(int segment) {
+        if (segment == segmentOutNumber) {
+            closeSegmentOut();
+        }
+        File file = segmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+    
+    /**
+     * Task run on the IO thread that may fail with an IOException
+     */
+    private interface IoTask<T> {
+        T run() throws IOException;
+    }
+    
+    /**
+     * Run a task on the IO thread and wait for its result
+     */
+    private <T> T callOnIoThread(IoTask<T> task) {
+        Future<T> future = ioExecutor.submit(() -> {
+            try {
+                return task.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading chat log", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to read chat log", e.getCause());
+        }
+    }
+    
+    private void awaitIndex() {
+        try {
+            indexLoaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private File segmentFile(int segment) {
+        return new File(directory, String.format(java.util.Locale.US, "%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+    
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static String pageKey(String room, int page) {
+        return room + "#" + page;
+    }
+    
+    // A record location packs the segment number into the high 32 bits and the byte offset into the low 32
+    private static long pack(int segment, long offset) {
+        return ((long) segment << 32) | offset;
+    }
+    
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+    
+    private static long offsetOf(long location) {
+        return location & 0xFFFFFFFFL;
+    }
+    
+    /**
+     * Record locations of one room's messages in chronological order
+     */
+    private static final class RoomIndex {
+        long[] locations = new long[16];
+        int size = 0;
+        
+        void add(long location) {
+            if (size == locations.length) {
+                locations = Arrays.copyOf(locations, size * 2);
+            }
+            locations[size++] = location;
+        }
+        
+        /**
+         * Remove the leading entries stored in the given segment or earlier
+         * @return number of entries removed
+         */
+        int dropSegment(int segment) {
+            int dropped = 0;
+            while (dropped < size && segmentOf(locations[dropped]) <= segment) {
+                dropped++;
+            }
+            System.arraycopy(locations, dropped, locations, 0, size - dropped);
+            size -= dropped;
+            return dropped;
+        }
     }
 }
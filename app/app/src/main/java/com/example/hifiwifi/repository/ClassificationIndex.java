@@ -0,0 +1,205 @@
+package com.example.hifiwifi.repository;
+
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.classifier.WiFiClassification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from query terms to stored classifications, used to pick the rooms and
+ * activities a chat question is about. Terms come from room names, activity types (plus
+ * common words for them) and the names of metrics that are performing poorly.
+ * Not thread-safe; ClassificationRepository guards it with its own lock.
+ */
+class ClassificationIndex {
+    
+    // Relative weight of each kind of match
+    private static final double ROOM_WEIGHT = 3.0;
+    private static final double ACTIVITY_WEIGHT = 2.0;
+    private static final double METRIC_WEIGHT = 1.0;
+    
+    // Words too common in questions to say anything about which room is meant
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+        "a", "an", "and", "are", "at", "can", "do", "for", "how", "i", "in", "is", "it", "my",
+        "of", "on", "or", "room", "the", "to", "what", "where", "which", "why", "wifi", "with"));
+    
+    // Everyday words users ask with, mapped to activity types
+    private static final Map<String, String[]> ACTIVITY_SYNONYMS = new HashMap<>();
+    
+    // Everyday words users ask with, mapped to metrics
+    private static final Map<String, Metric[]> METRIC_SYNONYMS = new HashMap<>();
+    
+    static {
+        ACTIVITY_SYNONYMS.put("gaming", new String[] {"game", "games", "gaming", "play", "playing"});
+        ACTIVITY_SYNONYMS.put("video_call", new String[] {"call", "calls", "video", "zoom", "meeting", "meetings", "facetime"});
+        ACTIVITY_SYNONYMS.put("streaming", new String[] {"stream", "streaming", "netflix", "youtube", "watch", "movie", "movies", "tv"});
+        ACTIVITY_SYNONYMS.put("work", new String[] {"work", "working", "office"});
+        ACTIVITY_SYNONYMS.put("iot", new String[] {"iot", "smart", "device", "devices"});
+        
+        METRIC_SYNONYMS.put("signal", new Metric[] {Metric.SIGNAL_STRENGTH});
+        METRIC_SYNONYMS.put("strength", new Metric[] {Metric.SIGNAL_STRENGTH});
+        METRIC_SYNONYMS.put("bars", new Metric[] {Metric.SIGNAL_STRENGTH});
+        METRIC_SYNONYMS.put("coverage", new Metric[] {Metric.SIGNAL_STRENGTH});
+        METRIC_SYNONYMS.put("latency", new Metric[] {Metric.LATENCY});
+        METRIC_SYNONYMS.put("ping", new Metric[] {Metric.LATENCY});
+        METRIC_SYNONYMS.put("lag", new Metric[] {Metric.LATENCY, Metric.JITTER});
+        METRIC_SYNONYMS.put("laggy", new Metric[] {Metric.LATENCY, Metric.JITTER});
+        METRIC_SYNONYMS.put("speed", new Metric[] {Metric.BANDWIDTH});
+        METRIC_SYNONYMS.put("slow", new Metric[] {Metric.BANDWIDTH, Metric.LATENCY});
+        METRIC_SYNONYMS.put("bandwidth", new Metric[] {Metric.BANDWIDTH});
+        METRIC_SYNONYMS.put("buffering", new Metric[] {Metric.BANDWIDTH});
+        METRIC_SYNONYMS.put("jitter", new Metric[] {Metric.JITTER});
+        METRIC_SYNONYMS.put("stutter", new Metric[] {Metric.JITTER, Metric.PACKET_LOSS});
+        METRIC_SYNONYMS.put("loss", new Metric[] {Metric.PACKET_LOSS});
+        METRIC_SYNONYMS.put("drops", new Metric[] {Metric.PACKET_LOSS});
+        METRIC_SYNONYMS.put("dropping", new Metric[] {Metric.PACKET_LOSS});
+    }
+    
+    // term -> keys of classifications it appears in, with the weight of that occurrence
+    private final Map<String, Map<String, Double>> postings = new HashMap<>();
+    // key -> terms indexed for it, so a replaced classification can be unindexed
+    private final Map<String, Set<String>> termsByKey = new HashMap<>();
+    
+    /**
+     * Index a classification under a key, replacing anything previously indexed for that key
+     */
+    void put(String key, ClassificationResult result) {
+        remove(key);
+        Map<String, Double> terms = new HashMap<>();
+        
+        for (String word : tokenize(result.getRoomName())) {
+            addTerm(terms, word, ROOM_WEIGHT);
+        }
+        
+        String activity = result.getActivityType();
+        if (activity != null) {
+            addTerm(terms, activity.toLowerCase(), ACTIVITY_WEIGHT);
+            String[] synonyms = ACTIVITY_SYNONYMS.get(activity);
+            if (synonyms != null) {
+                for (String synonym : synonyms) {
+                    addTerm(terms, synonym, ACTIVITY_WEIGHT);
+                }
+            }
+        }
+        
+        // A metric word only points at results where that metric is a problem
+        MetricClassification metrics = result.getMetricClassification();
+        if (metrics != null) {
+            for (Map.Entry<String, Metric[]> entry : METRIC_SYNONYMS.entrySet()) {
+                for (Metric metric : entry.getValue()) {
+                    if (isPoor(metrics.get(metric))) {
+                        addTerm(terms, entry.getKey(), METRIC_WEIGHT);
+                        break;
+                    }
+                }
+            }
+        }
+        
+        for (Map.Entry<String, Double> term : terms.entrySet()) {
+            Map<String, Double> keys = postings.get(term.getKey());
+            if (keys == null) {
+                keys = new HashMap<>();
+                postings.put(term.getKey(), keys);
+            }
+            keys.put(key, term.getValue());
+        }
+        termsByKey.put(key, terms.keySet());
+    }
+    
+    /**
+     * Remove everything indexed for a key
+     */
+    void remove(String key) {
+        Set<String> terms = termsByKey.remove(key);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<String, Double> keys = postings.get(term);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+    
+    void clear() {
+        postings.clear();
+        termsByKey.clear();
+    }
+    
+    /**
+     * Find the keys relevant to a question, best match first
+     * Terms matching many classifications count for less than terms matching few.
+     * @return matching keys, or an empty list if nothing in the question matched
+     */
+    List<String> search(String query) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String word : new LinkedHashSet<>(tokenize(query))) {
+            Map<String, Double> keys = postings.get(word);
+            if (keys == null) {
+                keys = postings.get(singular(word));
+                if (keys == null) {
+                    continue;
+                }
+            }
+            double rarity = 1.0 / keys.size();
+            for (Map.Entry<String, Double> entry : keys.entrySet()) {
+                Double score = scores.get(entry.getKey());
+                scores.put(entry.getKey(), (score != null ? score : 0.0) + entry.getValue() * (1.0 + rarity));
+            }
+        }
+        
+        List<Map.Entry<String, Double>> ranked = new ArrayList<>(scores.entrySet());
+        Collections.sort(ranked, (a, b) -> Double.compare(b.getValue(), a.getValue()));
+        List<String> keys = new ArrayList<>(ranked.size());
+        for (Map.Entry<String, Double> entry : ranked) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+    
+    private static void addTerm(Map<String, Double> terms, String term, double weight) {
+        Double existing = terms.get(term);
+        if (existing == null || existing < weight) {
+            terms.put(term, weight);
+        }
+    }
+    
+    private static boolean isPoor(WiFiClassification classification) {
+        return classification == WiFiClassification.BAD || classification == WiFiClassification.MARGINAL;
+    }
+    
+    private static String singular(String word) {
+        return word.length() > 3 && word.endsWith("s") ? word.substring(0, word.length() - 1) : word;
+    }
+    
+    /**
+     * Split text into lowercase words, dropping stop words
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : text.toLowerCase().split("[^a-z0-9]+")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -4,6 +4,8 @@ import android.util.Log;
 
 import com.example.hifiwifi.classifier.ClassificationResult;
 import com.example.hifiwifi.classifier.WiFiClassification;
+import com.example.hifiwifi.events.ClassificationChanged;
+import com.example.hifiwifi.events.MeasurementEventBus;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -12,6 +14,7 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -28,18 +31,33 @@ public class ClassificationRepository {
     // Singleton instance
     private static ClassificationRepository instance;
     
-    // In-memory storage for classification results
-    private List<ClassificationResult> classificationResults;
+    // In-memory storage for classification results, keyed by room and activity in insertion order
+    private Map<String, ClassificationResult> classificationResults;
+    
+    // Inverted index for finding the classifications a chat question is about
+    private final ClassificationIndex classificationIndex = new ClassificationIndex();
     
     // Cached JSON representation
     private JSONObject cachedJson;
+    private String cachedJsonText; // Rendered once per change, so the compact context's baseline is cheap
     private boolean jsonDirty = true;
     
     /**
      * Private constructor for singleton pattern
      */
     private ClassificationRepository() {
-        this.classificationResults = new ArrayList<>();
+        this.classificationResults = new LinkedHashMap<>();
+        
+        // Delivered on the publishing thread so the repository is up to date as soon as publish() returns
+        MeasurementEventBus.getInstance().subscribe(ClassificationChanged.class, Runnable::run,
+            event -> addClassification(event.getResult()));
+    }
+    
+    /**
+     * Key identifying a room/activity pair
+     */
+    private static String keyOf(String roomName, String activityType) {
+        return roomName + "|" + activityType;
     }
     
     /**
@@ -65,14 +83,11 @@ public class ClassificationRepository {
         Log.d(TAG, "Adding classification for room: " + result.getRoomName() + 
                    " (Activity: " + result.getActivityType() + ")");
         
-        // Remove existing classification for this room and activity type
-        classificationResults.removeIf(r -> 
-            r.getRoomName().equals(result.getRoomName()) && 
-            r.getActivityType().equals(result.getActivityType())
-        );
-        
-        // Add new classification
-        classificationResults.add(result);
+        // Replace existing classification for this room and activity type, moving it to the end
+        String key = keyOf(result.getRoomName(), result.getActivityType());
+        classificationResults.remove(key);
+        classificationResults.put(key, result);
+        classificationIndex.put(key, result);
         jsonDirty = true;
         
         Log.d(TAG, "Total classifications stored: " + classificationResults.size());
@@ -82,20 +97,14 @@ public class ClassificationRepository {
      * Get all classification results
      */
     public synchronized List<ClassificationResult> getAllClassifications() {
-        return new ArrayList<>(classificationResults);
+        return new ArrayList<>(classificationResults.values());
     }
     
     /**
      * Get classification for a specific room and activity
      */
     public synchronized ClassificationResult getClassification(String roomName, String activityType) {
-        for (ClassificationResult result : classificationResults) {
-            if (result.getRoomName().equals(roomName) && 
-                result.getActivityType().equals(activityType)) {
-                return result;
-            }
-        }
-        return null;
+        return classificationResults.get(keyOf(roomName, activityType));
     }
     
     /**
@@ -103,7 +112,7 @@ public class ClassificationRepository {
      */
     public synchronized List<ClassificationResult> getClassificationsForRoom(String roomName) {
         List<ClassificationResult> roomResults = new ArrayList<>();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             if (result.getRoomName().equals(roomName)) {
                 roomResults.add(result);
             }
@@ -111,12 +120,29 @@ public class ClassificationRepository {
         return roomResults;
     }
     
+    /**
+     * Find the classifications relevant to a chat question, best match first
+     * Matches room names, activities and poorly performing metrics mentioned in the question.
+     * @return matching classifications, or an empty list if the question names none of them
+     */
+    public synchronized List<ClassificationResult> findRelevantClassifications(String query) {
+        List<ClassificationResult> relevant = new ArrayList<>();
+        for (String key : classificationIndex.search(query)) {
+            ClassificationResult result = classificationResults.get(key);
+            if (result != null) {
+                relevant.add(result);
+            }
+        }
+        return relevant;
+    }
+    
     /**
      * Clear all classification data
      */
     public synchronized void clearAll() {
         Log.d(TAG, "Clearing all classification data");
         classificationResults.clear();
+        classificationIndex.clear();
         jsonDirty = true;
         cachedJson = null;
     }
@@ -133,20 +159,56 @@ public class ClassificationRepository {
      * Returns cached JSON if data hasn't changed
      */
     public synchronized String toJson() {
-        if (!jsonDirty && cachedJson != null) {
-            return cachedJson.toString();
+        if (!jsonDirty && cachedJsonText != null) {
+            return cachedJsonText;
         }
         
         try {
-            cachedJson = buildJson();
-            jsonDirty = false;
-            return cachedJson.toString();
+            if (jsonDirty || cachedJson == null) {
+                cachedJson = buildJson();
+                jsonDirty = false;
+            }
+            cachedJsonText = cachedJson.toString();
+            return cachedJsonText;
         } catch (JSONException e) {
             Log.e(TAG, "Error building JSON: " + e.getMessage(), e);
             return "{}";
         }
     }
     
+    /**
+     * Encode classification data as a compact table for SLM chat context
+     * @param focusRoom room the conversation is about, ranked first; may be null
+     * @param tokenBudget estimated token budget for the encoded context
+     */
+    public synchronized CompactContextEncoder.EncodedContext toCompactContext(String focusRoom, int tokenBudget) {
+        CompactContextEncoder.EncodedContext context = new CompactContextEncoder(tokenBudget)
+            .encode(new ArrayList<>(classificationResults.values()), focusRoom,
+                CompactContextEncoder.estimateTokens(toJson()));
+        Log.d(TAG, "Compact context: " + context.getTokens() + " tokens (saved " + context.getTokensSaved()
+                   + " vs JSON), " + context.getIncludedCount() + " included, "
+                   + context.getOmittedCount() + " omitted");
+        return context;
+    }
+    
+    /**
+     * Encode only the classifications relevant to a chat question as compact SLM context
+     * Falls back to all classifications ranked around the focus room when nothing in the question matches.
+     */
+    public synchronized CompactContextEncoder.EncodedContext toCompactContext(String query, String focusRoom,
+                                                                             int tokenBudget) {
+        List<ClassificationResult> relevant = findRelevantClassifications(query);
+        if (relevant.isEmpty()) {
+            return toCompactContext(focusRoom, tokenBudget);
+        }
+        CompactContextEncoder.EncodedContext context = new CompactContextEncoder(tokenBudget)
+            .encodeRanked(relevant, CompactContextEncoder.estimateTokens(toJson()));
+        Log.d(TAG, "Query context: " + relevant.size() + " of " + classificationResults.size()
+                   + " classification(s) relevant, " + context.getTokens() + " tokens (saved "
+                   + context.getTokensSaved() + " vs JSON)");
+        return context;
+    }
+    
     /**
      * Get pretty-printed JSON string
      */
@@ -154,6 +216,7 @@ public class ClassificationRepository {
         try {
             if (jsonDirty || cachedJson == null) {
                 cachedJson = buildJson();
+                cachedJsonText = null;
                 jsonDirty = false;
             }
             return cachedJson.toString(2); // Indent with 2 spaces
@@ -171,7 +234,7 @@ public class ClassificationRepository {
         
         // Build measurements array
         JSONArray measurements = new JSONArray();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             measurements.put(buildMeasurementJson(result));
         }
         root.put("measurements", measurements);
@@ -277,7 +340,7 @@ public class ClassificationRepository {
         
         // Rooms covered
         Set<String> rooms = new HashSet<>();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             rooms.add(result.getRoomName());
         }
         JSONArray roomsArray = new JSONArray();
@@ -288,7 +351,7 @@ public class ClassificationRepository {
         
         // Activities tested
         Set<String> activities = new HashSet<>();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             activities.add(result.getActivityType());
         }
         JSONArray activitiesArray = new JSONArray();
@@ -314,7 +377,7 @@ public class ClassificationRepository {
         
         // Calculate average score
         int totalScore = 0;
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             totalScore += result.getOverallClassification().getScore();
         }
         double averageScore = (double) totalScore / classificationResults.size();
@@ -343,7 +406,7 @@ public class ClassificationRepository {
         
         // Count by room
         Map<String, Integer> roomCounts = new HashMap<>();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             String roomName = result.getRoomName();
             roomCounts.put(roomName, roomCounts.getOrDefault(roomName, 0) + 1);
         }
@@ -351,7 +414,7 @@ public class ClassificationRepository {
         
         // Count by activity
         Map<String, Integer> activityCounts = new HashMap<>();
-        for (ClassificationResult result : classificationResults) {
+        for (ClassificationResult result : classificationResults.values()) {
             String activityType = result.getActivityType();
             activityCounts.put(activityType, activityCounts.getOrDefault(activityType, 0) + 1);
         }
@@ -0,0 +1,209 @@
+package com.example.hifiwifi.repository;
+
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.classifier.WiFiClassification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes classification results as a dense table for the SLM prompt.
+ * Each room/activity pair becomes one line of single-letter grades, and lines are added in
+ * order of relevance until the token budget is spent. The on-device model has no tokenizer
+ * available here, so token counts are estimated at roughly four characters per token.
+ */
+public class CompactContextEncoder {
+    
+    public static final int DEFAULT_TOKEN_BUDGET = 200;
+    
+    // Metric columns, in Metric order
+    private static final Metric[] METRICS = Metric.values();
+    
+    // Legend telling the model how to read the table
+    static final String HEADER = "grades E=excellent G=good O=okay B=bad M=marginal\n"
+            + "room|activity|overall|" + metricColumns() + "|key metric|ok\n";
+    
+    private final int tokenBudget;
+    
+    /**
+     * Result of an encoding pass
+     */
+    public static class EncodedContext {
+        private final String text;
+        private final int tokens;
+        private final int baselineTokens;
+        private final int includedCount;
+        private final int omittedCount;
+        
+        EncodedContext(String text, int tokens, int baselineTokens, int includedCount, int omittedCount) {
+            this.text = text;
+            this.tokens = tokens;
+            this.baselineTokens = baselineTokens;
+            this.includedCount = includedCount;
+            this.omittedCount = omittedCount;
+        }
+        
+        public String getText() {
+            return text;
+        }
+        
+        /**
+         * Estimated tokens in the encoded context
+         */
+        public int getTokens() {
+            return tokens;
+        }
+        
+        /**
+         * Estimated tokens the full JSON context would have used
+         */
+        public int getBaselineTokens() {
+            return baselineTokens;
+        }
+        
+        public int getTokensSaved() {
+            return Math.max(0, baselineTokens - tokens);
+        }
+        
+        public int getIncludedCount() {
+            return includedCount;
+        }
+        
+        /**
+         * Number of room/activity lines left out to stay within the budget
+         */
+        public int getOmittedCount() {
+            return omittedCount;
+        }
+    }
+    
+    public CompactContextEncoder() {
+        this(DEFAULT_TOKEN_BUDGET);
+    }
+    
+    public CompactContextEncoder(int tokenBudget) {
+        if (tokenBudget <= 0) {
+            throw new IllegalArgumentException("tokenBudget must be positive: " + tokenBudget);
+        }
+        this.tokenBudget = tokenBudget;
+    }
+    
+    public int getTokenBudget() {
+        return tokenBudget;
+    }
+    
+    /**
+     * Estimate the number of model tokens in a piece of text
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+    
+    /**
+     * Encode results ranked by relevance to a room: the focus room first, then the worst
+     * performing rooms, then the most recently measured
+     * @param results results in insertion order, oldest first
+     * @param focusRoom room the user is asking about, or null
+     * @param baselineTokens estimated tokens of the full JSON context, used only to report the tokens saved
+     */
+    public EncodedContext encode(List<ClassificationResult> results, String focusRoom, int baselineTokens) {
+        List<ClassificationResult> ranked = new ArrayList<>(results);
+        Collections.reverse(ranked);
+        Collections.sort(ranked, (a, b) -> {
+            boolean aFocus = focusRoom != null && focusRoom.equals(a.getRoomName());
+            boolean bFocus = focusRoom != null && focusRoom.equals(b.getRoomName());
+            if (aFocus != bFocus) {
+                return aFocus ? -1 : 1;
+            }
+            return Integer.compare(scoreOf(a), scoreOf(b));
+        });
+        return encodeRanked(ranked, baselineTokens);
+    }
+    
+    /**
+     * Encode results already ordered by relevance, most relevant first
+     */
+    public EncodedContext encodeRanked(List<ClassificationResult> ranked, int baselineTokens) {
+        StringBuilder text = new StringBuilder(HEADER);
+        int tokens = estimateTokens(HEADER);
+        int included = 0;
+        
+        for (ClassificationResult result : ranked) {
+            String line = encodeLine(result);
+            int lineTokens = estimateTokens(line);
+            if (tokens + lineTokens > tokenBudget) {
+                // Later lines may be shorter, but keeping strict relevance order is more useful to the model
+                break;
+            }
+            text.append(line);
+            tokens += lineTokens;
+            included++;
+        }
+        
+        int omitted = ranked.size() - included;
+        if (omitted > 0) {
+            String note = "+" + omitted + " more\n";
+            text.append(note);
+            tokens += estimateTokens(note);
+        }
+        return new EncodedContext(text.toString(), tokens, baselineTokens, included, omitted);
+    }
+    
+    /**
+     * Encode one result, e.g. "Office|gaming|G|E,G,O,G,E|latency|y"
+     */
+    static String encodeLine(ClassificationResult result) {
+        StringBuilder line = new StringBuilder(48);
+        line.append(clean(result.getRoomName())).append('|')
+            .append(clean(result.getActivityType())).append('|')
+            .append(letterOf(result.getOverallClassification())).append('|');
+        
+        MetricClassification metrics = result.getMetricClassification();
+        if (metrics != null) {
+            for (Metric metric : METRICS) {
+                if (metric.ordinal() > 0) {
+                    line.append(',');
+                }
+                line.append(letterOf(metrics.get(metric)));
+            }
+        }
+        line.append('|');
+        
+        String critical = result.getMostCriticalMetric();
+        if (critical != null) {
+            line.append(critical);
+        }
+        line.append('|').append(result.isAcceptableForActivity() ? 'y' : 'n').append('\n');
+        return line.toString();
+    }
+    
+    private static String metricColumns() {
+        StringBuilder columns = new StringBuilder();
+        for (Metric metric : METRICS) {
+            if (columns.length() > 0) {
+                columns.append(',');
+            }
+            columns.append(metric.getKey());
+        }
+        return columns.toString();
+    }
+    
+    /**
+     * Keep user-entered names from breaking the table layout
+     */
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('|', '/').replace('\n', ' ');
+    }
+    
+    private static char letterOf(WiFiClassification classification) {
+        return classification != null ? classification.getLetter() : '?';
+    }
+    
+    private static int scoreOf(ClassificationResult result) {
+        WiFiClassification overall = result.getOverallClassification();
+        return overall != null ? overall.getScore() : 0;
+    }
+}
@@ -2,28 +2,78 @@ package com.example.hifiwifi.repository;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Repository for managing room data
- * Uses SharedPreferences for persistence
+ * Uses SharedPreferences for persistence, one entry per room. Changes are applied to in-memory
+ * indexes by id and name immediately and written behind in batches on a background thread, and
+ * the initial load also happens in the background so constructing the repository never touches disk.
+ * Until that load finishes the blocking getters wait for it, so call them off the main thread;
+ * UI code uses the overloads that take a callback, which never wait and answer on the main thread.
  */
 public class RoomRepository {
     
+    private static final String TAG = "RoomRepository";
     private static final String PREFS_NAME = "room_preferences";
     private static final String ROOMS_KEY = "rooms";
+    private static final String RECORD_PREFIX = "room:";
+    
+    // Singleton instance
+    private static RoomRepository instance;
+    
+    // How long changes are collected before being written as one batch
+    static final long WRITE_BEHIND_DELAY_MS = 250;
+    
+    // One background thread shared by every instance for loads and batched writes
+    private static final ScheduledExecutorService WRITE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RoomRepository-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     private Context context;
     private SharedPreferences sharedPreferences;
     private Gson gson;
-    private List<Room> rooms;
+    
+    // Indexes, guarded by this; roomsById keeps insertion order for getRooms()
+    private final LinkedHashMap<String, Room> roomsById = new LinkedHashMap<>();
+    private final Map<String, Room> roomsByName = new HashMap<>();
+    private final Map<String, Long> orders = new HashMap<>();
+    private long nextOrder = 0;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    
+    // Write-behind state, guarded by this; a null value marks a deleted room
+    private final Map<String, StoredRoom> pendingWrites = new LinkedHashMap<>();
+    private final ScheduledExecutorService writeExecutor = WRITE_EXECUTOR;
+    private ScheduledFuture<?> scheduledFlush;
+    
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     
     /**
      * Simple room data structure
@@ -58,11 +108,38 @@ public class RoomRepository {
         }
     }
     
-    public RoomRepository(Context context) {
+    /**
+     * Persisted form of a room; the order keeps getRooms() stable across restarts
+     */
+    private static class StoredRoom {
+        String id;
+        String name;
+        long order;
+        
+        StoredRoom(String id, String name, long order) {
+            this.id = id;
+            this.name = name;
+            this.order = order;
+        }
+    }
+    
+    /**
+     * Package-private so tests can reload the stored rooms; the app uses getInstance()
+     */
+    RoomRepository(Context context) {
         this.context = context;
-        this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.gson = new Gson();
-        this.rooms = loadRooms();
+        writeExecutor.execute(this::loadRooms);
+    }
+    
+    /**
+     * Get singleton instance, so every screen shares one index and one write-behind queue
+     */
+    public static synchronized RoomRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new RoomRepository(context.getApplicationContext());
+        }
+        return instance;
     }
     
     /**
@@ -73,22 +150,25 @@ public class RoomRepository {
         if (room.getId() == null || room.getId().isEmpty()) {
             room.setId(UUID.randomUUID().toString());
         }
+        awaitLoaded();
         
-        // Update existing room or add new one
-        boolean found = false;
-        for (int i = 0; i < rooms.size(); i++) {
-            if (rooms.get(i).getId().equals(room.getId())) {
-                rooms.set(i, room);
-                found = true;
-                break;
+        synchronized (this) {
+            // Update existing room in place or add new one
+            Room existing = roomsById.get(room.getId());
+            long order;
+            if (existing != null) {
+                unindexName(existing);
+                existing.setName(room.getName());
+                order = orderOf(existing);
+            } else {
+                existing = new Room(room.getId(), room.getName());
+                roomsById.put(existing.getId(), existing);
+                order = nextOrder++;
+                orders.put(existing.getId(), order);
             }
+            indexName(existing);
+            scheduleWrite(existing.getId(), new StoredRoom(existing.getId(), existing.getName(), order));
         }
-        
-        if (!found) {
-            rooms.add(room);
-        }
-        
-        saveRooms();
     }
     
     /**
@@ -101,102 +181,311 @@ public class RoomRepository {
     }
     
     /**
-     * Get all rooms
+     * Get all rooms, waiting for the initial load if it is still running
      */
     public List<Room> getRooms() {
-        return new ArrayList<>(rooms);
+        awaitLoaded();
+        synchronized (this) {
+            List<Room> rooms = new ArrayList<>(roomsById.size());
+            for (Room room : roomsById.values()) {
+                rooms.add(copyOf(room));
+            }
+            return rooms;
+        }
+    }
+    
+    /**
+     * Get all rooms without waiting; the callback runs on the main thread once they are loaded
+     */
+    public void getRooms(Consumer<List<Room>> callback) {
+        deliverWhenLoaded(this::getRooms, callback);
     }
     
     /**
      * Get room by ID
      */
     public Room getRoomById(String roomId) {
-        for (Room room : rooms) {
-            if (room.getId().equals(roomId)) {
-                return room;
-            }
+        awaitLoaded();
+        synchronized (this) {
+            return copyOf(roomsById.get(roomId));
         }
-        return null;
     }
     
     /**
      * Get room by name
      */
     public Room getRoomByName(String roomName) {
-        for (Room room : rooms) {
-            if (room.getName().equals(roomName)) {
-                return room;
-            }
+        awaitLoaded();
+        synchronized (this) {
+            return copyOf(roomsByName.get(roomName));
         }
-        return null;
     }
     
     /**
      * Delete a room
      */
     public boolean deleteRoom(String roomId) {
-        boolean removed = rooms.removeIf(room -> room.getId().equals(roomId));
-        if (removed) {
-            saveRooms();
+        awaitLoaded();
+        synchronized (this) {
+            Room removed = roomsById.remove(roomId);
+            if (removed == null) {
+                return false;
+            }
+            orders.remove(roomId);
+            unindexName(removed);
+            scheduleWrite(roomId, null);
+            return true;
         }
-        return removed;
     }
     
     /**
      * Delete a room by name
+     * Removes every room with that name
      */
     public boolean deleteRoomByName(String roomName) {
-        boolean removed = rooms.removeIf(room -> room.getName().equals(roomName));
-        if (removed) {
-            saveRooms();
+        awaitLoaded();
+        synchronized (this) {
+            if (!roomsByName.containsKey(roomName)) {
+                return false;
+            }
+            Iterator<Room> iterator = roomsById.values().iterator();
+            while (iterator.hasNext()) {
+                Room room = iterator.next();
+                if (Objects.equals(room.getName(), roomName)) {
+                    iterator.remove();
+                    orders.remove(room.getId());
+                    scheduleWrite(room.getId(), null);
+                }
+            }
+            roomsByName.remove(roomName);
+            return true;
         }
-        return removed;
     }
     
     /**
      * Check if room exists
      */
     public boolean roomExists(String roomId) {
-        return getRoomById(roomId) != null;
+        awaitLoaded();
+        synchronized (this) {
+            return roomsById.containsKey(roomId);
+        }
     }
     
     /**
-     * Check if room name exists
+     * Check if room name exists, waiting for the initial load if it is still running
      */
     public boolean roomNameExists(String roomName) {
-        return getRoomByName(roomName) != null;
+        awaitLoaded();
+        synchronized (this) {
+            return roomsByName.containsKey(roomName);
+        }
+    }
+    
+    /**
+     * Check if room name exists without waiting; the callback runs on the main thread once rooms are loaded
+     */
+    public void roomNameExists(String roomName, Consumer<Boolean> callback) {
+        deliverWhenLoaded(() -> roomNameExists(roomName), callback);
     }
     
     /**
      * Get room count
      */
     public int getRoomCount() {
-        return rooms.size();
+        awaitLoaded();
+        synchronized (this) {
+            return roomsById.size();
+        }
     }
     
     /**
      * Clear all rooms
      */
     public void clearAllRooms() {
-        rooms.clear();
-        saveRooms();
+        awaitLoaded();
+        synchronized (this) {
+            for (String roomId : roomsById.keySet()) {
+                scheduleWrite(roomId, null);
+            }
+            roomsById.clear();
+            roomsByName.clear();
+            orders.clear();
+        }
     }
     
     /**
-     * Load rooms from SharedPreferences
+     * Write any pending changes now and wait for them to reach disk
      */
-    private List<Room> loadRooms() {
-        String roomsJson = sharedPreferences.getString(ROOMS_KEY, "[]");
-        Type listType = new TypeToken<List<Room>>(){}.getType();
-        List<Room> loadedRooms = gson.fromJson(roomsJson, listType);
-        return loadedRooms != null ? loadedRooms : new ArrayList<>();
+    public void flush() {
+        try {
+            writeExecutor.submit(() -> writePending(true)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to flush rooms", e.getCause());
+        }
+    }
+    
+    private long orderOf(Room room) {
+        Long order = orders.get(room.getId());
+        return order != null ? order : Long.MAX_VALUE;
+    }
+    
+    /**
+     * Point the name index at a room, keeping the earliest room if the name is shared
+     */
+    private void indexName(Room room) {
+        Room current = roomsByName.get(room.getName());
+        if (current == null || orderOf(room) < orderOf(current)) {
+            roomsByName.put(room.getName(), room);
+        }
     }
     
     /**
-     * Save rooms to SharedPreferences
+     * Remove a room from the name index, falling back to another room with the same name
      */
-    private void saveRooms() {
-        String roomsJson = gson.toJson(rooms);
-        sharedPreferences.edit().putString(ROOMS_KEY, roomsJson).apply();
+    private void unindexName(Room room) {
+        if (roomsByName.get(room.getName()) != room) {
+            return;
+        }
+        roomsByName.remove(room.getName());
+        for (Room other : roomsById.values()) {
+            if (other != room && Objects.equals(other.getName(), room.getName())) {
+                roomsByName.put(other.getName(), other);
+                break;
+            }
+        }
+    }
+    
+    private static Room copyOf(Room room) {
+        return room != null ? new Room(room.getId(), room.getName()) : null;
+    }
+    
+    /**
+     * Queue a record change; changes within the write-behind delay go out as one batch
+     */
+    private void scheduleWrite(String roomId, StoredRoom record) {
+        pendingWrites.put(roomId, record);
+        if (scheduledFlush == null || scheduledFlush.isDone()) {
+            scheduledFlush = writeExecutor.schedule(() -> writePending(false),
+                WRITE_BEHIND_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Write the queued record changes in a single editor transaction
+     */
+    private void writePending(boolean synchronous) {
+        Map<String, StoredRoom> batch;
+        synchronized (this) {
+            if (pendingWrites.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (Map.Entry<String, StoredRoom> entry : batch.entrySet()) {
+            if (entry.getValue() != null) {
+                editor.putString(RECORD_PREFIX + entry.getKey(), gson.toJson(entry.getValue()));
+            } else {
+                editor.remove(RECORD_PREFIX + entry.getKey());
+            }
+        }
+        if (synchronous) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
+    }
+    
+    /**
+     * Load rooms from SharedPreferences, migrating the old single-list format if present
+     */
+    private void loadRooms() {
+        try {
+            sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            List<StoredRoom> records = new ArrayList<>();
+            
+            for (Map.Entry<String, ?> entry : sharedPreferences.getAll().entrySet()) {
+                if (entry.getKey().startsWith(RECORD_PREFIX) && entry.getValue() instanceof String) {
+                    try {
+                        StoredRoom record = gson.fromJson((String) entry.getValue(), StoredRoom.class);
+                        if (record != null && record.id != null) {
+                            records.add(record);
+                        }
+                    } catch (JsonParseException e) {
+                        Log.w(TAG, "Skipping unreadable room record " + entry.getKey(), e);
+                    }
+                }
+            }
+            Collections.sort(records, (a, b) -> Long.compare(a.order, b.order));
+            
+            List<Room> legacyRooms = null;
+            String legacyJson = sharedPreferences.getString(ROOMS_KEY, null);
+            if (legacyJson != null) {
+                Type listType = new TypeToken<List<Room>>(){}.getType();
+                legacyRooms = gson.fromJson(legacyJson, listType);
+            }
+            
+            synchronized (this) {
+                for (StoredRoom record : records) {
+                    Room room = new Room(record.id, record.name);
+                    roomsById.put(room.getId(), room);
+                    orders.put(room.getId(), record.order);
+                    nextOrder = Math.max(nextOrder, record.order + 1);
+                    indexName(room);
+                }
+                
+                if (legacyRooms != null) {
+                    for (Room legacy : legacyRooms) {
+                        if (legacy != null && legacy.getId() != null && !roomsById.containsKey(legacy.getId())) {
+                            Room room = new Room(legacy.getId(), legacy.getName());
+                            long order = nextOrder++;
+                            roomsById.put(room.getId(), room);
+                            orders.put(room.getId(), order);
+                            indexName(room);
+                            pendingWrites.put(room.getId(), new StoredRoom(room.getId(), room.getName(), order));
+                        }
+                    }
+                }
+            }
+            
+            if (legacyRooms != null) {
+                writePending(true);
+                sharedPreferences.edit().remove(ROOMS_KEY).apply();
+                Log.d(TAG, "Migrated " + legacyRooms.size() + " room(s) to per-room records");
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to load rooms", e);
+        } finally {
+            loaded.countDown();
+        }
+    }
+    
+    /**
+     * Answer a query on the main thread, from the writer thread if the load hasn't finished yet
+     * The load is the first task this repository gives the writer thread, so the query there never waits.
+     */
+    private <T> void deliverWhenLoaded(Supplier<T> query, Consumer<T> callback) {
+        if (loaded.getCount() == 0) {
+            T result = query.get();
+            mainHandler.post(() -> callback.accept(result));
+        } else {
+            writeExecutor.execute(() -> {
+                T result = query.get();
+                mainHandler.post(() -> callback.accept(result));
+            });
+        }
+    }
+    
+    private void awaitLoaded() {
+        try {
+            loaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
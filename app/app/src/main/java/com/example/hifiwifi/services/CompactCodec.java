@@ -0,0 +1,274 @@
+package com.example.hifiwifi.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of /analyze requests and responses, mirrored by compact_codec.py on the Pi.
+ *
+ * Layout: a magic byte and a version byte, then the DTO's fields in declaration order.
+ * Integers are unsigned LEB128 varints. Each string is a varint tag: 0 for null, an odd tag
+ * (2i + 1) for entry i of the shared dictionary of enum values such as "excellent" or
+ * "move_location", and an even tag (2(n + 1)) for a literal of n UTF-8 bytes that follow.
+ * A nested object is preceded by a 1 if present and a 0 if null.
+ * Only the fields the DTOs declare are carried, so fields the app ignores are dropped.
+ */
+public final class CompactCodec {
+    
+    public static final String MEDIA_TYPE = "application/x-hifiwifi-compact";
+    
+    private static final int MAGIC = 0x48;  // 'H'
+    private static final int VERSION = 1;
+    
+    // Append-only: entries are referenced by position, so changing the order breaks old peers
+    private static final String[] DICTIONARY = {
+        "success", "error",
+        "excellent", "good", "okay", "bad", "marginal", "fair", "poor",
+        "stay_current", "move_location", "switch_band",
+        "high", "medium", "low",
+        "2.4GHz", "5GHz", "6GHz",
+        "general", "gaming", "streaming", "video_call", "browsing", "work", "iot"
+    };
+    private static final Map<String, Integer> DICTIONARY_INDEX = new HashMap<>();
+    
+    static {
+        for (int i = 0; i < DICTIONARY.length; i++) {
+            DICTIONARY_INDEX.put(DICTIONARY[i], i);
+        }
+    }
+    
+    private CompactCodec() {
+    }
+    
+    public static byte[] encodeRequest(HTTPService.AnalyzeRequest request) {
+        Writer out = new Writer();
+        HTTPService.AnalyzeRequest.Measurement[] measurements =
+            request.measurements != null ? request.measurements : new HTTPService.AnalyzeRequest.Measurement[0];
+        out.varint(measurements.length);
+        for (HTTPService.AnalyzeRequest.Measurement measurement : measurements) {
+            out.string(measurement.roomName);
+            out.string(measurement.activityType);
+            out.string(measurement.frequencyBand);
+            HTTPService.AnalyzeRequest.Measurement.Classification classification = measurement.classification;
+            if (out.present(classification)) {
+                out.string(classification.signal_strength);
+                out.string(classification.latency);
+                out.string(classification.bandwidth);
+                out.string(classification.jitter);
+                out.string(classification.packet_loss);
+            }
+        }
+        if (out.present(request.summary)) {
+            out.varint(request.summary.totalMeasurements);
+            out.varint(request.summary.timestamp);
+        }
+        return out.toByteArray();
+    }
+    
+    public static HTTPService.AnalyzeRequest decodeRequest(byte[] bytes) throws IOException {
+        Reader in = new Reader(bytes);
+        HTTPService.AnalyzeRequest request = new HTTPService.AnalyzeRequest();
+        int count = (int) in.varint();
+        if (count > bytes.length) {
+            throw new IOException("Malformed compact payload: " + count + " measurements");
+        }
+        request.measurements = new HTTPService.AnalyzeRequest.Measurement[count];
+        for (int i = 0; i < count; i++) {
+            HTTPService.AnalyzeRequest.Measurement measurement = new HTTPService.AnalyzeRequest.Measurement();
+            measurement.roomName = in.string();
+            measurement.activityType = in.string();
+            measurement.frequencyBand = in.string();
+            if (in.present()) {
+                measurement.classification = new HTTPService.AnalyzeRequest.Measurement.Classification();
+                measurement.classification.signal_strength = in.string();
+                measurement.classification.latency = in.string();
+                measurement.classification.bandwidth = in.string();
+                measurement.classification.jitter = in.string();
+                measurement.classification.packet_loss = in.string();
+            }
+            request.measurements[i] = measurement;
+        }
+        if (in.present()) {
+            request.summary = new HTTPService.AnalyzeRequest.Summary();
+            request.summary.totalMeasurements = (int) in.varint();
+            request.summary.timestamp = in.varint();
+        }
+        in.finish();
+        return request;
+    }
+    
+    public static byte[] encodeResponse(HTTPService.AnalyzeResponse response) {
+        Writer out = new Writer();
+        out.string(response.status);
+        HTTPService.AnalyzeResponse.Recommendation recommendation = response.recommendation;
+        if (out.present(recommendation)) {
+            out.string(recommendation.action);
+            out.string(recommendation.reason);
+            out.string(recommendation.message);
+            out.string(recommendation.priority);
+            out.string(recommendation.target_location);
+        }
+        HTTPService.AnalyzeResponse.Analysis analysis = response.analysis;
+        if (out.present(analysis)) {
+            out.string(analysis.location);
+            out.string(analysis.activity);
+            out.string(analysis.current_quality);
+            HTTPService.AnalyzeResponse.Analysis.Metrics metrics = analysis.metrics;
+            if (out.present(metrics)) {
+                out.string(metrics.signal_strength);
+                out.string(metrics.latency);
+                out.string(metrics.bandwidth);
+                out.string(metrics.jitter);
+                out.string(metrics.packet_loss);
+            }
+        }
+        out.string(response.error);
+        return out.toByteArray();
+    }
+    
+    public static HTTPService.AnalyzeResponse decodeResponse(byte[] bytes) throws IOException {
+        Reader in = new Reader(bytes);
+        HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+        response.status = in.string();
+        if (in.present()) {
+            response.recommendation = new HTTPService.AnalyzeResponse.Recommendation();
+            response.recommendation.action = in.string();
+            response.recommendation.reason = in.string();
+            response.recommendation.message = in.string();
+            response.recommendation.priority = in.string();
+            response.recommendation.target_location = in.string();
+        }
+        if (in.present()) {
+            HTTPService.AnalyzeResponse.Analysis analysis = new HTTPService.AnalyzeResponse.Analysis();
+            analysis.location = in.string();
+            analysis.activity = in.string();
+            analysis.current_quality = in.string();
+            if (in.present()) {
+                analysis.metrics = new HTTPService.AnalyzeResponse.Analysis.Metrics();
+                analysis.metrics.signal_strength = in.string();
+                analysis.metrics.latency = in.string();
+                analysis.metrics.bandwidth = in.string();
+                analysis.metrics.jitter = in.string();
+                analysis.metrics.packet_loss = in.string();
+            }
+            response.analysis = analysis;
+        }
+        response.error = in.string();
+        in.finish();
+        return response;
+    }
+    
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        
+        Writer() {
+            bytes.write(MAGIC);
+            bytes.write(VERSION);
+        }
+        
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+        
+        void string(String value) {
+            if (value == null) {
+                varint(0);
+                return;
+            }
+            Integer index = DICTIONARY_INDEX.get(value);
+            if (index != null) {
+                varint(2L * index + 1);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(2L * (utf8.length + 1));
+            bytes.write(utf8, 0, utf8.length);
+        }
+        
+        boolean present(Object value) {
+            bytes.write(value != null ? 1 : 0);
+            return value != null;
+        }
+        
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+    
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+        
+        Reader(byte[] bytes) throws IOException {
+            this.bytes = bytes;
+            if (bytes.length < 2 || (bytes[0] & 0xFF) != MAGIC) {
+                throw new IOException("Not a compact payload");
+            }
+            if ((bytes[1] & 0xFF) != VERSION) {
+                throw new IOException("Unsupported compact payload version " + (bytes[1] & 0xFF));
+            }
+            position = 2;
+        }
+        
+        private int next() throws IOException {
+            if (position >= bytes.length) {
+                throw new IOException("Malformed compact payload: truncated");
+            }
+            return bytes[position++] & 0xFF;
+        }
+        
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = next();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed compact payload: varint too long");
+        }
+        
+        String string() throws IOException {
+            long tag = varint();
+            if (tag == 0) {
+                return null;
+            }
+            if ((tag & 1) == 1) {
+                long index = tag >>> 1;
+                if (index >= DICTIONARY.length) {
+                    throw new IOException("Malformed compact payload: unknown dictionary entry " + index);
+                }
+                return DICTIONARY[(int) index];
+            }
+            long length = (tag >>> 1) - 1;
+            if (length > bytes.length - position) {
+                throw new IOException("Malformed compact payload: truncated string");
+            }
+            String value = new String(bytes, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return value;
+        }
+        
+        boolean present() throws IOException {
+            int flag = next();
+            if (flag > 1) {
+                throw new IOException("Malformed compact payload: bad presence flag " + flag);
+            }
+            return flag == 1;
+        }
+        
+        void finish() throws IOException {
+            if (position != bytes.length) {
+                throw new IOException("Malformed compact payload: " + (bytes.length - position) + " trailing bytes");
+            }
+        }
+    }
+}
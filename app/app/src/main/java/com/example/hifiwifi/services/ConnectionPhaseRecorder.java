@@ -0,0 +1,209 @@
+package com.example.hifiwifi.services;
+
+import com.example.hifiwifi.models.ConnectionPhases;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Times the phases of every OkHttp call made by a client it is installed on, and sums them until
+ * the next reset, so one test's DNS, connect, TLS, first-byte and transfer time can be reported
+ * apart instead of as one elapsed time.
+ * Install with OkHttpClient.Builder.eventListenerFactory(); only calls that complete are counted.
+ * Requests made without OkHttp, such as LanThroughputTest's, are added with recordRequest().
+ */
+public class ConnectionPhaseRecorder implements EventListener.Factory {
+    
+    // Totals since the last reset, guarded by this
+    private int requests;
+    private int newConnections;
+    private int dnsLookups;
+    private int tlsHandshakes;
+    private int transfers;
+    private long dnsNanos;
+    private long tcpConnectNanos;
+    private long tlsHandshakeNanos;
+    private long timeToFirstByteNanos;
+    private long transferNanos;
+    private long bytesTransferred;
+    
+    @Override
+    public EventListener create(Call call) {
+        return new CallTimer();
+    }
+    
+    /**
+     * Start a new test
+     */
+    public synchronized void reset() {
+        requests = 0;
+        newConnections = 0;
+        dnsLookups = 0;
+        tlsHandshakes = 0;
+        transfers = 0;
+        dnsNanos = 0;
+        tcpConnectNanos = 0;
+        tlsHandshakeNanos = 0;
+        timeToFirstByteNanos = 0;
+        transferNanos = 0;
+        bytesTransferred = 0;
+    }
+    
+    /**
+     * Average phase times of the calls completed since the last reset
+     */
+    public synchronized ConnectionPhases snapshot() {
+        return new ConnectionPhases(
+            requests,
+            newConnections,
+            meanMs(dnsNanos, dnsLookups),
+            meanMs(tcpConnectNanos, newConnections),
+            meanMs(tlsHandshakeNanos, tlsHandshakes),
+            meanMs(timeToFirstByteNanos, requests),
+            meanMs(transferNanos, transfers),
+            bytesTransferred
+        );
+    }
+    
+    private static double meanMs(long totalNanos, int count) {
+        return count > 0 ? totalNanos / 1_000_000.0 / count : 0.0;
+    }
+    
+    /**
+     * Add a completed request made without OkHttp
+     * HttpURLConnection doesn't report DNS or TLS apart, so its whole connect counts as TCP connect.
+     * @param connect time to open the connection in nanoseconds, or 0 if it reused one
+     * @param timeToFirstByte request sent to response headers received, in nanoseconds
+     * @param transfer first to last byte of the response body in nanoseconds, or 0 if it had none
+     * @param bodyBytes bytes of the response body
+     */
+    public synchronized void recordRequest(long connect, long timeToFirstByte, long transfer, long bodyBytes) {
+        requests++;
+        if (connect > 0) {
+            newConnections++;
+            tcpConnectNanos += connect;
+        }
+        timeToFirstByteNanos += timeToFirstByte;
+        if (bodyBytes > 0) {
+            transfers++;
+            transferNanos += transfer;
+            bytesTransferred += bodyBytes;
+        }
+    }
+    
+    synchronized void record(CallTimer timer) {
+        requests++;
+        if (timer.dnsEnd > 0) {
+            dnsLookups++;
+            dnsNanos += timer.dnsEnd - timer.dnsStart;
+        }
+        if (timer.connectEnd > 0) {
+            newConnections++;
+            // The TCP handshake ends where TLS begins, or with the connection on plain HTTP
+            long tcpEnd = timer.secureConnectStart > 0 ? timer.secureConnectStart : timer.connectEnd;
+            tcpConnectNanos += tcpEnd - timer.connectStart;
+        }
+        if (timer.secureConnectEnd > 0) {
+            tlsHandshakes++;
+            tlsHandshakeNanos += timer.secureConnectEnd - timer.secureConnectStart;
+        }
+        if (timer.responseHeadersStart > 0) {
+            timeToFirstByteNanos += timer.responseHeadersStart - timer.requestHeadersStart;
+        }
+        if (timer.bodyBytes > 0) {
+            transfers++;
+            transferNanos += timer.bodyEnd - timer.bodyStart;
+            bytesTransferred += timer.bodyBytes;
+        }
+    }
+    
+    /**
+     * Timestamps of one call's phases; a phase that didn't happen stays 0
+     * A retried connection or redirect overwrites the earlier attempt's times, so each phase
+     * reflects the attempt that succeeded.
+     */
+    class CallTimer extends EventListener {
+        long dnsStart;
+        long dnsEnd;
+        long connectStart;
+        long secureConnectStart;
+        long secureConnectEnd;
+        long connectEnd;
+        long requestHeadersStart;
+        long responseHeadersStart;
+        long bodyStart;
+        long bodyEnd;
+        long bodyBytes;
+        
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+        
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> addresses) {
+            dnsEnd = System.nanoTime();
+        }
+        
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStart = System.nanoTime();
+            secureConnectStart = 0;
+            secureConnectEnd = 0;
+        }
+        
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+        
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            secureConnectEnd = System.nanoTime();
+        }
+        
+        @Override
+        public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+            connectEnd = System.nanoTime();
+        }
+        
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestHeadersStart = System.nanoTime();
+        }
+        
+        @Override
+        public void responseHeadersStart(Call call) {
+            responseHeadersStart = System.nanoTime();
+        }
+        
+        @Override
+        public void responseBodyStart(Call call) {
+            bodyStart = System.nanoTime();
+        }
+        
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            bodyEnd = System.nanoTime();
+            bodyBytes = byteCount;
+        }
+        
+        @Override
+        public void callEnd(Call call) {
+            record(this);
+        }
+        
+        @Override
+        public void callFailed(Call call, IOException e) {
+            // A failed call's partial phases would skew the averages of the ones that worked
+        }
+    }
+}
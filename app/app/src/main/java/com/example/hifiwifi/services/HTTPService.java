@@ -1,5 +1,6 @@
 package com.example.hifiwifi.services;
 
+import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -7,10 +8,20 @@ import android.util.Log;
 import com.google.gson.Gson;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -28,16 +39,86 @@ public class HTTPService {
     
     private static final String TAG = "HTTPService";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType COMPACT = MediaType.get(CompactCodec.MEDIA_TYPE);
+    // Offered on /analyze so a Pi that supports the compact encoding can answer with it
+    private static final String ACCEPT_COMPACT = CompactCodec.MEDIA_TYPE + ", application/json;q=0.9";
     
     // TODO: Update with your Raspberry Pi's IP address once it's set up
     // Example: "http://192.168.1.100:5000"
-    private String baseUrl = "http://10.19.26.184:5000";
+    private static final String DEFAULT_BASE_URL = "http://10.19.26.184:5000";
+    private volatile String baseUrl = DEFAULT_BASE_URL;
     private static final String ANALYZE_ENDPOINT = "/analyze";
     private static final String EXPLAIN_ENDPOINT = "/explain";
     private static final String HEALTH_ENDPOINT = "/health";
+    private static final String CHAT_ENDPOINT = "/chat";
     
-    private OkHttpClient httpClient;
-    private ExecutorService executorService;
+    // Shared by every instance so a recreated screen joins requests its previous instance started
+    private static final RequestCoalescer COALESCER = new RequestCoalescer();
+    
+    // Recent explanations by request fingerprint, so a prefetched answer is shown without waiting
+    private static final int EXPLANATION_CACHE_SIZE = 16;
+    private static final Map<String, String> EXPLANATION_CACHE =
+        new LinkedHashMap<String, String>(EXPLANATION_CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > EXPLANATION_CACHE_SIZE;
+            }
+        };
+    
+    // Process-wide like COALESCER: a flight may have joiners from other screens, so no instance may stop it
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+            .connectTimeout(10, TimeUnit.SECONDS)
+            .readTimeout(180, TimeUnit.SECONDS)  // SLM may take up to 3 minutes to generate response
+            .writeTimeout(10, TimeUnit.SECONDS)
+            .build();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HTTPService");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Low-priority thread for speculative requests, kept apart so they never delay user requests
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HTTPService-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    
+    // Low-priority thread for replaying the outbound queue, so background analyses never delay user requests
+    private static final ExecutorService BACKGROUND_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "HTTPService-background");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    
+    private final OkHttpClient httpClient = HTTP_CLIENT;
+    private final ExecutorService executorService = EXECUTOR;
+    private final ExecutorService backgroundExecutor = BACKGROUND_EXECUTOR;
+    private final ExecutorService prefetchExecutor = PREFETCH_EXECUTOR;
+    private final Map<String, Prefetch> prefetches = new ConcurrentHashMap<>();
+    private volatile boolean speculativeExplainEnabled = true;
+    
+    // Base URLs of Pis known to speak CompactCodec, shared by every instance so a new screen's
+    // first /analyze doesn't fall back to JSON; a Pi joins once it replies in that encoding
+    private static final Set<String> COMPACT_BASE_URLS = ConcurrentHashMap.newKeySet();
+    private volatile boolean compactWireFormatEnabled = true;
+    
+    // Replay of measurements queued while the Pi was unreachable; state is only touched on the main thread.
+    // Every instance adds to the shared queue, but only the replay owner drains it.
+    static final int REPLAY_BATCH_SIZE = 5;
+    static final long REPLAY_INITIAL_BACKOFF_MS = 2000;
+    static final long REPLAY_MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private OutboundQueue outboundQueue;
+    // Finds the Pi when its address changes; only set by the HTTPService(Context) constructor
+    private PiDiscovery discovery;
+    private static HTTPService replayOwner;
+    private QueuedAnalysisListener queuedAnalysisListener;
+    private final Runnable replayRunnable = this::attemptReplay;
+    private long replayBackoffMs = REPLAY_INITIAL_BACKOFF_MS;
+    private boolean replayScheduled = false;
+    private boolean replayRunning = false;
+    private boolean replayStopped = false;
     private Handler mainHandler;
     private Gson gson;
     
@@ -80,17 +161,30 @@ public class HTTPService {
         void onError(String error);
     }
     
+    /**
+     * Receives analyses of measurements that were queued while the Pi was unreachable
+     */
+    public interface QueuedAnalysisListener {
+        void onQueuedAnalysisReceived(AnalyzeRequest.Measurement measurement, AnalyzeResponse response);
+    }
+    
     public HTTPService() {
-        // Configure HTTP client with appropriate timeouts
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(180, TimeUnit.SECONDS)  // SLM may take up to 3 minutes to generate response
-                .writeTimeout(10, TimeUnit.SECONDS)
-                .build();
-        
-        this.executorService = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
-        this.gson = new Gson();
+        this.gson = ResponseAdapters.GSON;
+    }
+    
+    /**
+     * Create a service that can queue measurements while the Pi is unreachable
+     * Queued measurements are sent by the replay owner, see ownReplay().
+     */
+    public HTTPService(Context context) {
+        this();
+        this.outboundQueue = OutboundQueue.getInstance(context);
+        this.discovery = new PiDiscovery(context);
+        String cachedBaseUrl = discovery.getCachedBaseUrl();
+        if (cachedBaseUrl != null) {
+            this.baseUrl = cachedBaseUrl;
+        }
     }
     
     /**
@@ -231,6 +325,7 @@ public class HTTPService {
         public String explanation;  // Contains JSON string that needs to be parsed
         public Metadata metadata;
         public String error;  // Present if status is "error"
+        transient String message;  // Extracted from explanation while the response is parsed
         
         public static class Metadata {
             public String location;
@@ -240,47 +335,33 @@ public class HTTPService {
         
         /**
          * Extract the actual message from the explanation field
-         * The explanation field contains a JSON string that needs to be parsed
-         * to extract the actual message text
+         * The explanation field contains a JSON string with the actual message text,
+         * which ResponseAdapters extracts while the response is being read
          * 
-         * @param gson Gson instance for parsing nested JSON
-         * @return The extracted message text, or the raw explanation if parsing fails
+         * @return The extracted message text, or the raw explanation if it has no nested message
          */
-        public String getMessage(com.google.gson.Gson gson) {
+        public String getMessage() {
             if (explanation == null || explanation.isEmpty()) {
                 return "No explanation available";
             }
-            
-            try {
-                // Try to parse the explanation as nested JSON
+            if (message == null) {
+                // Built without ResponseAdapters, so the nested payload hasn't been read yet
                 // It might contain: {"status": "success", "recommendation": {"message": "..."}}
-                com.google.gson.JsonObject jsonObj = gson.fromJson(explanation, com.google.gson.JsonObject.class);
-                
-                // Try to extract message from recommendation
-                if (jsonObj.has("recommendation")) {
-                    com.google.gson.JsonObject recommendation = jsonObj.getAsJsonObject("recommendation");
-                    
-                    // Check for "message" field
-                    if (recommendation.has("message")) {
-                        return recommendation.get("message").getAsString();
-                    }
-                    
-                    // Check for "reason" field
-                    if (recommendation.has("reason")) {
-                        return recommendation.get("reason").getAsString();
-                    }
-                }
-                
-                // If no nested structure, return the explanation as-is
-                // (it might already be a plain text message)
-                return explanation;
-                
-            } catch (Exception e) {
-                // If parsing fails, return the explanation as-is
-                // It might already be plain text
-                Log.w(TAG, "Could not parse nested JSON in explanation, using as-is", e);
-                return explanation;
+                ResponseAdapters.NestedMessage nested = ResponseAdapters.NestedMessage.parse(explanation);
+                message = nested != null ? nested.recommendationMessage() : null;
             }
+            
+            // If no nested structure, return the explanation as-is
+            // (it might already be a plain text message)
+            return message != null ? message : explanation;
+        }
+        
+        /**
+         * @deprecated The message is extracted during parsing; use {@link #getMessage()}
+         */
+        @Deprecated
+        public String getMessage(com.google.gson.Gson gson) {
+            return getMessage();
         }
     }
     
@@ -311,26 +392,60 @@ public class HTTPService {
             String frequency,
             HTTPCallback callback
     ) {
-        executorService.execute(() -> {
+        submitAnalysis(buildMeasurement(location, activity, signalStrength, latency, bandwidth, jitter,
+            packetLoss, frequency), callback, true, executorService);
+    }
+    
+    /**
+     * Build the measurement sent to /analyze in the new Android format
+     */
+    private static AnalyzeRequest.Measurement buildMeasurement(
+            String location,
+            String activity,
+            String signalStrength,
+            String latency,
+            String bandwidth,
+            String jitter,
+            String packetLoss,
+            String frequency
+    ) {
+        // Create measurement object
+        AnalyzeRequest.Measurement measurement = new AnalyzeRequest.Measurement();
+        measurement.roomName = location;  // Keep as-is (e.g., "Living Room")
+        measurement.activityType = activity;  // e.g., "gaming", "streaming"
+        measurement.frequencyBand = frequency;  // e.g., "5GHz", "2.4GHz"
+        
+        // Create classification object with lowercase values
+        measurement.classification = new AnalyzeRequest.Measurement.Classification();
+        measurement.classification.signal_strength = signalStrength.toLowerCase();
+        measurement.classification.latency = latency.toLowerCase();
+        measurement.classification.bandwidth = bandwidth.toLowerCase();
+        measurement.classification.jitter = jitter.toLowerCase();
+        measurement.classification.packet_loss = packetLoss.toLowerCase();
+        return measurement;
+    }
+    
+    /**
+     * Send one measurement to /analyze
+     * @param prefetch whether to speculatively request the explanation afterwards
+     */
+    private void submitAnalysis(AnalyzeRequest.Measurement measurement, HTTPCallback callback, boolean prefetch,
+                                ExecutorService executor) {
+        // Share one network call between identical concurrent requests
+        AnalyzeRequest.Measurement.Classification classes = measurement.classification;
+        String fingerprint = fingerprint(ANALYZE_ENDPOINT, measurement.roomName, measurement.activityType,
+            classes.signal_strength, classes.latency, classes.bandwidth, classes.jitter, classes.packet_loss,
+            measurement.frequencyBand);
+        HTTPCallback flight = COALESCER.join(fingerprint, callback);
+        if (flight == null) {
+            Log.d(TAG, "Joined in-flight analysis request");
+            return;
+        }
+        
+        submit(executor, flight, () -> {
             try {
-                // Build request object in new Android format
-                AnalyzeRequest analyzeRequest = new AnalyzeRequest();
-                
-                // Create measurement object
-                AnalyzeRequest.Measurement measurement = new AnalyzeRequest.Measurement();
-                measurement.roomName = location;  // Keep as-is (e.g., "Living Room")
-                measurement.activityType = activity;  // e.g., "gaming", "streaming"
-                measurement.frequencyBand = frequency;  // e.g., "5GHz", "2.4GHz"
-                
-                // Create classification object with lowercase values
-                measurement.classification = new AnalyzeRequest.Measurement.Classification();
-                measurement.classification.signal_strength = signalStrength.toLowerCase();
-                measurement.classification.latency = latency.toLowerCase();
-                measurement.classification.bandwidth = bandwidth.toLowerCase();
-                measurement.classification.jitter = jitter.toLowerCase();
-                measurement.classification.packet_loss = packetLoss.toLowerCase();
-                
                 // Wrap in measurements array
+                AnalyzeRequest analyzeRequest = new AnalyzeRequest();
                 analyzeRequest.measurements = new AnalyzeRequest.Measurement[]{measurement};
                 
                 // Add optional summary
@@ -338,35 +453,41 @@ public class HTTPService {
                 analyzeRequest.summary.totalMeasurements = 1;
                 analyzeRequest.summary.timestamp = System.currentTimeMillis();
                 
-                // Convert to JSON
-                String jsonBody = gson.toJson(analyzeRequest);
-                Log.d(TAG, "Sending analysis request (new Android format): " + jsonBody);
-                
-                // Create HTTP request
-                RequestBody body = RequestBody.create(jsonBody, JSON);
-                Request request = new Request.Builder()
-                        .url(baseUrl + ANALYZE_ENDPOINT)
-                        .post(body)
-                        .build();
-                
                 // Execute request (SLM may take up to 3 minutes to respond)
-                try (Response response = httpClient.newCall(request).execute()) {
+                boolean compact = compactWireFormatEnabled && isCompactWireFormatSupported();
+                Response firstResponse = httpClient.newCall(buildAnalyzeRequest(analyzeRequest, compact)).execute();
+                if (compact && (firstResponse.code() == 415 || firstResponse.code() == 400)) {
+                    // The Pi may have been downgraded to a version that only reads JSON
+                    Log.w(TAG, "Compact encoding rejected, retrying as JSON");
+                    COMPACT_BASE_URLS.remove(baseUrl);
+                    firstResponse.close();
+                    firstResponse = httpClient.newCall(buildAnalyzeRequest(analyzeRequest, false)).execute();
+                }
+                
+                try (Response response = firstResponse) {
                     if (!response.isSuccessful()) {
                         String errorMsg = "HTTP " + response.code() + ": " + response.message();
                         Log.e(TAG, errorMsg);
-                        notifyError(callback, errorMsg);
+                        notifyError(flight, errorMsg);
                         return;
                     }
                     
-                    // Parse response
-                    String responseBody = response.body().string();
-                    Log.d(TAG, "Received analysis response: " + responseBody.substring(0, Math.min(100, responseBody.length())) + "...");
-                    
-                    AnalyzeResponse analyzeResponse = gson.fromJson(responseBody, AnalyzeResponse.class);
+                    // Parse response in whichever encoding the Pi chose
+                    AnalyzeResponse analyzeResponse;
+                    if (isCompact(response)) {
+                        byte[] responseBytes = response.body().bytes();
+                        Log.d(TAG, "Received compact analysis response: " + responseBytes.length + " bytes");
+                        analyzeResponse = CompactCodec.decodeResponse(responseBytes);
+                        COMPACT_BASE_URLS.add(baseUrl);
+                    } else {
+                        String responseBody = response.body().string();
+                        Log.d(TAG, "Received analysis response: " + responseBody.substring(0, Math.min(100, responseBody.length())) + "...");
+                        analyzeResponse = gson.fromJson(responseBody, AnalyzeResponse.class);
+                    }
                     
                     if (analyzeResponse == null) {
                         Log.e(TAG, "Failed to parse analysis response - gson returned null");
-                        notifyError(callback, "Failed to parse server response");
+                        notifyError(flight, "Failed to parse server response");
                         return;
                     }
                     
@@ -377,24 +498,30 @@ public class HTTPService {
                         String displayMessage = analyzeResponse.toDisplayMessage();
                         Log.d(TAG, "Extracted message: " + displayMessage.substring(0, Math.min(50, displayMessage.length())) + "...");
                         
-                        notifyAnalysis(callback, analyzeResponse);
+                        // The user usually asks for the explanation next, so start generating it now;
+                        // started before the callback so an explanation requested from it joins the prefetch
+                        if (prefetch && speculativeExplainEnabled) {
+                            prefetchExplanation(analyzeResponse);
+                        }
+                        
+                        notifyAnalysis(flight, analyzeResponse);
                     } else {
                         String error = analyzeResponse.error != null ? analyzeResponse.error : "Unknown error";
                         Log.e(TAG, "Analysis failed: " + error);
-                        notifyError(callback, "Analysis failed: " + error);
+                        notifyError(flight, "Analysis failed: " + error);
                     }
                 }
-                
+            
             } catch (com.google.gson.JsonSyntaxException e) {
                 Log.e(TAG, "Failed to parse JSON response from analysis", e);
-                notifyError(callback, "Invalid response format from server");
+                notifyError(flight, "Invalid response format from server");
             } catch (IOException e) {
                 Log.e(TAG, "Network error while requesting analysis", e);
-                notifyError(callback, "Network error: " + e.getMessage() + 
+                notifyError(flight, "Network error: " + e.getMessage() + 
                     "\n\nMake sure Raspberry Pi is reachable at " + baseUrl);
             } catch (Exception e) {
                 Log.e(TAG, "Unexpected error while requesting analysis", e);
-                notifyError(callback, "Error: " + e.getMessage());
+                notifyError(flight, "Error: " + e.getMessage());
             }
         });
     }
@@ -424,83 +551,279 @@ public class HTTPService {
             String targetLocation,
             HTTPCallback callback
     ) {
-        executorService.execute(() -> {
-            try {
-                // Build request object
-                ExplainRequest explainRequest = new ExplainRequest();
-                explainRequest.location = location;
-                explainRequest.activity = activity;
-                
-                explainRequest.measurements = new ExplainRequest.Measurements();
-                explainRequest.measurements.signal_strength = signalStrength;
-                explainRequest.measurements.latency = latency;
-                explainRequest.measurements.bandwidth = bandwidth;
-                
-                explainRequest.recommendation = new ExplainRequest.Recommendation();
-                explainRequest.recommendation.action = action;
-                if (targetLocation != null && !targetLocation.isEmpty()) {
-                    explainRequest.recommendation.target_location = targetLocation;
+        String fingerprint = fingerprint(EXPLAIN_ENDPOINT, location, activity, signalStrength, latency,
+            bandwidth, action, targetLocation);
+        
+        // Serve a speculatively prefetched explanation if one is ready
+        String cached = getCachedExplanation(fingerprint);
+        if (cached != null) {
+            Log.d(TAG, "Explanation served from prefetch cache");
+            notifyExplanation(callback, cached);
+            return;
+        }
+        
+        // Share one network call between identical concurrent requests, including a running prefetch
+        HTTPCallback flight = COALESCER.join(fingerprint, callback);
+        if (flight == null) {
+            Log.d(TAG, "Joined in-flight explanation request");
+            return;
+        }
+        
+        submit(flight, () -> performExplanation(fingerprint, location, activity, signalStrength, latency,
+            bandwidth, action, targetLocation, flight, null));
+    }
+    
+    /**
+     * Send the explanation request for an analysis result
+     * Built from the same fields as prefetchExplanation(AnalyzeResponse), so the explanation
+     * prefetched after requestAnalysis() is served from the cache or joined in flight.
+     */
+    public void requestExplanation(AnalyzeResponse response, HTTPCallback callback) {
+        if (!isExplainable(response)) {
+            notifyError(callback, "Analysis has no recommendation to explain");
+            return;
+        }
+        AnalyzeResponse.Analysis analysis = response.analysis;
+        requestExplanation(
+            analysis.location,
+            analysis.activity,
+            analysis.metrics.signal_strength,
+            analysis.metrics.latency,
+            analysis.metrics.bandwidth,
+            response.recommendation.action,
+            response.recommendation.target_location,
+            callback
+        );
+    }
+    
+    private static boolean isExplainable(AnalyzeResponse response) {
+        return response != null && response.analysis != null && response.analysis.metrics != null
+            && response.recommendation != null;
+    }
+    
+    /**
+     * Execute an explanation request and cache its result
+     * @param prefetch the speculative prefetch this call belongs to, or null for a user request
+     */
+    private void performExplanation(String fingerprint, String location, String activity, String signalStrength,
+                                    String latency, String bandwidth, String action, String targetLocation,
+                                    HTTPCallback flight, Prefetch prefetch) {
+        try {
+            // Build request object
+            ExplainRequest explainRequest = new ExplainRequest();
+            explainRequest.location = location;
+            explainRequest.activity = activity;
+            
+            explainRequest.measurements = new ExplainRequest.Measurements();
+            explainRequest.measurements.signal_strength = signalStrength;
+            explainRequest.measurements.latency = latency;
+            explainRequest.measurements.bandwidth = bandwidth;
+            
+            explainRequest.recommendation = new ExplainRequest.Recommendation();
+            explainRequest.recommendation.action = action;
+            if (targetLocation != null && !targetLocation.isEmpty()) {
+                explainRequest.recommendation.target_location = targetLocation;
+            }
+            
+            // Convert to JSON
+            String jsonBody = gson.toJson(explainRequest);
+            Log.d(TAG, "Sending explanation request: " + jsonBody);
+            
+            // Create HTTP request
+            RequestBody body = RequestBody.create(jsonBody, JSON);
+            Request request = new Request.Builder()
+                    .url(baseUrl + EXPLAIN_ENDPOINT)
+                    .post(body)
+                    .build();
+            
+            // Execute request (SLM may take up to 3 minutes to respond)
+            Call call = httpClient.newCall(request);
+            if (prefetch != null) {
+                prefetch.call = call;
+                if (prefetch.cancelled) {
+                    call.cancel();
+                }
+            }
+            try (Response response = call.execute()) {
+                if (!response.isSuccessful()) {
+                    String errorMsg = "HTTP " + response.code() + ": " + response.message();
+                    Log.e(TAG, errorMsg);
+                    notifyError(flight, errorMsg);
+                    return;
                 }
                 
-                // Convert to JSON
-                String jsonBody = gson.toJson(explainRequest);
-                Log.d(TAG, "Sending explanation request: " + jsonBody);
+                // Parse response
+                String responseBody = response.body().string();
+                Log.d(TAG, "Received explanation response: " + responseBody.substring(0, Math.min(100, responseBody.length())) + "...");
                 
-                // Create HTTP request
-                RequestBody body = RequestBody.create(jsonBody, JSON);
-                Request request = new Request.Builder()
-                        .url(baseUrl + EXPLAIN_ENDPOINT)
-                        .post(body)
-                        .build();
+                ExplainResponse explainResponse = gson.fromJson(responseBody, ExplainResponse.class);
                 
-                // Execute request (SLM may take up to 3 minutes to respond)
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (!response.isSuccessful()) {
-                        String errorMsg = "HTTP " + response.code() + ": " + response.message();
-                        Log.e(TAG, errorMsg);
-                        notifyError(callback, errorMsg);
-                        return;
-                    }
-                    
-                    // Parse response
-                    String responseBody = response.body().string();
-                    Log.d(TAG, "Received explanation response: " + responseBody.substring(0, Math.min(100, responseBody.length())) + "...");
-                    
-                    ExplainResponse explainResponse = gson.fromJson(responseBody, ExplainResponse.class);
+                if (explainResponse == null) {
+                    Log.e(TAG, "Failed to parse explanation response - gson returned null");
+                    notifyError(flight, "Failed to parse server response");
+                    return;
+                }
+                
+                if ("success".equals(explainResponse.status)) {
+                    Log.i(TAG, "Explanation received successfully");
                     
-                    if (explainResponse == null) {
-                        Log.e(TAG, "Failed to parse explanation response - gson returned null");
-                        notifyError(callback, "Failed to parse server response");
-                        return;
-                    }
+                    // Extract the actual message from the nested JSON
+                    String message = explainResponse.getMessage();
+                    Log.d(TAG, "Extracted message: " + message.substring(0, Math.min(50, message.length())) + "...");
                     
-                    if ("success".equals(explainResponse.status)) {
-                        Log.i(TAG, "Explanation received successfully");
-                        
-                        // Extract the actual message from the nested JSON
-                        String message = explainResponse.getMessage(gson);
-                        Log.d(TAG, "Extracted message: " + message.substring(0, Math.min(50, message.length())) + "...");
-                        
-                        notifyExplanation(callback, message);
-                    } else {
-                        String error = explainResponse.error != null ? explainResponse.error : "Unknown error";
-                        Log.e(TAG, "Request failed: " + error);
-                        notifyError(callback, "Request failed: " + error);
-                    }
+                    cacheExplanation(fingerprint, message);
+                    notifyExplanation(flight, message);
+                } else {
+                    String error = explainResponse.error != null ? explainResponse.error : "Unknown error";
+                    Log.e(TAG, "Request failed: " + error);
+                    notifyError(flight, "Request failed: " + error);
                 }
-                
-            } catch (com.google.gson.JsonSyntaxException e) {
-                Log.e(TAG, "Failed to parse JSON response from explanation", e);
-                notifyError(callback, "Invalid response format from server");
-            } catch (IOException e) {
-                Log.e(TAG, "Network error while requesting explanation", e);
-                notifyError(callback, "Network error: " + e.getMessage() + 
-                    "\n\nMake sure Raspberry Pi is reachable at " + baseUrl);
-            } catch (Exception e) {
-                Log.e(TAG, "Unexpected error while requesting explanation", e);
-                notifyError(callback, "Error: " + e.getMessage());
             }
-        });
+        
+        } catch (com.google.gson.JsonSyntaxException e) {
+            Log.e(TAG, "Failed to parse JSON response from explanation", e);
+            notifyError(flight, "Invalid response format from server");
+        } catch (IOException e) {
+            if (prefetch != null && prefetch.cancelled) {
+                Log.d(TAG, "Explanation prefetch cancelled");
+                notifyError(flight, "Explanation prefetch cancelled");
+                return;
+            }
+            Log.e(TAG, "Network error while requesting explanation", e);
+            notifyError(flight, "Network error: " + e.getMessage() + 
+                "\n\nMake sure Raspberry Pi is reachable at " + baseUrl);
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error while requesting explanation", e);
+            notifyError(flight, "Error: " + e.getMessage());
+        } finally {
+            if (prefetch != null) {
+                prefetches.remove(fingerprint, prefetch);
+            }
+        }
+    }
+    
+    /**
+     * Speculatively start generating the explanation for an analysis result
+     * The request runs at low priority and its result is cached, so a following
+     * requestExplanation() for the same recommendation returns at once or joins it in flight.
+     */
+    public void prefetchExplanation(AnalyzeResponse response) {
+        if (!isExplainable(response)) {
+            return;
+        }
+        AnalyzeResponse.Analysis analysis = response.analysis;
+        prefetchExplanation(
+            analysis.location,
+            analysis.activity,
+            analysis.metrics.signal_strength,
+            analysis.metrics.latency,
+            analysis.metrics.bandwidth,
+            response.recommendation.action,
+            response.recommendation.target_location
+        );
+    }
+    
+    /**
+     * Speculatively start generating an explanation; parameters are as for requestExplanation()
+     */
+    public void prefetchExplanation(
+            String location,
+            String activity,
+            String signalStrength,
+            String latency,
+            String bandwidth,
+            String action,
+            String targetLocation
+    ) {
+        String fingerprint = fingerprint(EXPLAIN_ENDPOINT, location, activity, signalStrength, latency,
+            bandwidth, action, targetLocation);
+        if (getCachedExplanation(fingerprint) != null) {
+            return;
+        }
+        
+        // A prefetch has no caller of its own; anyone asking later joins its flight
+        HTTPCallback flight = COALESCER.join(fingerprint, null);
+        if (flight == null) {
+            return;
+        }
+        
+        Prefetch prefetch = new Prefetch(fingerprint, flight);
+        prefetches.put(fingerprint, prefetch);
+        try {
+            prefetch.future = prefetchExecutor.submit(() -> {
+                if (prefetch.cancelled) {
+                    return;
+                }
+                performExplanation(fingerprint, location, activity, signalStrength, latency,
+                    bandwidth, action, targetLocation, flight, prefetch);
+            });
+            Log.d(TAG, "Prefetching explanation for " + location);
+        } catch (RejectedExecutionException e) {
+            prefetches.remove(fingerprint, prefetch);
+            notifyError(flight, "HTTP service has been shut down");
+        }
+    }
+    
+    /**
+     * Cancel speculative explanation requests nobody has asked for yet
+     * Call when the user navigates away; prefetches a caller has since joined keep running.
+     */
+    public void cancelPrefetches() {
+        for (Prefetch prefetch : new ArrayList<>(prefetches.values())) {
+            if (!COALESCER.abandon(prefetch.fingerprint, prefetch.flight)) {
+                continue;
+            }
+            prefetch.cancelled = true;
+            prefetches.remove(prefetch.fingerprint, prefetch);
+            Future<?> future = prefetch.future;
+            if (future != null && future.cancel(false)) {
+                // Never started, so nothing else will complete the flight
+                prefetch.flight.onError("Explanation prefetch cancelled");
+            }
+            Call call = prefetch.call;
+            if (call != null) {
+                call.cancel();
+            }
+            Log.d(TAG, "Cancelled explanation prefetch");
+        }
+    }
+    
+    /**
+     * Enable or disable speculative explanation requests after an analysis (enabled by default)
+     */
+    public void setSpeculativeExplainEnabled(boolean enabled) {
+        this.speculativeExplainEnabled = enabled;
+        if (!enabled) {
+            cancelPrefetches();
+        }
+    }
+    
+    private static String getCachedExplanation(String fingerprint) {
+        synchronized (EXPLANATION_CACHE) {
+            return EXPLANATION_CACHE.get(fingerprint);
+        }
+    }
+    
+    private static void cacheExplanation(String fingerprint, String explanation) {
+        synchronized (EXPLANATION_CACHE) {
+            EXPLANATION_CACHE.put(fingerprint, explanation);
+        }
+    }
+    
+    /**
+     * A speculative explanation request that can be cancelled while queued or in flight
+     */
+    private static class Prefetch {
+        final String fingerprint;
+        final HTTPCallback flight;
+        volatile Future<?> future;
+        volatile Call call;
+        volatile boolean cancelled;
+        
+        Prefetch(String fingerprint, HTTPCallback flight) {
+            this.fingerprint = fingerprint;
+            this.flight = flight;
+        }
     }
     
     /**
@@ -509,7 +832,11 @@ public class HTTPService {
      * @param callback Callback for receiving results
      */
     public void checkHealth(HTTPCallback callback) {
-        executorService.execute(() -> {
+        checkHealth(executorService, callback);
+    }
+    
+    private void checkHealth(ExecutorService executor, HTTPCallback callback) {
+        executor.execute(() -> {
             try {
                 Log.d(TAG, "Checking health at: " + baseUrl + HEALTH_ENDPOINT);
                 
@@ -522,13 +849,14 @@ public class HTTPService {
                     if (response.isSuccessful()) {
                         Log.i(TAG, "Health check passed - Pi is reachable");
                         notifyHealthCheck(callback);
+                        mainHandler.post(HTTPService::onPiReachable);
                     } else {
                         String errorMsg = "Pi not reachable: HTTP " + response.code();
                         Log.e(TAG, errorMsg);
                         notifyError(callback, errorMsg);
                     }
                 }
-                
+            
             } catch (IOException e) {
                 Log.e(TAG, "Health check failed - cannot reach Pi", e);
                 notifyError(callback, "Cannot reach Raspberry Pi at " + baseUrl + 
@@ -537,6 +865,239 @@ public class HTTPService {
         });
     }
     
+    /**
+     * Find the Raspberry Pi and check its health
+     * Races the last endpoint that worked, the current base URL and any Pi answering the
+     * discovery beacon, switches to the first that responds, then runs checkHealth() against it.
+     * Without the HTTPService(Context) constructor this is just checkHealth().
+     * Call on the main thread.
+     * 
+     * @param callback Callback for receiving results
+     */
+    public void connect(HTTPCallback callback) {
+        if (discovery == null) {
+            checkHealth(callback);
+            return;
+        }
+        
+        List<String> fallbacks = new ArrayList<>(2);
+        fallbacks.add(baseUrl);
+        fallbacks.add(DEFAULT_BASE_URL);
+        discovery.discover(fallbacks, new PiDiscovery.DiscoveryCallback() {
+            @Override
+            public void onPiFound(String foundBaseUrl, long elapsedMs) {
+                if (!foundBaseUrl.equals(baseUrl)) {
+                    baseUrl = foundBaseUrl;
+                    Log.i(TAG, "Base URL updated to: " + baseUrl);
+                }
+                checkHealth(callback);
+            }
+            
+            @Override
+            public void onDiscoveryFailed(String error) {
+                callback.onError("Cannot find Raspberry Pi on this network (" + error + ")" +
+                    "\n\nMake sure:\n1. Pi is on same WiFi network\n2. Flask server is running");
+            }
+        });
+    }
+    
+    /**
+     * Queue a measurement for analysis once the Pi is reachable
+     * Use this instead of requestAnalysis() when the Pi can't be reached; the measurement is
+     * stored durably and sent, batched with any others, as soon as a health check succeeds.
+     * Results go to the replay owner's QueuedAnalysisListener. Requires the HTTPService(Context) constructor.
+     */
+    public void enqueueAnalysis(
+            String location,
+            String activity,
+            String signalStrength,
+            String latency,
+            String bandwidth,
+            String jitter,
+            String packetLoss,
+            String frequency
+    ) {
+        if (outboundQueue == null) {
+            Log.w(TAG, "No outbound queue - create HTTPService with a Context to queue measurements");
+            return;
+        }
+        AnalyzeRequest.Measurement measurement = buildMeasurement(location, activity, signalStrength, latency,
+            bandwidth, jitter, packetLoss, frequency);
+        outboundQueue.enqueue(measurement);
+        mainHandler.post(HTTPService::scheduleOwnerReplay);
+    }
+    
+    /**
+     * Number of measurements waiting for the Pi
+     * @param callback receives the count on the main thread
+     */
+    public void getPendingAnalysisCount(Consumer<Integer> callback) {
+        if (outboundQueue == null) {
+            mainHandler.post(() -> callback.accept(0));
+            return;
+        }
+        outboundQueue.size(count -> mainHandler.post(() -> callback.accept(count)));
+    }
+    
+    /**
+     * Make this service the one that replays the outbound queue, replacing any earlier owner
+     * Having one owner means every replayed analysis reaches the given listener exactly once,
+     * whichever screen queued the measurement. Call on the main thread.
+     */
+    public void ownReplay(QueuedAnalysisListener listener) {
+        if (outboundQueue == null) {
+            Log.w(TAG, "No outbound queue - create HTTPService with a Context to replay measurements");
+            return;
+        }
+        this.queuedAnalysisListener = listener;
+        replayOwner = this;
+        scheduleReplay();
+    }
+    
+    /**
+     * Wake the replay owner after a measurement was queued
+     */
+    private static void scheduleOwnerReplay() {
+        if (replayOwner != null) {
+            replayOwner.scheduleReplay();
+        }
+    }
+    
+    /**
+     * Schedule the next reachability check, backing off exponentially while the Pi stays away
+     */
+    private void scheduleReplay() {
+        if (outboundQueue == null || replayStopped || replayScheduled || replayRunning) {
+            return;
+        }
+        replayScheduled = true;
+        mainHandler.postDelayed(replayRunnable, replayBackoffMs);
+        Log.d(TAG, "Next queued replay attempt in " + replayBackoffMs + " ms");
+    }
+    
+    private void attemptReplay() {
+        replayScheduled = false;
+        if (replayStopped) {
+            return;
+        }
+        // The queue counts on its IO thread; only a non-empty queue is worth a health check
+        outboundQueue.size(pending -> mainHandler.post(() -> {
+            if (pending > 0 && !replayStopped) {
+                checkReplayHealth();
+            }
+        }));
+    }
+    
+    private void checkReplayHealth() {
+        checkHealth(backgroundExecutor, new HTTPCallback() {
+            @Override
+            public void onExplanationReceived(String explanation) {
+                // Not used for health check
+            }
+            
+            @Override
+            public void onHealthCheckSuccess() {
+                // Replay starts from onPiReachable()
+            }
+            
+            @Override
+            public void onError(String error) {
+                replayBackoffMs = Math.min(replayBackoffMs * 2, REPLAY_MAX_BACKOFF_MS);
+                scheduleReplay();
+            }
+        });
+    }
+    
+    /**
+     * Start draining the queue once any instance's health check succeeds
+     */
+    private static void onPiReachable() {
+        HTTPService owner = replayOwner;
+        if (owner == null || owner.replayStopped || owner.replayRunning) {
+            return;
+        }
+        owner.mainHandler.removeCallbacks(owner.replayRunnable);
+        owner.replayScheduled = false;
+        owner.replayBackoffMs = REPLAY_INITIAL_BACKOFF_MS;
+        owner.replayBatch();
+    }
+    
+    /**
+     * Send the next batch of queued measurements back to back
+     * The Pi analyzes one measurement per /analyze call, so a batch is a burst of requests gated
+     * by one health check; the next batch follows immediately unless a request failed.
+     */
+    private void replayBatch() {
+        if (replayStopped) {
+            return;
+        }
+        // Running from the lease on, so no second batch starts while the queue hands this one out
+        replayRunning = true;
+        outboundQueue.lease(REPLAY_BATCH_SIZE, batch -> mainHandler.post(() -> sendBatch(batch)));
+    }
+    
+    private void sendBatch(List<OutboundQueue.Entry> batch) {
+        if (replayStopped) {
+            for (OutboundQueue.Entry entry : batch) {
+                outboundQueue.unlease(entry);
+            }
+            replayRunning = false;
+            return;
+        }
+        if (batch.isEmpty()) {
+            replayRunning = false;
+            return;
+        }
+        Log.i(TAG, "Replaying " + batch.size() + " queued measurement(s)");
+        
+        int[] remaining = {batch.size()};
+        int[] failures = {0};
+        for (OutboundQueue.Entry entry : batch) {
+            submitAnalysis(entry.getMeasurement(), new HTTPCallback() {
+                @Override
+                public void onAnalysisReceived(AnalyzeResponse response) {
+                    outboundQueue.acknowledge(entry);
+                    if (queuedAnalysisListener != null) {
+                        queuedAnalysisListener.onQueuedAnalysisReceived(entry.getMeasurement(), response);
+                    }
+                    onReplayed();
+                }
+                
+                @Override
+                public void onExplanationReceived(String explanation) {
+                    // Results arrive through onAnalysisReceived
+                }
+                
+                @Override
+                public void onHealthCheckSuccess() {
+                    // Not used for analysis
+                }
+                
+                @Override
+                public void onError(String error) {
+                    Log.w(TAG, "Queued measurement failed: " + error);
+                    outboundQueue.release(entry);
+                    failures[0]++;
+                    onReplayed();
+                }
+                
+                // Called on the main thread as each result arrives
+                private void onReplayed() {
+                    if (--remaining[0] > 0) {
+                        return;
+                    }
+                    replayRunning = false;
+                    if (failures[0] == 0) {
+                        replayBatch();
+                    } else {
+                        replayBackoffMs = Math.min(replayBackoffMs * 2, REPLAY_MAX_BACKOFF_MS);
+                        scheduleReplay();
+                    }
+                }
+            }, false, backgroundExecutor);
+        }
+    }
+    
     /**
      * Update the Raspberry Pi's base URL
      * Call this when you know the Pi's IP address
@@ -558,6 +1119,81 @@ public class HTTPService {
         return baseUrl;
     }
     
+    /**
+     * Get the coalescer deduplicating SLM requests, e.g. to read its counters
+     */
+    public static RequestCoalescer getRequestCoalescer() {
+        return COALESCER;
+    }
+    
+    /**
+     * Enable or disable the compact /analyze encoding (enabled by default)
+     * When enabled it is only used once the Pi has shown it supports it; JSON is always the fallback.
+     */
+    public void setCompactWireFormatEnabled(boolean enabled) {
+        this.compactWireFormatEnabled = enabled;
+    }
+    
+    /**
+     * Whether the Pi at the current base URL has answered an /analyze request in the compact encoding
+     */
+    public boolean isCompactWireFormatSupported() {
+        return COMPACT_BASE_URLS.contains(baseUrl);
+    }
+    
+    /**
+     * Build an /analyze request, encoded compactly or as JSON
+     */
+    private Request buildAnalyzeRequest(AnalyzeRequest analyzeRequest, boolean compact) {
+        RequestBody body;
+        if (compact) {
+            byte[] compactBody = CompactCodec.encodeRequest(analyzeRequest);
+            Log.d(TAG, "Sending compact analysis request: " + compactBody.length + " bytes");
+            body = RequestBody.create(compactBody, COMPACT);
+        } else {
+            String jsonBody = gson.toJson(analyzeRequest);
+            Log.d(TAG, "Sending analysis request (new Android format): " + jsonBody);
+            body = RequestBody.create(jsonBody, JSON);
+        }
+        return new Request.Builder()
+                .url(baseUrl + ANALYZE_ENDPOINT)
+                .header("Accept", compactWireFormatEnabled ? ACCEPT_COMPACT : "application/json")
+                .post(body)
+                .build();
+    }
+    
+    private static boolean isCompact(Response response) {
+        String contentType = response.header("Content-Type");
+        return contentType != null && contentType.startsWith(CompactCodec.MEDIA_TYPE);
+    }
+    
+    /**
+     * Build the key identifying identical requests: same server, endpoint and parameters
+     */
+    private String fingerprint(String endpoint, Object... parts) {
+        StringBuilder key = new StringBuilder(baseUrl).append(endpoint);
+        for (Object part : parts) {
+            key.append('\u001f').append(part);
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Run a request on the executor, failing its flight if the service has been shut down
+     */
+    private void submit(HTTPCallback flight, Runnable task) {
+        submit(executorService, flight, task);
+    }
+    
+    private void submit(ExecutorService executor, HTTPCallback flight, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Request rejected - service is shut down");
+            notifyError(flight, "HTTP service has been shut down");
+        }
+    }
+    
     // Notify callbacks on main thread for UI updates
     
     private void notifyAnalysis(HTTPCallback callback, AnalyzeResponse response) {
@@ -599,6 +1235,7 @@ public class HTTPService {
     public static class ChatRequest {
         public String query;         // Natural language question
         public Boolean format_json;  // Optional: return JSON format (default: false)
+        public String context;       // Optional: classification context the answer should draw on
     }
     
     /**
@@ -639,47 +1276,23 @@ public class HTTPService {
             
             // Check if the cleaned response looks like JSON
             if (cleanedResponse.startsWith("{") && cleanedResponse.endsWith("}")) {
-                try {
-                    // Try to parse as JSON and extract message
-                    com.google.gson.JsonObject jsonObj = new com.google.gson.Gson()
-                        .fromJson(cleanedResponse, com.google.gson.JsonObject.class);
-                    
-                    // Try different possible field names for the message
-                    if (jsonObj.has("message")) {
-                        return jsonObj.get("message").getAsString();
-                    }
-                    if (jsonObj.has("response")) {
-                        return jsonObj.get("response").getAsString();
-                    }
-                    if (jsonObj.has("text")) {
-                        return jsonObj.get("text").getAsString();
-                    }
-                    
-                    // If it has a recommendation field, try to extract from there
-                    if (jsonObj.has("recommendation")) {
-                        com.google.gson.JsonElement recElement = jsonObj.get("recommendation");
-                        if (recElement.isJsonObject()) {
-                            com.google.gson.JsonObject recObj = recElement.getAsJsonObject();
-                            if (recObj.has("message")) {
-                                return recObj.get("message").getAsString();
-                            }
-                            if (recObj.has("reason")) {
-                                return recObj.get("reason").getAsString();
-                            }
-                        } else if (recElement.isJsonPrimitive()) {
-                            return recElement.getAsString();
-                        }
-                    }
-                    
-                    // If we can't find a specific message field, return the original
-                    Log.w(TAG, "Could not find message field in JSON response, using original");
-                    return response;
-                    
-                } catch (Exception e) {
+                // Stream the JSON for the message field instead of building a tree
+                ResponseAdapters.NestedMessage nested = ResponseAdapters.NestedMessage.parse(cleanedResponse);
+                if (nested == null) {
                     // If JSON parsing fails, return the cleaned text
-                    Log.w(TAG, "Failed to parse chat response as JSON, using as plain text", e);
+                    Log.w(TAG, "Failed to parse chat response as JSON, using as plain text");
                     return cleanedResponse;
                 }
+                
+                // Try different possible field names for the message
+                String message = nested.chatMessage();
+                if (message != null) {
+                    return message;
+                }
+                
+                // If we can't find a specific message field, return the original
+                Log.w(TAG, "Could not find message field in JSON response, using original");
+                return response;
             }
             
             // If not JSON, return the cleaned response as-is
@@ -711,12 +1324,39 @@ public class HTTPService {
             boolean formatJson,
             HTTPCallback callback
     ) {
-        executorService.execute(() -> {
+        sendChatQuery(query, null, formatJson, callback);
+    }
+    
+    /**
+     * Send a general chat query to Raspberry Pi along with classification context
+     * Matches Flask API /chat endpoint
+     * 
+     * @param query User's question or message
+     * @param context Classification context for the SLM prompt, or null for none
+     * @param formatJson If true, request JSON-formatted response
+     * @param callback Callback for receiving results
+     */
+    public void sendChatQuery(
+            String query,
+            String context,
+            boolean formatJson,
+            HTTPCallback callback
+    ) {
+        // Share one network call between identical concurrent requests
+        String fingerprint = fingerprint(CHAT_ENDPOINT, query, context, formatJson);
+        HTTPCallback flight = COALESCER.join(fingerprint, callback);
+        if (flight == null) {
+            Log.d(TAG, "Joined in-flight chat request");
+            return;
+        }
+        
+        submit(flight, () -> {
             try {
                 // Build request object matching Flask API format
                 ChatRequest chatRequest = new ChatRequest();
                 chatRequest.query = query;
                 chatRequest.format_json = formatJson;
+                chatRequest.context = context;
                 
                 // Convert to JSON
                 String jsonBody = gson.toJson(chatRequest);
@@ -726,7 +1366,7 @@ public class HTTPService {
                 // Create HTTP request
                 RequestBody body = RequestBody.create(jsonBody, JSON);
                 Request request = new Request.Builder()
-                        .url(baseUrl + "/chat")
+                        .url(baseUrl + CHAT_ENDPOINT)
                         .post(body)
                         .build();
                 
@@ -744,14 +1384,14 @@ public class HTTPService {
                             Log.e(TAG, "Could not read error body", e);
                         }
                         
-                        notifyError(callback, errorMsg);
+                        notifyError(flight, errorMsg);
                         return;
                     }
                     
                     // Check if response body exists
                     if (response.body() == null) {
                         Log.e(TAG, "Response body is null");
-                        notifyError(callback, "Empty response from server");
+                        notifyError(flight, "Empty response from server");
                         return;
                     }
                     
@@ -764,7 +1404,7 @@ public class HTTPService {
                     if (chatResponse == null) {
                         Log.e(TAG, "Failed to parse chat response - gson returned null");
                         Log.e(TAG, "Raw response was: " + responseBody);
-                        notifyError(callback, "Failed to parse server response");
+                        notifyError(flight, "Failed to parse server response");
                         return;
                     }
                     
@@ -775,43 +1415,46 @@ public class HTTPService {
                         String message = chatResponse.getMessage();
                         Log.d(TAG, "Extracted message: " + message.substring(0, Math.min(50, message.length())) + "...");
                         
-                        notifyExplanation(callback, message);
+                        notifyExplanation(flight, message);
                     } else {
                         String error = chatResponse.error != null ? chatResponse.error : "Unknown error";
                         Log.e(TAG, "Chat request failed: " + error);
-                        notifyError(callback, "Chat failed: " + error);
+                        notifyError(flight, "Chat failed: " + error);
                     }
                 }
-                
+            
             } catch (com.google.gson.JsonSyntaxException e) {
                 Log.e(TAG, "Failed to parse JSON response from chat query", e);
-                notifyError(callback, "Invalid response format from server");
+                notifyError(flight, "Invalid response format from server");
             } catch (IOException e) {
                 Log.e(TAG, "Network error while sending chat query", e);
-                notifyError(callback, "Network error: " + e.getMessage() + 
+                notifyError(flight, "Network error: " + e.getMessage() + 
                     "\n\nMake sure Raspberry Pi is reachable at " + baseUrl);
             } catch (Exception e) {
                 Log.e(TAG, "Unexpected error while sending chat query", e);
-                notifyError(callback, "Error: " + e.getMessage());
+                notifyError(flight, "Error: " + e.getMessage());
             }
         });
     }
     
     /**
      * Clean up resources when service is no longer needed
-     * Call this in onDestroy() or when shutting down
+     * Call this in onDestroy() or when shutting down. It returns at once: requests in flight
+     * keep running on the shared threads, since callers from other screens may have joined them.
      */
     public void shutdown() {
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdown();
-            try {
-                if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executorService.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+        // Queued measurements stay on disk for the next session; the queue's IO thread finishes
+        // any write still scheduled, so nothing here waits for the disk
+        replayStopped = true;
+        mainHandler.removeCallbacks(replayRunnable);
+        if (replayOwner == this) {
+            replayOwner = null;
+        }
+        if (discovery != null) {
+            discovery.cancel();
         }
+        // Analyses still in flight start no new prefetch; only prefetches nobody else joined are cancelled
+        speculativeExplainEnabled = false;
+        cancelPrefetches();
     }
 }
@@ -0,0 +1,154 @@
+package com.example.hifiwifi.services;
+
+import android.util.Log;
+
+import com.example.hifiwifi.models.HopMetrics;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Probes latency and loss to several hops at once, so delay can be placed on the wireless hop
+ * (phone to gateway) or upstream of it.
+ * A probe is a TCP connect: the SYN/SYN-ACK or SYN/RST exchange is one round trip, needs no
+ * ICMP permission, and a refused connection still proves the hop answered. Each hop is probed
+ * sequentially on its own thread, and all hops run concurrently. A hop that ignores its first
+ * probes, like a gateway filtering port 53, is given up on and reported unreachable rather than lossy.
+ */
+public class HopProber {
+    
+    private static final String TAG = "HopProber";
+    
+    static final int DEFAULT_PROBES_PER_HOP = 10;
+    static final int DEFAULT_PROBE_TIMEOUT_MS = 1000;
+    private static final long PROBE_INTERVAL_MS = 50;
+    // Unanswered probes in a row, before any answer, after which a hop counts as unmeasurable
+    static final int SILENT_PROBES_BEFORE_GIVING_UP = 2;
+    
+    private final int probesPerHop;
+    private final int probeTimeoutMs;
+    private final ExecutorService executor;
+    
+    public HopProber() {
+        this(DEFAULT_PROBES_PER_HOP, DEFAULT_PROBE_TIMEOUT_MS);
+    }
+    
+    HopProber(int probesPerHop, int probeTimeoutMs) {
+        this.probesPerHop = probesPerHop;
+        this.probeTimeoutMs = probeTimeoutMs;
+        this.executor = Executors.newFixedThreadPool(HopMetrics.Hop.values().length, runnable -> {
+            Thread thread = new Thread(runnable, "HopProber");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Probe every target concurrently and wait for all of them
+     * Unresolved addresses are resolved before their first probe, so DNS isn't counted as latency.
+     * @return the metrics of each hop probed; a hop whose name didn't resolve is left out
+     */
+    public Map<HopMetrics.Hop, HopMetrics> probe(Map<HopMetrics.Hop, InetSocketAddress> targets) {
+        Map<HopMetrics.Hop, Future<HopMetrics>> pending = new EnumMap<>(HopMetrics.Hop.class);
+        for (Map.Entry<HopMetrics.Hop, InetSocketAddress> target : targets.entrySet()) {
+            pending.put(target.getKey(), executor.submit(() -> probeHop(target.getKey(), target.getValue())));
+        }
+        
+        Map<HopMetrics.Hop, HopMetrics> results = new EnumMap<>(HopMetrics.Hop.class);
+        for (Map.Entry<HopMetrics.Hop, Future<HopMetrics>> entry : pending.entrySet()) {
+            try {
+                HopMetrics metrics = entry.getValue().get();
+                if (metrics != null) {
+                    results.put(entry.getKey(), metrics);
+                    Log.d(TAG, metrics.toString());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Probe of " + entry.getKey() + " failed: " + e.getCause());
+            }
+        }
+        return results;
+    }
+    
+    private HopMetrics probeHop(HopMetrics.Hop hop, InetSocketAddress target) throws InterruptedException {
+        if (target.isUnresolved()) {
+            target = new InetSocketAddress(target.getHostString(), target.getPort());
+            if (target.isUnresolved()) {
+                Log.w(TAG, "Cannot resolve " + target.getHostString() + " for " + hop);
+                return null;
+            }
+        }
+        
+        List<Double> samples = new ArrayList<>(probesPerHop);
+        int probesSent = 0;
+        while (probesSent < probesPerHop) {
+            if (probesSent > 0) {
+                Thread.sleep(PROBE_INTERVAL_MS);
+            }
+            long rttNanos = probeOnce(target);
+            probesSent++;
+            if (rttNanos >= 0) {
+                samples.add(rttNanos / 1_000_000.0);
+            } else if (samples.isEmpty() && probesSent >= SILENT_PROBES_BEFORE_GIVING_UP) {
+                // Not answering at all says the hop filters probes, not that the link loses them
+                Log.d(TAG, hop + " doesn't answer probes, leaving it unmeasured");
+                break;
+            }
+        }
+        
+        double[] rttSamplesMs = new double[samples.size()];
+        for (int i = 0; i < rttSamplesMs.length; i++) {
+            rttSamplesMs[i] = samples.get(i);
+        }
+        String description = target.getAddress().getHostAddress() + ":" + target.getPort();
+        return new HopMetrics(hop, description, probesSent, rttSamplesMs);
+    }
+    
+    /**
+     * Send one probe; tests override this to stand in for hosts that drop probes
+     * @return the round trip in nanoseconds, or -1 if the target didn't answer in time
+     */
+    long probeOnce(InetSocketAddress target) {
+        return connectRttNanos(target, probeTimeoutMs);
+    }
+    
+    /**
+     * Time one TCP handshake with the target
+     * @return the round trip in nanoseconds, or -1 if the target didn't answer in time
+     */
+    static long connectRttNanos(InetSocketAddress target, int timeoutMs) {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(target, timeoutMs);
+            return System.nanoTime() - start;
+        } catch (ConnectException e) {
+            // A reset comes back from the host itself, so it is as good a reply as an accept
+            long elapsed = System.nanoTime() - start;
+            String message = e.getMessage();
+            boolean refused = message != null && (message.contains("refused") || message.contains("ECONNREFUSED"));
+            return refused && elapsed < timeoutMs * 1_000_000L ? elapsed : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Stop the probe threads
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
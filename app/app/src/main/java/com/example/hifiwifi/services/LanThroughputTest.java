@@ -0,0 +1,225 @@
+package com.example.hifiwifi.services;
+
+import android.util.Log;
+
+import com.example.hifiwifi.speedtest.DownloadSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Measures throughput between the phone and the Raspberry Pi over the local network.
+ * simple_api.py streams bytes from /throughput/download and discards bytes sent to
+ * /throughput/upload, so the result reflects the Wi-Fi link alone: a slow internet connection
+ * doesn't lower it, and the test uses no internet data.
+ * Runs synchronously; call from a background thread.
+ */
+public class LanThroughputTest {
+    
+    private static final String TAG = "LanThroughputTest";
+    private static final String DOWNLOAD_ENDPOINT = "/throughput/download";
+    private static final String UPLOAD_ENDPOINT = "/throughput/upload";
+    
+    private static final int CONNECTION_TIMEOUT = 2000;
+    private static final int READ_TIMEOUT = 5000;
+    
+    // Sized so a fast link takes a few seconds; each direction also stops at its time budget
+    static final long DEFAULT_DOWNLOAD_BYTES = 25L * 1024 * 1024;
+    static final long DEFAULT_UPLOAD_BYTES = 10L * 1024 * 1024;
+    static final long DEFAULT_MAX_DURATION_MS = 4000;
+    
+    private final String baseUrl;
+    private long downloadBytes = DEFAULT_DOWNLOAD_BYTES;
+    private long uploadBytes = DEFAULT_UPLOAD_BYTES;
+    private long maxDurationMs = DEFAULT_MAX_DURATION_MS;
+    private final DownloadSink downloadSink = new DownloadSink();
+    private ConnectionPhaseRecorder phaseRecorder; // Null unless the caller times the test's phases
+    
+    /**
+     * Throughput measured in each direction; a direction that failed reports 0
+     */
+    public static class Result {
+        private final double downloadMbps;
+        private final double uploadMbps;
+        private final long downloadedBytes;
+        private final long uploadedBytes;
+        
+        Result(double downloadMbps, double uploadMbps, long downloadedBytes, long uploadedBytes) {
+            this.downloadMbps = downloadMbps;
+            this.uploadMbps = uploadMbps;
+            this.downloadedBytes = downloadedBytes;
+            this.uploadedBytes = uploadedBytes;
+        }
+        
+        public double getDownloadMbps() {
+            return downloadMbps;
+        }
+        
+        public double getUploadMbps() {
+            return uploadMbps;
+        }
+        
+        public long getDownloadedBytes() {
+            return downloadedBytes;
+        }
+        
+        public long getUploadedBytes() {
+            return uploadedBytes;
+        }
+        
+        public boolean isSuccessful() {
+            return downloadMbps > 0 || uploadMbps > 0;
+        }
+    }
+    
+    /**
+     * @param baseUrl The Pi's API base URL, e.g. "http://192.168.1.100:5000"
+     */
+    public LanThroughputTest(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+    
+    /**
+     * Set how many bytes each direction transfers at most
+     */
+    public LanThroughputTest setTransferSize(long downloadBytes, long uploadBytes) {
+        this.downloadBytes = downloadBytes;
+        this.uploadBytes = uploadBytes;
+        return this;
+    }
+    
+    /**
+     * Set how long each direction may run before it is measured from the bytes moved so far
+     */
+    public LanThroughputTest setMaxDurationMs(long maxDurationMs) {
+        this.maxDurationMs = maxDurationMs;
+        return this;
+    }
+    
+    /**
+     * Add each direction's connect, first-byte and transfer time to the given recorder
+     */
+    public LanThroughputTest setPhaseRecorder(ConnectionPhaseRecorder phaseRecorder) {
+        this.phaseRecorder = phaseRecorder;
+        return this;
+    }
+    
+    /**
+     * Run the download test, then the upload test
+     */
+    public Result run() {
+        long[] downloaded = {0};
+        long[] uploaded = {0};
+        double downloadMbps = 0.0;
+        double uploadMbps = 0.0;
+        
+        try {
+            downloadMbps = measureDownload(downloaded);
+            Log.d(TAG, "LAN download: " + downloadMbps + " Mbps (" + downloaded[0] + " bytes)");
+        } catch (IOException e) {
+            Log.w(TAG, "LAN download test failed: " + e.getMessage());
+        }
+        
+        try {
+            uploadMbps = measureUpload(uploaded);
+            Log.d(TAG, "LAN upload: " + uploadMbps + " Mbps (" + uploaded[0] + " bytes)");
+        } catch (IOException e) {
+            Log.w(TAG, "LAN upload test failed: " + e.getMessage());
+        }
+        
+        return new Result(downloadMbps, uploadMbps, downloaded[0], uploaded[0]);
+    }
+    
+    private double measureDownload(long[] transferred) throws IOException {
+        HttpURLConnection connection = open(baseUrl + DOWNLOAD_ENDPOINT + "?bytes=" + downloadBytes);
+        try {
+            connection.setRequestMethod("GET");
+            long connectStart = System.nanoTime();
+            connection.connect();
+            long requestStart = System.nanoTime();
+            int responseCode = connection.getResponseCode();
+            long headersEnd = System.nanoTime();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + responseCode);
+            }
+            
+            // Timing starts once headers arrive, so connection setup doesn't count against the link
+            DownloadSink.Result download;
+            try (InputStream in = connection.getInputStream()) {
+                download = downloadSink.setMaxDurationMs(maxDurationMs).drain(in, null);
+            }
+            transferred[0] = download.getBytesRead();
+            if (phaseRecorder != null) {
+                phaseRecorder.recordRequest(requestStart - connectStart, headersEnd - requestStart,
+                    download.getElapsedNanos(), download.getBytesRead());
+            }
+            return download.getMbps();
+        } finally {
+            connection.disconnect();
+        }
+    }
+    
+    private double measureUpload(long[] transferred) throws IOException {
+        HttpURLConnection connection = open(baseUrl + UPLOAD_ENDPOINT);
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            // Chunked, so the upload can stop at the time budget without a short-body error
+            connection.setChunkedStreamingMode(64 * 1024);
+            
+            long connectStart = System.nanoTime();
+            connection.connect();
+            long connectNanos = System.nanoTime() - connectStart;
+            
+            byte[] buffer = new byte[64 * 1024];
+            long totalBytes = 0;
+            long startTime = System.nanoTime();
+            long deadline = startTime + maxDurationMs * 1_000_000L;
+            try (OutputStream out = connection.getOutputStream()) {
+                while (totalBytes < uploadBytes && System.nanoTime() < deadline) {
+                    int length = (int) Math.min(buffer.length, uploadBytes - totalBytes);
+                    out.write(buffer, 0, length);
+                    totalBytes += length;
+                }
+            }
+            long bodySent = System.nanoTime();
+            
+            // The Pi has every byte once it answers
+            int responseCode = connection.getResponseCode();
+            long answered = System.nanoTime();
+            long elapsedNanos = answered - startTime;
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + responseCode);
+            }
+            transferred[0] = totalBytes;
+            if (phaseRecorder != null) {
+                // The upload's body is the request's, so only its setup and the Pi's answer are phases
+                phaseRecorder.recordRequest(connectNanos, answered - bodySent, 0, 0);
+            }
+            return toMbps(totalBytes, elapsedNanos);
+        } finally {
+            connection.disconnect();
+        }
+    }
+    
+    private HttpURLConnection open(String urlString) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+        connection.setConnectTimeout(CONNECTION_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setUseCaches(false);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        connection.setRequestProperty("Cache-Control", "no-cache");
+        return connection;
+    }
+    
+    static double toMbps(long bytes, long elapsedNanos) {
+        if (bytes <= 0 || elapsedNanos <= 0) {
+            return 0.0;
+        }
+        return (bytes * 8.0) / (elapsedNanos / 1000.0);
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.hifiwifi.services;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.events.ClassificationChanged;
+import com.example.hifiwifi.events.MeasurementEventBus;
+import com.example.hifiwifi.events.MeasurementRecorded;
+import com.example.hifiwifi.models.NetworkMetrics;
+import com.example.hifiwifi.models.RoomMeasurement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The one measurement path of the process: a single WiFiMeasurementService shared by every screen.
+ * Requests wait in an admission queue and only one runs at a time, so tests from different
+ * screens never compete for the radio. A request identical to one already running or waiting
+ * is merged into it: the new subscriber receives the same results instead of starting a test.
+ * Each result is published to the MeasurementEventBus once, whoever subscribed.
+ * A single test whose subscribers all leave still holds the link until it finishes, since its
+ * download can't be interrupted; a continuous measurement is stopped as soon as nobody watches it.
+ * Either way the next request is only admitted once the service reports its run has stopped.
+ * Work outside the service, such as SimpleSpeedTest, waits in the same queue as a LinkTask.
+ * Call every method on the main thread; subscribers are called on the main thread too.
+ */
+public class MeasurementEngine {
+    
+    private static final String TAG = "MeasurementEngine";
+    
+    // Singleton instance
+    private static MeasurementEngine instance;
+    
+    /**
+     * Work outside WiFiMeasurementService that needs the link to itself
+     */
+    public interface LinkTask {
+        /**
+         * Start the work once admitted; call release on the main thread when it no longer uses the link
+         */
+        void start(Runnable release);
+    }
+    
+    /**
+     * A subscriber's place in a request; cancel it to stop receiving results
+     * Cancelling a LinkTask withdraws it if it is still waiting.
+     */
+    public class Ticket {
+        private final Request request;
+        private final WiFiMeasurementService.MeasurementCallback subscriber;
+        private Runnable onAdmitted;
+        
+        private Ticket(Request request, WiFiMeasurementService.MeasurementCallback subscriber) {
+            this.request = request;
+            this.subscriber = subscriber;
+        }
+        
+        public void cancel() {
+            onAdmitted = null;
+            unsubscribe(this);
+        }
+        
+        /**
+         * Whether the request is running, rather than waiting for the link
+         */
+        public boolean isRunning() {
+            return active == request;
+        }
+        
+        /**
+         * Run the given action once the request is admitted, or now if it is already running
+         */
+        public void setOnAdmitted(Runnable onAdmitted) {
+            if (isRunning()) {
+                onAdmitted.run();
+            } else {
+                this.onAdmitted = onAdmitted;
+                request.waitingTickets.add(this);
+            }
+        }
+    }
+    
+    /**
+     * One test to run, and everyone waiting for its results
+     */
+    private static class Request {
+        final boolean continuous;
+        final String roomName;
+        final String activityType;
+        final WiFiMeasurementService.ThroughputMode throughputMode;
+        final LinkTask task; // Null for tests run by the service
+        final List<WiFiMeasurementService.MeasurementCallback> subscribers = new ArrayList<>();
+        final List<Ticket> waitingTickets = new ArrayList<>(); // Tickets to tell when it is admitted
+        // Set once a new subscriber could get nothing from it: everyone left, or its result is out
+        boolean closed = false;
+        
+        Request(boolean continuous, String roomName, String activityType,
+                WiFiMeasurementService.ThroughputMode throughputMode, LinkTask task) {
+            this.continuous = continuous;
+            this.roomName = roomName;
+            this.activityType = activityType;
+            this.throughputMode = throughputMode;
+            this.task = task;
+        }
+        
+        boolean sameTestAs(Request other) {
+            return !closed
+                && task == null && other.task == null
+                && continuous == other.continuous
+                && Objects.equals(roomName, other.roomName)
+                && Objects.equals(activityType, other.activityType)
+                && (continuous || throughputMode == other.throughputMode);
+        }
+    }
+    
+    private final WiFiMeasurementService service;
+    private final MeasurementEventBus eventBus;
+    private final Deque<Request> waiting = new ArrayDeque<>();
+    private Request active;
+    
+    MeasurementEngine(WiFiMeasurementService service, MeasurementEventBus eventBus) {
+        this.service = service;
+        this.eventBus = eventBus;
+        this.service.setCallback(new WiFiMeasurementService.MeasurementCallback() {
+            @Override
+            public void onMeasurementUpdate(NetworkMetrics metrics) {
+                for (WiFiMeasurementService.MeasurementCallback subscriber : activeSubscribers()) {
+                    subscriber.onMeasurementUpdate(metrics);
+                }
+            }
+            
+            @Override
+            public void onMeasurementComplete(RoomMeasurement measurement) {
+                // Published once per test, however many screens subscribed to it
+                eventBus.publish(new MeasurementRecorded(measurement));
+                for (WiFiMeasurementService.MeasurementCallback subscriber : activeSubscribers()) {
+                    subscriber.onMeasurementComplete(measurement);
+                }
+                closeActiveSingleTest();
+            }
+            
+            @Override
+            public void onClassificationComplete(ClassificationResult classificationResult) {
+                eventBus.publish(new ClassificationChanged(classificationResult));
+                for (WiFiMeasurementService.MeasurementCallback subscriber : activeSubscribers()) {
+                    subscriber.onClassificationComplete(classificationResult);
+                }
+            }
+            
+            @Override
+            public void onError(String error) {
+                for (WiFiMeasurementService.MeasurementCallback subscriber : activeSubscribers()) {
+                    subscriber.onError(error);
+                }
+                // A continuous measurement keeps going after an error, a single test doesn't
+                closeActiveSingleTest();
+            }
+            
+            @Override
+            public void onMeasurementStopped() {
+                if (active != null && active.task == null) {
+                    release(active);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Get singleton instance shared by every screen
+     */
+    public static synchronized MeasurementEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new MeasurementEngine(new WiFiMeasurementService(context.getApplicationContext()),
+                MeasurementEventBus.getInstance());
+        }
+        return instance;
+    }
+    
+    /**
+     * Request a single speed test, or join an identical one that is running or waiting
+     */
+    public Ticket submitSingleTest(String roomName, String activityType,
+                                   WiFiMeasurementService.ThroughputMode throughputMode,
+                                   WiFiMeasurementService.MeasurementCallback subscriber) {
+        return submit(new Request(false, roomName, activityType, throughputMode, null), subscriber);
+    }
+    
+    /**
+     * Request continuous measurement, which holds the link until every subscriber cancels
+     */
+    public Ticket startContinuous(String roomName, String activityType,
+                                  WiFiMeasurementService.MeasurementCallback subscriber) {
+        return submit(new Request(true, roomName, activityType, null, null), subscriber);
+    }
+    
+    /**
+     * Queue work that needs the link to itself; it is never merged with another request
+     */
+    public Ticket submitTask(String roomName, LinkTask task) {
+        Request request = new Request(false, roomName, null, null, task);
+        waiting.add(request);
+        Ticket ticket = new Ticket(request, null);
+        admitNext();
+        return ticket;
+    }
+    
+    private Ticket submit(Request request, WiFiMeasurementService.MeasurementCallback subscriber) {
+        Request target = findSameTest(request);
+        if (target != null) {
+            Log.d(TAG, "Merging request for room " + request.roomName + " into one already "
+                + (target == active ? "running" : "waiting"));
+        } else {
+            target = request;
+            waiting.add(target);
+        }
+        target.subscribers.add(subscriber);
+        Ticket ticket = new Ticket(target, subscriber);
+        admitNext();
+        return ticket;
+    }
+    
+    private Request findSameTest(Request request) {
+        if (active != null && active.sameTestAs(request)) {
+            return active;
+        }
+        for (Request queued : waiting) {
+            if (queued.sameTestAs(request)) {
+                return queued;
+            }
+        }
+        return null;
+    }
+    
+    private void unsubscribe(Ticket ticket) {
+        Request request = ticket.request;
+        if (request.task != null) {
+            // A task that started owns the link until it releases it
+            if (request != active) {
+                waiting.remove(request);
+            }
+            return;
+        }
+        if (!request.subscribers.remove(ticket.subscriber) || !request.subscribers.isEmpty()) {
+            return;
+        }
+        
+        request.closed = true;
+        if (request != active) {
+            waiting.remove(request);
+        } else if (request.continuous) {
+            Log.d(TAG, "Nobody watches continuous measurement of " + request.roomName + ", stopping it");
+            service.stopMeasurement();
+        }
+        // The request stays active until the service reports its run has stopped
+    }
+    
+    /**
+     * Start the next waiting request if the link is free
+     */
+    private void admitNext() {
+        if (active != null || waiting.isEmpty()) {
+            return;
+        }
+        
+        active = waiting.poll();
+        Request admitted = active;
+        Log.d(TAG, "Admitting " + (active.task != null ? "task" : active.continuous ? "continuous measurement" : "single test")
+            + " for room " + active.roomName + ", " + waiting.size() + " waiting");
+        if (active.task != null) {
+            admitted.task.start(() -> release(admitted));
+        } else if (active.continuous) {
+            service.startMeasurement(active.roomName, active.activityType);
+        } else {
+            service.setThroughputMode(active.throughputMode);
+            service.startSingleSpeedTest(active.roomName, active.activityType);
+        }
+        
+        // Told after the start, so a ticket cancelled from its action stops a running request
+        List<Ticket> tickets = new ArrayList<>(admitted.waitingTickets);
+        admitted.waitingTickets.clear();
+        for (Ticket ticket : tickets) {
+            Runnable onAdmitted = ticket.onAdmitted;
+            ticket.onAdmitted = null;
+            if (onAdmitted != null) {
+                onAdmitted.run();
+            }
+        }
+    }
+    
+    /**
+     * A single test that delivered its result takes no more subscribers, though it holds the
+     * link until the service reports its run has stopped
+     */
+    private void closeActiveSingleTest() {
+        if (active != null && !active.continuous) {
+            active.closed = true;
+        }
+    }
+    
+    /**
+     * Free the link held by the given request and admit the next one
+     */
+    private void release(Request finished) {
+        if (active != finished) {
+            return;
+        }
+        active = null;
+        admitNext();
+    }
+    
+    /**
+     * A copy, so a subscriber may cancel while being called
+     */
+    private List<WiFiMeasurementService.MeasurementCallback> activeSubscribers() {
+        return active != null ? new ArrayList<>(active.subscribers) : new ArrayList<>();
+    }
+    
+    /**
+     * Whether a test is using the link
+     */
+    public boolean isBusy() {
+        return active != null;
+    }
+    
+    /**
+     * Number of requests waiting for the link
+     */
+    public int getWaitingCount() {
+        return waiting.size();
+    }
+    
+    /**
+     * Get current signal strength in dBm
+     */
+    public int getCurrentSignalStrength() {
+        return service.getCurrentSignalStrength();
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.hifiwifi.services;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Durable queue of /analyze payloads waiting for the Pi to become reachable.
+ * Entries are keyed by room and activity, so a newer measurement replaces one still waiting for
+ * the same room and activity. The queue is kept in memory and rewritten to a file on a
+ * background thread after each change, so pending measurements survive the app being killed.
+ * Adding, leasing and counting run on that thread behind the initial load, so the asynchronous
+ * forms never wait for the disk; the blocking forms are for background threads and tests.
+ */
+public class OutboundQueue {
+    
+    private static final String TAG = "OutboundQueue";
+    private static final String QUEUE_FILE = "outbound_analyze_queue.json";
+    
+    // Oldest entries are dropped beyond this, so a long offline survey can't grow the file unbounded
+    static final int MAX_ENTRIES = 100;
+    // Entries that keep failing once the Pi is reachable are dropped after this many attempts
+    static final int MAX_ATTEMPTS = 5;
+    
+    // Singleton instance
+    private static OutboundQueue instance;
+    
+    private final File file;
+    private final Gson gson = new Gson();
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OutboundQueue-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Pending entries in arrival order, guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    private boolean writeScheduled = false;
+    
+    /**
+     * A queued measurement and its delivery state
+     */
+    public static class Entry {
+        String key;
+        HTTPService.AnalyzeRequest.Measurement measurement;
+        long enqueuedAt;
+        int attempts;
+        transient boolean leased;
+        
+        public HTTPService.AnalyzeRequest.Measurement getMeasurement() {
+            return measurement;
+        }
+        
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+        
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+    
+    /**
+     * Create a queue persisted to the given file; existing entries are loaded in the background
+     */
+    public OutboundQueue(File file) {
+        this.file = file;
+        ioExecutor.execute(this::load);
+    }
+    
+    /**
+     * Get singleton instance shared by every HTTPService
+     */
+    public static synchronized OutboundQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new OutboundQueue(new File(context.getApplicationContext().getFilesDir(), QUEUE_FILE));
+        }
+        return instance;
+    }
+    
+    /**
+     * Queue a measurement, replacing any waiting measurement for the same room and activity
+     * Returns at once; the measurement is added on the IO thread.
+     */
+    public void enqueue(HTTPService.AnalyzeRequest.Measurement measurement) {
+        ioExecutor.execute(() -> add(measurement));
+    }
+    
+    private void add(HTTPService.AnalyzeRequest.Measurement measurement) {
+        synchronized (this) {
+            Entry entry = new Entry();
+            entry.key = keyOf(measurement);
+            entry.measurement = measurement;
+            entry.enqueuedAt = System.currentTimeMillis();
+            
+            // Re-inserting moves the entry to the back, behind measurements that have waited longer
+            Entry replaced = entries.remove(entry.key);
+            if (replaced != null) {
+                Log.d(TAG, "Coalesced queued measurement for " + entry.key);
+            }
+            entries.put(entry.key, entry);
+            
+            Iterator<Entry> oldest = entries.values().iterator();
+            while (entries.size() > MAX_ENTRIES && oldest.hasNext()) {
+                Entry dropped = oldest.next();
+                if (!dropped.leased) {
+                    oldest.remove();
+                    Log.w(TAG, "Queue full, dropped measurement for " + dropped.key);
+                }
+            }
+            scheduleWrite();
+        }
+    }
+    
+    /**
+     * Take up to max entries for delivery; they stay queued until acknowledged or released
+     * @param callback receives the entries on the IO thread
+     */
+    public void lease(int max, Consumer<List<Entry>> callback) {
+        ioExecutor.execute(() -> callback.accept(leaseNow(max)));
+    }
+    
+    /**
+     * Blocking form of lease(int, Consumer); don't call on the main thread
+     */
+    public List<Entry> lease(int max) {
+        List<Entry> batch = await(() -> leaseNow(max));
+        return batch != null ? batch : new ArrayList<>();
+    }
+    
+    private List<Entry> leaseNow(int max) {
+        synchronized (this) {
+            List<Entry> batch = new ArrayList<>(Math.min(max, entries.size()));
+            for (Entry entry : entries.values()) {
+                if (batch.size() >= max) {
+                    break;
+                }
+                if (!entry.leased) {
+                    entry.leased = true;
+                    batch.add(entry);
+                }
+            }
+            return batch;
+        }
+    }
+    
+    /**
+     * Return an entry that was leased but never sent, without counting an attempt
+     */
+    public void unlease(Entry entry) {
+        synchronized (this) {
+            entry.leased = false;
+        }
+    }
+    
+    /**
+     * Remove an entry that was delivered
+     * A newer measurement that replaced it while it was in flight stays queued.
+     */
+    public void acknowledge(Entry entry) {
+        synchronized (this) {
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+                scheduleWrite();
+            }
+        }
+    }
+    
+    /**
+     * Return an entry whose delivery failed, dropping it once it has used up its attempts
+     * @return true if the entry will be retried
+     */
+    public boolean release(Entry entry) {
+        synchronized (this) {
+            entry.leased = false;
+            entry.attempts++;
+            if (entries.get(entry.key) != entry) {
+                return false;
+            }
+            if (entry.attempts >= MAX_ATTEMPTS) {
+                entries.remove(entry.key);
+                Log.w(TAG, "Giving up on measurement for " + entry.key + " after " + entry.attempts + " attempts");
+                scheduleWrite();
+                return false;
+            }
+            scheduleWrite();
+            return true;
+        }
+    }
+    
+    /**
+     * Number of measurements waiting, including any being delivered
+     * @param callback receives the count on the IO thread
+     */
+    public void size(Consumer<Integer> callback) {
+        ioExecutor.execute(() -> callback.accept(sizeNow()));
+    }
+    
+    /**
+     * Blocking form of size(Consumer); don't call on the main thread
+     */
+    public int size() {
+        Integer size = await(this::sizeNow);
+        return size != null ? size : 0;
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    private synchronized int sizeNow() {
+        return entries.size();
+    }
+    
+    /**
+     * Drop every queued measurement
+     */
+    public void clear() {
+        ioExecutor.execute(() -> {
+            synchronized (this) {
+                entries.clear();
+                scheduleWrite();
+            }
+        });
+    }
+    
+    /**
+     * Wait for any pending write to reach disk; don't call on the main thread
+     */
+    public void flush() {
+        await(() -> {
+            // Changes queued before the flush may have scheduled their write behind it
+            boolean pending;
+            synchronized (this) {
+                pending = writeScheduled;
+            }
+            if (pending) {
+                write();
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Run a task on the IO thread, after the load and every change queued before it, and wait for it
+     * @return the task's result, or null if it failed or the wait was interrupted
+     */
+    private <T> T await(Callable<T> task) {
+        try {
+            return ioExecutor.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Queue operation failed", e.getCause());
+        }
+        return null;
+    }
+    
+    private static String keyOf(HTTPService.AnalyzeRequest.Measurement measurement) {
+        return measurement.roomName + "|" + measurement.activityType;
+    }
+    
+    /**
+     * Write the queue once the IO thread gets to it, so a burst of changes costs one write
+     */
+    private void scheduleWrite() {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        ioExecutor.execute(this::write);
+    }
+    
+    private void write() {
+        String json;
+        synchronized (this) {
+            writeScheduled = false;
+            json = gson.toJson(new ArrayList<>(entries.values()));
+        }
+        
+        // Write a temporary file and rename it, so a crash mid-write never loses the old queue
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write queue", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace queue file");
+        }
+    }
+    
+    private void load() {
+        try {
+            if (!file.exists()) {
+                return;
+            }
+            byte[] bytes;
+            try (InputStream in = new FileInputStream(file)) {
+                bytes = new byte[(int) file.length()];
+                int read = 0;
+                while (read < bytes.length) {
+                    int count = in.read(bytes, read, bytes.length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+            }
+            Type listType = new TypeToken<List<Entry>>(){}.getType();
+            List<Entry> stored = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), listType);
+            if (stored == null) {
+                return;
+            }
+            synchronized (this) {
+                for (Entry entry : stored) {
+                    if (entry != null && entry.key != null && entry.measurement != null) {
+                        entries.put(entry.key, entry);
+                    }
+                }
+            }
+            Log.d(TAG, "Loaded " + stored.size() + " queued measurement(s)");
+        } catch (IOException | JsonParseException e) {
+            Log.e(TAG, "Failed to load queue", e);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.hifiwifi.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.DhcpInfo;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Finds the Raspberry Pi on the local network.
+ * Health checks against the last endpoint that worked and the configured default start at once,
+ * while a UDP broadcast asks simple_api.py's beacon where it is; every endpoint a beacon names is
+ * health-checked too. The first endpoint to pass wins and is remembered for next time, and the
+ * remaining checks are cancelled.
+ */
+public class PiDiscovery {
+    
+    private static final String TAG = "PiDiscovery";
+    private static final String PREFS_NAME = "pi_discovery";
+    private static final String LAST_BASE_URL_KEY = "last_base_url";
+    
+    // Must match simple_api.py
+    static final int BEACON_PORT = 5001;
+    static final String BEACON_REQUEST = "HIFIWIFI_DISCOVER";
+    static final String BEACON_SERVICE = "hifiwifi";
+    static final String HEALTH_SERVICE = "WiFi Optimization API";
+    
+    // A LAN health check answers in milliseconds; anything slower is the wrong address
+    private static final long PROBE_TIMEOUT_MS = 800;
+    private static final int BEACON_LISTEN_MS = 1500;
+    private static final long DISCOVERY_DEADLINE_MS = 3000;
+    
+    /**
+     * Receives the outcome of a discovery on the main thread
+     */
+    public interface DiscoveryCallback {
+        void onPiFound(String baseUrl, long elapsedMs);
+        void onDiscoveryFailed(String error);
+    }
+    
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final OkHttpClient probeClient;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    // State of the current discovery, only touched on the main thread
+    private final List<Call> probes = new ArrayList<>();
+    private final Set<String> probed = new LinkedHashSet<>();
+    private DiscoveryCallback callback;
+    private DatagramSocket beaconSocket;
+    private Runnable deadline;
+    private long startedAt;
+    
+    public PiDiscovery(Context context) {
+        this.context = context.getApplicationContext();
+        this.preferences = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.probeClient = new OkHttpClient.Builder()
+                .connectTimeout(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .readTimeout(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .callTimeout(PROBE_TIMEOUT_MS * 2, TimeUnit.MILLISECONDS)
+                .build();
+    }
+    
+    /**
+     * The last endpoint that passed a health check, or null if none has yet
+     */
+    public String getCachedBaseUrl() {
+        return preferences.getString(LAST_BASE_URL_KEY, null);
+    }
+    
+    /**
+     * The last endpoint that passed a health check, without starting a discovery
+     */
+    public static String getCachedBaseUrl(Context context) {
+        return context.getApplicationContext()
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+            .getString(LAST_BASE_URL_KEY, null);
+    }
+    
+    /**
+     * Race the cached endpoint, the given fallbacks and any beacon replies
+     * Call on the main thread; a discovery already running is cancelled.
+     */
+    public void discover(List<String> fallbackBaseUrls, DiscoveryCallback callback) {
+        cancel();
+        this.callback = callback;
+        this.startedAt = SystemClock.elapsedRealtime();
+        
+        List<String> candidates = new ArrayList<>();
+        candidates.add(getCachedBaseUrl());
+        candidates.addAll(fallbackBaseUrls);
+        for (String candidate : candidates) {
+            probe(candidate);
+        }
+        startBeacon();
+        
+        deadline = () -> finish(null, "No Raspberry Pi answered within " + DISCOVERY_DEADLINE_MS + " ms");
+        mainHandler.postDelayed(deadline, DISCOVERY_DEADLINE_MS);
+    }
+    
+    /**
+     * Stop the current discovery without reporting a result
+     */
+    public void cancel() {
+        callback = null;
+        for (Call call : probes) {
+            call.cancel();
+        }
+        probes.clear();
+        probed.clear();
+        if (beaconSocket != null) {
+            beaconSocket.close();
+            beaconSocket = null;
+        }
+        if (deadline != null) {
+            mainHandler.removeCallbacks(deadline);
+            deadline = null;
+        }
+    }
+    
+    /**
+     * Health-check a candidate endpoint, once per discovery
+     */
+    private void probe(String baseUrl) {
+        if (baseUrl == null || callback == null || !probed.add(baseUrl)) {
+            return;
+        }
+        Request request;
+        try {
+            request = new Request.Builder().url(baseUrl + "/health").get().build();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Skipping invalid endpoint " + baseUrl);
+            return;
+        }
+        
+        Log.d(TAG, "Probing " + baseUrl);
+        Call call = probeClient.newCall(request);
+        probes.add(call);
+        call.enqueue(new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) {
+                boolean found;
+                try {
+                    found = isPiHealthResponse(response.code(),
+                        response.body() != null ? response.body().string() : null);
+                } catch (IOException e) {
+                    found = false;
+                } finally {
+                    response.close();
+                }
+                if (found) {
+                    mainHandler.post(() -> finish(baseUrl, null));
+                } else {
+                    Log.d(TAG, "Endpoint " + baseUrl + " answered, but isn't the Pi");
+                }
+            }
+            
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled()) {
+                    Log.d(TAG, "Probe of " + baseUrl + " failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Broadcast a discovery request and probe every endpoint that answers
+     */
+    private void startBeacon() {
+        DatagramSocket socket;
+        try {
+            socket = new DatagramSocket();
+            socket.setBroadcast(true);
+            socket.setSoTimeout(BEACON_LISTEN_MS);
+        } catch (SocketException e) {
+            Log.w(TAG, "Beacon discovery unavailable", e);
+            return;
+        }
+        beaconSocket = socket;
+        
+        Thread thread = new Thread(() -> {
+            byte[] request = BEACON_REQUEST.getBytes(StandardCharsets.UTF_8);
+            byte[] buffer = new byte[512];
+            try {
+                for (InetAddress address : broadcastAddresses()) {
+                    socket.send(new DatagramPacket(request, request.length, address, BEACON_PORT));
+                }
+                long listenUntil = SystemClock.elapsedRealtime() + BEACON_LISTEN_MS;
+                while (SystemClock.elapsedRealtime() < listenUntil) {
+                    DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(reply);
+                    String baseUrl = parseBeaconReply(reply.getAddress().getHostAddress(),
+                        new String(reply.getData(), 0, reply.getLength(), StandardCharsets.UTF_8));
+                    if (baseUrl != null) {
+                        Log.d(TAG, "Beacon answered from " + baseUrl);
+                        mainHandler.post(() -> {
+                            if (beaconSocket == socket) {
+                                probe(baseUrl);
+                            }
+                        });
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                // Listening window over
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    Log.w(TAG, "Beacon discovery failed", e);
+                }
+            } finally {
+                socket.close();
+            }
+        }, "PiDiscovery-beacon");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * The Wi-Fi subnet's broadcast address when known, plus the limited broadcast address
+     */
+    private List<InetAddress> broadcastAddresses() throws IOException {
+        List<InetAddress> addresses = new ArrayList<>(2);
+        WifiManager wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+        DhcpInfo dhcp = wifiManager != null ? wifiManager.getDhcpInfo() : null;
+        if (dhcp != null && dhcp.ipAddress != 0 && dhcp.netmask != 0) {
+            int broadcast = (dhcp.ipAddress & dhcp.netmask) | ~dhcp.netmask;
+            // DhcpInfo stores addresses in little-endian order
+            addresses.add(InetAddress.getByAddress(new byte[] {
+                (byte) broadcast, (byte) (broadcast >> 8), (byte) (broadcast >> 16), (byte) (broadcast >> 24)}));
+        }
+        addresses.add(InetAddress.getByName("255.255.255.255"));
+        return addresses;
+    }
+    
+    /**
+     * Turn a beacon reply into a base URL
+     * @return the endpoint, or null if the reply isn't from simple_api.py
+     */
+    static String parseBeaconReply(String senderAddress, String reply) {
+        try {
+            JsonObject json = JsonParser.parseString(reply).getAsJsonObject();
+            if (!json.has("service") || !BEACON_SERVICE.equals(json.get("service").getAsString())) {
+                return null;
+            }
+            int port = json.has("port") ? json.get("port").getAsInt() : 5000;
+            if (port <= 0 || port > 65535) {
+                return null;
+            }
+            return "http://" + senderAddress + ":" + port;
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException | NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether a /health reply comes from simple_api.py, rather than another service on the address
+     * 503 is the Pi with Ollama down: the right address, which checkHealth() then reports.
+     */
+    static boolean isPiHealthResponse(int code, String body) {
+        boolean answered = (code >= 200 && code < 300) || code == 503;
+        if (!answered || body == null) {
+            return false;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(body).getAsJsonObject();
+            return json.has("service") && HEALTH_SERVICE.equals(json.get("service").getAsString());
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+    
+    private void finish(String baseUrl, String error) {
+        DiscoveryCallback current = callback;
+        if (current == null) {
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        cancel();
+        if (baseUrl != null) {
+            Log.i(TAG, "Raspberry Pi found at " + baseUrl + " in " + elapsed + " ms");
+            preferences.edit().putString(LAST_BASE_URL_KEY, baseUrl).apply();
+            current.onPiFound(baseUrl, elapsed);
+        } else {
+            Log.w(TAG, error);
+            current.onDiscoveryFailed(error);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.hifiwifi.services;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.events.ClassificationChanged;
+import com.example.hifiwifi.events.MeasurementEventBus;
+import com.example.hifiwifi.events.QueuedAnalysisReceived;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The HTTP sync subscriber of the MeasurementEventBus: sends each room's changed classification
+ * to the Raspberry Pi for analysis.
+ * Classifications go through HTTPService's outbound queue, so they wait on disk while the Pi is
+ * away and a room measured again before the upload keeps only its latest classification.
+ * A classification whose grades match the last one sent for its room and activity is skipped.
+ * PiSync owns the queue's replay, whoever queued a measurement, and publishes every analysis it
+ * gets back as a QueuedAnalysisReceived event.
+ */
+public class PiSync {
+    
+    private static final String TAG = "PiSync";
+    
+    // Singleton instance
+    private static PiSync instance;
+    
+    private final HTTPService httpService;
+    private final MeasurementEventBus.Subscription<ClassificationChanged> subscription;
+    // Last grades sent per room and activity; only touched on the sync thread
+    private final Map<String, String> lastSent = new HashMap<>();
+    
+    PiSync(HTTPService httpService, MeasurementEventBus eventBus, ExecutorService executor) {
+        this.httpService = httpService;
+        httpService.ownReplay((measurement, response) ->
+            eventBus.publish(new QueuedAnalysisReceived(measurement, response)));
+        // Its own thread, since queueing writes to disk; a backlog keeps the newest changes
+        this.subscription = eventBus.subscribe(ClassificationChanged.class, executor,
+            event -> sync(event.getResult()));
+    }
+    
+    /**
+     * Get singleton instance, subscribing it to the event bus on first use
+     * Call on the main thread.
+     */
+    public static synchronized PiSync getInstance(Context context) {
+        if (instance == null) {
+            ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new PiSync(new HTTPService(context.getApplicationContext()),
+                MeasurementEventBus.getInstance(), executor);
+        }
+        return instance;
+    }
+    
+    private void sync(ClassificationResult result) {
+        MetricClassification metrics = result.getMetricClassification();
+        if (metrics == null) {
+            return;
+        }
+        String frequency = result.getFrequencyBand() != null ? result.getFrequencyBand() : "unknown";
+        String grades = metrics.getSignalStrengthClassification().name()
+            + "," + metrics.getLatencyClassification().name()
+            + "," + metrics.getBandwidthClassification().name()
+            + "," + metrics.getJitterClassification().name()
+            + "," + metrics.getPacketLossClassification().name()
+            + "," + frequency;
+        String key = result.getRoomName() + "|" + result.getActivityType();
+        if (grades.equals(lastSent.put(key, grades))) {
+            return;
+        }
+        
+        Log.d(TAG, "Queueing classification of " + key + " for the Pi");
+        httpService.enqueueAnalysis(
+            result.getRoomName(),
+            result.getActivityType(),
+            metrics.getSignalStrengthClassification().name(),
+            metrics.getLatencyClassification().name(),
+            metrics.getBandwidthClassification().name(),
+            metrics.getJitterClassification().name(),
+            metrics.getPacketLossClassification().name(),
+            frequency
+        );
+    }
+    
+    /**
+     * Number of classifications dropped because the sync thread fell behind
+     */
+    public long getDroppedCount() {
+        return subscription.getDroppedCount();
+    }
+}
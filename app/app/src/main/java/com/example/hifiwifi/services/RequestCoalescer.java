@@ -0,0 +1,142 @@
+package com.example.hifiwifi.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight deduplication for SLM requests.
+ * Callers making the same request while an identical one is in flight join it instead of
+ * issuing another network call, and every caller receives the one result.
+ */
+public class RequestCoalescer {
+    
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private final AtomicLong issuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    
+    /**
+     * Join the flight for a request fingerprint
+     * @return a callback the caller must complete with the request's result if it is the first
+     *         caller for the fingerprint, or null if it joined a request already in flight
+     */
+    public HTTPService.HTTPCallback join(String fingerprint, HTTPService.HTTPCallback callback) {
+        synchronized (inFlight) {
+            Flight flight = inFlight.get(fingerprint);
+            if (flight != null) {
+                flight.callbacks.add(callback);
+                coalescedCount.incrementAndGet();
+                return null;
+            }
+            flight = new Flight(fingerprint);
+            flight.callbacks.add(callback);
+            inFlight.put(fingerprint, flight);
+            issuedCount.incrementAndGet();
+            return flight;
+        }
+    }
+    
+    /**
+     * End a flight early if no caller is waiting on it, e.g. to cancel a speculative request
+     * A caller asking for the same request afterwards starts a new flight.
+     * @return true if the flight was removed, false if someone joined it or it already finished
+     */
+    public boolean abandon(String fingerprint, HTTPService.HTTPCallback flight) {
+        synchronized (inFlight) {
+            Flight current = inFlight.get(fingerprint);
+            if (current == null || current != flight) {
+                return false;
+            }
+            for (HTTPService.HTTPCallback callback : current.callbacks) {
+                if (callback != null) {
+                    return false;
+                }
+            }
+            inFlight.remove(fingerprint);
+            return true;
+        }
+    }
+    
+    /**
+     * Number of requests that went to the network
+     */
+    public long getIssuedCount() {
+        return issuedCount.get();
+    }
+    
+    /**
+     * Number of requests that shared another caller's network call
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+    
+    /**
+     * Number of distinct requests currently in flight
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+    
+    /**
+     * Callback for one in-flight request that fans its result out to every joined caller.
+     * The first result ends the flight, so later callers start a new request.
+     */
+    private class Flight implements HTTPService.HTTPCallback {
+        private final String fingerprint;
+        private final List<HTTPService.HTTPCallback> callbacks = new ArrayList<>(2);
+        
+        Flight(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+        
+        private List<HTTPService.HTTPCallback> finish() {
+            synchronized (inFlight) {
+                if (inFlight.get(fingerprint) == this) {
+                    inFlight.remove(fingerprint);
+                }
+                return new ArrayList<>(callbacks);
+            }
+        }
+        
+        @Override
+        public void onAnalysisReceived(HTTPService.AnalyzeResponse response) {
+            for (HTTPService.HTTPCallback callback : finish()) {
+                if (callback != null) {
+                    callback.onAnalysisReceived(response);
+                }
+            }
+        }
+        
+        @Override
+        public void onExplanationReceived(String explanation) {
+            for (HTTPService.HTTPCallback callback : finish()) {
+                if (callback != null) {
+                    callback.onExplanationReceived(explanation);
+                }
+            }
+        }
+        
+        @Override
+        public void onHealthCheckSuccess() {
+            for (HTTPService.HTTPCallback callback : finish()) {
+                if (callback != null) {
+                    callback.onHealthCheckSuccess();
+                }
+            }
+        }
+        
+        @Override
+        public void onError(String error) {
+            for (HTTPService.HTTPCallback callback : finish()) {
+                if (callback != null) {
+                    callback.onError(error);
+                }
+            }
+        }
+    }
+}
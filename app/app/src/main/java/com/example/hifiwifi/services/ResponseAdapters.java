@@ -0,0 +1,475 @@
+package com.example.hifiwifi.services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Hand-written streaming Gson adapters for the SLM response DTOs.
+ * They read each response in one pass without reflection or an intermediate JsonObject tree,
+ * and pull the message out of nested JSON payloads while parsing so it never has to be re-parsed.
+ * Unknown fields are skipped, and values of an unexpected type read as null rather than failing.
+ */
+public final class ResponseAdapters {
+    
+    /**
+     * Shared Gson with the response adapters registered; Gson is thread-safe, so create it once
+     */
+    public static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(HTTPService.AnalyzeResponse.class, new AnalyzeResponseAdapter())
+        .registerTypeAdapter(HTTPService.ExplainResponse.class, new ExplainResponseAdapter())
+        .registerTypeAdapter(HTTPService.ChatResponse.class, new ChatResponseAdapter())
+        .create();
+    
+    private ResponseAdapters() {
+    }
+    
+    /**
+     * Adapter for /analyze responses
+     */
+    static class AnalyzeResponseAdapter extends TypeAdapter<HTTPService.AnalyzeResponse> {
+        @Override
+        public HTTPService.AnalyzeResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status":
+                        response.status = readString(in);
+                        break;
+                    case "error":
+                        response.error = readString(in);
+                        break;
+                    case "recommendation":
+                        response.recommendation = readRecommendation(in);
+                        break;
+                    case "analysis":
+                        response.analysis = readAnalysis(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+        
+        private HTTPService.AnalyzeResponse.Recommendation readRecommendation(JsonReader in) throws IOException {
+            if (!beginObjectOrSkip(in)) {
+                return null;
+            }
+            HTTPService.AnalyzeResponse.Recommendation recommendation = new HTTPService.AnalyzeResponse.Recommendation();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "action":
+                        recommendation.action = readString(in);
+                        break;
+                    case "reason":
+                        recommendation.reason = readString(in);
+                        break;
+                    case "message":
+                        recommendation.message = readString(in);
+                        break;
+                    case "priority":
+                        recommendation.priority = readString(in);
+                        break;
+                    case "target_location":
+                        recommendation.target_location = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return recommendation;
+        }
+        
+        private HTTPService.AnalyzeResponse.Analysis readAnalysis(JsonReader in) throws IOException {
+            if (!beginObjectOrSkip(in)) {
+                return null;
+            }
+            HTTPService.AnalyzeResponse.Analysis analysis = new HTTPService.AnalyzeResponse.Analysis();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "location":
+                        analysis.location = readString(in);
+                        break;
+                    case "activity":
+                        analysis.activity = readString(in);
+                        break;
+                    case "current_quality":
+                        analysis.current_quality = readString(in);
+                        break;
+                    case "metrics":
+                        analysis.metrics = readMetrics(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return analysis;
+        }
+        
+        private HTTPService.AnalyzeResponse.Analysis.Metrics readMetrics(JsonReader in) throws IOException {
+            if (!beginObjectOrSkip(in)) {
+                return null;
+            }
+            HTTPService.AnalyzeResponse.Analysis.Metrics metrics = new HTTPService.AnalyzeResponse.Analysis.Metrics();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "signal_strength":
+                        metrics.signal_strength = readString(in);
+                        break;
+                    case "latency":
+                        metrics.latency = readString(in);
+                        break;
+                    case "bandwidth":
+                        metrics.bandwidth = readString(in);
+                        break;
+                    case "jitter":
+                        metrics.jitter = readString(in);
+                        break;
+                    case "packet_loss":
+                        metrics.packet_loss = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return metrics;
+        }
+        
+        @Override
+        public void write(JsonWriter out, HTTPService.AnalyzeResponse response) throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(response.status);
+            if (response.recommendation != null) {
+                HTTPService.AnalyzeResponse.Recommendation recommendation = response.recommendation;
+                out.name("recommendation").beginObject();
+                out.name("action").value(recommendation.action);
+                out.name("reason").value(recommendation.reason);
+                out.name("message").value(recommendation.message);
+                out.name("priority").value(recommendation.priority);
+                out.name("target_location").value(recommendation.target_location);
+                out.endObject();
+            }
+            if (response.analysis != null) {
+                HTTPService.AnalyzeResponse.Analysis analysis = response.analysis;
+                out.name("analysis").beginObject();
+                out.name("location").value(analysis.location);
+                out.name("activity").value(analysis.activity);
+                out.name("current_quality").value(analysis.current_quality);
+                if (analysis.metrics != null) {
+                    out.name("metrics").beginObject();
+                    out.name("signal_strength").value(analysis.metrics.signal_strength);
+                    out.name("latency").value(analysis.metrics.latency);
+                    out.name("bandwidth").value(analysis.metrics.bandwidth);
+                    out.name("jitter").value(analysis.metrics.jitter);
+                    out.name("packet_loss").value(analysis.metrics.packet_loss);
+                    out.endObject();
+                }
+                out.endObject();
+            }
+            out.name("error").value(response.error);
+            out.endObject();
+        }
+    }
+    
+    /**
+     * Adapter for /explain responses
+     * The explanation is extracted from a nested JSON payload as the response is read.
+     */
+    static class ExplainResponseAdapter extends TypeAdapter<HTTPService.ExplainResponse> {
+        @Override
+        public HTTPService.ExplainResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            HTTPService.ExplainResponse response = new HTTPService.ExplainResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status":
+                        response.status = readString(in);
+                        break;
+                    case "error":
+                        response.error = readString(in);
+                        break;
+                    case "explanation":
+                        readExplanation(in, response);
+                        break;
+                    case "metadata":
+                        response.metadata = readMetadata(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+        
+        /**
+         * Read the explanation and the message inside it
+         * The payload normally arrives as a string of JSON, which is streamed as soon as it is read;
+         * if it arrives as an embedded object it is read in place from the same stream.
+         */
+        private void readExplanation(JsonReader in, HTTPService.ExplainResponse response) throws IOException {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) {
+                NestedMessage nested = NestedMessage.read(in);
+                response.message = nested.recommendationMessage();
+                response.explanation = response.message;
+                return;
+            }
+            response.explanation = readString(in);
+            NestedMessage nested = NestedMessage.parse(response.explanation);
+            response.message = nested != null ? nested.recommendationMessage() : null;
+        }
+        
+        private HTTPService.ExplainResponse.Metadata readMetadata(JsonReader in) throws IOException {
+            if (!beginObjectOrSkip(in)) {
+                return null;
+            }
+            HTTPService.ExplainResponse.Metadata metadata = new HTTPService.ExplainResponse.Metadata();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "location":
+                        metadata.location = readString(in);
+                        break;
+                    case "activity":
+                        metadata.activity = readString(in);
+                        break;
+                    case "recommendation":
+                        metadata.recommendation = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return metadata;
+        }
+        
+        @Override
+        public void write(JsonWriter out, HTTPService.ExplainResponse response) throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(response.status);
+            out.name("explanation").value(response.explanation);
+            if (response.metadata != null) {
+                out.name("metadata").beginObject();
+                out.name("location").value(response.metadata.location);
+                out.name("activity").value(response.metadata.activity);
+                out.name("recommendation").value(response.metadata.recommendation);
+                out.endObject();
+            }
+            out.name("error").value(response.error);
+            out.endObject();
+        }
+    }
+    
+    /**
+     * Adapter for /chat responses
+     */
+    static class ChatResponseAdapter extends TypeAdapter<HTTPService.ChatResponse> {
+        @Override
+        public HTTPService.ChatResponse read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            HTTPService.ChatResponse response = new HTTPService.ChatResponse();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "status":
+                        response.status = readString(in);
+                        break;
+                    case "response":
+                        response.response = readString(in);
+                        break;
+                    case "error":
+                        response.error = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return response;
+        }
+        
+        @Override
+        public void write(JsonWriter out, HTTPService.ChatResponse response) throws IOException {
+            if (response == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("status").value(response.status);
+            out.name("response").value(response.response);
+            out.name("error").value(response.error);
+            out.endObject();
+        }
+    }
+    
+    /**
+     * Message fields found in a JSON payload the SLM returned as text
+     */
+    static class NestedMessage {
+        String message;
+        String response;
+        String text;
+        String recommendationMessage;
+        String recommendationReason;
+        String recommendationText;
+        
+        /**
+         * Message a /chat payload carries, in the order of precedence the app has always used
+         */
+        String chatMessage() {
+            if (message != null) {
+                return message;
+            }
+            if (response != null) {
+                return response;
+            }
+            if (text != null) {
+                return text;
+            }
+            if (recommendationMessage != null) {
+                return recommendationMessage;
+            }
+            return recommendationReason != null ? recommendationReason : recommendationText;
+        }
+        
+        /**
+         * Message an /explain payload carries in its recommendation
+         */
+        String recommendationMessage() {
+            return recommendationMessage != null ? recommendationMessage : recommendationReason;
+        }
+        
+        /**
+         * Stream the top level of a JSON object, keeping only the message fields
+         * @return the fields found, or null if the text is not a JSON object
+         */
+        static NestedMessage parse(String json) {
+            if (json == null) {
+                return null;
+            }
+            String trimmed = json.trim();
+            if (!trimmed.startsWith("{")) {
+                return null;
+            }
+            try {
+                // Lenient like Gson.fromJson, since this is model output rather than a server response
+                JsonReader in = new JsonReader(new StringReader(trimmed));
+                in.setLenient(true);
+                return read(in);
+            } catch (IOException | IllegalStateException e) {
+                return null;
+            }
+        }
+        
+        /**
+         * Read a JSON object from the stream, keeping only the message fields
+         */
+        static NestedMessage read(JsonReader in) throws IOException {
+            NestedMessage nested = new NestedMessage();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "message":
+                        nested.message = readString(in);
+                        break;
+                    case "response":
+                        nested.response = readString(in);
+                        break;
+                    case "text":
+                        nested.text = readString(in);
+                        break;
+                    case "recommendation":
+                        readRecommendation(in, nested);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return nested;
+        }
+        
+        private static void readRecommendation(JsonReader in, NestedMessage nested) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) {
+                nested.recommendationText = readString(in);
+                return;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "message":
+                        nested.recommendationMessage = readString(in);
+                        break;
+                    case "reason":
+                        nested.recommendationReason = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+        }
+    }
+    
+    /**
+     * Read a scalar as a string; null, objects and arrays read as null
+     */
+    static String readString(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case STRING:
+            case NUMBER:
+                return in.nextString();
+            case BOOLEAN:
+                return String.valueOf(in.nextBoolean());
+            case NULL:
+                in.nextNull();
+                return null;
+            default:
+                in.skipValue();
+                return null;
+        }
+    }
+    
+    /**
+     * Enter an object, or skip the value and return false if it isn't one
+     */
+    private static boolean beginObjectOrSkip(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+}
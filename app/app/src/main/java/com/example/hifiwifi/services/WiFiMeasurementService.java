@@ -1,34 +1,43 @@
 package com.example.hifiwifi.services;
 
 import android.content.Context;
+import android.net.DhcpInfo;
 import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.example.hifiwifi.models.ConnectionPhases;
+import com.example.hifiwifi.models.HopMetrics;
 import com.example.hifiwifi.models.NetworkMetrics;
 import com.example.hifiwifi.models.RoomMeasurement;
 import com.example.hifiwifi.classifier.WiFiClassifier;
 import com.example.hifiwifi.classifier.WiFiClassification;
 import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
 import com.example.hifiwifi.classifier.MetricClassification;
 import com.example.hifiwifi.classifier.ActivityImportance;
 import com.example.hifiwifi.classifier.ActivityImportanceFactory;
+import com.example.hifiwifi.classifier.StreamingClassifier;
+import com.example.hifiwifi.speedtest.DownloadSink;
+import com.example.hifiwifi.speedtest.ServerSelector;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Service for measuring WiFi performance metrics
@@ -41,8 +50,14 @@ public class WiFiMeasurementService {
     private static final int CONNECTION_TIMEOUT = 5000; // 5 seconds for speed tests
     private static final int READ_TIMEOUT = 5000; // 5 seconds for speed tests
     private static final int PING_TIMEOUT = 2000; // 2 seconds for ping tests
+    private static final String PING_URL = "https://www.google.com";
     
-    // Speed test URLs - prioritizing working servers
+    // Hop probe targets: most home routers run a DNS resolver, and a refused connection still counts as a reply
+    private static final int GATEWAY_PROBE_PORT = 53;
+    private static final String INTERNET_PROBE_HOST = "www.google.com";
+    private static final int INTERNET_PROBE_PORT = 443;
+    
+    // Speed test URLs, tried in the order ServerSelector ranks them
     private static final String[] testUrls = {
         "http://ipv4.download.thinkbroadband.com/10MB.zip",  // HTTP - Most reliable, tested working
         "https://speedtest.tele2.net/10MB.zip",              // HTTPS fallback
@@ -51,15 +66,6 @@ public class WiFiMeasurementService {
         "http://proof.ovh.net/files/10Mb.dat"                // HTTP fallback - OVH (French)
     };
     
-    // Single test URLs - prioritizing working servers
-    private static final String[] singleTestUrls = {
-        "http://ipv4.download.thinkbroadband.com/10MB.zip",  // HTTP - Most reliable, tested working
-        "https://speedtest.tele2.net/10MB.zip",              // HTTPS fallback
-        "https://speedtest.tele2.net/1MB.zip",               // HTTPS - Smaller file
-        "http://speedtest.ftp.otenet.gr/files/test10Mb.db",  // HTTP fallback - Greek server
-        "http://proof.ovh.net/files/10Mb.dat"                // HTTP fallback - OVH
-    };
-    
     private Context context;
     private WifiManager wifiManager;
     private ExecutorService executorService;
@@ -71,28 +77,79 @@ public class WiFiMeasurementService {
         void onMeasurementComplete(RoomMeasurement measurement);
         void onClassificationComplete(ClassificationResult classificationResult);
         void onError(String error);
+        
+        /**
+         * The thread of a started measurement or single test has let go of the link
+         * Runs stop in the order they started, after their last result was delivered.
+         */
+        default void onMeasurementStopped() {
+        }
+    }
+    
+    /**
+     * Where single tests measure bandwidth
+     * WAN downloads from internet servers. LAN downloads from and uploads to the Raspberry Pi,
+     * which isolates the Wi-Fi link from the internet connection and uses no internet data.
+     * BOTH runs each, so a slow ISP can be told apart from a bad room.
+     */
+    public enum ThroughputMode {
+        WAN, LAN, BOTH
     }
     
     private MeasurementCallback callback;
-    private boolean isMeasuring = false;
+    private volatile ThroughputMode throughputMode = ThroughputMode.WAN;
+    private volatile boolean isMeasuring = false;
+    // Bumped by every start and stop; work belonging to an older run delivers nothing
+    private volatile int currentRun = 0;
     private String currentRoomName = "";
     private String currentActivityType = "general";
     
     // WiFi Classification components
     private WiFiClassifier classifier;
     private ActivityImportanceFactory importanceFactory;
+    private StreamingClassifier streamingClassifier; // Smoothed, change-only classification for continuous mode
+    private HopProber hopProber; // Gateway, Pi and internet latency, probed concurrently
+    private ServerSelector serverSelector; // Speed test server ranking, created on first bandwidth test
+    private ConnectionPhaseRecorder phaseRecorder; // DNS, connect, TLS, first byte and transfer time of the current test
+    private OkHttpClient httpClient;
+    private OkHttpClient pingClient;
+    private DownloadSink downloadSink; // Reused by every download; they all run on executorService
     
     // Jitter measurement variables
     private List<Long> latencyMeasurements = new ArrayList<>();
     private static final int JITTER_SAMPLE_SIZE = 10;
     
+    // Continuous mode samples bandwidth briefly every few ticks; only single tests download the whole file
+    private static final int STREAM_BANDWIDTH_SAMPLE_TICKS = 6; // About every 15 seconds
+    private static final long STREAM_BANDWIDTH_SAMPLE_MS = 1500;
+    
     public WiFiMeasurementService(Context context) {
+        this(context, Executors.newSingleThreadExecutor());
+    }
+    
+    /**
+     * @param executorService Runs the measurements; it must run one task at a time, in order
+     */
+    WiFiMeasurementService(Context context, ExecutorService executorService) {
         this.context = context;
         this.wifiManager = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService = executorService;
         this.mainHandler = new Handler(Looper.getMainLooper());
         this.classifier = new WiFiClassifier();
         this.importanceFactory = new ActivityImportanceFactory();
+        this.streamingClassifier = new StreamingClassifier(classifier);
+        this.hopProber = new HopProber();
+        this.phaseRecorder = new ConnectionPhaseRecorder();
+        this.httpClient = new OkHttpClient.Builder()
+            .connectTimeout(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+            .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
+            .eventListenerFactory(phaseRecorder)
+            .build();
+        this.pingClient = httpClient.newBuilder()
+            .connectTimeout(PING_TIMEOUT, TimeUnit.MILLISECONDS)
+            .readTimeout(PING_TIMEOUT, TimeUnit.MILLISECONDS)
+            .build();
+        this.downloadSink = new DownloadSink();
     }
     
     public void setCallback(MeasurementCallback callback) {
@@ -118,12 +175,14 @@ public class WiFiMeasurementService {
             stopMeasurement();
         }
         
+        int run = ++currentRun;
         isMeasuring = true;
         currentRoomName = roomName;
         currentActivityType = activityType;
+        streamingClassifier.reset();
         
         // Start measurement loop
-        executorService.execute(this::measurementLoop);
+        executorService.execute(() -> measurementLoop(run));
     }
     
     /**
@@ -137,22 +196,57 @@ public class WiFiMeasurementService {
             stopMeasurement();
         }
         
+        int run = ++currentRun;
         isMeasuring = true;
         currentRoomName = roomName;
         currentActivityType = activityType;
         
         // Start single test
-        executorService.execute(this::singleSpeedTest);
+        executorService.execute(() -> singleSpeedTest(run));
     }
     
     /**
      * Stop current measurement
+     * Work already queued for it is dropped and its pending results are never delivered.
+     * A download in progress still runs to its end; onMeasurementStopped reports when it has.
      */
     public void stopMeasurement() {
         Log.d(TAG, "Stopping measurement");
+        currentRun++;
         isMeasuring = false;
-            // The isMeasuring flag will prevent new measurements
-        // Any ongoing tests will complete naturally
+    }
+    
+    /**
+     * Whether work started for the given run may still deliver results
+     */
+    private boolean isCurrentRun(int run) {
+        return run == currentRun;
+    }
+    
+    /**
+     * Deliver on the main thread, unless the run was stopped or replaced in the meantime
+     */
+    private void postIfCurrent(int run, Runnable delivery) {
+        mainHandler.post(() -> {
+            if (isCurrentRun(run) && callback != null) {
+                delivery.run();
+            }
+        });
+    }
+    
+    /**
+     * Report on the main thread that a run's thread has let go of the link
+     */
+    private void finishRun(int run) {
+        if (isCurrentRun(run)) {
+            isMeasuring = false;
+        }
+        Log.d(TAG, "Run " + run + " stopped");
+        mainHandler.post(() -> {
+            if (callback != null) {
+                callback.onMeasurementStopped();
+            }
+        });
     }
     
     /**
@@ -210,12 +304,7 @@ public class WiFiMeasurementService {
         for (int i = 0; i < totalPings; i++) {
             try {
                 long startTime = System.currentTimeMillis();
-                HttpURLConnection connection = setupConnection("https://www.google.com");
-                connection.setConnectTimeout(PING_TIMEOUT);
-                connection.setReadTimeout(PING_TIMEOUT);
-                connection.connect();
-                int responseCode = connection.getResponseCode();
-                connection.disconnect();
+                int responseCode = ping();
                 
                 if (responseCode == 200) {
                     long latency = System.currentTimeMillis() - startTime;
@@ -240,6 +329,85 @@ public class WiFiMeasurementService {
         }
     }
     
+    /**
+     * Probe the Wi-Fi gateway, the Raspberry Pi and an internet host concurrently
+     * Comparing the hops shows whether delay comes from the wireless link or from upstream.
+     * @return metrics of each hop that could be probed; the Pi is left out until it has been found
+     */
+    public Map<HopMetrics.Hop, HopMetrics> probeHops() {
+        Map<HopMetrics.Hop, InetSocketAddress> targets = new EnumMap<>(HopMetrics.Hop.class);
+        InetSocketAddress gateway = getGatewayAddress();
+        if (gateway != null) {
+            targets.put(HopMetrics.Hop.GATEWAY, gateway);
+        }
+        InetSocketAddress pi = getPiAddress();
+        if (pi != null) {
+            targets.put(HopMetrics.Hop.PI, pi);
+        }
+        targets.put(HopMetrics.Hop.INTERNET,
+            InetSocketAddress.createUnresolved(INTERNET_PROBE_HOST, INTERNET_PROBE_PORT));
+        
+        Map<HopMetrics.Hop, HopMetrics> hops = hopProber.probe(targets);
+        Log.d(TAG, "Hop probes complete: " + hops.values());
+        return hops;
+    }
+    
+    /**
+     * Get the Wi-Fi gateway from DHCP, or null if not connected
+     */
+    private InetSocketAddress getGatewayAddress() {
+        DhcpInfo dhcp = wifiManager != null ? wifiManager.getDhcpInfo() : null;
+        if (dhcp == null || dhcp.gateway == 0) {
+            return null;
+        }
+        // DhcpInfo stores addresses in little-endian order
+        int gateway = dhcp.gateway;
+        try {
+            InetAddress address = InetAddress.getByAddress(new byte[] {
+                (byte) gateway, (byte) (gateway >> 8), (byte) (gateway >> 16), (byte) (gateway >> 24)});
+            return new InetSocketAddress(address, GATEWAY_PROBE_PORT);
+        } catch (IOException e) {
+            Log.w(TAG, "Invalid gateway address: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Get the Raspberry Pi's API endpoint found by HTTPService, or null if it hasn't been found
+     */
+    private InetSocketAddress getPiAddress() {
+        String piBaseUrl = context != null ? PiDiscovery.getCachedBaseUrl(context) : null;
+        if (piBaseUrl == null) {
+            return null;
+        }
+        try {
+            URL url = new URL(piBaseUrl);
+            return InetSocketAddress.createUnresolved(url.getHost(), url.getPort() > 0 ? url.getPort() : url.getDefaultPort());
+        } catch (IOException e) {
+            Log.w(TAG, "Invalid Raspberry Pi address: " + piBaseUrl);
+            return null;
+        }
+    }
+    
+    private static void applyHops(NetworkMetrics metrics, Map<HopMetrics.Hop, HopMetrics> hops) {
+        for (HopMetrics hop : hops.values()) {
+            metrics.setHop(hop);
+        }
+    }
+    
+    /**
+     * Use a hop's round trips as the latency samples for jitter
+     */
+    private void recordLatencySamples(HopMetrics hop) {
+        latencyMeasurements.clear();
+        for (double sample : hop.getRttSamplesMs()) {
+            latencyMeasurements.add(Math.round(sample));
+        }
+        while (latencyMeasurements.size() > JITTER_SAMPLE_SIZE) {
+            latencyMeasurements.remove(0);
+        }
+    }
+    
     /**
      * Calculate jitter from recent latency measurements
      * Jitter is the standard deviation of latency, excluding extreme outliers
@@ -306,12 +474,7 @@ public class WiFiMeasurementService {
         for (int i = 0; i < totalPings; i++) {
             try {
                 long startTime = System.currentTimeMillis();
-                HttpURLConnection connection = setupConnection("https://www.google.com");
-                connection.setConnectTimeout(PING_TIMEOUT);
-                connection.setReadTimeout(PING_TIMEOUT);
-                connection.connect();
-                int responseCode = connection.getResponseCode();
-                connection.disconnect();
+                int responseCode = ping();
                 
                 if (responseCode == 200) {
                     successfulPings++;
@@ -344,18 +507,12 @@ public class WiFiMeasurementService {
     public void measureBandwidth(MeasurementCallback callback) {
         Log.d(TAG, "Starting simple bandwidth measurement for room: " + currentRoomName);
         
-        // Try multiple speed test servers (ordered by reliability, HTTPS preferred)
-        String[] testUrls = {
-            "https://speedtest.tele2.net/10MB.zip",              // HTTPS - Very reliable
-            "https://speedtest.tele2.net/1MB.zip",               // HTTPS - Smaller file
-            "http://ipv4.download.thinkbroadband.com/10MB.zip",  // HTTP fallback - Very reliable
-            "http://speedtest.ftp.otenet.gr/files/test10Mb.db",  // HTTP fallback - Greek server
-            "http://proof.ovh.net/files/10Mb.dat"                // HTTP fallback - OVH (French)
-        };
-        
-        // Run speed test in background thread
+        // Run speed test in background thread, starting on the best-ranked server
+        int run = currentRun;
         executorService.execute(() -> {
-            performSimpleSpeedTest(testUrls, callback);
+            if (isCurrentRun(run)) {
+                performSimpleSpeedTest(run, getServerSelector().rank(testUrls), callback);
+            }
         });
     }
     
@@ -363,70 +520,10 @@ public class WiFiMeasurementService {
      * Perform simple speed test by downloading a file and measuring time
      * Supports both HTTP and HTTPS connections
      */
-    private void performSimpleSpeedTest(String[] testUrls, MeasurementCallback callback) {
-        final double[] bandwidthMbps = {0.0};
+    private void performSimpleSpeedTest(int run, List<String> testUrls, MeasurementCallback callback) {
+        // Latency isn't updated here - it comes from the ping measurements
+        final double[] bandwidthMbps = {downloadBandwidthMbps(testUrls, 0)};
         final int[] latencyMs = {50}; // Default latency
-        boolean success = false;
-        
-        for (String testUrl : testUrls) {
-            try {
-                Log.d(TAG, "Trying speed test server: " + testUrl);
-                
-                long startTime = System.currentTimeMillis();
-                HttpURLConnection connection = setupConnection(testUrl);
-                connection.setRequestMethod("GET"); // Change to GET for actual download
-                
-                        // Connect first
-                        connection.connect();
-                        int responseCode = connection.getResponseCode();
-                        
-                        if (responseCode == HttpURLConnection.HTTP_OK) {
-                            // Start measuring download time after connection is established
-                            long downloadStartTime = System.currentTimeMillis();
-                            
-                            // Read the file to measure download speed
-                            long totalBytes = 0;
-                            byte[] buffer = new byte[8192];
-                            int bytesRead;
-                            
-                            while ((bytesRead = connection.getInputStream().read(buffer)) != -1) {
-                                totalBytes += bytesRead;
-                            }
-                            
-                            long downloadEndTime = System.currentTimeMillis();
-                            long downloadDurationMs = downloadEndTime - downloadStartTime;
-                            long totalDurationMs = downloadEndTime - startTime;
-                            
-                            if (downloadDurationMs > 0) {
-                                // Calculate bandwidth in Mbps using only download time
-                                double bytesPerSecond = (totalBytes * 1000.0) / downloadDurationMs;
-                                bandwidthMbps[0] = (bytesPerSecond * 8) / 1000000.0; // Convert to Mbps
-                                
-                                // Don't update latency here - it should come from ping measurements
-                                // latencyMs will be set from earlier measurements
-                                
-                                Log.d(TAG, "Speed test completed successfully: " + bandwidthMbps[0] + " Mbps, Download time: " + downloadDurationMs + "ms, Total time: " + totalDurationMs + "ms");
-                                success = true;
-                                break;
-                            }
-                } else {
-                    Log.w(TAG, "HTTP response code: " + responseCode + " for " + testUrl);
-                }
-                
-                connection.disconnect();
-                
-            } catch (Exception e) {
-                Log.w(TAG, "Speed test failed for " + testUrl + ": " + e.getMessage());
-                if (e.getMessage() != null && e.getMessage().contains("SSL")) {
-                    Log.w(TAG, "SSL error detected, trying next server");
-                }
-            }
-        }
-        
-        if (!success) {
-            Log.w(TAG, "All speed test servers failed, using signal-based estimation");
-            bandwidthMbps[0] = estimateBandwidthFromSignal(getCurrentSignalStrength());
-        }
         
         // Calculate jitter and packet loss
         final double[] jitterMs = {calculateJitter()};
@@ -436,7 +533,7 @@ public class WiFiMeasurementService {
         
         // Update UI on main thread
                 mainHandler.post(() -> {
-                    if (callback != null) {
+                    if (isCurrentRun(run) && callback != null) {
                         // Create a measurement with all network metrics
                         NetworkMetrics metrics = new NetworkMetrics(
                             getCurrentSignalStrength(),
@@ -449,8 +546,8 @@ public class WiFiMeasurementService {
                         );
                         callback.onMeasurementUpdate(metrics);
                         
-                        // Perform classification and notify callback
-                        ClassificationResult classificationResult = performClassification(metrics);
+                        // Classify the smoothed stream; only class transitions are reported
+                        ClassificationResult classificationResult = performStreamingClassification(metrics);
                         if (classificationResult != null) {
                             callback.onClassificationComplete(classificationResult);
                         }
@@ -458,6 +555,22 @@ public class WiFiMeasurementService {
                 });
             }
             
+    /**
+     * Download from the first server that works, in the given order
+     * @param maxDurationMs how long the download may run before it is measured, or 0 for the whole file
+     * @return the measured bandwidth, or an estimate from the signal if every server failed
+     */
+    private double downloadBandwidthMbps(List<String> testUrls, long maxDurationMs) {
+        for (String testUrl : testUrls) {
+            DownloadSink.Result download = downloadTestFile(testUrl, maxDurationMs);
+            if (download != null) {
+                return download.getMbps();
+            }
+        }
+        Log.w(TAG, "All speed test servers failed, using signal-based estimation");
+        return estimateBandwidthFromSignal(getCurrentSignalStrength());
+    }
+    
     /**
      * Attempt fallback measurement methods when primary speed test fails
      */
@@ -585,91 +698,83 @@ public class WiFiMeasurementService {
     }
     
     /**
-     * Setup HTTP/HTTPS connection with proper headers and SSL handling
+     * The speed test server ranking, shared across launches when there is a context to store it
      */
-    private HttpURLConnection setupConnection(String urlString) throws IOException {
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        // Essential headers to avoid 403 errors
-        connection.setRequestProperty("User-Agent", "Mozilla/5.0 (Linux; Android 10) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.120 Mobile Safari/537.36");
-        connection.setRequestProperty("Accept", "*/*");
-        connection.setRequestProperty("Accept-Encoding", "identity");
-        connection.setRequestProperty("Connection", "keep-alive");
-        
-        // Additional headers for better compatibility
-        connection.setRequestProperty("Accept-Language", "en-US,en;q=0.9");
-        connection.setRequestProperty("Cache-Control", "no-cache");
-        
-        // Timeouts
-        connection.setConnectTimeout(CONNECTION_TIMEOUT);
-        connection.setReadTimeout(READ_TIMEOUT);
-        connection.setRequestMethod("HEAD");
-        connection.setDoInput(true);
-        connection.setInstanceFollowRedirects(true);
-        
-        // Handle HTTPS with proper SSL configuration
-        if (urlString.startsWith("https://")) {
-            setupHttpsConnection((HttpsURLConnection) connection);
+    private synchronized ServerSelector getServerSelector() {
+        if (serverSelector == null) {
+            serverSelector = context != null ? ServerSelector.getInstance(context) : ServerSelector.inMemory();
         }
-        
-        return connection;
+        return serverSelector;
     }
     
     /**
-     * Setup HTTPS connection with SSL context and trust manager
-     * Note: This implementation accepts all certificates for speed testing purposes
-     * In production, implement proper certificate validation
+     * Send one HEAD request to the latency host over a new connection
+     * Each ping pays for DNS, TCP and TLS like a first visit to a site does; the recorder
+     * reports those phases apart from the server's response time.
+     * @return the response code
      */
-    private void setupHttpsConnection(HttpsURLConnection httpsConnection) {
-        try {
-            // Create a trust manager that accepts all certificates
-            // WARNING: This is for speed testing only - in production use proper certificate validation
-            TrustManager[] trustAllCerts = new TrustManager[] {
-                new X509TrustManager() {
-                    @Override
-                    public X509Certificate[] getAcceptedIssuers() {
-                        return new X509Certificate[0];
-                    }
-                    
-                    @Override
-                    public void checkClientTrusted(X509Certificate[] certs, String authType) throws CertificateException {
-                        // Accept all client certificates for speed testing
-                        Log.v(TAG, "Accepting client certificate for speed test");
-                    }
-                    
-                    @Override
-                    public void checkServerTrusted(X509Certificate[] certs, String authType) throws CertificateException {
-                        // Accept all server certificates for speed testing
-                        // In production, implement proper certificate validation
-                        Log.v(TAG, "Accepting server certificate for speed test");
-                    }
-                }
-            };
-            
-            // Install the all-trusting trust manager
-            SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-            httpsConnection.setSSLSocketFactory(sslContext.getSocketFactory());
-            
-            // Create hostname verifier that accepts all hostnames
-            httpsConnection.setHostnameVerifier((hostname, session) -> {
-                Log.v(TAG, "Verifying hostname: " + hostname);
-                return true; // Accept all hostnames for speed testing
-            });
-            
-            // Set additional HTTPS properties
-            httpsConnection.setInstanceFollowRedirects(true);
+    private int ping() throws IOException {
+        Request request = newRequest(PING_URL)
+            .head()
+            .header("Connection", "close")
+            .build();
+        try (Response response = pingClient.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+    
+    /**
+     * Download a speed test file, timing the body from its first byte
+     * @param maxDurationMs how long to read before measuring the bytes so far, or 0 for the whole file
+     * @return the download, or null if the server failed, in which case it is demoted
+     */
+    private DownloadSink.Result downloadTestFile(String testUrl, long maxDurationMs) {
+        Log.d(TAG, "Trying speed test server: " + testUrl);
+        long startTime = System.currentTimeMillis();
+        try (Response response = httpClient.newCall(newRequest(testUrl).get().build()).execute()) {
+            if (response.code() != 200) {
+                Log.w(TAG, "HTTP response code: " + response.code() + " for " + testUrl);
+                getServerSelector().reportFailure(testUrl);
+                return null;
+            }
             
-            Log.d(TAG, "HTTPS connection configured with SSL context for speed testing");
+            // The sink's clock starts once the response headers are in
+            DownloadSink.Result download = downloadSink.setMaxDurationMs(maxDurationMs)
+                .drain(response.body().source(), null);
+            if (download.getElapsedNanos() <= 0 || download.getBytesRead() == 0) {
+                return null;
+            }
             
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to setup HTTPS connection: " + e.getMessage());
-            // Continue with default HTTPS handling - Android will use system certificates
-            Log.d(TAG, "Falling back to default Android HTTPS handling");
+            long totalDurationMs = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Speed test completed successfully: " + download.getMbps() + " Mbps, Download: " + download + ", Total time: " + totalDurationMs + "ms");
+            if (download.isCpuBound()) {
+                Log.w(TAG, "Reading the download kept the CPU busy; the link may be faster than measured");
+            }
+            return download;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Speed test failed for " + testUrl + ": " + e.getMessage());
+            getServerSelector().reportFailure(testUrl);
+            if (e.getMessage() != null && e.getMessage().contains("SSL")) {
+                Log.w(TAG, "SSL error detected, trying next server");
+            }
+            return null;
         }
     }
     
+    /**
+     * Request with the headers speed test servers expect from a browser
+     */
+    private static Request.Builder newRequest(String url) {
+        return new Request.Builder()
+            .url(url)
+            // Essential headers to avoid 403 errors
+            .header("User-Agent", "Mozilla/5.0 (Linux; Android 10) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.120 Mobile Safari/537.36")
+            .header("Accept", "*/*")
+            .header("Accept-Encoding", "identity")
+            .header("Accept-Language", "en-US,en;q=0.9")
+            .header("Cache-Control", "no-cache");
+    }
+    
     /**
      * Estimate bandwidth based on signal strength (very rough approximation)
      */
@@ -685,59 +790,101 @@ public class WiFiMeasurementService {
     /**
      * Main measurement loop that runs every 2-3 seconds
      */
-    private void measurementLoop() {
-        while (isMeasuring) {
+    private void measurementLoop(int run) {
+        int tick = 0;
+        double sampledBandwidthMbps = -1; // Latest capped download, until the next sample is due
+        while (isCurrentRun(run)) {
             try {
                 // Get current signal strength and frequency band
                 int signalStrength = getCurrentSignalStrength();
                 String frequencyBand = getCurrentFrequencyBand();
                 
-                // Measure packet loss and collect latency samples for jitter
-                double packetLossPercent = measurePacketLoss();
+                // Probe gateway, Pi and internet together to place any delay
+                Map<HopMetrics.Hop, HopMetrics> hops = probeHops();
+                NetworkMetrics hopMetrics = new NetworkMetrics();
+                applyHops(hopMetrics, hops);
+                boolean skipInternetTests = classifier.isWirelessHopBad(hopMetrics);
+                
+                double packetLossPercent;
+                int latencyMs;
+                if (skipInternetTests) {
+                    // The room is bad on the air already; internet tests would only add load
+                    HopMetrics wirelessHop = classifier.getWirelessHop(hopMetrics);
+                    Log.w(TAG, "Wireless hop already bad (" + wirelessHop + "), skipping internet tests");
+                    packetLossPercent = wirelessHop.getLossPercent();
+                    latencyMs = (int) Math.round(wirelessHop.getLatencyMs());
+                    recordLatencySamples(wirelessHop);
+                } else {
+                    // Measure packet loss and collect latency samples for jitter
+                    packetLossPercent = measurePacketLoss();
+                    HopMetrics internetHop = hopMetrics.getInternetHop();
+                    latencyMs = internetHop != null && internetHop.isReachable()
+                        ? (int) Math.round(internetHop.getLatencyMs())
+                        : measureLatency();
+                }
                 double jitterMs = calculateJitter();
                 
+                // A short download every few ticks keeps the stream at its cadence without spending
+                // the full test file each time; ticks in between reuse the last sample
+                double bandwidthMbps;
+                if (skipInternetTests) {
+                    bandwidthMbps = estimateBandwidthFromSignal(signalStrength);
+                } else {
+                    if (sampledBandwidthMbps < 0 || tick % STREAM_BANDWIDTH_SAMPLE_TICKS == 0) {
+                        sampledBandwidthMbps = downloadBandwidthMbps(getServerSelector().rank(testUrls),
+                            STREAM_BANDWIDTH_SAMPLE_MS);
+                    }
+                    bandwidthMbps = sampledBandwidthMbps;
+                }
+                tick++;
+                
                 // Create current metrics with basic measurements
                 NetworkMetrics metrics = new NetworkMetrics(
                     signalStrength,
-                    measureLatency(), // Placeholder latency
-                    0.0, // Bandwidth will be updated by speedtest
+                    latencyMs,
+                    bandwidthMbps,
                     jitterMs,
                     packetLossPercent,
                     true,
                     currentRoomName,
                     frequencyBand
                 );
+                applyHops(metrics, hops);
+                
+                // Feed every tick to the smoothed classifier; only class transitions are reported
+                ClassificationResult classificationResult = performStreamingClassification(metrics);
                 
                 // Update UI on main thread
-                mainHandler.post(() -> {
-                    if (callback != null) {
-                        callback.onMeasurementUpdate(metrics);
+                postIfCurrent(run, () -> {
+                    callback.onMeasurementUpdate(metrics);
+                    if (classificationResult != null) {
+                        callback.onClassificationComplete(classificationResult);
                     }
                 });
                 
-                // Measure bandwidth, latency, jitter, and packet loss (async)
-                measureBandwidth(callback);
-                
                 // Wait 2-3 seconds before next measurement
                 Thread.sleep(2500);
                 
             } catch (InterruptedException e) {
                 break; // Exit loop if interrupted
             } catch (Exception e) {
-                mainHandler.post(() -> {
-                    if (callback != null) {
-                        callback.onError("Measurement error: " + e.getMessage());
-                    }
-                });
+                postIfCurrent(run, () -> callback.onError("Measurement error: " + e.getMessage()));
             }
         }
+        finishRun(run);
     }
     
     /**
      * Single speed test that runs once and completes
      */
-    private void singleSpeedTest() {
+    private void singleSpeedTest(int run) {
+        if (!isCurrentRun(run)) {
+            // Stopped while still queued
+            finishRun(run);
+            return;
+        }
         Log.d(TAG, "Executing single speed test for room: " + currentRoomName);
+        phaseRecorder.reset();
         
         try {
             // Get current signal strength and frequency band
@@ -745,8 +892,23 @@ public class WiFiMeasurementService {
             String frequencyBand = getCurrentFrequencyBand();
             Log.d(TAG, "Current signal strength: " + signalStrength + " dBm, Frequency: " + frequencyBand);
             
-            // Measure packet loss and collect latency samples for jitter
-            double packetLossPercent = measurePacketLoss();
+            // Probe gateway, Pi and internet together to place any delay
+            Map<HopMetrics.Hop, HopMetrics> hops = probeHops();
+            NetworkMetrics hopMetrics = new NetworkMetrics();
+            applyHops(hopMetrics, hops);
+            boolean skipInternetTests = classifier.isWirelessHopBad(hopMetrics);
+            
+            double packetLossPercent;
+            if (skipInternetTests) {
+                // The room is bad on the air already; internet tests would only add load
+                HopMetrics wirelessHop = classifier.getWirelessHop(hopMetrics);
+                Log.w(TAG, "Wireless hop already bad (" + wirelessHop + "), skipping internet tests");
+                packetLossPercent = wirelessHop.getLossPercent();
+                recordLatencySamples(wirelessHop);
+            } else {
+                // Measure packet loss and collect latency samples for jitter
+                packetLossPercent = measurePacketLoss();
+            }
             double jitterMs = calculateJitter();
             
             // Calculate average latency from the samples collected during packet loss measurement
@@ -772,38 +934,41 @@ public class WiFiMeasurementService {
                 currentRoomName,
                 frequencyBand
             );
+            applyHops(initialMetrics, hops);
             
             Log.d(TAG, "Sending initial metrics to UI");
             // Update UI on main thread
-            mainHandler.post(() -> {
-                if (callback != null) {
-                    callback.onMeasurementUpdate(initialMetrics);
-                }
-            });
+            postIfCurrent(run, () -> callback.onMeasurementUpdate(initialMetrics));
+            
+            if (!isCurrentRun(run)) {
+                Log.d(TAG, "Single test stopped before its download");
+                finishRun(run);
+                return;
+            }
             
             // Perform single comprehensive test (download + ping + jitter + packet loss)
-            performSingleComprehensiveTest(signalStrength, jitterMs, packetLossPercent, frequencyBand);
+            performSingleComprehensiveTest(run, signalStrength, jitterMs, packetLossPercent, frequencyBand, skipInternetTests);
             
         } catch (Exception e) {
             Log.e(TAG, "Single test error: " + e.getMessage());
-            mainHandler.post(() -> {
-                if (callback != null) {
-                    callback.onError("Single test error: " + e.getMessage());
-                }
-            });
-            isMeasuring = false;
+            postIfCurrent(run, () -> callback.onError("Single test error: " + e.getMessage()));
+            finishRun(run);
         }
     }
     
     /**
      * Perform a single comprehensive test that measures all metrics in one go
      */
-    private void performSingleComprehensiveTest(int signalStrength, double jitterMs, double packetLossPercent, String frequencyBand) {
+    private void performSingleComprehensiveTest(int run, int signalStrength, double jitterMs, double packetLossPercent,
+                                                String frequencyBand, boolean skipInternetTests) {
         Log.d(TAG, "Starting comprehensive single test");
         
         // Create variables that can be accessed by inner classes
         final boolean[] bandwidthComplete = {false};
         final double[] finalBandwidth = {0.0};
+        final double[] finalWanBandwidth = {0.0};
+        final double[] finalDownloadCpuMsPerMb = {-1.0};
+        final LanThroughputTest.Result[] finalLanResult = {null};
         final int[] finalLatency = {50};
         
         // Calculate average latency from jitter measurements
@@ -833,21 +998,28 @@ public class WiFiMeasurementService {
                     currentActivityType,
                     frequencyBand
                 );
+                finalMeasurement.setWanBandwidthMbps(finalWanBandwidth[0]);
+                finalMeasurement.setDownloadCpuMsPerMb(finalDownloadCpuMsPerMb[0]);
+                if (finalLanResult[0] != null) {
+                    finalMeasurement.setLanBandwidthMbps(finalLanResult[0].getDownloadMbps());
+                    finalMeasurement.setLanUploadMbps(finalLanResult[0].getUploadMbps());
+                }
+                ConnectionPhases phases = phaseRecorder.snapshot();
+                finalMeasurement.setConnectionPhases(phases);
+                Log.d(TAG, "Connection phases - " + phases);
                 
-                mainHandler.post(() -> {
-                    if (callback != null) {
-                        callback.onMeasurementComplete(finalMeasurement);
-                        
-                        // Perform classification on the final measurement
-                        ClassificationResult classificationResult = performClassification(finalMeasurement);
-                        if (classificationResult != null) {
-                            callback.onClassificationComplete(classificationResult);
-                        }
+                postIfCurrent(run, () -> {
+                    callback.onMeasurementComplete(finalMeasurement);
+                    
+                    // Perform classification on the final measurement
+                    ClassificationResult classificationResult = performClassification(finalMeasurement);
+                    if (classificationResult != null) {
+                        callback.onClassificationComplete(classificationResult);
                     }
                 });
                 
                 // Stop measuring after single test
-                isMeasuring = false;
+                finishRun(run);
             }
         };
         
@@ -892,71 +1064,33 @@ public class WiFiMeasurementService {
         // Start bandwidth test using simple speed test
         Log.d(TAG, "Starting single bandwidth test");
         
-        // Try multiple speed test servers (prioritizing working servers)
-        String[] singleTestUrls = {
-            "http://ipv4.download.thinkbroadband.com/10MB.zip",  // HTTP - Most reliable, tested working
-            "https://speedtest.tele2.net/10MB.zip",              // HTTPS fallback
-            "https://speedtest.tele2.net/1MB.zip",               // HTTPS - Smaller file
-            "http://speedtest.ftp.otenet.gr/files/test10Mb.db",  // HTTP fallback - Greek server
-            "http://proof.ovh.net/files/10Mb.dat"                // HTTP fallback - OVH
-        };
-        
         // Run simple speed test
         executorService.execute(() -> {
             try {
-                Log.d(TAG, "Performing simple speed test");
+                Log.d(TAG, "Performing simple speed test, mode: " + throughputMode);
                 
+                // LAN mode, or a wireless hop that is already bad, skips the internet servers entirely
+                List<String> wanUrls = throughputMode == ThroughputMode.LAN || skipInternetTests
+                    ? Collections.<String>emptyList() : getServerSelector().rank(testUrls);
                 boolean success = false;
-                for (String testUrl : singleTestUrls) {
-                    try {
-                        Log.d(TAG, "Trying speed test server: " + testUrl);
-                        
-                        long startTime = System.currentTimeMillis();
-                        HttpURLConnection connection = setupConnection(testUrl);
-                        connection.setRequestMethod("GET");
-                        
-                        // Connect first
-                        connection.connect();
-                        int responseCode = connection.getResponseCode();
-                        
-                        if (responseCode == HttpURLConnection.HTTP_OK) {
-                            // Start measuring download time after connection is established
-                            long downloadStartTime = System.currentTimeMillis();
-                            
-                            // Read the file to measure download speed
-                            long totalBytes = 0;
-                            byte[] buffer = new byte[8192];
-                            int bytesRead;
-                            
-                            while ((bytesRead = connection.getInputStream().read(buffer)) != -1) {
-                                totalBytes += bytesRead;
-                            }
-                            
-                            long downloadEndTime = System.currentTimeMillis();
-                            long downloadDurationMs = downloadEndTime - downloadStartTime;
-                            long totalDurationMs = downloadEndTime - startTime;
-                            
-                            if (downloadDurationMs > 0) {
-                                // Calculate bandwidth in Mbps using only download time
-                                double bytesPerSecond = (totalBytes * 1000.0) / downloadDurationMs;
-                                finalBandwidth[0] = (bytesPerSecond * 8) / 1000000.0; // Convert to Mbps
-                                
-                                // Don't update latency here - use the value from jitter measurements
-                                Log.d(TAG, "Speed test completed successfully: " + finalBandwidth[0] + " Mbps, Download time: " + downloadDurationMs + "ms, Total time: " + totalDurationMs + "ms");
-                                success = true;
-                                break;
-                            }
-                        } else {
-                            Log.w(TAG, "HTTP response code: " + responseCode + " for " + testUrl);
-                        }
-                        
-                        connection.disconnect();
-                        
-                    } catch (Exception e) {
-                        Log.w(TAG, "Speed test failed for " + testUrl + ": " + e.getMessage());
-                        if (e.getMessage() != null && e.getMessage().contains("SSL")) {
-                            Log.w(TAG, "SSL error detected, trying next server");
-                        }
+                for (String testUrl : wanUrls) {
+                    DownloadSink.Result download = downloadTestFile(testUrl, 0);
+                    if (download != null) {
+                        // Latency isn't updated here - it comes from the jitter measurements
+                        finalBandwidth[0] = download.getMbps();
+                        finalWanBandwidth[0] = download.getMbps();
+                        finalDownloadCpuMsPerMb[0] = download.getCpuMsPerMb();
+                        success = true;
+                        break;
+                    }
+                }
+                
+                if (throughputMode != ThroughputMode.WAN) {
+                    finalLanResult[0] = measureLanThroughput();
+                    // Without a WAN figure, classify on the Wi-Fi link's own throughput
+                    if (!success && finalLanResult[0] != null && finalLanResult[0].getDownloadMbps() > 0) {
+                        finalBandwidth[0] = finalLanResult[0].getDownloadMbps();
+                        success = true;
                     }
                 }
                 
@@ -980,11 +1114,32 @@ public class WiFiMeasurementService {
         checkTestCompletion.run();
     }
     
+    /**
+     * Measure throughput to the Raspberry Pi found by HTTPService
+     * @return the result, or null if the Pi hasn't been found yet or didn't respond
+     */
+    private LanThroughputTest.Result measureLanThroughput() {
+        String piBaseUrl = PiDiscovery.getCachedBaseUrl(context);
+        if (piBaseUrl == null) {
+            Log.w(TAG, "Raspberry Pi address unknown, skipping LAN throughput test");
+            return null;
+        }
+        
+        Log.d(TAG, "Starting LAN throughput test against " + piBaseUrl);
+        LanThroughputTest.Result result = new LanThroughputTest(piBaseUrl).setPhaseRecorder(phaseRecorder).run();
+        if (!result.isSuccessful()) {
+            Log.w(TAG, "LAN throughput test failed");
+            return null;
+        }
+        return result;
+    }
+    
     /**
      * Create a complete measurement for a room
      */
     public RoomMeasurement createRoomMeasurement(String roomId, String roomName, String activityType) {
         // Measure current metrics
+        phaseRecorder.reset();
         int signalStrength = getCurrentSignalStrength();
         int latency = measureLatency();
         double jitter = calculateJitter();
@@ -1000,6 +1155,7 @@ public class WiFiMeasurementService {
             packetLoss,
             activityType
         );
+        measurement.setConnectionPhases(phaseRecorder.snapshot());
         
         // Perform classification and notify callback
         ClassificationResult classificationResult = performClassification(measurement);
@@ -1033,7 +1189,7 @@ public class WiFiMeasurementService {
                 metricClassification, activityImportance);
             
             // Get most critical metric
-            String mostCriticalMetric = classifier.getMostCriticalMetric(metricClassification, activityImportance);
+            Metric mostCriticalMetric = classifier.getMostCriticalMetric(metricClassification, activityImportance);
             
             // Create result
             ClassificationResult result = new ClassificationResult(
@@ -1049,7 +1205,36 @@ public class WiFiMeasurementService {
             result.setFrequencyBand(metrics.getFrequencyBand());
             
             Log.d(TAG, "Classification complete - Overall: " + overallClassification.getDisplayName() + 
-                      ", Most Critical: " + mostCriticalMetric + ", Frequency: " + metrics.getFrequencyBand());
+                      ", Most Critical: " + mostCriticalMetric.getKey() + ", Frequency: " + metrics.getFrequencyBand());
+            
+            return result;
+        } catch (Exception e) {
+            // Log error but don't crash the measurement
+            Log.e(TAG, "Classification error: " + e.getMessage(), e);
+            if (callback != null) {
+                mainHandler.post(() -> callback.onError("Classification error: " + e.getMessage()));
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Perform smoothed WiFi classification for continuous monitoring
+     * @return the new classification, or null if no class changed since the last sample
+     */
+    private ClassificationResult performStreamingClassification(NetworkMetrics metrics) {
+        try {
+            ClassificationResult result = streamingClassifier.update(
+                metrics,
+                "room_" + System.currentTimeMillis(),
+                currentRoomName,
+                currentActivityType
+            );
+            
+            if (result != null) {
+                Log.d(TAG, "Classification changed - Overall: " + result.getOverallClassification().getDisplayName() +
+                          ", Most Critical: " + result.getMostCriticalMetric() + ", Frequency: " + metrics.getFrequencyBand());
+            }
             
             return result;
         } catch (Exception e) {
@@ -1085,7 +1270,7 @@ public class WiFiMeasurementService {
                 metricClassification, activityImportance);
             
             // Get most critical metric
-            String mostCriticalMetric = classifier.getMostCriticalMetric(metricClassification, activityImportance);
+            Metric mostCriticalMetric = classifier.getMostCriticalMetric(metricClassification, activityImportance);
             
             // Create result
             ClassificationResult result = new ClassificationResult(
@@ -1101,7 +1286,7 @@ public class WiFiMeasurementService {
             result.setFrequencyBand(measurement.getFrequencyBand());
             
             Log.d(TAG, "Classification complete - Overall: " + overallClassification.getDisplayName() + 
-                      ", Most Critical: " + mostCriticalMetric + ", Frequency: " + measurement.getFrequencyBand());
+                      ", Most Critical: " + mostCriticalMetric.getKey() + ", Frequency: " + measurement.getFrequencyBand());
             
             return result;
         } catch (Exception e) {
@@ -1135,6 +1320,21 @@ public class WiFiMeasurementService {
         return currentActivityType;
     }
     
+    /**
+     * Get where single tests measure bandwidth
+     */
+    public ThroughputMode getThroughputMode() {
+        return throughputMode;
+    }
+    
+    /**
+     * Set where single tests measure bandwidth
+     * LAN and BOTH need the Pi to have been found by HTTPService first; until then only WAN runs.
+     */
+    public void setThroughputMode(ThroughputMode throughputMode) {
+        this.throughputMode = throughputMode;
+    }
+    
     /**
      * Set current activity type for ongoing measurements
      */
@@ -1165,6 +1365,10 @@ public class WiFiMeasurementService {
             }
         }
         
+        if (hopProber != null) {
+            hopProber.shutdown();
+        }
+        
         // No speed test socket to clean up (using simple HTTP connections)
         
         callback = null;
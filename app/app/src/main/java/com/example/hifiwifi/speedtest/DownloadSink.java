@@ -0,0 +1,233 @@
+package com.example.hifiwifi.speedtest;
+
+import android.os.Debug;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a speed test download as fast as possible and throws the bytes away.
+ * A channel is read into a direct buffer and a stream into a byte array, each allocated once and
+ * reused for every download, and the clock is only checked once per read, so on a fast link the
+ * phone's CPU stays out of the way.
+ * The CPU time the reading thread spent is recorded with the result, which shows whether the
+ * measurement itself limited the throughput.
+ * Not thread-safe: use one sink per download thread.
+ */
+public class DownloadSink {
+    
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final long DEFAULT_PROGRESS_INTERVAL_MS = 1000;
+    
+    // A reading thread busier than this was close to limiting the download itself
+    static final double CPU_BOUND_LOAD = 0.8;
+    
+    /**
+     * Receives progress while a download drains
+     */
+    public interface ProgressListener {
+        /**
+         * @return false to stop the download early
+         */
+        boolean onProgress(long bytesRead, long elapsedNanos);
+    }
+    
+    /**
+     * One read from the source being drained
+     */
+    private interface Source {
+        /**
+         * @return bytes read, or -1 at the end
+         */
+        int read() throws IOException;
+    }
+    
+    /**
+     * CPU time used by the calling thread
+     */
+    interface CpuClock {
+        /**
+         * @return nanoseconds, or -1 if not supported
+         */
+        long threadCpuNanos();
+    }
+    
+    /**
+     * How much was read, how long it took, and what it cost the CPU
+     */
+    public static class Result {
+        private final long bytesRead;
+        private final long elapsedNanos;
+        private final long cpuNanos;
+        
+        Result(long bytesRead, long elapsedNanos, long cpuNanos) {
+            this.bytesRead = bytesRead;
+            this.elapsedNanos = elapsedNanos;
+            this.cpuNanos = cpuNanos;
+        }
+        
+        public long getBytesRead() {
+            return bytesRead;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        public double getMbps() {
+            if (bytesRead <= 0 || elapsedNanos <= 0) {
+                return 0.0;
+            }
+            return (bytesRead * 8.0) / (elapsedNanos / 1000.0);
+        }
+        
+        /**
+         * CPU time the reading thread used, or -1 if the platform doesn't report it
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+        
+        /**
+         * Milliseconds of CPU spent per megabyte read, or -1 if unknown
+         */
+        public double getCpuMsPerMb() {
+            if (cpuNanos < 0 || bytesRead <= 0) {
+                return -1;
+            }
+            return (cpuNanos / 1_000_000.0) / (bytesRead / 1_000_000.0);
+        }
+        
+        /**
+         * Fraction of one core the reading thread kept busy, or -1 if unknown
+         */
+        public double getCpuLoad() {
+            if (cpuNanos < 0 || elapsedNanos <= 0) {
+                return -1;
+            }
+            return (double) cpuNanos / elapsedNanos;
+        }
+        
+        /**
+         * Whether reading kept a core nearly busy, so the link may be faster than measured
+         */
+        public boolean isCpuBound() {
+            return getCpuLoad() >= CPU_BOUND_LOAD;
+        }
+        
+        @Override
+        public String toString() {
+            return bytesRead + " bytes in " + (elapsedNanos / 1_000_000) + "ms ("
+                + String.format("%.2f", getMbps()) + " Mbps), CPU "
+                + String.format("%.2f", getCpuMsPerMb()) + "ms/MB, load "
+                + String.format("%.2f", getCpuLoad());
+        }
+    }
+    
+    private final int bufferSize;
+    private final CpuClock cpuClock;
+    // Allocated on first use, as a sink usually only reads one kind of source
+    private ByteBuffer directBuffer;
+    private byte[] arrayBuffer;
+    private long maxDurationMs = 0;
+    private long progressIntervalMs = DEFAULT_PROGRESS_INTERVAL_MS;
+    
+    public DownloadSink() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * @param bufferSize Bytes requested per read; larger buffers mean fewer reads on fast links
+     */
+    public DownloadSink(int bufferSize) {
+        this(bufferSize, Debug::threadCpuTimeNanos);
+    }
+    
+    DownloadSink(int bufferSize, CpuClock cpuClock) {
+        this.bufferSize = bufferSize;
+        this.cpuClock = cpuClock;
+    }
+    
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    
+    /**
+     * Stop reading after this long and measure the bytes read so far; 0 reads to the end
+     */
+    public DownloadSink setMaxDurationMs(long maxDurationMs) {
+        this.maxDurationMs = maxDurationMs;
+        return this;
+    }
+    
+    /**
+     * Set how often the progress listener is called
+     */
+    public DownloadSink setProgressIntervalMs(long progressIntervalMs) {
+        this.progressIntervalMs = progressIntervalMs;
+        return this;
+    }
+    
+    /**
+     * Drain a stream; HttpURLConnection bodies come in this way
+     * Reads straight into a byte array, which a channel wrapped around the stream would copy again.
+     */
+    public Result drain(InputStream in, ProgressListener listener) throws IOException {
+        if (arrayBuffer == null) {
+            arrayBuffer = new byte[bufferSize];
+        }
+        byte[] buffer = arrayBuffer;
+        return drain(() -> in.read(buffer), listener);
+    }
+    
+    /**
+     * Drain a channel, such as an OkHttp body source, into the direct buffer
+     */
+    public Result drain(ReadableByteChannel channel, ProgressListener listener) throws IOException {
+        if (directBuffer == null) {
+            directBuffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        ByteBuffer buffer = directBuffer;
+        buffer.clear();
+        return drain(() -> {
+            int bytesRead = channel.read(buffer);
+            buffer.clear();
+            return bytesRead;
+        }, listener);
+    }
+    
+    /**
+     * Drain a source until it ends, the time limit passes, or the listener stops it
+     * Timing starts here, so open the connection and read the headers first.
+     */
+    private Result drain(Source source, ProgressListener listener) throws IOException {
+        long cpuStart = cpuClock.threadCpuNanos();
+        long startTime = System.nanoTime();
+        long deadline = maxDurationMs > 0 ? startTime + maxDurationMs * 1_000_000L : Long.MAX_VALUE;
+        long nextProgress = startTime + progressIntervalMs * 1_000_000L;
+        long totalBytes = 0;
+        
+        int bytesRead;
+        while ((bytesRead = source.read()) != -1) {
+            totalBytes += bytesRead;
+            
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                break;
+            }
+            if (listener != null && now >= nextProgress) {
+                if (!listener.onProgress(totalBytes, now - startTime)) {
+                    break;
+                }
+                nextProgress = now + progressIntervalMs * 1_000_000L;
+            }
+        }
+        
+        long elapsedNanos = System.nanoTime() - startTime;
+        long cpuEnd = cpuClock.threadCpuNanos();
+        long cpuNanos = cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart : -1;
+        return new Result(totalBytes, elapsedNanos, cpuNanos);
+    }
+}
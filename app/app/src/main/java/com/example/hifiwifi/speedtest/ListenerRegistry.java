@@ -0,0 +1,139 @@
+package com.example.hifiwifi.speedtest;
+
+import android.util.Log;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events to listeners without locks, each on its own executor.
+ * The listener list is copy-on-write, so notifying never blocks adding or removing a listener.
+ * Every listener has its own queue: events reach one listener in the order they were sent, and
+ * a slow listener only delays itself. Coalesced events such as progress keep only the latest
+ * value per key while a listener hasn't caught up.
+ */
+public class ListenerRegistry<L> {
+    
+    private static final String TAG = "ListenerRegistry";
+    
+    private final CopyOnWriteArrayList<Registration<L>> registrations = new CopyOnWriteArrayList<>();
+    private final Executor defaultExecutor;
+    
+    /**
+     * @param defaultExecutor Where listeners added without an executor receive events
+     */
+    public ListenerRegistry(Executor defaultExecutor) {
+        this.defaultExecutor = defaultExecutor;
+    }
+    
+    public void add(L listener) {
+        add(listener, defaultExecutor);
+    }
+    
+    /**
+     * Add a listener that receives events on the given executor, one at a time
+     */
+    public void add(L listener, Executor executor) {
+        registrations.add(new Registration<>(listener, executor));
+    }
+    
+    /**
+     * Remove a listener; events already queued for it are dropped
+     */
+    public void remove(L listener) {
+        for (Registration<L> registration : registrations) {
+            if (registration.listener == listener) {
+                registration.active = false;
+                registrations.remove(registration);
+            }
+        }
+    }
+    
+    public int size() {
+        return registrations.size();
+    }
+    
+    /**
+     * Send an event to every listener
+     */
+    public void dispatch(Consumer<L> event) {
+        for (Registration<L> registration : registrations) {
+            registration.enqueue(() -> registration.deliver(event));
+        }
+    }
+    
+    /**
+     * Send an event that supersedes earlier ones with the same key
+     * A listener that hasn't received the previous event for this key gets only the latest.
+     */
+    public void dispatchCoalesced(Object key, Consumer<L> event) {
+        for (Registration<L> registration : registrations) {
+            if (registration.pending.put(key, event) == null) {
+                registration.enqueue(() -> {
+                    Consumer<L> latest = registration.pending.remove(key);
+                    if (latest != null) {
+                        registration.deliver(latest);
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * One listener with its executor and its queue of undelivered events
+     */
+    private static class Registration<L> {
+        final L listener;
+        final Executor executor;
+        final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        final Map<Object, Consumer<L>> pending = new ConcurrentHashMap<>();
+        // Whether a drain of the queue is scheduled or running on the executor
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile boolean active = true;
+        
+        Registration(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+        
+        void enqueue(Runnable task) {
+            queue.add(task);
+            schedule();
+        }
+        
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+        
+        private void drain() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                task.run();
+            }
+            draining.set(false);
+            // An event queued after the last poll but before the flag cleared still needs a drain
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+        
+        void deliver(Consumer<L> event) {
+            if (!active) {
+                return;
+            }
+            try {
+                event.accept(listener);
+            } catch (Exception e) {
+                Log.e(TAG, "Error in listener " + listener, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.hifiwifi.speedtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running speed statistics for one room, updated as each result arrives instead of recomputed
+ * from the stored results on every query.
+ * Counts and sums are striped adders, so tests finishing at the same time don't contend;
+ * reading the statistics is a handful of sums regardless of how many tests were recorded.
+ * Only successful tests count towards the speed statistics; failures are counted separately.
+ */
+public class RoomSpeedStats {
+    
+    // Weight of the newest result in the moving average
+    static final double EWMA_ALPHA = 0.3;
+    
+    // Upper bounds of the histogram buckets in Mbps; the last bucket holds everything faster
+    private static final double[] BUCKET_UPPER_BOUNDS_MBPS = {5, 10, 25, 50, 100, 200, 500};
+    
+    private final String roomLabel;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final DoubleAdder totalMbps = new DoubleAdder();
+    private final DoubleAccumulator minMbps = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator maxMbps = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MBPS.length + 1);
+    
+    public RoomSpeedStats(String roomLabel) {
+        this.roomLabel = roomLabel;
+    }
+    
+    /**
+     * Add one result
+     */
+    public void record(SpeedTestResult result) {
+        if (!result.isSuccess()) {
+            failureCount.increment();
+            return;
+        }
+        
+        double speedMbps = result.getSpeedMbps();
+        count.increment();
+        totalMbps.add(speedMbps);
+        minMbps.accumulate(speedMbps);
+        maxMbps.accumulate(speedMbps);
+        histogram.incrementAndGet(bucketOf(speedMbps));
+        
+        // The moving average depends on order, so it is the one value updated with a CAS loop
+        long previousBits;
+        double next;
+        do {
+            previousBits = ewmaBits.get();
+            double previous = Double.longBitsToDouble(previousBits);
+            next = Double.isNaN(previous) ? speedMbps : previous + EWMA_ALPHA * (speedMbps - previous);
+        } while (!ewmaBits.compareAndSet(previousBits, Double.doubleToRawLongBits(next)));
+    }
+    
+    static int bucketOf(double speedMbps) {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS_MBPS.length; i++) {
+            if (speedMbps < BUCKET_UPPER_BOUNDS_MBPS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUNDS_MBPS.length;
+    }
+    
+    public String getRoomLabel() {
+        return roomLabel;
+    }
+    
+    /**
+     * Number of successful tests
+     */
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+    
+    public double getMeanMbps() {
+        long tests = count.sum();
+        return tests > 0 ? totalMbps.sum() / tests : 0.0;
+    }
+    
+    public double getMinMbps() {
+        double min = minMbps.get();
+        return Double.isInfinite(min) ? 0.0 : min;
+    }
+    
+    public double getMaxMbps() {
+        double max = maxMbps.get();
+        return Double.isInfinite(max) ? 0.0 : max;
+    }
+    
+    /**
+     * Exponentially weighted moving average, which follows recent changes more than the mean does
+     */
+    public double getEwmaMbps() {
+        double ewma = Double.longBitsToDouble(ewmaBits.get());
+        return Double.isNaN(ewma) ? 0.0 : ewma;
+    }
+    
+    /**
+     * Successful tests per speed bucket, see getBucketUpperBoundsMbps()
+     */
+    public long[] getHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+    
+    /**
+     * Upper bound of each histogram bucket but the last, which is open-ended
+     */
+    public static double[] getBucketUpperBoundsMbps() {
+        return BUCKET_UPPER_BOUNDS_MBPS.clone();
+    }
+    
+    @Override
+    public String toString() {
+        return roomLabel + ": " + getCount() + " tests, mean " + String.format("%.2f", getMeanMbps())
+            + " Mbps (min " + String.format("%.2f", getMinMbps())
+            + ", max " + String.format("%.2f", getMaxMbps())
+            + ", ewma " + String.format("%.2f", getEwmaMbps()) + "), " + getFailureCount() + " failed";
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.hifiwifi.speedtest;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the order in which speed test servers are tried.
+ * Every candidate gets a HEAD request at once, and the servers that answer are ranked by how
+ * quickly they did; servers that didn't answer go last. The ranking is kept for a few hours, so
+ * a bandwidth test normally starts on the best server straight away instead of waiting out the
+ * timeout of each dead server in turn. A server that fails a download is moved to the back.
+ */
+public class ServerSelector {
+    
+    private static final String TAG = "ServerSelector";
+    private static final String PREFS_NAME = "speed_test_servers";
+    private static final String RANKING_KEY_PREFIX = "ranking_";
+    
+    static final long RANKING_TTL_MS = TimeUnit.HOURS.toMillis(6);
+    static final int PROBE_TIMEOUT_MS = 2000;
+    
+    /**
+     * Measures one candidate
+     */
+    interface Prober {
+        /**
+         * @return the probe's round trip in nanoseconds, or -1 if the server didn't answer usefully
+         */
+        long probe(String url);
+    }
+    
+    /**
+     * A ranking and when it was measured
+     */
+    private static class Ranking {
+        final long measuredAt;
+        final List<String> urls;
+        
+        Ranking(long measuredAt, List<String> urls) {
+            this.measuredAt = measuredAt;
+            this.urls = urls;
+        }
+    }
+    
+    // Singleton instance
+    private static ServerSelector instance;
+    
+    private final SharedPreferences preferences; // null keeps rankings in memory only
+    private final Prober prober;
+    private final ExecutorService probeExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ServerSelector-probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Rankings by candidate set, guarded by this
+    private final Map<String, Ranking> rankings = new HashMap<>();
+    
+    ServerSelector(SharedPreferences preferences, Prober prober) {
+        this.preferences = preferences;
+        this.prober = prober;
+    }
+    
+    /**
+     * Get singleton instance, persisting rankings across launches
+     */
+    public static synchronized ServerSelector getInstance(Context context) {
+        if (instance == null) {
+            SharedPreferences preferences = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            instance = new ServerSelector(preferences, url -> headRttNanos(url, PROBE_TIMEOUT_MS));
+        }
+        return instance;
+    }
+    
+    /**
+     * A selector whose rankings last only as long as the process
+     */
+    public static ServerSelector inMemory() {
+        return new ServerSelector(null, url -> headRttNanos(url, PROBE_TIMEOUT_MS));
+    }
+    
+    public List<String> rank(String... candidates) {
+        return rank(Arrays.asList(candidates));
+    }
+    
+    /**
+     * Order candidates best first, probing them if there is no fresh ranking for this set
+     * Blocks for at most a few seconds while probing; call from a background thread.
+     */
+    public List<String> rank(List<String> candidates) {
+        if (candidates.size() < 2) {
+            return new ArrayList<>(candidates);
+        }
+        String key = keyOf(candidates);
+        synchronized (this) {
+            Ranking cached = getRanking(key);
+            if (cached != null && System.currentTimeMillis() - cached.measuredAt < RANKING_TTL_MS
+                    && new HashSet<>(cached.urls).equals(new HashSet<>(candidates))) {
+                return new ArrayList<>(cached.urls);
+            }
+        }
+        
+        List<String> ranked = race(candidates);
+        synchronized (this) {
+            putRanking(key, new Ranking(System.currentTimeMillis(), ranked));
+        }
+        return new ArrayList<>(ranked);
+    }
+    
+    /**
+     * Move a server that failed a test behind every other candidate it is ranked with
+     */
+    public synchronized void reportFailure(String url) {
+        for (Map.Entry<String, Ranking> entry : new ArrayList<>(loadAll().entrySet())) {
+            Ranking ranking = entry.getValue();
+            int index = ranking.urls.indexOf(url);
+            if (index < 0 || index == ranking.urls.size() - 1) {
+                continue;
+            }
+            List<String> demoted = new ArrayList<>(ranking.urls);
+            demoted.remove(index);
+            demoted.add(url);
+            putRanking(entry.getKey(), new Ranking(ranking.measuredAt, demoted));
+            Log.d(TAG, "Demoted " + url);
+        }
+    }
+    
+    /**
+     * Forget every ranking, so the next rank() probes again
+     */
+    public synchronized void clear() {
+        rankings.clear();
+        if (preferences != null) {
+            preferences.edit().clear().apply();
+        }
+    }
+    
+    /**
+     * Probe every candidate concurrently and sort them by round trip
+     */
+    private List<String> race(List<String> candidates) {
+        long start = System.nanoTime();
+        List<Future<Long>> probes = new ArrayList<>(candidates.size());
+        for (String candidate : candidates) {
+            probes.add(probeExecutor.submit(() -> prober.probe(candidate)));
+        }
+        
+        // One shared deadline: a server slower than that is no better than one that is down
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS * 2L);
+        long[] rtts = new long[candidates.size()];
+        for (int i = 0; i < probes.size(); i++) {
+            try {
+                Long rtt = probes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                rtts[i] = rtt != null ? rtt : -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rtts[i] = -1;
+            } catch (Exception e) {
+                probes.get(i).cancel(true);
+                rtts[i] = -1;
+            }
+        }
+        
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            order.add(i);
+        }
+        // Stable sort, so unreachable servers keep their configured order at the back
+        Collections.sort(order, (a, b) -> {
+            if (rtts[a] < 0 || rtts[b] < 0) {
+                return Boolean.compare(rtts[a] < 0, rtts[b] < 0);
+            }
+            return Long.compare(rtts[a], rtts[b]);
+        });
+        
+        List<String> ranked = new ArrayList<>(candidates.size());
+        StringBuilder summary = new StringBuilder();
+        for (int index : order) {
+            ranked.add(candidates.get(index));
+            summary.append("\n  ").append(candidates.get(index)).append(": ")
+                .append(rtts[index] < 0 ? "no answer" : (rtts[index] / 1_000_000) + " ms");
+        }
+        Log.d(TAG, "Ranked " + candidates.size() + " servers in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms:" + summary);
+        return ranked;
+    }
+    
+    /**
+     * Time a HEAD request for the test file, which proves the server is up and still serves it
+     * @return the round trip in nanoseconds, or -1 if the server failed or answered with an error
+     */
+    static long headRttNanos(String url, int timeoutMs) {
+        HttpURLConnection connection = null;
+        long start = System.nanoTime();
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setRequestMethod("HEAD");
+            connection.setUseCaches(false);
+            connection.setInstanceFollowRedirects(true);
+            int responseCode = connection.getResponseCode();
+            long elapsed = System.nanoTime() - start;
+            // Some servers don't allow HEAD but still serve the file
+            boolean usable = responseCode < 400 || responseCode == HttpURLConnection.HTTP_BAD_METHOD;
+            return usable ? elapsed : -1;
+        } catch (IOException | ClassCastException e) {
+            return -1;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+    
+    /**
+     * Rankings are per candidate set, so callers with different lists don't overwrite each other
+     */
+    static String keyOf(List<String> candidates) {
+        return RANKING_KEY_PREFIX + Integer.toHexString(new TreeSet<>(candidates).hashCode());
+    }
+    
+    private Ranking getRanking(String key) {
+        Ranking ranking = rankings.get(key);
+        if (ranking == null && preferences != null) {
+            ranking = decode(preferences.getString(key, null));
+            if (ranking != null) {
+                rankings.put(key, ranking);
+            }
+        }
+        return ranking;
+    }
+    
+    private void putRanking(String key, Ranking ranking) {
+        rankings.put(key, ranking);
+        if (preferences != null) {
+            preferences.edit().putString(key, encode(ranking)).apply();
+        }
+    }
+    
+    private Map<String, Ranking> loadAll() {
+        if (preferences != null) {
+            for (String key : preferences.getAll().keySet()) {
+                if (key.startsWith(RANKING_KEY_PREFIX)) {
+                    getRanking(key);
+                }
+            }
+        }
+        return rankings;
+    }
+    
+    // Stored as the measurement time followed by the URLs, one per line
+    private static String encode(Ranking ranking) {
+        StringBuilder encoded = new StringBuilder().append(ranking.measuredAt);
+        for (String url : ranking.urls) {
+            encoded.append('\n').append(url);
+        }
+        return encoded.toString();
+    }
+    
+    private static Ranking decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] lines = encoded.split("\n");
+        try {
+            List<String> urls = new ArrayList<>(Arrays.asList(lines).subList(1, lines.length));
+            return new Ranking(Long.parseLong(lines[0]), urls);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
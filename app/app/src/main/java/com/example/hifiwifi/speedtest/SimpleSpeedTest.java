@@ -1,26 +1,35 @@
 package com.example.hifiwifi.speedtest;
 
-import android.os.AsyncTask;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Simple network speed test implementation for measuring download speeds.
  * Uses HttpURLConnection to download test data and calculate Mbps.
+ * Runs on the shared SpeedTestEngine and delivers its callbacks on the main thread.
  * Designed for hackathon demo with 10-second maximum test duration.
  */
 public class SimpleSpeedTest {
     
-    // Test URLs - primary and fallback
+    private static final String TAG = "SimpleSpeedTest";
+    
+    // Test URLs, tried in the order ServerSelector ranks them
     private static final String PRIMARY_URL = "https://speed.cloudflare.com/__down?bytes=10000000";
     private static final String FALLBACK_URL = "http://ipv4.download.thinkbroadband.com/10MB.zip";
     
     // Configuration constants
-    private static final int BUFFER_SIZE = 8192;
+    private static final int BUFFER_SIZE = DownloadSink.DEFAULT_BUFFER_SIZE;
     private static final int CONNECTION_TIMEOUT = 10000; // 10 seconds
     private static final int READ_TIMEOUT = 10000; // 10 seconds
     private static final int MAX_TEST_DURATION = 10000; // 10 seconds in milliseconds
@@ -35,6 +44,10 @@ public class SimpleSpeedTest {
     
     private SpeedTestCallback callback;
     private SpeedTestTask currentTask;
+    private Future<SpeedTestResult> currentFuture;
+    private final ServerSelector serverSelector;
+    private final SpeedTestEngine engine = SpeedTestEngine.getInstance();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     
     /**
      * Constructor
@@ -42,33 +55,89 @@ public class SimpleSpeedTest {
      */
     public SimpleSpeedTest(SpeedTestCallback callback) {
         this.callback = callback;
+        this.serverSelector = ServerSelector.inMemory();
     }
     
     /**
-     * Start the speed test asynchronously
+     * Constructor that reuses the server ranking persisted across launches
+     * @param context Context used to reach the ranking
+     * @param callback Callback interface for test results
+     */
+    public SimpleSpeedTest(Context context, SpeedTestCallback callback) {
+        this.callback = callback;
+        this.serverSelector = ServerSelector.getInstance(context);
+    }
+    
+    /**
+     * Start the speed test asynchronously on the speed test engine
+     * Callbacks arrive on the main thread.
      */
     public void startTest() {
-        if (currentTask != null && currentTask.getStatus() == AsyncTask.Status.RUNNING) {
-            currentTask.cancel(true);
-        }
+        cancelTest();
         
-        currentTask = new SpeedTestTask();
-        currentTask.execute();
+        SpeedTestTask task = new SpeedTestTask();
+        try {
+            currentFuture = engine.submit(task, new SpeedTestEngine.ResultHandler<SpeedTestResult>() {
+                @Override
+                public void onResult(SpeedTestResult result) {
+                    if (callback != null) {
+                        if (result.success) {
+                            callback.onComplete(result.speedMbps, result.latencyMs, result.jitterMs, result.packetLossPercent);
+                        } else {
+                            callback.onError(result.errorMessage);
+                        }
+                    }
+                }
+                
+                @Override
+                public void onFailure(Throwable error) {
+                    if (callback != null) {
+                        callback.onError("Unexpected error: " + error.getMessage());
+                    }
+                }
+                
+                @Override
+                public void onCancelled() {
+                    if (callback != null) {
+                        callback.onError("Speed test cancelled");
+                    }
+                }
+            });
+            currentTask = task;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Speed test rejected, " + engine.getPendingCount() + " already pending");
+            mainHandler.post(() -> {
+                if (callback != null) {
+                    callback.onError("Too many speed tests pending");
+                }
+            });
+        }
     }
     
     /**
-     * Cancel the current speed test
+     * Cancel the current speed test, interrupting its download
      */
     public void cancelTest() {
-        if (currentTask != null && currentTask.getStatus() == AsyncTask.Status.RUNNING) {
-            currentTask.cancel(true);
+        if (currentFuture != null && !currentFuture.isDone()) {
+            currentTask.cancelled = true;
+            currentFuture.cancel(true);
         }
     }
     
     /**
-     * AsyncTask for performing the speed test in background
+     * Whether a test has been started and hasn't finished
+     */
+    public boolean isRunning() {
+        return currentFuture != null && !currentFuture.isDone();
+    }
+    
+    /**
+     * One run of the speed test, executed on a SpeedTestEngine thread
      */
-    private class SpeedTestTask extends AsyncTask<Void, SpeedTestProgress, SpeedTestResult> {
+    private class SpeedTestTask implements Callable<SpeedTestResult> {
+        
+        // Set by cancelTest(); the interrupt alone is cleared once the thread moves on
+        volatile boolean cancelled = false;
         
         // Latency and jitter measurement variables
         private java.util.List<Long> latencyMeasurements = new java.util.ArrayList<>();
@@ -76,7 +145,7 @@ public class SimpleSpeedTest {
         private static final int PACKET_LOSS_SAMPLE_SIZE = 10;
         
         @Override
-        protected SpeedTestResult doInBackground(Void... voids) {
+        public SpeedTestResult call() {
             HttpURLConnection connection = null;
             InputStream inputStream = null;
             
@@ -85,34 +154,8 @@ public class SimpleSpeedTest {
                 int latencyMs = measureLatency();
                 double packetLossPercent = measurePacketLoss();
                 
-                // Try primary URL first
-                URL url = new URL(PRIMARY_URL);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setConnectTimeout(CONNECTION_TIMEOUT);
-                connection.setReadTimeout(READ_TIMEOUT);
-                connection.setRequestMethod("GET");
-                connection.setDoInput(true);
-                
-                // Connect to the server
-                connection.connect();
-                
-                int responseCode = connection.getResponseCode();
-                if (responseCode != HttpURLConnection.HTTP_OK) {
-                    // Try fallback URL
-                    connection.disconnect();
-                    url = new URL(FALLBACK_URL);
-                    connection = (HttpURLConnection) url.openConnection();
-                    connection.setConnectTimeout(CONNECTION_TIMEOUT);
-                    connection.setReadTimeout(READ_TIMEOUT);
-                    connection.setRequestMethod("GET");
-                    connection.setDoInput(true);
-                    connection.connect();
-                    
-                    responseCode = connection.getResponseCode();
-                    if (responseCode != HttpURLConnection.HTTP_OK) {
-                        return new SpeedTestResult(false, "HTTP Error: " + responseCode, 0.0, 0, 0.0, 0.0);
-                    }
-                }
+                // Start on the best-ranked server; one that fails is demoted and the next is tried
+                connection = openFirstAvailable(serverSelector.rank(PRIMARY_URL, FALLBACK_URL));
                 
                 // Get content length for progress tracking
                 long contentLength = connection.getContentLength();
@@ -155,71 +198,84 @@ public class SimpleSpeedTest {
             }
         }
         
-        @Override
-        protected void onProgressUpdate(SpeedTestProgress... progress) {
-            if (callback != null && progress.length > 0) {
-                SpeedTestProgress p = progress[0];
-                callback.onProgress(p.currentSpeedMbps, p.bytesDownloaded, p.totalBytes);
-            }
+        private boolean isCancelled() {
+            return cancelled || Thread.currentThread().isInterrupted();
         }
         
-        @Override
-        protected void onPostExecute(SpeedTestResult result) {
-            if (callback != null) {
-                if (result.success) {
-                    callback.onComplete(result.speedMbps, result.latencyMs, result.jitterMs, result.packetLossPercent);
-                } else {
-                    callback.onError(result.errorMessage);
+        /**
+         * Report progress on the main thread, unless the test has been cancelled by then
+         */
+        private void publishProgress(SpeedTestProgress progress) {
+            mainHandler.post(() -> {
+                if (callback != null && !cancelled) {
+                    callback.onProgress(progress.currentSpeedMbps, progress.bytesDownloaded, progress.totalBytes);
                 }
-            }
+            });
         }
         
-        @Override
-        protected void onCancelled() {
-            if (callback != null) {
-                callback.onError("Speed test cancelled");
+        /**
+         * Connect to the first server, in ranked order, that answers with 200
+         * @throws IOException the last server's error, if none did
+         */
+        private HttpURLConnection openFirstAvailable(List<String> rankedUrls) throws IOException {
+            IOException lastError = new IOException("No speed test server configured");
+            for (String testUrl : rankedUrls) {
+                if (isCancelled()) {
+                    break;
+                }
+                HttpURLConnection connection = null;
+                try {
+                    connection = (HttpURLConnection) new URL(testUrl).openConnection();
+                    connection.setConnectTimeout(CONNECTION_TIMEOUT);
+                    connection.setReadTimeout(READ_TIMEOUT);
+                    connection.setRequestMethod("GET");
+                    connection.setDoInput(true);
+                    connection.connect();
+                    
+                    int responseCode = connection.getResponseCode();
+                    if (responseCode == HttpURLConnection.HTTP_OK) {
+                        return connection;
+                    }
+                    lastError = new IOException("HTTP Error: " + responseCode);
+                } catch (IOException e) {
+                    lastError = e;
+                }
+                if (connection != null) {
+                    connection.disconnect();
+                }
+                serverSelector.reportFailure(testUrl);
             }
+            throw lastError;
         }
         
         /**
          * Perform the actual download and speed measurement
          */
         private SpeedTestResult performDownload(InputStream inputStream, long contentLength) throws IOException {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            long totalBytesDownloaded = 0;
-            long startTime = System.currentTimeMillis();
-            long lastProgressUpdate = startTime;
-            
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1 && !isCancelled()) {
-                totalBytesDownloaded += bytesRead;
-                
-                long currentTime = System.currentTimeMillis();
-                long elapsedTime = currentTime - startTime;
-                
-                // Check if we've exceeded maximum test duration
-                if (elapsedTime >= MAX_TEST_DURATION) {
-                    break;
-                }
-                
-                // Update progress every second
-                if (currentTime - lastProgressUpdate >= PROGRESS_UPDATE_INTERVAL) {
-                    double currentSpeed = calculateSpeed(totalBytesDownloaded, elapsedTime);
-                    publishProgress(new SpeedTestProgress(currentSpeed, totalBytesDownloaded, contentLength));
-                    lastProgressUpdate = currentTime;
-                }
-            }
+            // A sink per task, so a cancelled task still draining never shares the buffer
+            DownloadSink sink = new DownloadSink(BUFFER_SIZE)
+                .setMaxDurationMs(MAX_TEST_DURATION)
+                .setProgressIntervalMs(PROGRESS_UPDATE_INTERVAL);
+            DownloadSink.Result download = sink.drain(inputStream, (bytesRead, elapsedNanos) -> {
+                double currentSpeed = calculateSpeed(bytesRead, elapsedNanos / 1_000_000);
+                publishProgress(new SpeedTestProgress(currentSpeed, bytesRead, contentLength));
+                return !isCancelled();
+            });
             
             if (isCancelled()) {
                 return new SpeedTestResult(false, "Test cancelled", 0.0);
             }
             
-            long totalTime = System.currentTimeMillis() - startTime;
+            long totalTime = download.getElapsedNanos() / 1_000_000;
             if (totalTime == 0) {
                 return new SpeedTestResult(false, "Test completed too quickly", 0.0);
             }
             
-            double finalSpeed = calculateSpeed(totalBytesDownloaded, totalTime);
+            Log.d(TAG, "Download: " + download);
+            if (download.isCpuBound()) {
+                Log.w(TAG, "Reading the download kept the CPU busy; the link may be faster than measured");
+            }
+            double finalSpeed = calculateSpeed(download.getBytesRead(), totalTime);
             return new SpeedTestResult(true, null, finalSpeed);
         }
         
@@ -0,0 +1,124 @@
+package com.example.hifiwifi.speedtest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs speed tests on threads of their own instead of AsyncTask's process-wide executor.
+ * The thread budget is fixed: tests share one link, so running more at once would only split its
+ * bandwidth between them. Tests beyond the budget wait in a short queue, and anything past that is
+ * rejected rather than piling up. Every test is a Future that can be cancelled, which interrupts
+ * its thread, and its outcome is delivered on the main thread.
+ */
+public class SpeedTestEngine {
+    
+    private static final String TAG = "SpeedTestEngine";
+    
+    static final int DEFAULT_TEST_THREADS = 1;
+    static final int DEFAULT_QUEUE_CAPACITY = 4;
+    
+    /**
+     * Receives a test's outcome on the main thread; exactly one method is called per test
+     */
+    public interface ResultHandler<T> {
+        void onResult(T result);
+        void onFailure(Throwable error);
+        void onCancelled();
+    }
+    
+    // Singleton instance
+    private static SpeedTestEngine instance;
+    
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    SpeedTestEngine(int testThreads, int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(testThreads, testThreads, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "SpeedTestEngine");
+                thread.setDaemon(true);
+                return thread;
+            });
+        // Idle threads exit, so the engine costs nothing between tests
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Get singleton instance shared by every speed test in the process
+     */
+    public static synchronized SpeedTestEngine getInstance() {
+        if (instance == null) {
+            instance = new SpeedTestEngine(DEFAULT_TEST_THREADS, DEFAULT_QUEUE_CAPACITY);
+        }
+        return instance;
+    }
+    
+    /**
+     * Queue a test
+     * @return the test's future; cancel(true) interrupts it and reports onCancelled()
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public <T> Future<T> submit(Callable<T> test, ResultHandler<T> handler) {
+        FutureTask<T> task = new FutureTask<T>(test) {
+            @Override
+            protected void done() {
+                mainHandler.post(() -> deliver(this, handler));
+            }
+        };
+        executor.execute(task);
+        return task;
+    }
+    
+    private static <T> void deliver(Future<T> future, ResultHandler<T> handler) {
+        if (handler == null) {
+            return;
+        }
+        try {
+            handler.onResult(future.get());
+        } catch (CancellationException e) {
+            handler.onCancelled();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Speed test failed", e.getCause());
+            handler.onFailure(e.getCause());
+        } catch (InterruptedException e) {
+            // The future is done, so get() doesn't block
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Number of tests that may run at once
+     */
+    public int getThreadBudget() {
+        return executor.getMaximumPoolSize();
+    }
+    
+    /**
+     * Number of tests running or waiting to run
+     */
+    public int getPendingCount() {
+        return executor.getActiveCount() + executor.getQueue().size();
+    }
+    
+    /**
+     * Cancel every test and stop the threads
+     */
+    public void shutdownNow() {
+        for (Runnable queued : executor.shutdownNow()) {
+            if (queued instanceof Future) {
+                ((Future<?>) queued).cancel(false);
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.hifiwifi.speedtest;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.work.Constraints;
 import androidx.work.Data;
@@ -8,11 +10,15 @@ import androidx.work.NetworkType;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
 import androidx.work.WorkRequest;
+import com.example.hifiwifi.services.MeasurementEngine;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 /**
  * Manager class for handling speed test operations.
@@ -26,7 +32,11 @@ public class SpeedTestManager {
     
     private final Context context;
     private final ConcurrentMap<String, SpeedTestResult> results;
-    private final List<SpeedTestCallback> callbacks;
+    // Per-room views of results, updated as each one arrives so room queries don't scan them all
+    private final ConcurrentMap<String, Queue<SpeedTestResult>> resultsByRoom;
+    private final ConcurrentMap<String, RoomSpeedStats> roomStats;
+    private final ListenerRegistry<SpeedTestCallback> callbacks;
+    private final Handler mainHandler;
     
     /**
      * Callback interface for speed test events
@@ -35,6 +45,12 @@ public class SpeedTestManager {
         void onTestStarted(String testId, String roomLabel);
         void onTestCompleted(String testId, SpeedTestResult result);
         void onTestFailed(String testId, String errorMessage);
+        
+        /**
+         * Download progress of a test; a slow listener only receives the latest update
+         */
+        default void onTestProgress(String testId, double currentSpeedMbps, long bytesDownloaded, long totalBytes) {
+        }
     }
     
     /**
@@ -50,25 +66,32 @@ public class SpeedTestManager {
     private SpeedTestManager(Context context) {
         this.context = context;
         this.results = new ConcurrentHashMap<>();
-        this.callbacks = new ArrayList<>();
+        this.resultsByRoom = new ConcurrentHashMap<>();
+        this.roomStats = new ConcurrentHashMap<>();
+        // Listeners are mostly UI, so by default they receive events on the main thread
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.callbacks = new ListenerRegistry<>(mainHandler::post);
     }
     
     /**
-     * Add callback for speed test events
+     * Add callback for speed test events, delivered on the main thread
      */
     public void addCallback(SpeedTestCallback callback) {
-        synchronized (callbacks) {
-            callbacks.add(callback);
-        }
+        callbacks.add(callback);
+    }
+    
+    /**
+     * Add callback for speed test events, delivered in order on the given executor
+     */
+    public void addCallback(SpeedTestCallback callback, Executor executor) {
+        callbacks.add(callback, executor);
     }
     
     /**
      * Remove callback
      */
     public void removeCallback(SpeedTestCallback callback) {
-        synchronized (callbacks) {
-            callbacks.remove(callback);
-        }
+        callbacks.remove(callback);
     }
     
     /**
@@ -112,25 +135,38 @@ public class SpeedTestManager {
     
     /**
      * Start a simple speed test without WorkManager (for immediate testing)
+     * The test waits in the MeasurementEngine queue, so it never shares the link with another measurement.
      * @param roomLabel The room where the test is being performed
      * @param callback Callback for test results
      */
     public void startSimpleSpeedTest(String roomLabel, SimpleSpeedTest.SpeedTestCallback callback) {
         String testId = UUID.randomUUID().toString();
         
+        Log.d(TAG, "Queueing simple speed test for room: " + roomLabel + ", testId: " + testId);
+        
+        // The engine is driven from the main thread
+        mainHandler.post(() -> MeasurementEngine.getInstance(context).submitTask(roomLabel,
+                release -> runSimpleSpeedTest(testId, roomLabel, callback, release)));
+    }
+    
+    /**
+     * Run an admitted simple speed test, releasing the link once it has a result
+     */
+    private void runSimpleSpeedTest(String testId, String roomLabel, SimpleSpeedTest.SpeedTestCallback callback,
+                                    Runnable release) {
         Log.d(TAG, "Starting simple speed test for room: " + roomLabel + ", testId: " + testId);
         
         // Notify callbacks
         notifyTestStarted(testId, roomLabel);
         
         // Create and start simple speed test
-        SimpleSpeedTest speedTest = new SimpleSpeedTest(new SimpleSpeedTest.SpeedTestCallback() {
+        SimpleSpeedTest speedTest = new SimpleSpeedTest(context, new SimpleSpeedTest.SpeedTestCallback() {
             @Override
             public void onComplete(double speedMbps, int latencyMs, double jitterMs, double packetLossPercent) {
                 SpeedTestResult result = new SpeedTestResult(
                         System.currentTimeMillis(), speedMbps, roomLabel, testId,
                         true, "", 0, 0, latencyMs, jitterMs, packetLossPercent);
-                results.put(testId, result);
+                recordResult(testId, result);
                 notifyTestCompleted(testId, result);
                 
                 // Call original callback - create a simple callback for backward compatibility
@@ -138,23 +174,27 @@ public class SpeedTestManager {
                     // Note: The original callback interface doesn't have the new metrics
                     // This is a limitation of the current design
                 }
+                release.run();
             }
             
             @Override
             public void onError(String errorMessage) {
                 SpeedTestResult result = new SpeedTestResult(
                         System.currentTimeMillis(), errorMessage, roomLabel, testId);
-                results.put(testId, result);
+                recordResult(testId, result);
                 notifyTestFailed(testId, errorMessage);
                 
                 // Call original callback
                 if (callback != null) {
                     callback.onError(errorMessage);
                 }
+                release.run();
             }
             
             @Override
             public void onProgress(double currentSpeedMbps, long bytesDownloaded, long totalBytes) {
+                notifyTestProgress(testId, currentSpeedMbps, bytesDownloaded, totalBytes);
+                
                 // Call original callback
                 if (callback != null) {
                     callback.onProgress(currentSpeedMbps, bytesDownloaded, totalBytes);
@@ -183,13 +223,8 @@ public class SpeedTestManager {
      * Get speed test results for a specific room
      */
     public List<SpeedTestResult> getResultsForRoom(String roomLabel) {
-        List<SpeedTestResult> roomResults = new ArrayList<>();
-        for (SpeedTestResult result : results.values()) {
-            if (roomLabel.equals(result.getRoomLabel())) {
-                roomResults.add(result);
-            }
-        }
-        return roomResults;
+        Queue<SpeedTestResult> roomResults = resultsByRoom.get(roomLabel);
+        return roomResults != null ? new ArrayList<>(roomResults) : new ArrayList<>();
     }
     
     /**
@@ -197,6 +232,8 @@ public class SpeedTestManager {
      */
     public void clearResults() {
         results.clear();
+        resultsByRoom.clear();
+        roomStats.clear();
         Log.d(TAG, "Cleared all speed test results");
     }
     
@@ -204,22 +241,39 @@ public class SpeedTestManager {
      * Get average speed for a room
      */
     public double getAverageSpeedForRoom(String roomLabel) {
-        List<SpeedTestResult> roomResults = getResultsForRoom(roomLabel);
-        if (roomResults.isEmpty()) {
-            return 0.0;
+        RoomSpeedStats stats = roomStats.get(roomLabel);
+        return stats != null ? stats.getMeanMbps() : 0.0;
+    }
+    
+    /**
+     * Get running statistics for a room, or null if it has no results
+     */
+    public RoomSpeedStats getRoomStats(String roomLabel) {
+        return roomStats.get(roomLabel);
+    }
+    
+    /**
+     * Get statistics for every room, fastest mean speed first
+     */
+    public List<RoomSpeedStats> getRoomRanking() {
+        List<RoomSpeedStats> ranking = new ArrayList<>(roomStats.values());
+        ranking.sort((a, b) -> Double.compare(b.getMeanMbps(), a.getMeanMbps()));
+        return ranking;
+    }
+    
+    /**
+     * Store a result and fold it into its room's statistics, once per test
+     */
+    private void recordResult(String testId, SpeedTestResult result) {
+        if (results.put(testId, result) != null) {
+            return;
         }
-        
-        double totalSpeed = 0.0;
-        int successfulTests = 0;
-        
-        for (SpeedTestResult result : roomResults) {
-            if (result.isSuccess()) {
-                totalSpeed += result.getSpeedMbps();
-                successfulTests++;
-            }
+        String roomLabel = result.getRoomLabel();
+        if (roomLabel == null) {
+            return;
         }
-        
-        return successfulTests > 0 ? totalSpeed / successfulTests : 0.0;
+        resultsByRoom.computeIfAbsent(roomLabel, label -> new ConcurrentLinkedQueue<>()).add(result);
+        roomStats.computeIfAbsent(roomLabel, RoomSpeedStats::new).record(result);
     }
     
     /**
@@ -242,7 +296,7 @@ public class SpeedTestManager {
                                         System.currentTimeMillis(), speedMbps, roomLabel, testId,
                                         success, errorMessage, 0, 0);
                                 
-                                results.put(testId, result);
+                                recordResult(testId, result);
                                 
                                 if (success) {
                                     notifyTestCompleted(testId, result);
@@ -267,44 +321,28 @@ public class SpeedTestManager {
      * Notify callbacks that test started
      */
     private void notifyTestStarted(String testId, String roomLabel) {
-        synchronized (callbacks) {
-            for (SpeedTestCallback callback : callbacks) {
-                try {
-                    callback.onTestStarted(testId, roomLabel);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in callback onTestStarted", e);
-                }
-            }
-        }
+        callbacks.dispatch(callback -> callback.onTestStarted(testId, roomLabel));
+    }
+    
+    /**
+     * Notify callbacks of test progress, coalesced per test
+     */
+    private void notifyTestProgress(String testId, double currentSpeedMbps, long bytesDownloaded, long totalBytes) {
+        callbacks.dispatchCoalesced(testId, callback ->
+                callback.onTestProgress(testId, currentSpeedMbps, bytesDownloaded, totalBytes));
     }
     
     /**
      * Notify callbacks that test completed
      */
     private void notifyTestCompleted(String testId, SpeedTestResult result) {
-        synchronized (callbacks) {
-            for (SpeedTestCallback callback : callbacks) {
-                try {
-                    callback.onTestCompleted(testId, result);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in callback onTestCompleted", e);
-                }
-            }
-        }
+        callbacks.dispatch(callback -> callback.onTestCompleted(testId, result));
     }
     
     /**
      * Notify callbacks that test failed
      */
     private void notifyTestFailed(String testId, String errorMessage) {
-        synchronized (callbacks) {
-            for (SpeedTestCallback callback : callbacks) {
-                try {
-                    callback.onTestFailed(testId, errorMessage);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in callback onTestFailed", e);
-                }
-            }
-        }
+        callbacks.dispatch(callback -> callback.onTestFailed(testId, errorMessage));
     }
 }
@@ -1,23 +1,29 @@
 package com.example.hifiwifi.speedtest;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.concurrent.futures.CallbackToFutureAdapter;
 import androidx.work.Data;
-import androidx.work.Worker;
+import androidx.work.ListenableWorker;
 import androidx.work.WorkerParameters;
-import java.util.concurrent.CountDownLatch;
+import com.example.hifiwifi.services.MeasurementEngine;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
  * WorkManager Worker for performing network speed tests.
  * Integrates SimpleSpeedTest with WorkManager for background execution.
+ * A ListenableWorker: the test runs on SpeedTestEngine, so no worker thread waits on it.
+ * The test waits in the MeasurementEngine queue, so it never shares the link with another measurement.
  * Stores results with timestamp and room information.
  */
-public class SpeedTestWorker extends Worker {
+public class SpeedTestWorker extends ListenableWorker {
     
     private static final String TAG = "SpeedTestWorker";
-    private static final int WORKER_TIMEOUT_SECONDS = 15; // Slightly longer than test duration
+    private static final int WORKER_TIMEOUT_SECONDS = 15; // Slightly longer than test duration, counted from admission
     
     // Input data keys
     public static final String KEY_ROOM_LABEL = "room_label";
@@ -31,104 +37,103 @@ public class SpeedTestWorker extends Worker {
     public static final String KEY_BYTES_DOWNLOADED = "bytes_downloaded";
     public static final String KEY_TEST_DURATION_MS = "test_duration_ms";
     
-    // Thread-safe result storage
-    private volatile SpeedTestResult result;
-    private final CountDownLatch latch = new CountDownLatch(1);
-    
     public SpeedTestWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
         super(context, workerParams);
     }
     
+    /**
+     * Start the test and return at once; WorkManager's thread isn't held while the test runs.
+     * The future completes from the test's callbacks, or with a failure after the timeout.
+     */
     @NonNull
     @Override
-    public Result doWork() {
+    public ListenableFuture<Result> startWork() {
         Log.d(TAG, "Starting speed test worker");
         
-        try {
-            // Get input parameters
-            String roomLabel = getInputData().getString(KEY_ROOM_LABEL);
-            String testId = getInputData().getString(KEY_TEST_ID);
-            
-            if (roomLabel == null) {
-                roomLabel = "Unknown Room";
-            }
-            if (testId == null) {
-                testId = String.valueOf(System.currentTimeMillis());
-            }
-            
-            Log.d(TAG, "Running speed test for room: " + roomLabel + ", testId: " + testId);
-            
-            // Perform the speed test
-            performSpeedTest(roomLabel, testId);
-            
-            // Wait for test completion with timeout
-            boolean completed = latch.await(WORKER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            
-            if (!completed) {
-                Log.e(TAG, "Speed test timed out");
-                return Result.failure(createFailureData("Speed test timed out"));
-            }
-            
-            if (result == null) {
-                Log.e(TAG, "Speed test failed - no result");
-                return Result.failure(createFailureData("Speed test failed - no result"));
-            }
-            
-            if (result.isSuccess()) {
-                Log.d(TAG, "Speed test completed successfully: " + result.getSpeedMbps() + " Mbps");
-                return Result.success(createSuccessData(result));
-            } else {
-                Log.e(TAG, "Speed test failed: " + result.getErrorMessage());
-                return Result.failure(createFailureData(result.getErrorMessage()));
-            }
-            
-        } catch (InterruptedException e) {
-            Log.e(TAG, "Speed test worker interrupted", e);
-            Thread.currentThread().interrupt();
-            return Result.failure(createFailureData("Worker interrupted: " + e.getMessage()));
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in speed test worker", e);
-            return Result.failure(createFailureData("Unexpected error: " + e.getMessage()));
+        // Get input parameters
+        String roomLabel = getInputData().getString(KEY_ROOM_LABEL);
+        String testId = getInputData().getString(KEY_TEST_ID);
+        
+        if (roomLabel == null) {
+            roomLabel = "Unknown Room";
+        }
+        if (testId == null) {
+            testId = String.valueOf(System.currentTimeMillis());
         }
+        
+        String finalRoomLabel = roomLabel;
+        String finalTestId = testId;
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            Log.d(TAG, "Running speed test for room: " + finalRoomLabel + ", testId: " + finalTestId);
+            performSpeedTest(finalRoomLabel, finalTestId, completer);
+            return "SpeedTestWorker " + finalTestId;
+        });
     }
     
     /**
-     * Perform the actual speed test using SimpleSpeedTest
+     * Perform the actual speed test using SimpleSpeedTest, completing the worker's future
      */
-    private void performSpeedTest(String roomLabel, String testId) {
-        SimpleSpeedTest speedTest = new SimpleSpeedTest(new SimpleSpeedTest.SpeedTestCallback() {
+    private void performSpeedTest(String roomLabel, String testId,
+                                  CallbackToFutureAdapter.Completer<Result> completer) {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        SimpleSpeedTest[] speedTest = new SimpleSpeedTest[1];
+        MeasurementEngine.Ticket[] ticket = new MeasurementEngine.Ticket[1];
+        // Frees the link once the test is over; releasing more than once is harmless
+        Runnable[] release = { () -> { } };
+        
+        Runnable timeout = () -> {
+            Log.e(TAG, "Speed test timed out");
+            completer.set(Result.failure(createFailureData("Speed test timed out")));
+            speedTest[0].cancelTest();
+            release[0].run();
+        };
+        
+        speedTest[0] = new SimpleSpeedTest(getApplicationContext(), new SimpleSpeedTest.SpeedTestCallback() {
             @Override
             public void onComplete(double speedMbps, int latencyMs, double jitterMs, double packetLossPercent) {
+                mainHandler.removeCallbacks(timeout);
                 Log.d(TAG, "Speed test completed: " + speedMbps + " Mbps, " + latencyMs + "ms latency, " + 
                       jitterMs + "ms jitter, " + packetLossPercent + "% packet loss");
-                result = new SpeedTestResult(
+                SpeedTestResult result = new SpeedTestResult(
                     System.currentTimeMillis(), speedMbps, roomLabel, testId,
                     true, "", 0, 0, latencyMs, jitterMs, packetLossPercent);
-                latch.countDown();
+                completer.set(Result.success(createSuccessData(result)));
+                release[0].run();
             }
             
             @Override
             public void onError(String errorMessage) {
-                Log.e(TAG, "Speed test error: " + errorMessage);
-                result = new SpeedTestResult(
-                    System.currentTimeMillis(), errorMessage, roomLabel, testId);
-                latch.countDown();
+                mainHandler.removeCallbacks(timeout);
+                Log.e(TAG, "Speed test failed: " + errorMessage);
+                // After a timeout or stop the future is already complete and this is ignored
+                completer.set(Result.failure(createFailureData(errorMessage)));
+                release[0].run();
             }
             
             @Override
             public void onProgress(double currentSpeedMbps, long bytesDownloaded, long totalBytes) {
                 Log.d(TAG, "Speed test progress: " + currentSpeedMbps + " Mbps, " + 
                       bytesDownloaded + "/" + totalBytes + " bytes");
-                // Update result with progress if needed
-                if (result == null) {
-                    result = new SpeedTestResult(
-                        System.currentTimeMillis(), "In progress", roomLabel, testId);
-                }
             }
         });
         
-        // Start the test
-        speedTest.startTest();
+        // WorkManager cancels the future when the work is stopped; leave the queue or stop the download with it
+        completer.addCancellationListener(() -> mainHandler.post(() -> {
+            mainHandler.removeCallbacks(timeout);
+            if (ticket[0] != null) {
+                ticket[0].cancel();
+            }
+            speedTest[0].cancelTest();
+            release[0].run();
+        }), Runnable::run);
+        
+        // Start the test once the link is free; the engine and the test's callbacks run on the main thread
+        mainHandler.post(() -> ticket[0] = MeasurementEngine.getInstance(getApplicationContext())
+            .submitTask(roomLabel, engineRelease -> {
+                release[0] = engineRelease;
+                mainHandler.postDelayed(timeout, TimeUnit.SECONDS.toMillis(WORKER_TIMEOUT_SECONDS));
+                speedTest[0].startTest();
+            }));
     }
     
     /**
@@ -6,6 +6,8 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.hifiwifi.R;
@@ -13,30 +15,46 @@ import com.example.hifiwifi.models.ChatMessage;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 
 /**
  * RecyclerView adapter for chat messages
  * Supports two view types: user messages and SLM messages
+ * Updates are diffed on a background thread, so appending a message binds only the new row
  */
-public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+public class ChatAdapter extends ListAdapter<ChatMessage, RecyclerView.ViewHolder> {
     
-    private static final int VIEW_TYPE_USER = 1;
-    private static final int VIEW_TYPE_SLM = 2;
+    public static final int VIEW_TYPE_USER = 1;
+    public static final int VIEW_TYPE_SLM = 2;
+    
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.getMessageId(), newItem.getMessageId());
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.getMessageText(), newItem.getMessageText());
+        }
+    };
     
-    private List<ChatMessage> messages;
     private SimpleDateFormat timeFormat;
+    private final StableIds stableIds = new StableIds();
     
     public ChatAdapter(List<ChatMessage> messages) {
-        this.messages = messages != null ? new ArrayList<>(messages) : new ArrayList<>();
+        super(DIFF_CALLBACK);
         this.timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+        setHasStableIds(true);
+        updateMessages(messages);
     }
     
     @Override
     public int getItemViewType(int position) {
-        ChatMessage message = messages.get(position);
+        ChatMessage message = getItem(position);
         return message.isFromUser() ? VIEW_TYPE_USER : VIEW_TYPE_SLM;
     }
     
@@ -56,7 +74,7 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        ChatMessage message = messages.get(position);
+        ChatMessage message = getItem(position);
         
         if (holder instanceof UserMessageViewHolder) {
             ((UserMessageViewHolder) holder).bind(message);
@@ -66,13 +84,20 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     }
     
     @Override
-    public int getItemCount() {
-        return messages.size();
+    public long getItemId(int position) {
+        return stableIds.idFor(getItem(position).getMessageId());
     }
     
     public void updateMessages(List<ChatMessage> newMessages) {
-        this.messages = newMessages != null ? new ArrayList<>(newMessages) : new ArrayList<>();
-        notifyDataSetChanged();
+        updateMessages(newMessages, null);
+    }
+    
+    /**
+     * Update messages and run a callback once the diff has been applied, e.g. to scroll to the newest message
+     */
+    public void updateMessages(List<ChatMessage> newMessages, Runnable onCommitted) {
+        // Submit a snapshot so later changes to the caller's list can't race the background diff
+        submitList(newMessages != null ? new ArrayList<>(newMessages) : new ArrayList<>(), onCommitted);
     }
     
     static class UserMessageViewHolder extends RecyclerView.ViewHolder {
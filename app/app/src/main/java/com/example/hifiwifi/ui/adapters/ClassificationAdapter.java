@@ -7,6 +7,9 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.hifiwifi.R;
@@ -14,16 +17,47 @@ import com.example.hifiwifi.models.ClassificationResult;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * RecyclerView adapter for classification results
+ * Updates are diffed on a background thread; rows whose room name is unchanged only rebind their scores
  */
-public class ClassificationAdapter extends RecyclerView.Adapter<ClassificationAdapter.ClassificationViewHolder> {
+public class ClassificationAdapter extends ListAdapter<ClassificationResult, ClassificationAdapter.ClassificationViewHolder> {
     
-    private List<ClassificationResult> classifications;
+    // Payload for a change that leaves the room name untouched
+    static final Object PAYLOAD_SCORES = new Object();
+    
+    private static final DiffUtil.ItemCallback<ClassificationResult> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<ClassificationResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ClassificationResult oldItem, @NonNull ClassificationResult newItem) {
+            return Objects.equals(oldItem.getRoomId(), newItem.getRoomId());
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull ClassificationResult oldItem, @NonNull ClassificationResult newItem) {
+            return Objects.equals(oldItem.getRoomName(), newItem.getRoomName())
+                    && Objects.equals(oldItem.getOverallGrade(), newItem.getOverallGrade())
+                    && Objects.equals(oldItem.getZone(), newItem.getZone())
+                    && oldItem.getGamingScore() == newItem.getGamingScore()
+                    && oldItem.getStreamingScore() == newItem.getStreamingScore()
+                    && oldItem.getVideoCallScore() == newItem.getVideoCallScore();
+        }
+        
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull ClassificationResult oldItem, @NonNull ClassificationResult newItem) {
+            return Objects.equals(oldItem.getRoomName(), newItem.getRoomName()) ? PAYLOAD_SCORES : null;
+        }
+    };
+    
+    private final StableIds stableIds = new StableIds();
     
     public ClassificationAdapter(List<ClassificationResult> classifications) {
-        this.classifications = classifications != null ? new ArrayList<>(classifications) : new ArrayList<>();
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+        updateClassifications(classifications);
     }
     
     @NonNull
@@ -36,18 +70,27 @@ public class ClassificationAdapter extends RecyclerView.Adapter<ClassificationAd
     
     @Override
     public void onBindViewHolder(@NonNull ClassificationViewHolder holder, int position) {
-        ClassificationResult classification = classifications.get(position);
+        ClassificationResult classification = getItem(position);
         holder.bind(classification);
     }
     
     @Override
-    public int getItemCount() {
-        return classifications.size();
+    public void onBindViewHolder(@NonNull ClassificationViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SCORES)) {
+            holder.bindScores(getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+    
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idFor(getItem(position).getRoomId());
     }
     
     public void updateClassifications(List<ClassificationResult> newClassifications) {
-        this.classifications = newClassifications != null ? new ArrayList<>(newClassifications) : new ArrayList<>();
-        notifyDataSetChanged();
+        // Submit a snapshot so later changes to the caller's list can't race the background diff
+        submitList(newClassifications != null ? new ArrayList<>(newClassifications) : new ArrayList<>());
     }
     
     static class ClassificationViewHolder extends RecyclerView.ViewHolder {
@@ -70,6 +113,10 @@ public class ClassificationAdapter extends RecyclerView.Adapter<ClassificationAd
         
         public void bind(ClassificationResult classification) {
             textRoomName.setText(classification.getRoomName());
+            bindScores(classification);
+        }
+        
+        public void bindScores(ClassificationResult classification) {
             textOverallGrade.setText(classification.getOverallGrade());
             textZone.setText("Zone: " + capitalizeFirst(classification.getZone()));
             textGamingScore.setText(String.valueOf(classification.getGamingScore()));
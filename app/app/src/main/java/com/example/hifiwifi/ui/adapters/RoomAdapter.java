@@ -7,6 +7,9 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.hifiwifi.R;
@@ -14,14 +17,38 @@ import com.example.hifiwifi.repository.RoomRepository;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * RecyclerView adapter for room list
+ * Updates are diffed on a background thread; a renamed room only rebinds its name
  */
-public class RoomAdapter extends RecyclerView.Adapter<RoomAdapter.RoomViewHolder> {
+public class RoomAdapter extends ListAdapter<RoomRepository.Room, RoomAdapter.RoomViewHolder> {
+    
+    // Payload for a room whose name changed
+    static final Object PAYLOAD_NAME = new Object();
+    
+    private static final DiffUtil.ItemCallback<RoomRepository.Room> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<RoomRepository.Room>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull RoomRepository.Room oldItem, @NonNull RoomRepository.Room newItem) {
+            return Objects.equals(oldItem.getId(), newItem.getId());
+        }
+        
+        @Override
+        public boolean areContentsTheSame(@NonNull RoomRepository.Room oldItem, @NonNull RoomRepository.Room newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName());
+        }
+        
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull RoomRepository.Room oldItem, @NonNull RoomRepository.Room newItem) {
+            return PAYLOAD_NAME;
+        }
+    };
     
-    private List<RoomRepository.Room> rooms;
     private OnRoomClickListener clickListener;
+    private final StableIds stableIds = new StableIds();
     
     public interface OnRoomClickListener {
         void onRoomClick(RoomRepository.Room room);
@@ -29,8 +56,10 @@ public class RoomAdapter extends RecyclerView.Adapter<RoomAdapter.RoomViewHolder
     }
     
     public RoomAdapter(List<RoomRepository.Room> rooms, OnRoomClickListener clickListener) {
-        this.rooms = rooms != null ? new ArrayList<>(rooms) : new ArrayList<>();
+        super(DIFF_CALLBACK);
         this.clickListener = clickListener;
+        setHasStableIds(true);
+        updateRooms(rooms);
     }
     
     @NonNull
@@ -38,23 +67,55 @@ public class RoomAdapter extends RecyclerView.Adapter<RoomAdapter.RoomViewHolder
     public RoomViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_room, parent, false);
-        return new RoomViewHolder(view);
+        RoomViewHolder holder = new RoomViewHolder(view);
+        
+        // Set click listeners once; they resolve the room at click time so partial binds stay correct
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (clickListener != null && position != RecyclerView.NO_POSITION) {
+                clickListener.onRoomClick(getItem(position));
+            }
+        });
+        
+        holder.buttonDelete.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (clickListener != null && position != RecyclerView.NO_POSITION) {
+                clickListener.onDeleteClick(getItem(position));
+            }
+        });
+        
+        return holder;
     }
     
     @Override
     public void onBindViewHolder(@NonNull RoomViewHolder holder, int position) {
-        RoomRepository.Room room = rooms.get(position);
-        holder.bind(room, clickListener);
+        RoomRepository.Room room = getItem(position);
+        holder.bind(room);
     }
     
     @Override
-    public int getItemCount() {
-        return rooms.size();
+    public void onBindViewHolder(@NonNull RoomViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_NAME)) {
+            holder.bindName(getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+    
+    @Override
+    public long getItemId(int position) {
+        return stableIds.idFor(getItem(position).getId());
     }
     
     public void updateRooms(List<RoomRepository.Room> newRooms) {
-        this.rooms = newRooms != null ? new ArrayList<>(newRooms) : new ArrayList<>();
-        notifyDataSetChanged();
+        // Snapshot the rooms: Room is mutable, and an in-place rename would otherwise diff as unchanged
+        List<RoomRepository.Room> snapshot = new ArrayList<>();
+        if (newRooms != null) {
+            for (RoomRepository.Room room : newRooms) {
+                snapshot.add(new RoomRepository.Room(room.getId(), room.getName()));
+            }
+        }
+        submitList(snapshot);
     }
     
     static class RoomViewHolder extends RecyclerView.ViewHolder {
@@ -69,22 +130,13 @@ public class RoomAdapter extends RecyclerView.Adapter<RoomAdapter.RoomViewHolder
             buttonDelete = itemView.findViewById(R.id.button_delete);
         }
         
-        public void bind(RoomRepository.Room room, OnRoomClickListener clickListener) {
-            textRoomName.setText(room.getName());
+        public void bind(RoomRepository.Room room) {
+            bindName(room);
             textRoomId.setText("ID: " + room.getId());
-            
-            // Set click listeners
-            itemView.setOnClickListener(v -> {
-                if (clickListener != null) {
-                    clickListener.onRoomClick(room);
-                }
-            });
-            
-            buttonDelete.setOnClickListener(v -> {
-                if (clickListener != null) {
-                    clickListener.onDeleteClick(room);
-                }
-            });
+        }
+        
+        public void bindName(RoomRepository.Room room) {
+            textRoomName.setText(room.getName());
         }
     }
 }
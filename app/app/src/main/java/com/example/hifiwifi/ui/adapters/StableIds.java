@@ -0,0 +1,22 @@
+package com.example.hifiwifi.ui.adapters;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out a unique, stable RecyclerView item id for each string key.
+ * Ids are assigned on first sight and never reused, so they can't collide the way string hashes can.
+ */
+class StableIds {
+    private final Map<String, Long> ids = new HashMap<>();
+    private long nextId = 0;
+    
+    long idFor(String key) {
+        Long id = ids.get(key);
+        if (id == null) {
+            id = nextId++;
+            ids.put(key, id);
+        }
+        return id;
+    }
+}
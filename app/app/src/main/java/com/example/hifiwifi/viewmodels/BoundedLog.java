@@ -0,0 +1,94 @@
+package com.example.hifiwifi.viewmodels;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The latest entries of an append-only sequence, up to a limit.
+ * Appending is amortized O(1) and view() is O(1): a slot is never written twice, so a view keeps
+ * showing exactly the entries it was taken with while the log moves on. Call from one thread.
+ */
+final class BoundedLog<T> {
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private final int limit;
+    private Object[] entries;
+    private int start;
+    private int end;
+    
+    BoundedLog(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        this.limit = limit;
+        this.entries = new Object[Math.min(INITIAL_CAPACITY, 2 * limit)];
+    }
+    
+    /**
+     * Append an entry, dropping the oldest once the log holds more than the limit
+     */
+    void add(T entry) {
+        if (end == entries.length) {
+            // Views may still read the old array, so the live entries move to a new one.
+            // At the limit that copies limit entries once every limit appends.
+            int size = end - start;
+            Object[] moved = new Object[Math.min(Math.max(INITIAL_CAPACITY, 2 * size), 2 * limit)];
+            System.arraycopy(entries, start, moved, 0, size);
+            entries = moved;
+            start = 0;
+            end = size;
+        }
+        entries[end++] = entry;
+        if (end - start > limit) {
+            start++;
+        }
+    }
+    
+    /**
+     * Drop every entry; views taken earlier keep theirs
+     */
+    void clear() {
+        entries = new Object[Math.min(INITIAL_CAPACITY, 2 * limit)];
+        start = 0;
+        end = 0;
+    }
+    
+    int size() {
+        return end - start;
+    }
+    
+    /**
+     * Immutable list of the current entries, oldest first
+     */
+    List<T> view() {
+        return new View<>(entries, start, end);
+    }
+    
+    private static final class View<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] entries;
+        private final int start;
+        private final int end;
+        
+        View(Object[] entries, int start, int end) {
+            this.entries = entries;
+            this.start = start;
+            this.end = end;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (end - start));
+            }
+            return (T) entries[start + index];
+        }
+        
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.hifiwifi.viewmodels;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
@@ -9,10 +12,13 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.example.hifiwifi.models.ChatMessage;
 import com.example.hifiwifi.repository.ClassificationRepository;
+import com.example.hifiwifi.repository.CompactContextEncoder;
 import com.example.hifiwifi.services.HTTPService;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * ViewModel for managing chat functionality with SLM
@@ -21,6 +27,8 @@ import java.util.List;
  */
 public class ChatViewModel extends AndroidViewModel {
     
+    private static final String TAG = "ChatViewModel";
+    
     // LiveData for UI observation
     private MutableLiveData<List<ChatMessage>> messages;
     private MutableLiveData<Boolean> isWaitingForResponse;
@@ -31,6 +39,18 @@ public class ChatViewModel extends AndroidViewModel {
     
     // Classification repository for context
     private ClassificationRepository classificationRepository;
+    private int contextTokenBudget = CompactContextEncoder.DEFAULT_TOKEN_BUDGET;
+    
+    // Service used for the last SLM query, so speculative requests can be cancelled when leaving
+    private HTTPService httpService;
+    
+    // Builds classification context off the main thread, since retrieval walks every stored classification
+    private final ExecutorService contextExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ChatViewModel-context");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     
     public ChatViewModel(@NonNull Application application) {
         super(application);
@@ -235,10 +255,38 @@ public class ChatViewModel extends AndroidViewModel {
     }
     
     /**
-     * Get classification context as JSON for SLM prompt
-     * This provides the SLM with WiFi measurement and classification data
+     * Get classification context for SLM prompt
+     * This provides the SLM with WiFi measurement and classification data as a compact table
      */
     public String getClassificationContext() {
+        return getClassificationContext(null);
+    }
+    
+    /**
+     * Get classification context for SLM prompt, ranking the given room first
+     */
+    public String getClassificationContext(String focusRoom) {
+        return classificationRepository.toCompactContext(focusRoom, contextTokenBudget).getText();
+    }
+    
+    /**
+     * Get classification context for SLM prompt, limited to the rooms and activities a question is about
+     */
+    public String getClassificationContextForQuery(String query, String focusRoom) {
+        return classificationRepository.toCompactContext(query, focusRoom, contextTokenBudget).getText();
+    }
+    
+    /**
+     * Set the estimated token budget for classification context sent to the SLM
+     */
+    public void setContextTokenBudget(int contextTokenBudget) {
+        this.contextTokenBudget = contextTokenBudget;
+    }
+    
+    /**
+     * Get classification context as full JSON
+     */
+    public String getClassificationContextJson() {
         return classificationRepository.toJson();
     }
     
@@ -288,14 +336,30 @@ public class ChatViewModel extends AndroidViewModel {
         
         // Set waiting state
         isWaitingForResponse.setValue(true);
+        this.httpService = httpService;
         
-        // Note: Classification context is not sent with chat queries in current Flask API version
-        // The Flask /chat endpoint only accepts "query" and optional "format_json"
-        // To include context, Flask API would need to be enhanced
-        
-        // Send chat query to Pi via HTTPService
+        String query = messageText.trim();
+        contextExecutor.execute(() -> {
+            // Only the rooms and activities the question is about go into the prompt
+            String context = getClassificationContextForQuery(query, roomContext);
+            Log.d(TAG, "Chat context: " + CompactContextEncoder.estimateTokens(context) + " tokens est.");
+            mainHandler.post(() -> sendChatQuery(query, context, httpService, responseCallback));
+        });
+    }
+    
+    /**
+     * Send chat query with its classification context to Pi via HTTPService
+     */
+    private void sendChatQuery(
+            String query,
+            String context,
+            HTTPService httpService,
+            SLMResponseCallback responseCallback
+    ) {
         httpService.sendChatQuery(
-            messageText.trim(),
+            query,
+            context,
+            false,
             new HTTPService.HTTPCallback() {
                 @Override
                 public void onExplanationReceived(String explanation) {
@@ -333,8 +397,8 @@ public class ChatViewModel extends AndroidViewModel {
     }
     
     /**
-     * Send message with classification context to SLM (MOCK VERSION)
-     * In production, this would send both the user message and classification context to the SLM
+     * Send message to SLM (MOCK VERSION)
+     * See sendMessageToSLM for the version that sends the message with its classification context
      */
     public void sendMessageWithContext(String messageText, String roomContext) {
         if (messageText == null || messageText.trim().isEmpty()) {
@@ -354,12 +418,19 @@ public class ChatViewModel extends AndroidViewModel {
         // Simulate waiting for response
         isWaitingForResponse.setValue(true);
         
-        // In production version, you would send this to the SLM:
-        // String context = getClassificationContext();
-        // String fullPrompt = "Context: " + context + "\nUser Query: " + messageText;
-        // sendToSLM(fullPrompt);
-        
+        // Mock replies don't read the context; sendMessageToSLM sends it to the Pi
         // For now, simulate SLM response with mock data
         simulateSLMResponse(messageText.trim(), roomContext);
     }
+    
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        contextExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        // Explanations prefetched for this screen are no longer wanted
+        if (httpService != null) {
+            httpService.cancelPrefetches();
+        }
+    }
 }
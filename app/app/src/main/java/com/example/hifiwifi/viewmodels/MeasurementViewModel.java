@@ -1,6 +1,8 @@
 package com.example.hifiwifi.viewmodels;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -9,23 +11,35 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.events.ClassificationChanged;
+import com.example.hifiwifi.events.MeasurementEventBus;
+import com.example.hifiwifi.events.MeasurementRecorded;
+import com.example.hifiwifi.models.ConnectionPhases;
 import com.example.hifiwifi.models.NetworkMetrics;
 import com.example.hifiwifi.models.RoomMeasurement;
 import com.example.hifiwifi.repository.ClassificationRepository;
+import com.example.hifiwifi.services.MeasurementEngine;
+import com.example.hifiwifi.services.PiSync;
 import com.example.hifiwifi.services.WiFiMeasurementService;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * ViewModel for managing WiFi measurements and classifications
  * Exposes LiveData for UI observation
- * Connected to actual WiFiMeasurementService for real-time measurements
+ * Runs its tests on the process-wide MeasurementEngine, shared with every other screen
  */
 public class MeasurementViewModel extends AndroidViewModel {
     
     private static final String TAG = "MeasurementViewModel";
     
+    // Measurements kept for this screen; the repository keeps each room's classification
+    private static final int MAX_KEPT_MEASUREMENTS = 200;
+    
     // LiveData for UI observation
     private MutableLiveData<NetworkMetrics> currentMetrics;
     private MutableLiveData<List<RoomMeasurement>> allMeasurements;
@@ -33,13 +47,23 @@ public class MeasurementViewModel extends AndroidViewModel {
     private MutableLiveData<Boolean> isMeasuring;
     private MutableLiveData<String> errorMessage;
     private MutableLiveData<Boolean> isTestComplete;
+    private MutableLiveData<Boolean> isWaitingForLink; // Requested, but another test still holds the link
     
     // Service and data storage
-    private WiFiMeasurementService wifiMeasurementService;
-    private List<RoomMeasurement> measurements;
+    private MeasurementEngine measurementEngine;
+    private WiFiMeasurementService.MeasurementCallback serviceCallback;
+    private MeasurementEngine.Ticket currentTicket; // This ViewModel's running or waiting request
+    private WiFiMeasurementService.ThroughputMode throughputMode = WiFiMeasurementService.ThroughputMode.WAN;
+    private BoundedLog<RoomMeasurement> measurements; // Latest measurements; LiveData gets views, not copies
     private List<ClassificationResult> classificationResults;
+    private Map<String, Integer> classificationIndexByRoomId; // Position of each room in classificationResults
     private ClassificationRepository classificationRepository;
     
+    // Event bus wiring; the repository subscribes itself, this ViewModel subscribes for its LiveData
+    private MeasurementEventBus eventBus;
+    private MeasurementEventBus.Subscription<MeasurementRecorded> measurementSubscription;
+    private MeasurementEventBus.Subscription<ClassificationChanged> classificationSubscription;
+    
     public MeasurementViewModel(@NonNull Application application) {
         super(application);
         
@@ -50,15 +74,28 @@ public class MeasurementViewModel extends AndroidViewModel {
         isMeasuring = new MutableLiveData<>(false);
         errorMessage = new MutableLiveData<>();
         isTestComplete = new MutableLiveData<>(false);
+        isWaitingForLink = new MutableLiveData<>(false);
         
         // Initialize service and data storage
-        wifiMeasurementService = new WiFiMeasurementService(application);
-        measurements = new ArrayList<>();
+        measurementEngine = MeasurementEngine.getInstance(application);
+        measurements = new BoundedLog<>(MAX_KEPT_MEASUREMENTS);
         classificationResults = new ArrayList<>();
+        classificationIndexByRoomId = new HashMap<>();
         classificationRepository = ClassificationRepository.getInstance();
+        eventBus = MeasurementEventBus.getInstance();
+        
+        // Keeps the Pi's copy of each room's classification current
+        PiSync.getInstance(application);
         
-        // Set up service callback
-        wifiMeasurementService.setCallback(new WiFiMeasurementService.MeasurementCallback() {
+        // Observers get immutable snapshots: the lists keep changing while an adapter diffs the previous one
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        measurementSubscription = eventBus.subscribe(MeasurementRecorded.class, mainHandler::post,
+            event -> onMeasurementRecorded(event.getMeasurement()));
+        classificationSubscription = eventBus.subscribe(ClassificationChanged.class, mainHandler::post,
+            event -> onClassificationChanged(event.getResult()));
+        
+        // Set up the callback this ViewModel subscribes to its requests with
+        serviceCallback = new WiFiMeasurementService.MeasurementCallback() {
             @Override
             public void onMeasurementUpdate(NetworkMetrics metrics) {
                 Log.d(TAG, "Received measurement update: " + metrics.getCurrentBandwidthMbps() + " Mbps");
@@ -69,8 +106,7 @@ public class MeasurementViewModel extends AndroidViewModel {
             public void onMeasurementComplete(RoomMeasurement measurement) {
                 Log.d(TAG, "Measurement completed for room: " + measurement.getRoomName() + 
                       ", Speed: " + measurement.getBandwidthMbps() + " Mbps, Latency: " + measurement.getLatencyMs() + "ms");
-                measurements.add(measurement);
-                allMeasurements.postValue(new ArrayList<>(measurements));
+                // The engine has already published it to the bus, once however many screens asked
                 
                 // Update the current metrics with final values
                 NetworkMetrics finalMetrics = new NetworkMetrics(
@@ -98,18 +134,14 @@ public class MeasurementViewModel extends AndroidViewModel {
                 // Log comprehensive classification details
                 logClassificationDetails(classificationResult);
                 
-                // Store classification in repository for SLM chat context
-                classificationRepository.addClassification(classificationResult);
+                // The engine published it to the repository (for SLM chat context) and to this ViewModel's LiveData
                 Log.d(TAG, "Classification saved to repository");
                 
-                // Log repository state and JSON
+                // Log repository state, and the JSON only when debug logging is on since it rebuilds the document
                 classificationRepository.logState();
-                Log.d(TAG, "Classification JSON:\n" + classificationRepository.toJsonPretty());
-                
-                // Remove existing classification for this room if any
-                classificationResults.removeIf(c -> c.getRoomId().equals(classificationResult.getRoomId()));
-                classificationResults.add(classificationResult);
-                classifications.postValue(new ArrayList<>(classificationResults));
+                if (Log.isLoggable(TAG, Log.DEBUG)) {
+                    Log.d(TAG, "Classification JSON:\n" + classificationRepository.toJsonPretty());
+                }
             }
             
             @Override
@@ -117,11 +149,40 @@ public class MeasurementViewModel extends AndroidViewModel {
                 Log.e(TAG, "Service error: " + error);
                 errorMessage.postValue(error);
             }
-        });
+        };
         
         // Initialize with empty data
-        allMeasurements.setValue(measurements);
-        classifications.setValue(classificationResults);
+        allMeasurements.setValue(measurements.view());
+        classifications.setValue(snapshot(classificationResults));
+    }
+    
+    /**
+     * Immutable copy of a list for LiveData, so observers never see it change
+     */
+    private static <T> List<T> snapshot(List<T> list) {
+        return Collections.unmodifiableList(new ArrayList<>(list));
+    }
+    
+    /**
+     * Append a recorded measurement (main thread)
+     */
+    private void onMeasurementRecorded(RoomMeasurement measurement) {
+        measurements.add(measurement);
+        allMeasurements.setValue(measurements.view());
+    }
+    
+    /**
+     * Insert or replace a room's classification in place (main thread)
+     */
+    private void onClassificationChanged(ClassificationResult result) {
+        Integer index = classificationIndexByRoomId.get(result.getRoomId());
+        if (index != null) {
+            classificationResults.set(index, result);
+        } else {
+            classificationIndexByRoomId.put(result.getRoomId(), classificationResults.size());
+            classificationResults.add(result);
+        }
+        classifications.setValue(snapshot(classificationResults));
     }
     
     
@@ -150,14 +211,18 @@ public class MeasurementViewModel extends AndroidViewModel {
         return isTestComplete;
     }
     
+    public LiveData<Boolean> getIsWaitingForLink() {
+        return isWaitingForLink;
+    }
+    
     /**
      * Start measurement for a specific room (continuous mode)
      */
     public void startMeasurement(String roomId, String roomName, String activityType) {
         Log.d(TAG, "Starting continuous measurement for room: " + roomName);
         
-        if (wifiMeasurementService == null) {
-            Log.e(TAG, "WiFiMeasurementService is null, cannot start measurement");
+        if (measurementEngine == null) {
+            Log.e(TAG, "MeasurementEngine is null, cannot start measurement");
             errorMessage.setValue("Service not available");
             return;
         }
@@ -170,8 +235,13 @@ public class MeasurementViewModel extends AndroidViewModel {
         isTestComplete.setValue(false);
         errorMessage.setValue(null);
         
-        // Start the actual WiFi measurement service (continuous mode)
-        wifiMeasurementService.startMeasurement(roomName, activityType);
+        // Start continuous measurement once the link is free, or join an identical one
+        // Leave this ViewModel's earlier request, finished or not
+        if (currentTicket != null) {
+            currentTicket.cancel();
+        }
+        currentTicket = measurementEngine.startContinuous(roomName, activityType, serviceCallback);
+        watchAdmission(currentTicket);
     }
     
     /**
@@ -180,8 +250,8 @@ public class MeasurementViewModel extends AndroidViewModel {
     public void startSingleSpeedTest(String roomName, String activityType) {
         Log.d(TAG, "Starting single speed test for room: " + roomName + ", activity: " + activityType);
         
-        if (wifiMeasurementService == null) {
-            Log.e(TAG, "WiFiMeasurementService is null, cannot start speed test");
+        if (measurementEngine == null) {
+            Log.e(TAG, "MeasurementEngine is null, cannot start speed test");
             errorMessage.setValue("Service not available");
             return;
         }
@@ -195,17 +265,44 @@ public class MeasurementViewModel extends AndroidViewModel {
         isTestComplete.setValue(false);
         errorMessage.setValue(null);
         
-        // Start single speed test
-        wifiMeasurementService.startSingleSpeedTest(roomName, activityType);
+        // Start single speed test once the link is free, or join an identical one
+        // Leave this ViewModel's earlier request, finished or not
+        if (currentTicket != null) {
+            currentTicket.cancel();
+        }
+        currentTicket = measurementEngine.submitSingleTest(roomName, activityType, throughputMode, serviceCallback);
+        watchAdmission(currentTicket);
+    }
+    
+    /**
+     * Report the request as waiting until the engine admits it, so the UI can say why nothing runs yet
+     */
+    private void watchAdmission(MeasurementEngine.Ticket ticket) {
+        isWaitingForLink.setValue(!ticket.isRunning());
+        ticket.setOnAdmitted(() -> {
+            if (ticket == currentTicket) {
+                isWaitingForLink.setValue(false);
+            }
+        });
+    }
+    
+    /**
+     * Choose whether speed tests measure the internet connection, the Wi-Fi link to the Pi, or both
+     */
+    public void setThroughputMode(WiFiMeasurementService.ThroughputMode mode) {
+        throughputMode = mode;
     }
     
     /**
      * Stop current measurement
+     * Leaves this ViewModel's request; the engine stops the test once no screen is waiting for it.
      */
     public void stopMeasurement() {
         isMeasuring.setValue(false);
-        if (wifiMeasurementService != null) {
-            wifiMeasurementService.stopMeasurement();
+        isWaitingForLink.setValue(false);
+        if (currentTicket != null) {
+            currentTicket.cancel();
+            currentTicket = null;
         }
     }
     
@@ -221,21 +318,20 @@ public class MeasurementViewModel extends AndroidViewModel {
      * Add a manual measurement
      */
     public void addMeasurement(String roomId, String roomName, String activityType) {
-        if (wifiMeasurementService == null) {
-            Log.e(TAG, "WiFiMeasurementService is null, cannot add measurement");
+        if (measurementEngine == null) {
+            Log.e(TAG, "MeasurementEngine is null, cannot add measurement");
             return;
         }
         
         RoomMeasurement measurement = new RoomMeasurement(
             roomId, roomName, 
-            wifiMeasurementService.getCurrentSignalStrength(),
+            measurementEngine.getCurrentSignalStrength(),
             50, // Default latency
             0.0, // Will be updated by service
             activityType
         );
         
-        measurements.add(measurement);
-        allMeasurements.setValue(new ArrayList<>(measurements));
+        eventBus.publish(new MeasurementRecorded(measurement));
     }
     
     /**
@@ -243,7 +339,7 @@ public class MeasurementViewModel extends AndroidViewModel {
      */
     public List<RoomMeasurement> getMeasurementsForRoom(String roomId) {
         List<RoomMeasurement> roomMeasurements = new ArrayList<>();
-        for (RoomMeasurement measurement : measurements) {
+        for (RoomMeasurement measurement : measurements.view()) {
             if (measurement.getRoomId().equals(roomId)) {
                 roomMeasurements.add(measurement);
             }
@@ -255,12 +351,8 @@ public class MeasurementViewModel extends AndroidViewModel {
      * Get classification for a specific room
      */
     public ClassificationResult getClassificationForRoom(String roomId) {
-        for (ClassificationResult classification : classificationResults) {
-            if (classification.getRoomId().equals(roomId)) {
-                return classification;
-            }
-        }
-        return null;
+        Integer index = classificationIndexByRoomId.get(roomId);
+        return index != null ? classificationResults.get(index) : null;
     }
     
     /**
@@ -269,9 +361,10 @@ public class MeasurementViewModel extends AndroidViewModel {
     public String exportMeasurementsToJSON() {
         StringBuilder json = new StringBuilder();
         json.append("{\"measurements\":[");
-        for (int i = 0; i < measurements.size(); i++) {
+        List<RoomMeasurement> kept = measurements.view();
+        for (int i = 0; i < kept.size(); i++) {
             if (i > 0) json.append(",");
-            RoomMeasurement m = measurements.get(i);
+            RoomMeasurement m = kept.get(i);
             json.append("{");
             json.append("\"roomId\":\"").append(m.getRoomId()).append("\",");
             json.append("\"roomName\":\"").append(m.getRoomName()).append("\",");
@@ -279,6 +372,20 @@ public class MeasurementViewModel extends AndroidViewModel {
             json.append("\"signalStrengthDbm\":").append(m.getSignalStrengthDbm()).append(",");
             json.append("\"latencyMs\":").append(m.getLatencyMs()).append(",");
             json.append("\"bandwidthMbps\":").append(m.getBandwidthMbps()).append(",");
+            json.append("\"wanBandwidthMbps\":").append(m.getWanBandwidthMbps()).append(",");
+            json.append("\"lanBandwidthMbps\":").append(m.getLanBandwidthMbps()).append(",");
+            json.append("\"lanUploadMbps\":").append(m.getLanUploadMbps()).append(",");
+            json.append("\"downloadCpuMsPerMb\":").append(m.getDownloadCpuMsPerMb()).append(",");
+            ConnectionPhases phases = m.getConnectionPhases();
+            if (phases != null) {
+                json.append("\"connectionPhases\":{");
+                json.append("\"dnsMs\":").append(phases.getDnsMs()).append(",");
+                json.append("\"tcpConnectMs\":").append(phases.getTcpConnectMs()).append(",");
+                json.append("\"tlsHandshakeMs\":").append(phases.getTlsHandshakeMs()).append(",");
+                json.append("\"timeToFirstByteMs\":").append(phases.getTimeToFirstByteMs()).append(",");
+                json.append("\"transferMs\":").append(phases.getTransferMs());
+                json.append("},");
+            }
             json.append("\"activityType\":\"").append(m.getActivityType()).append("\"");
             json.append("}");
         }
@@ -292,8 +399,9 @@ public class MeasurementViewModel extends AndroidViewModel {
     public void clearAllMeasurements() {
         measurements.clear();
         classificationResults.clear();
-        allMeasurements.setValue(new ArrayList<>(measurements));
-        classifications.setValue(new ArrayList<>(classificationResults));
+        classificationIndexByRoomId.clear();
+        allMeasurements.setValue(measurements.view());
+        classifications.setValue(snapshot(classificationResults));
     }
     
     /**
@@ -444,12 +552,16 @@ public class MeasurementViewModel extends AndroidViewModel {
             stopMeasurement();
         }
         
-        // Cleanup service resources
-        if (wifiMeasurementService != null) {
-            Log.d(TAG, "Cleaning up WiFiMeasurementService");
-            wifiMeasurementService.cleanup();
-            wifiMeasurementService = null;
+        // Stop receiving bus events
+        measurementSubscription.unsubscribe();
+        classificationSubscription.unsubscribe();
+        
+        // The engine is shared with other screens, so leave it running
+        if (currentTicket != null) {
+            currentTicket.cancel();
+            currentTicket = null;
         }
+        measurementEngine = null;
         
         Log.d(TAG, "ViewModel cleanup completed");
     }
@@ -0,0 +1,83 @@
+package com.example.hifiwifi.classifier;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for lazily generated reasoning and recommendations
+ */
+public class ClassificationResultTest {
+    
+    private MetricClassification metrics;
+    private ActivityImportance importance;
+    private ClassificationResult result;
+    
+    @Before
+    public void setUp() {
+        metrics = new MetricClassification(WiFiClassification.EXCELLENT, WiFiClassification.EXCELLENT,
+            WiFiClassification.EXCELLENT, WiFiClassification.EXCELLENT, WiFiClassification.EXCELLENT);
+        importance = new ActivityImportance("gaming", 0.5, 1.0, 0.6, 0.8, 0.7);
+        result = new ClassificationResult("room1", "Office", "gaming", WiFiClassification.EXCELLENT,
+            metrics, importance);
+    }
+    
+    @Test
+    public void testRecommendationsAreReadOnly() {
+        metrics.set(Metric.BANDWIDTH, WiFiClassification.BAD);
+        try {
+            result.getRecommendations().add("Buy a new router");
+            fail("Generated recommendations should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testExplicitValuesSurviveInputChanges() {
+        result.setReasoning("Checked by hand");
+        result.setRecommendations(Arrays.asList("Nothing to do"));
+        
+        result.setRoomName("Kitchen");
+        result.setOverallClassification(WiFiClassification.BAD);
+        
+        assertEquals("Checked by hand", result.getReasoning());
+        assertEquals(Arrays.asList("Nothing to do"), result.getRecommendations());
+        
+        result.setRecommendations(null);
+        assertFalse("Clearing goes back to generated values", result.getRecommendations().contains("Nothing to do"));
+    }
+    
+    @Test
+    public void testInPlaceMetricChangeRegenerates() {
+        List<String> before = result.getRecommendations();
+        assertTrue(before.isEmpty());
+        
+        metrics.set(Metric.LATENCY, WiFiClassification.BAD);
+        
+        List<String> after = result.getRecommendations();
+        assertFalse("Poor latency should now be recommended on", after.isEmpty());
+        assertEquals(WiFiClassification.BAD, result.getMetricDetail(Metric.LATENCY).getClassification());
+        assertTrue(result.getReasoning().contains("latency is bad"));
+    }
+    
+    @Test
+    public void testInPlaceImportanceChangeRegenerates() {
+        assertTrue(result.getReasoning().contains("latency"));
+        
+        importance.setWeight(Metric.BANDWIDTH, 2.0);
+        
+        assertTrue(result.getReasoning().contains("bandwidth"));
+        assertEquals(2.0, result.getMetricDetail(Metric.BANDWIDTH).getImportance(), 0.0);
+    }
+    
+    @Test
+    public void testUnchangedInputsReuseMemo() {
+        assertSame(result.getRecommendations(), result.getRecommendations());
+        assertSame(result.getReasoning(), result.getReasoning());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.hifiwifi.classifier;
+
+import com.example.hifiwifi.models.NetworkMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StreamingClassifier smoothing and hysteresis
+ */
+public class StreamingClassifierTest {
+    
+    private StreamingClassifier streamingClassifier;
+    
+    @Before
+    public void setUp() {
+        streamingClassifier = new StreamingClassifier(new WiFiClassifier());
+    }
+    
+    private NetworkMetrics metrics(int signalDbm) {
+        return new NetworkMetrics(signalDbm, 15, 120.0, 2.0, 0.0, true, "Office");
+    }
+    
+    @Test
+    public void testFirstSampleAlwaysEmits() {
+        ClassificationResult result = streamingClassifier.update(metrics(-45), "room1", "Office", "general");
+        
+        assertNotNull("First sample should produce a classification", result);
+        assertEquals(WiFiClassification.GOOD, result.getMetricClassification().getSignalStrengthClassification());
+    }
+    
+    @Test
+    public void testUnchangedSamplesDoNotEmit() {
+        streamingClassifier.update(metrics(-45), "room1", "Office", "general");
+        
+        assertNull(streamingClassifier.update(metrics(-45), "room1", "Office", "general"));
+        assertNull(streamingClassifier.update(metrics(-46), "room1", "Office", "general"));
+    }
+    
+    @Test
+    public void testNoiseOnThresholdDoesNotFlap() {
+        // Start just above the -50 dBm GOOD threshold
+        streamingClassifier.update(metrics(-49), "room1", "Office", "general");
+        
+        // Alternate readings either side of the threshold
+        for (int i = 0; i < 20; i++) {
+            int signal = (i % 2 == 0) ? -52 : -48;
+            assertNull("Threshold noise should not change the classification",
+                streamingClassifier.update(metrics(signal), "room1", "Office", "general"));
+        }
+    }
+    
+    @Test
+    public void testSustainedChangeEmitsTransition() {
+        streamingClassifier.update(metrics(-45), "room1", "Office", "general");
+        
+        ClassificationResult transition = null;
+        for (int i = 0; i < 20 && transition == null; i++) {
+            transition = streamingClassifier.update(metrics(-75), "room1", "Office", "general");
+        }
+        
+        assertNotNull("A sustained drop should eventually be reported", transition);
+        assertTrue(transition.getMetricClassification().getSignalStrengthClassification().getScore()
+            < WiFiClassification.GOOD.getScore());
+    }
+    
+    @Test
+    public void testSmoothingAveragesSamples() {
+        streamingClassifier.update(metrics(-40), "room1", "Office", "general");
+        streamingClassifier.update(metrics(-60), "room1", "Office", "general");
+        
+        // -40 + 0.3 * (-60 - -40) = -46
+        assertEquals(-46.0, streamingClassifier.getSmoothedValue(Metric.SIGNAL_STRENGTH), 0.001);
+    }
+    
+    @Test
+    public void testActivityChangeResetsStream() {
+        streamingClassifier.update(metrics(-45), "room1", "Office", "general");
+        
+        assertNotNull("Changing activity should start a new stream",
+            streamingClassifier.update(metrics(-45), "room1", "Office", "gaming"));
+    }
+    
+    @Test
+    public void testEveryMetricDefinesBandAndRecommendations() {
+        for (Metric metric : Metric.values()) {
+            assertTrue(metric + " needs a hysteresis band", metric.getHysteresisBand() > 0.0);
+            assertFalse(metric + " needs recommendations", metric.getRecommendations().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.hifiwifi.classifier;
+
+import com.example.hifiwifi.models.HopMetrics;
+import com.example.hifiwifi.models.NetworkMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for telling wireless-hop latency apart from upstream latency
+ */
+public class WiFiClassifierHopTest {
+    
+    private WiFiClassifier classifier;
+    
+    @Before
+    public void setUp() {
+        classifier = new WiFiClassifier();
+    }
+    
+    private HopMetrics hop(HopMetrics.Hop hop, int probesSent, double... rttSamplesMs) {
+        return new HopMetrics(hop, "10.0.0.1:53", probesSent, rttSamplesMs);
+    }
+    
+    @Test
+    public void testHealthyWirelessHopWithSlowUpstream() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        metrics.setGatewayHop(hop(HopMetrics.Hop.GATEWAY, 4, 3.0, 4.0, 3.0, 2.0));
+        metrics.setInternetHop(hop(HopMetrics.Hop.INTERNET, 4, 150.0, 160.0, 155.0, 155.0));
+        
+        assertEquals(WiFiClassification.EXCELLENT, classifier.classifyWirelessHop(metrics));
+        assertFalse(classifier.isWirelessHopBad(metrics));
+        assertEquals(152.0, classifier.getUpstreamLatencyMs(metrics), 1e-9);
+    }
+    
+    @Test
+    public void testSlowWirelessHopIsBad() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        metrics.setGatewayHop(hop(HopMetrics.Hop.GATEWAY, 4, 45.0, 55.0, 50.0, 50.0));
+        
+        assertEquals(WiFiClassification.BAD, classifier.classifyWirelessHop(metrics));
+        assertTrue(classifier.isWirelessHopBad(metrics));
+    }
+    
+    @Test
+    public void testLossOnWirelessHopIsBad() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        // Fast replies, but 3 of 10 probes lost
+        metrics.setGatewayHop(hop(HopMetrics.Hop.GATEWAY, 10, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0));
+        
+        assertEquals(30.0, metrics.getGatewayHop().getLossPercent(), 1e-9);
+        assertEquals(WiFiClassification.MARGINAL, classifier.classifyWirelessHop(metrics));
+        assertTrue(classifier.isWirelessHopBad(metrics));
+    }
+    
+    @Test
+    public void testSingleDroppedProbeIsNotLoss() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        // Fast replies, one of 10 probes lost
+        metrics.setGatewayHop(hop(HopMetrics.Hop.GATEWAY, 10, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0, 2.0));
+        
+        assertEquals(WiFiClassification.EXCELLENT, classifier.classifyWirelessHop(metrics));
+        assertFalse(classifier.isWirelessHopBad(metrics));
+    }
+    
+    @Test
+    public void testSilentGatewayFallsBackToPi() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        // A gateway that filters probes says nothing about the link
+        metrics.setGatewayHop(hop(HopMetrics.Hop.GATEWAY, 10));
+        metrics.setPiHop(hop(HopMetrics.Hop.PI, 2, 8.0, 8.0));
+        
+        assertSame(metrics.getPiHop(), classifier.getWirelessHop(metrics));
+        assertEquals(WiFiClassification.GOOD, classifier.classifyWirelessHop(metrics));
+        assertFalse(classifier.isWirelessHopBad(metrics));
+    }
+    
+    @Test
+    public void testNoLocalHopMeasured() {
+        NetworkMetrics metrics = new NetworkMetrics();
+        metrics.setInternetHop(hop(HopMetrics.Hop.INTERNET, 2, 30.0, 30.0));
+        
+        assertNull(classifier.classifyWirelessHop(metrics));
+        assertFalse(classifier.isWirelessHopBad(metrics));
+        assertEquals(-1.0, classifier.getUpstreamLatencyMs(metrics), 0.0);
+    }
+}
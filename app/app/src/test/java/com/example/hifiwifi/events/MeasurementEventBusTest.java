@@ -0,0 +1,143 @@
+package com.example.hifiwifi.events;
+
+import com.example.hifiwifi.models.RoomMeasurement;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Unit tests for MeasurementEventBus delivery, typing and backpressure
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class MeasurementEventBusTest {
+    
+    private MeasurementEventBus bus;
+    private Queue<Runnable> pendingTasks;
+    
+    @Before
+    public void setUp() {
+        bus = new MeasurementEventBus();
+        pendingTasks = new ArrayDeque<>();
+    }
+    
+    private MeasurementRecorded recorded(String roomName) {
+        return new MeasurementRecorded(new RoomMeasurement("id", roomName, -50, 20, 100.0, "general"));
+    }
+    
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+    
+    @Test
+    public void testEventsDeliveredInOrder() {
+        List<String> received = new ArrayList<>();
+        bus.subscribe(MeasurementRecorded.class, Runnable::run,
+            event -> received.add(event.getMeasurement().getRoomName()));
+        
+        bus.publish(recorded("Kitchen"));
+        bus.publish(recorded("Office"));
+        
+        assertEquals(2, received.size());
+        assertEquals("Kitchen", received.get(0));
+        assertEquals("Office", received.get(1));
+    }
+    
+    @Test
+    public void testSubscribersOnlyReceiveTheirType() {
+        List<MeasurementEvent> received = new ArrayList<>();
+        bus.subscribe(ClassificationChanged.class, Runnable::run, received::add);
+        
+        bus.publish(recorded("Kitchen"));
+        
+        assertTrue("Classification subscriber should not see measurement events", received.isEmpty());
+    }
+    
+    @Test
+    public void testDropOldestKeepsNewestEvents() {
+        List<String> received = new ArrayList<>();
+        MeasurementEventBus.Subscription<MeasurementRecorded> subscription = bus.subscribe(
+            MeasurementRecorded.class, pendingTasks::add, 2, MeasurementEventBus.OverflowPolicy.DROP_OLDEST,
+            event -> received.add(event.getMeasurement().getRoomName()));
+        
+        bus.publish(recorded("A"));
+        bus.publish(recorded("B"));
+        bus.publish(recorded("C"));
+        
+        assertEquals(1, subscription.getDroppedCount());
+        runPendingTasks();
+        
+        assertEquals(2, received.size());
+        assertEquals("B", received.get(0));
+        assertEquals("C", received.get(1));
+    }
+    
+    @Test
+    public void testDropNewestKeepsOldestEvents() {
+        List<String> received = new ArrayList<>();
+        bus.subscribe(MeasurementRecorded.class, pendingTasks::add, 2, MeasurementEventBus.OverflowPolicy.DROP_NEWEST,
+            event -> received.add(event.getMeasurement().getRoomName()));
+        
+        bus.publish(recorded("A"));
+        bus.publish(recorded("B"));
+        bus.publish(recorded("C"));
+        runPendingTasks();
+        
+        assertEquals(2, received.size());
+        assertEquals("A", received.get(0));
+        assertEquals("B", received.get(1));
+    }
+    
+    @Test
+    public void testOneDrainTaskPerBurst() {
+        bus.subscribe(MeasurementRecorded.class, pendingTasks::add, event -> { });
+        
+        bus.publish(recorded("A"));
+        bus.publish(recorded("B"));
+        bus.publish(recorded("C"));
+        
+        assertEquals("A burst of events should schedule a single drain", 1, pendingTasks.size());
+    }
+    
+    @Test
+    public void testFailingListenerDoesNotStopDelivery() {
+        List<String> received = new ArrayList<>();
+        MeasurementEventBus.Subscription<MeasurementRecorded> subscription = bus.subscribe(
+            MeasurementRecorded.class, Runnable::run, event -> {
+                if (event.getMeasurement().getRoomName().equals("A")) {
+                    throw new IllegalStateException("boom");
+                }
+                received.add(event.getMeasurement().getRoomName());
+            });
+        
+        bus.publish(recorded("A"));
+        bus.publish(recorded("B"));
+        
+        assertEquals(1, subscription.getFailedCount());
+        assertEquals(1, received.size());
+    }
+    
+    @Test
+    public void testUnsubscribeStopsDelivery() {
+        List<MeasurementEvent> received = new ArrayList<>();
+        MeasurementEventBus.Subscription<MeasurementRecorded> subscription =
+            bus.subscribe(MeasurementRecorded.class, Runnable::run, received::add);
+        
+        subscription.unsubscribe();
+        bus.publish(recorded("A"));
+        
+        assertTrue(received.isEmpty());
+        assertEquals(0, bus.getSubscriberCount());
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.hifiwifi.repository;
+
+import com.example.hifiwifi.models.ChatMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the disk-backed ChatRepository log, index and page cache
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class ChatRepositoryTest {
+    
+    private File directory;
+    private ChatRepository repository;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("chat_log").toFile();
+        repository = new ChatRepository(directory);
+    }
+    
+    @After
+    public void tearDown() {
+        repository.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+    
+    private ChatRepository reopen() {
+        repository.flush();
+        repository.close();
+        repository = new ChatRepository(directory);
+        return repository;
+    }
+    
+    @Test
+    public void testMessagesIndexedPerRoom() {
+        repository.addUserMessage("Kitchen question", "Kitchen");
+        repository.addSLMMessage("Office answer", "Office");
+        repository.addSLMMessage("Kitchen answer", "Kitchen");
+        
+        assertEquals(3, repository.getMessageCount());
+        assertEquals(2, repository.getMessageCountForRoom("Kitchen"));
+        assertEquals(0, repository.getMessageCountForRoom("Garage"));
+        
+        List<ChatMessage> kitchen = repository.getMessagesForRoom("Kitchen");
+        assertEquals("Kitchen question", kitchen.get(0).getMessageText());
+        assertTrue(kitchen.get(0).isFromUser());
+        assertEquals("Kitchen answer", kitchen.get(1).getMessageText());
+        assertEquals("Kitchen answer", repository.getLastMessage().getMessageText());
+    }
+    
+    @Test
+    public void testPagedReadsSpanCachedAndDiskPages() {
+        for (int i = 0; i < 100; i++) {
+            repository.addUserMessage("message " + i, "Office");
+        }
+        
+        // Reopening empties the cache, so every page comes back from disk
+        reopen();
+        List<ChatMessage> page = repository.getMessagesForRoom("Office", 30, 70);
+        assertEquals(40, page.size());
+        assertEquals("message 30", page.get(0).getMessageText());
+        assertEquals("message 69", page.get(39).getMessageText());
+        
+        List<ChatMessage> tail = repository.getMessagesForRoom("Office", 90, 200);
+        assertEquals(10, tail.size());
+        assertEquals("message 99", tail.get(9).getMessageText());
+    }
+    
+    @Test
+    public void testAppendAfterCachedTailPage() {
+        for (int i = 0; i < 40; i++) {
+            repository.addUserMessage("message " + i, "Office");
+        }
+        reopen();
+        
+        // Load the partial tail page into the cache, then append to it
+        assertEquals(8, repository.getMessagesForRoom("Office", 32, 40).size());
+        repository.addSLMMessage("message 40", "Office");
+        
+        List<ChatMessage> tail = repository.getMessagesForRoom("Office", 32, 41);
+        assertEquals(9, tail.size());
+        assertEquals("message 40", tail.get(8).getMessageText());
+    }
+    
+    @Test
+    public void testIndexRebuiltFromDisk() {
+        repository.addUserMessage("first", "Kitchen");
+        repository.addSLMMessage("second", "Office");
+        repository.addSLMMessage("third", "Kitchen");
+        
+        reopen();
+        assertEquals(3, repository.getMessageCount());
+        assertEquals(2, repository.getMessageCountForRoom("Kitchen"));
+        assertEquals("third", repository.getLastMessage().getMessageText());
+        assertEquals(3, repository.getMessages().size());
+    }
+    
+    @Test
+    public void testPartialTrailingRecordDiscarded() throws IOException {
+        repository.addUserMessage("complete", "Kitchen");
+        repository.flush();
+        repository.close();
+        
+        // Simulate a write cut short by a crash
+        try (FileOutputStream out = new FileOutputStream(directory.listFiles()[0], true)) {
+            out.write("{\"messageText\":\"trunc".getBytes(StandardCharsets.UTF_8));
+        }
+        
+        repository = new ChatRepository(directory);
+        repository.addSLMMessage("after crash", "Kitchen");
+        
+        List<ChatMessage> messages = reopen().getMessagesForRoom("Kitchen");
+        assertEquals(2, messages.size());
+        assertEquals("after crash", messages.get(1).getMessageText());
+    }
+    
+    @Test
+    public void testSegmentsRollOverAndOldestExpire() {
+        repository.close();
+        repository = new ChatRepository(directory, 1024, 3, 4);
+        
+        for (int i = 0; i < 200; i++) {
+            repository.addUserMessage("message " + i, "Office");
+        }
+        repository.flush();
+        
+        File[] segments = directory.listFiles();
+        assertNotNull(segments);
+        assertTrue(segments.length <= 3);
+        
+        int count = repository.getMessageCountForRoom("Office");
+        assertTrue(count > 0 && count < 200);
+        assertEquals(count, repository.getMessageCount());
+        
+        List<ChatMessage> messages = repository.getMessagesForRoom("Office", 0, count);
+        assertEquals(count, messages.size());
+        assertEquals("message 199", messages.get(count - 1).getMessageText());
+        assertEquals("message " + (200 - count), messages.get(0).getMessageText());
+    }
+    
+    @Test
+    public void testClearMessagesDeletesLog() {
+        repository.addUserMessage("hello", "Kitchen");
+        repository.clearMessages();
+        
+        assertFalse(repository.hasMessages());
+        assertNull(repository.getLastMessage());
+        
+        reopen();
+        assertFalse(repository.hasMessages());
+    }
+}
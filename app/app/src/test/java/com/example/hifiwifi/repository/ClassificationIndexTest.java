@@ -0,0 +1,81 @@
+package com.example.hifiwifi.repository;
+
+import com.example.hifiwifi.classifier.ActivityImportanceFactory;
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.classifier.WiFiClassification;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/**
+ * Unit tests for query-relevant classification retrieval
+ */
+public class ClassificationIndexTest {
+    
+    private ClassificationIndex index;
+    
+    @Before
+    public void setUp() {
+        index = new ClassificationIndex();
+        index.put("Living Room|streaming", result("Living Room", "streaming", null));
+        index.put("Kitchen|gaming", result("Kitchen", "gaming", Metric.LATENCY));
+        index.put("Office|video_call", result("Office", "video_call", null));
+    }
+    
+    private ClassificationResult result(String roomName, String activityType, Metric poorMetric) {
+        MetricClassification metrics = new MetricClassification();
+        for (Metric metric : Metric.values()) {
+            metrics.set(metric, metric == poorMetric ? WiFiClassification.BAD : WiFiClassification.GOOD);
+        }
+        return new ClassificationResult(roomName, roomName, activityType, WiFiClassification.GOOD,
+            metrics, ActivityImportanceFactory.getActivityImportance(activityType));
+    }
+    
+    @Test
+    public void testRoomNameMatch() {
+        List<String> keys = index.search("How is the kitchen?");
+        assertEquals(1, keys.size());
+        assertEquals("Kitchen|gaming", keys.get(0));
+    }
+    
+    @Test
+    public void testActivitySynonymMatch() {
+        List<String> keys = index.search("Can I watch Netflix without buffering?");
+        assertEquals("Living Room|streaming", keys.get(0));
+    }
+    
+    @Test
+    public void testMetricWordMatchesOnlyPoorMetrics() {
+        List<String> keys = index.search("why is my ping so high");
+        assertEquals(1, keys.size());
+        assertEquals("Kitchen|gaming", keys.get(0));
+    }
+    
+    @Test
+    public void testRoomOutranksActivity() {
+        index.put("Office|gaming", result("Office", "gaming", null));
+        List<String> keys = index.search("gaming in the office");
+        assertTrue(keys.get(0).startsWith("Office|"));
+        assertTrue(keys.contains("Kitchen|gaming"));
+    }
+    
+    @Test
+    public void testReplacedClassificationReindexed() {
+        index.put("Kitchen|gaming", result("Kitchen", "gaming", null));
+        assertTrue(index.search("ping").isEmpty());
+        
+        index.remove("Kitchen|gaming");
+        assertTrue(index.search("kitchen").isEmpty());
+    }
+    
+    @Test
+    public void testNoMatchReturnsEmpty() {
+        assertTrue(index.search("hello there").isEmpty());
+        assertTrue(index.search(null).isEmpty());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.hifiwifi.repository;
+
+import com.example.hifiwifi.classifier.ActivityImportanceFactory;
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.classifier.WiFiClassification;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the compact, token-budgeted SLM context encoding
+ */
+public class CompactContextEncoderTest {
+    
+    private ClassificationResult result(String roomName, String activityType, WiFiClassification overall) {
+        MetricClassification metrics = new MetricClassification();
+        for (Metric metric : Metric.values()) {
+            metrics.set(metric, overall);
+        }
+        metrics.set(Metric.LATENCY, WiFiClassification.BAD);
+        ClassificationResult result = new ClassificationResult(roomName, roomName, activityType, overall,
+            metrics, ActivityImportanceFactory.getActivityImportance(activityType));
+        result.setMostCriticalMetric(Metric.LATENCY);
+        return result;
+    }
+    
+    @Test
+    public void testLineUsesSingleLetterGrades() {
+        String line = CompactContextEncoder.encodeLine(result("Office", "gaming", WiFiClassification.GOOD));
+        assertEquals("Office|gaming|G|G,B,G,G,G|latency|y\n", line);
+    }
+    
+    @Test
+    public void testEveryMetricHasAColumn() {
+        String grades = CompactContextEncoder.encodeLine(result("Office", "gaming", WiFiClassification.GOOD)).split("\\|")[3];
+        assertEquals(Metric.values().length, grades.split(",").length);
+        for (Metric metric : Metric.values()) {
+            assertTrue(CompactContextEncoder.HEADER.contains(metric.getKey()));
+        }
+    }
+    
+    @Test
+    public void testFocusRoomThenWorstRoomsFirst() {
+        List<ClassificationResult> results = new ArrayList<>();
+        results.add(result("Kitchen", "streaming", WiFiClassification.EXCELLENT));
+        results.add(result("Garage", "streaming", WiFiClassification.MARGINAL));
+        results.add(result("Office", "gaming", WiFiClassification.GOOD));
+        
+        String text = new CompactContextEncoder(1000).encode(results, "Kitchen", 0).getText();
+        String[] lines = text.split("\n");
+        assertTrue(lines[2].startsWith("Kitchen|"));
+        assertTrue(lines[3].startsWith("Garage|"));
+        assertTrue(lines[4].startsWith("Office|"));
+    }
+    
+    @Test
+    public void testBudgetLimitsLinesAndReportsOmitted() {
+        List<ClassificationResult> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(result("Room " + i, "video_call", WiFiClassification.OKAY));
+        }
+        
+        CompactContextEncoder.EncodedContext context = new CompactContextEncoder(60).encode(results, null, 0);
+        assertTrue(context.getIncludedCount() > 0);
+        assertEquals(50, context.getIncludedCount() + context.getOmittedCount());
+        assertTrue(context.getText().endsWith("+" + context.getOmittedCount() + " more\n"));
+        assertTrue(context.getTokens() <= 60 + CompactContextEncoder.estimateTokens("+50 more\n"));
+    }
+    
+    @Test
+    public void testTokensSavedAgainstBaseline() {
+        List<ClassificationResult> results = new ArrayList<>();
+        results.add(result("Office", "gaming", WiFiClassification.GOOD));
+        
+        CompactContextEncoder.EncodedContext context = new CompactContextEncoder().encode(results, null, 100);
+        assertEquals(100, context.getBaselineTokens());
+        assertEquals(100 - context.getTokens(), context.getTokensSaved());
+    }
+}
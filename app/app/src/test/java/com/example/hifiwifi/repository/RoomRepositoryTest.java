@@ -0,0 +1,139 @@
+package com.example.hifiwifi.repository;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests for RoomRepository indexes and write-behind persistence
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class RoomRepositoryTest {
+    
+    private Context context;
+    private RoomRepository repository;
+    
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        context.getSharedPreferences("room_preferences", Context.MODE_PRIVATE).edit().clear().commit();
+        repository = new RoomRepository(context);
+    }
+    
+    @Test
+    public void testGetInstanceIsShared() {
+        assertSame(RoomRepository.getInstance(context), RoomRepository.getInstance(context));
+    }
+    
+    @Test
+    public void testLookupByIdAndName() {
+        String officeId = repository.saveRoom("Office");
+        repository.saveRoom("Kitchen");
+        
+        assertEquals(2, repository.getRoomCount());
+        assertEquals("Office", repository.getRoomById(officeId).getName());
+        assertEquals(officeId, repository.getRoomByName("Office").getId());
+        assertTrue(repository.roomNameExists("Kitchen"));
+        assertFalse(repository.roomNameExists("Garage"));
+    }
+    
+    @Test
+    public void testRenameUpdatesNameIndex() {
+        String id = repository.saveRoom("Office");
+        repository.saveRoom(new RoomRepository.Room(id, "Study"));
+        
+        assertFalse(repository.roomNameExists("Office"));
+        assertEquals(id, repository.getRoomByName("Study").getId());
+        assertEquals(1, repository.getRoomCount());
+    }
+    
+    @Test
+    public void testReturnedRoomsAreCopies() {
+        String id = repository.saveRoom("Office");
+        repository.getRoomById(id).setName("Changed");
+        
+        assertEquals("Office", repository.getRoomById(id).getName());
+        assertTrue(repository.roomNameExists("Office"));
+    }
+    
+    @Test
+    public void testDeleteFallsBackToRoomWithSameName() {
+        String first = repository.saveRoom("Office");
+        String second = repository.saveRoom("Office");
+        
+        assertEquals(first, repository.getRoomByName("Office").getId());
+        assertTrue(repository.deleteRoom(first));
+        assertEquals(second, repository.getRoomByName("Office").getId());
+        
+        assertTrue(repository.deleteRoomByName("Office"));
+        assertEquals(0, repository.getRoomCount());
+        assertFalse(repository.deleteRoomByName("Office"));
+    }
+    
+    @Test
+    public void testChangesPersistInOrder() {
+        String officeId = repository.saveRoom("Office");
+        repository.saveRoom("Kitchen");
+        repository.saveRoom("Bedroom");
+        repository.deleteRoomByName("Kitchen");
+        repository.saveRoom(new RoomRepository.Room(officeId, "Study"));
+        repository.flush();
+        
+        List<RoomRepository.Room> rooms = new RoomRepository(context).getRooms();
+        assertEquals(2, rooms.size());
+        assertEquals("Study", rooms.get(0).getName());
+        assertEquals(officeId, rooms.get(0).getId());
+        assertEquals("Bedroom", rooms.get(1).getName());
+    }
+    
+    @Test
+    public void testLegacyListMigrated() {
+        context.getSharedPreferences("room_preferences", Context.MODE_PRIVATE).edit()
+            .putString("rooms", "[{\"id\":\"a\",\"name\":\"Office\"},{\"id\":\"b\",\"name\":\"Kitchen\"}]")
+            .commit();
+        
+        RoomRepository migrated = new RoomRepository(context);
+        assertEquals(2, migrated.getRoomCount());
+        assertEquals("b", migrated.getRoomByName("Kitchen").getId());
+        migrated.flush();
+        
+        assertFalse(context.getSharedPreferences("room_preferences", Context.MODE_PRIVATE).contains("rooms"));
+        List<RoomRepository.Room> rooms = new RoomRepository(context).getRooms();
+        assertEquals("Office", rooms.get(0).getName());
+        assertEquals("Kitchen", rooms.get(1).getName());
+    }
+    
+    @Test
+    public void testCallbackGettersAnswerOnMainThread() {
+        repository.saveRoom("Office");
+        repository.flush();
+        
+        RoomRepository reopened = new RoomRepository(context);
+        List<RoomRepository.Room> rooms = new ArrayList<>();
+        List<Boolean> exists = new ArrayList<>();
+        reopened.getRooms(rooms::addAll);
+        reopened.roomNameExists("Office", exists::add);
+        
+        // Let the writer thread finish the load and the queries behind it
+        reopened.flush();
+        shadowOf(Looper.getMainLooper()).idle();
+        
+        assertEquals(1, rooms.size());
+        assertEquals("Office", rooms.get(0).getName());
+        assertEquals(1, exists.size());
+        assertTrue(exists.get(0));
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.hifiwifi.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for the compact /analyze encoding, plus a size and speed benchmark against JSON
+ */
+public class CompactCodecTest {
+    
+    // Produced by compact_codec.py for the same request and response, to keep both sides in step
+    private static final String PYTHON_REQUEST =
+        "480101184c6976696e6720526f6f6d2721010507090b0d010180d095ffbc31";
+    private static final String PYTHON_RESPONSE =
+        "480101011500184d6f766520636c6f736572190e4f666669636501186c6976696e675f726f6f6d270b010b07090b0500";
+    
+    private static final int BENCHMARK_ITERATIONS = 20000;
+    
+    private final Gson gson = ResponseAdapters.GSON;
+    
+    private HTTPService.AnalyzeRequest request(String room, String activity, String band, String... classes) {
+        HTTPService.AnalyzeRequest.Measurement measurement = new HTTPService.AnalyzeRequest.Measurement();
+        measurement.roomName = room;
+        measurement.activityType = activity;
+        measurement.frequencyBand = band;
+        measurement.classification = new HTTPService.AnalyzeRequest.Measurement.Classification();
+        measurement.classification.signal_strength = classes[0];
+        measurement.classification.latency = classes[1];
+        measurement.classification.bandwidth = classes[2];
+        measurement.classification.jitter = classes[3];
+        measurement.classification.packet_loss = classes[4];
+        
+        HTTPService.AnalyzeRequest request = new HTTPService.AnalyzeRequest();
+        request.measurements = new HTTPService.AnalyzeRequest.Measurement[] {measurement};
+        request.summary = new HTTPService.AnalyzeRequest.Summary();
+        request.summary.totalMeasurements = 1;
+        request.summary.timestamp = 1700000000000L;
+        return request;
+    }
+    
+    private HTTPService.AnalyzeResponse response() {
+        HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+        response.status = "success";
+        response.recommendation = new HTTPService.AnalyzeResponse.Recommendation();
+        response.recommendation.action = "move_location";
+        response.recommendation.message = "Move closer";
+        response.recommendation.priority = "high";
+        response.recommendation.target_location = "Office";
+        response.analysis = new HTTPService.AnalyzeResponse.Analysis();
+        response.analysis.location = "living_room";
+        response.analysis.activity = "gaming";
+        response.analysis.current_quality = "bad";
+        response.analysis.metrics = new HTTPService.AnalyzeResponse.Analysis.Metrics();
+        response.analysis.metrics.signal_strength = "bad";
+        response.analysis.metrics.latency = "good";
+        response.analysis.metrics.bandwidth = "okay";
+        response.analysis.metrics.jitter = "bad";
+        response.analysis.metrics.packet_loss = "excellent";
+        return response;
+    }
+    
+    @Test
+    public void testMatchesPythonEncoding() throws IOException {
+        HTTPService.AnalyzeRequest request = request("Living Room", "gaming", "5GHz",
+            "excellent", "good", "okay", "bad", "marginal");
+        assertEquals(PYTHON_REQUEST, hex(CompactCodec.encodeRequest(request)));
+        assertEquals(PYTHON_RESPONSE, hex(CompactCodec.encodeResponse(response())));
+        
+        HTTPService.AnalyzeResponse decoded = CompactCodec.decodeResponse(unhex(PYTHON_RESPONSE));
+        assertEquals("Move closer", decoded.toDisplayMessage());
+        assertEquals("Office", decoded.recommendation.target_location);
+        assertNull(decoded.recommendation.reason);
+        assertNull(decoded.error);
+    }
+    
+    @Test
+    public void testRequestRoundTrip() throws IOException {
+        HTTPService.AnalyzeRequest request = request("K\u00fcche", "custom_activity", null,
+            "excellent", "good", "okay", "bad", "marginal");
+        HTTPService.AnalyzeRequest decoded = CompactCodec.decodeRequest(CompactCodec.encodeRequest(request));
+        
+        assertEquals(gson.toJson(request), gson.toJson(decoded));
+    }
+    
+    @Test
+    public void testErrorResponseRoundTrip() throws IOException {
+        HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+        response.status = "error";
+        response.error = "Ollama timed out";
+        HTTPService.AnalyzeResponse decoded = CompactCodec.decodeResponse(CompactCodec.encodeResponse(response));
+        
+        assertEquals("error", decoded.status);
+        assertEquals("Ollama timed out", decoded.error);
+        assertNull(decoded.recommendation);
+        assertNull(decoded.analysis);
+    }
+    
+    @Test
+    public void testMalformedPayloadsRejected() {
+        byte[] valid = CompactCodec.encodeResponse(response());
+        assertRejected(new byte[0]);
+        assertRejected("{\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8));
+        assertRejected(Arrays.copyOf(valid, valid.length - 3));
+        assertRejected(Arrays.copyOf(valid, valid.length + 1));
+        
+        byte[] futureVersion = valid.clone();
+        futureVersion[1] = 2;
+        assertRejected(futureVersion);
+    }
+    
+    private void assertRejected(byte[] payload) {
+        try {
+            CompactCodec.decodeResponse(payload);
+            fail("Expected malformed payload to be rejected");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void benchmarkAgainstJson() throws IOException {
+        List<HTTPService.AnalyzeRequest> requests = new ArrayList<>();
+        List<HTTPService.AnalyzeResponse> responses = new ArrayList<>();
+        loadScenarios(requests, responses);
+        assumeTrue("test-scenarios not found", !requests.isEmpty());
+        
+        long jsonBytes = 0;
+        long compactBytes = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            jsonBytes += gson.toJson(requests.get(i)).getBytes(StandardCharsets.UTF_8).length
+                + gson.toJson(responses.get(i)).getBytes(StandardCharsets.UTF_8).length;
+            compactBytes += CompactCodec.encodeRequest(requests.get(i)).length
+                + CompactCodec.encodeResponse(responses.get(i)).length;
+        }
+        
+        for (int i = 0; i < BENCHMARK_ITERATIONS / 10; i++) {
+            jsonRoundTrips(requests, responses);
+            compactRoundTrips(requests, responses);
+        }
+        long jsonStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            jsonRoundTrips(requests, responses);
+        }
+        long jsonNanos = System.nanoTime() - jsonStart;
+        long compactStart = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            compactRoundTrips(requests, responses);
+        }
+        long compactNanos = System.nanoTime() - compactStart;
+        
+        int exchanges = requests.size() * BENCHMARK_ITERATIONS;
+        System.out.println("CompactCodec benchmark over " + requests.size() + " scenarios: json "
+            + (jsonBytes / requests.size()) + " B, " + (jsonNanos / exchanges) + " ns per exchange; compact "
+            + (compactBytes / requests.size()) + " B, " + (compactNanos / exchanges) + " ns per exchange");
+        
+        assertTrue("Compact encoding should be smaller than JSON", compactBytes < jsonBytes);
+    }
+    
+    /**
+     * Encode and decode each request and response as JSON, as the wire would carry them
+     */
+    private int jsonRoundTrips(List<HTTPService.AnalyzeRequest> requests, List<HTTPService.AnalyzeResponse> responses) {
+        int check = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            byte[] request = gson.toJson(requests.get(i)).getBytes(StandardCharsets.UTF_8);
+            check += gson.fromJson(new String(request, StandardCharsets.UTF_8), HTTPService.AnalyzeRequest.class).measurements.length;
+            byte[] response = gson.toJson(responses.get(i)).getBytes(StandardCharsets.UTF_8);
+            check += gson.fromJson(new String(response, StandardCharsets.UTF_8), HTTPService.AnalyzeResponse.class).status.length();
+        }
+        return check;
+    }
+    
+    private int compactRoundTrips(List<HTTPService.AnalyzeRequest> requests, List<HTTPService.AnalyzeResponse> responses)
+            throws IOException {
+        int check = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            check += CompactCodec.decodeRequest(CompactCodec.encodeRequest(requests.get(i))).measurements.length;
+            check += CompactCodec.decodeResponse(CompactCodec.encodeResponse(responses.get(i))).status.length();
+        }
+        return check;
+    }
+    
+    /**
+     * Build the request and response for each analyzer scenario in test-scenarios/
+     */
+    private void loadScenarios(List<HTTPService.AnalyzeRequest> requests, List<HTTPService.AnalyzeResponse> responses)
+            throws IOException {
+        File dir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        while (dir != null && !new File(dir, "test-scenarios").isDirectory()) {
+            dir = dir.getParentFile();
+        }
+        if (dir == null) {
+            return;
+        }
+        File[] files = new File(dir, "test-scenarios").listFiles((parent, name) -> name.startsWith("analyze_"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            JsonObject scenario = new Gson().fromJson(
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), JsonObject.class);
+            JsonObject measurement = scenario.getAsJsonObject("measurement");
+            JsonObject expected = scenario.getAsJsonObject("expected_outcome");
+            String[] classes = new String[5];
+            String[] fields = {"signal_strength", "latency", "bandwidth", "jitter", "packet_loss"};
+            for (int i = 0; i < fields.length; i++) {
+                classes[i] = measurement.get(fields[i]).getAsString();
+            }
+            requests.add(request(measurement.get("location").getAsString(), measurement.get("activity").getAsString(),
+                measurement.get("frequency").getAsString(), classes));
+            
+            HTTPService.AnalyzeResponse response = response();
+            response.recommendation.action = expected.get("recommended_action").getAsString();
+            response.recommendation.message = scenario.get("description").getAsString();
+            response.analysis.current_quality = expected.get("current_quality").getAsString();
+            responses.add(response);
+        }
+    }
+    
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+    
+    private static byte[] unhex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.hifiwifi.services;
+
+import com.example.hifiwifi.models.ConnectionPhases;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for per-phase timing of HTTP calls
+ */
+public class ConnectionPhaseRecorderTest {
+    
+    private static final long MS = 1_000_000L;
+    
+    private ConnectionPhaseRecorder recorder;
+    
+    @Before
+    public void setUp() {
+        recorder = new ConnectionPhaseRecorder();
+    }
+    
+    /**
+     * A call on a new HTTPS connection: 5ms DNS, 10ms TCP, 20ms TLS, 30ms to first byte, 100ms body
+     */
+    private ConnectionPhaseRecorder.CallTimer newHttpsCall(long bodyBytes) {
+        ConnectionPhaseRecorder.CallTimer timer = (ConnectionPhaseRecorder.CallTimer) recorder.create(null);
+        timer.dnsStart = 1000 * MS;
+        timer.dnsEnd = 1005 * MS;
+        timer.connectStart = 1005 * MS;
+        timer.secureConnectStart = 1015 * MS;
+        timer.secureConnectEnd = 1035 * MS;
+        timer.connectEnd = 1035 * MS;
+        timer.requestHeadersStart = 1035 * MS;
+        timer.responseHeadersStart = 1065 * MS;
+        timer.bodyStart = 1065 * MS;
+        timer.bodyEnd = bodyBytes > 0 ? 1165 * MS : 1065 * MS;
+        timer.bodyBytes = bodyBytes;
+        return timer;
+    }
+    
+    @Test
+    public void testPhasesOfNewConnectionAreSeparated() {
+        newHttpsCall(1_000_000).callEnd(null);
+        
+        ConnectionPhases phases = recorder.snapshot();
+        
+        assertEquals(1, phases.getRequestCount());
+        assertEquals(1, phases.getNewConnectionCount());
+        assertEquals(5.0, phases.getDnsMs(), 0.001);
+        assertEquals(10.0, phases.getTcpConnectMs(), 0.001);
+        assertEquals(20.0, phases.getTlsHandshakeMs(), 0.001);
+        assertEquals(30.0, phases.getTimeToFirstByteMs(), 0.001);
+        assertEquals(100.0, phases.getTransferMs(), 0.001);
+        assertEquals(35.0, phases.getSetupMs(), 0.001);
+        assertEquals(1_000_000, phases.getBytesTransferred());
+        assertTrue(phases.isSetupDominated());
+    }
+    
+    @Test
+    public void testReusedConnectionCountsOnlyTowardsResponsePhases() {
+        newHttpsCall(0).callEnd(null);
+        ConnectionPhaseRecorder.CallTimer reused = (ConnectionPhaseRecorder.CallTimer) recorder.create(null);
+        reused.requestHeadersStart = 2000 * MS;
+        reused.responseHeadersStart = 2010 * MS;
+        reused.callEnd(null);
+        
+        ConnectionPhases phases = recorder.snapshot();
+        
+        assertEquals(2, phases.getRequestCount());
+        assertEquals(1, phases.getNewConnectionCount());
+        assertEquals("Setup is averaged over new connections only", 10.0, phases.getTcpConnectMs(), 0.001);
+        assertEquals(20.0, phases.getTimeToFirstByteMs(), 0.001);
+        assertEquals("No body was transferred", 0.0, phases.getTransferMs(), 0.001);
+    }
+    
+    @Test
+    public void testPlainHttpHasNoTlsPhase() {
+        ConnectionPhaseRecorder.CallTimer timer = newHttpsCall(0);
+        timer.secureConnectStart = 0;
+        timer.secureConnectEnd = 0;
+        timer.callEnd(null);
+        
+        ConnectionPhases phases = recorder.snapshot();
+        
+        assertEquals("TCP runs until the connection completes", 30.0, phases.getTcpConnectMs(), 0.001);
+        assertEquals(0.0, phases.getTlsHandshakeMs(), 0.001);
+    }
+    
+    @Test
+    public void testFailedCallsAndResetAreNotCounted() {
+        newHttpsCall(1000).callFailed(null, new IOException("reset"));
+        assertEquals(0, recorder.snapshot().getRequestCount());
+        
+        newHttpsCall(1000).callEnd(null);
+        recorder.reset();
+        
+        ConnectionPhases phases = recorder.snapshot();
+        assertEquals(0, phases.getRequestCount());
+        assertEquals(0.0, phases.getSetupMs(), 0.001);
+        assertFalse(phases.isSetupDominated());
+    }
+    
+    @Test
+    public void testRequestsMadeWithoutOkHttpAreCounted() {
+        recorder.recordRequest(10 * MS, 30 * MS, 100 * MS, 1000);
+        recorder.recordRequest(0, 10 * MS, 0, 0);
+        
+        ConnectionPhases phases = recorder.snapshot();
+        
+        assertEquals(2, phases.getRequestCount());
+        assertEquals(1, phases.getNewConnectionCount());
+        assertEquals(10.0, phases.getTcpConnectMs(), 0.001);
+        assertEquals(0.0, phases.getDnsMs(), 0.001);
+        assertEquals(20.0, phases.getTimeToFirstByteMs(), 0.001);
+        assertEquals(100.0, phases.getTransferMs(), 0.001);
+        assertEquals(1000, phases.getBytesTransferred());
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.hifiwifi.services;
+
+import com.example.hifiwifi.models.HopMetrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for concurrent TCP-connect hop probing, against sockets on the loopback interface
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class HopProberTest {
+    
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+    
+    @Test
+    public void testAcceptedConnectionIsAnswered() throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+            assertTrue(HopProber.connectRttNanos(target, 1000) >= 0);
+        }
+    }
+    
+    @Test
+    public void testRefusedConnectionIsAnswered() throws IOException {
+        InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(), closedPort());
+        assertTrue("A reset proves the host answered", HopProber.connectRttNanos(target, 1000) >= 0);
+    }
+    
+    @Test
+    public void testProbesHopsConcurrently() throws IOException {
+        HopProber prober = new HopProber(3, 1000);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Map<HopMetrics.Hop, InetSocketAddress> targets = new EnumMap<>(HopMetrics.Hop.class);
+            targets.put(HopMetrics.Hop.GATEWAY, new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+            targets.put(HopMetrics.Hop.PI, InetSocketAddress.createUnresolved("127.0.0.1", closedPort()));
+            targets.put(HopMetrics.Hop.INTERNET, InetSocketAddress.createUnresolved("host.invalid", 443));
+            
+            Map<HopMetrics.Hop, HopMetrics> hops = prober.probe(targets);
+            
+            HopMetrics gateway = hops.get(HopMetrics.Hop.GATEWAY);
+            assertEquals(3, gateway.getProbesSent());
+            assertEquals(0.0, gateway.getLossPercent(), 0.0);
+            assertTrue(gateway.isReachable());
+            assertEquals(3, hops.get(HopMetrics.Hop.PI).getProbesAnswered());
+            assertFalse("Unresolvable hosts are left out", hops.containsKey(HopMetrics.Hop.INTERNET));
+        } finally {
+            prober.shutdown();
+        }
+    }
+    
+    @Test
+    public void testSilentHopIsGivenUpOn() {
+        // Stands in for a gateway that filters port 53: every probe times out
+        HopProber prober = new HopProber(10, 200) {
+            @Override
+            long probeOnce(InetSocketAddress target) {
+                return -1;
+            }
+        };
+        try {
+            Map<HopMetrics.Hop, InetSocketAddress> targets = new EnumMap<>(HopMetrics.Hop.class);
+            targets.put(HopMetrics.Hop.GATEWAY, new InetSocketAddress(InetAddress.getLoopbackAddress(), 53));
+            
+            HopMetrics gateway = prober.probe(targets).get(HopMetrics.Hop.GATEWAY);
+            
+            assertEquals(HopProber.SILENT_PROBES_BEFORE_GIVING_UP, gateway.getProbesSent());
+            assertFalse("Unmeasurable rather than lossy", gateway.isReachable());
+        } finally {
+            prober.shutdown();
+        }
+    }
+}
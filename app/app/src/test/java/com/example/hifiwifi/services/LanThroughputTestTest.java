@@ -0,0 +1,117 @@
+package com.example.hifiwifi.services;
+
+import com.example.hifiwifi.models.ConnectionPhases;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the LAN throughput test, against a local server standing in for simple_api.py
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class LanThroughputTestTest {
+    
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicLong uploadedToServer = new AtomicLong();
+    
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/throughput/download", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            long size = Long.parseLong(query.substring(query.indexOf('=') + 1));
+            exchange.sendResponseHeaders(200, size);
+            byte[] chunk = new byte[64 * 1024];
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (long remaining = size; remaining > 0; remaining -= chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, remaining));
+                }
+            }
+        });
+        server.createContext("/throughput/upload", exchange -> {
+            long received = 0;
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = exchange.getRequestBody()) {
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    received += count;
+                }
+            }
+            uploadedToServer.set(received);
+            byte[] body = ("{\"status\": \"success\", \"bytes\": " + received + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+    
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+    
+    @Test
+    public void testMeasuresBothDirections() {
+        LanThroughputTest.Result result = new LanThroughputTest(baseUrl)
+            .setTransferSize(2 * 1024 * 1024, 1024 * 1024)
+            .run();
+        
+        assertTrue(result.isSuccessful());
+        assertEquals(2 * 1024 * 1024, result.getDownloadedBytes());
+        assertEquals(1024 * 1024, result.getUploadedBytes());
+        assertEquals(1024 * 1024, uploadedToServer.get());
+        assertTrue(result.getDownloadMbps() > 0);
+        assertTrue(result.getUploadMbps() > 0);
+    }
+    
+    @Test
+    public void testPhasesAreRecordedForBothDirections() {
+        ConnectionPhaseRecorder recorder = new ConnectionPhaseRecorder();
+        new LanThroughputTest(baseUrl)
+            .setTransferSize(1024 * 1024, 1024 * 1024)
+            .setPhaseRecorder(recorder)
+            .run();
+        
+        ConnectionPhases phases = recorder.snapshot();
+        assertEquals(2, phases.getRequestCount());
+        assertEquals("Only the download has a response body", 1024 * 1024, phases.getBytesTransferred());
+        assertTrue(phases.getTransferMs() > 0);
+    }
+    
+    @Test
+    public void testUnreachablePiReportsNoThroughput() {
+        server.stop(0);
+        LanThroughputTest.Result result = new LanThroughputTest(baseUrl).run();
+        
+        assertFalse(result.isSuccessful());
+        assertEquals(0.0, result.getDownloadMbps(), 0.0);
+        assertEquals(0.0, result.getUploadMbps(), 0.0);
+    }
+    
+    @Test
+    public void testMbpsConversion() {
+        // 1,000,000 bytes in one second is 8 Mbps
+        assertEquals(8.0, LanThroughputTest.toMbps(1_000_000, 1_000_000_000L), 1e-9);
+        assertEquals(0.0, LanThroughputTest.toMbps(0, 1_000_000_000L), 0.0);
+        assertEquals(0.0, LanThroughputTest.toMbps(1_000_000, 0), 0.0);
+    }
+}
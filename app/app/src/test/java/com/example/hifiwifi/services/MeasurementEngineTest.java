@@ -0,0 +1,229 @@
+package com.example.hifiwifi.services;
+
+import android.os.Looper;
+
+import com.example.hifiwifi.events.MeasurementEventBus;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests for admitting and merging measurement requests
+ * The engine drives a real WiFiMeasurementService whose tasks wait in a fake executor until
+ * the test runs them, so no test touches the network.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class MeasurementEngineTest {
+    
+    private static final WiFiMeasurementService.ThroughputMode WAN = WiFiMeasurementService.ThroughputMode.WAN;
+    
+    /**
+     * Holds the service's tasks until the test runs them, one at a time like its single thread
+     */
+    private static class FakeExecutor extends AbstractExecutorService {
+        final Deque<Runnable> tasks = new ArrayDeque<>();
+        
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+        
+        void runNext() {
+            tasks.poll().run();
+        }
+        
+        @Override
+        public void shutdown() {
+        }
+        
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+        
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+        
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+        
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+    
+    private FakeExecutor executor;
+    private MeasurementEventBus eventBus;
+    private MeasurementEngine engine;
+    
+    @Before
+    public void setUp() {
+        executor = new FakeExecutor();
+        eventBus = mock(MeasurementEventBus.class);
+        WiFiMeasurementService service = new WiFiMeasurementService(RuntimeEnvironment.getApplication(), executor);
+        engine = new MeasurementEngine(service, eventBus);
+    }
+    
+    /**
+     * Run the service's oldest task, then deliver what it posted to the main thread
+     */
+    private void runServiceTask() {
+        executor.runNext();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+    
+    @Test
+    public void testOnlyOneTestRunsAtATime() {
+        MeasurementEngine.Ticket office = engine.submitSingleTest("Office", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        MeasurementEngine.Ticket kitchen = engine.submitSingleTest("Kitchen", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        
+        assertTrue(office.isRunning());
+        assertFalse(kitchen.isRunning());
+        assertEquals("Only the running test reached the service", 1, executor.tasks.size());
+        assertEquals(1, engine.getWaitingCount());
+    }
+    
+    @Test
+    public void testDuplicateRequestsShareOneTest() {
+        engine.submitSingleTest("Office", "gaming", WAN, mock(WiFiMeasurementService.MeasurementCallback.class));
+        MeasurementEngine.Ticket merged = engine.submitSingleTest("Office", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        
+        assertTrue("Joined the running test", merged.isRunning());
+        assertEquals(0, engine.getWaitingCount());
+        assertEquals(1, executor.tasks.size());
+    }
+    
+    @Test
+    public void testNextRequestWaitsUntilStoppedLoopExits() {
+        MeasurementEngine.Ticket continuous = engine.startContinuous("Office", "gaming",
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        MeasurementEngine.Ticket kitchen = engine.submitSingleTest("Kitchen", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        
+        continuous.cancel();
+        
+        assertTrue("The loop still holds the link until it exits", engine.isBusy());
+        assertFalse(kitchen.isRunning());
+        assertEquals(1, executor.tasks.size());
+        
+        runServiceTask();
+        
+        assertTrue(kitchen.isRunning());
+        assertEquals("The single test was queued after the loop", 1, executor.tasks.size());
+    }
+    
+    @Test
+    public void testStoppedMeasurementDeliversNothing() {
+        WiFiMeasurementService.MeasurementCallback subscriber = mock(WiFiMeasurementService.MeasurementCallback.class);
+        MeasurementEngine.Ticket continuous = engine.startContinuous("Office", "gaming", subscriber);
+        
+        continuous.cancel();
+        runServiceTask();
+        
+        verify(subscriber, never()).onMeasurementUpdate(any());
+        verify(subscriber, never()).onClassificationComplete(any());
+        verify(eventBus, never()).publish(any());
+        assertFalse(engine.isBusy());
+        assertTrue(executor.tasks.isEmpty());
+    }
+    
+    @Test
+    public void testCancelledWaitingRequestNeverRuns() {
+        MeasurementEngine.Ticket continuous = engine.startContinuous("Office", "gaming",
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        MeasurementEngine.Ticket waiting = engine.submitSingleTest("Kitchen", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        
+        waiting.cancel();
+        continuous.cancel();
+        runServiceTask();
+        
+        assertFalse(engine.isBusy());
+        assertTrue(executor.tasks.isEmpty());
+    }
+    
+    @Test
+    public void testContinuousMeasurementRunsWhileAnyoneWatches() {
+        MeasurementEngine.Ticket first = engine.startContinuous("Office", "gaming",
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        MeasurementEngine.Ticket second = engine.startContinuous("Office", "gaming",
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        engine.submitSingleTest("Kitchen", "gaming", WAN, mock(WiFiMeasurementService.MeasurementCallback.class));
+        
+        first.cancel();
+        assertTrue("Still watched", second.isRunning());
+        
+        second.cancel();
+        runServiceTask();
+        
+        assertEquals(0, engine.getWaitingCount());
+        assertEquals("The single test started once nobody watched", 1, executor.tasks.size());
+    }
+    
+    @Test
+    public void testTaskWaitsForTheLinkAndHoldsItUntilReleased() {
+        MeasurementEngine.Ticket continuous = engine.startContinuous("Office", "gaming",
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        Runnable[] release = {null};
+        engine.submitTask("Office", r -> release[0] = r);
+        
+        continuous.cancel();
+        assertNull("Not admitted while the loop runs", release[0]);
+        runServiceTask();
+        assertNotNull(release[0]);
+        
+        MeasurementEngine.Ticket kitchen = engine.submitSingleTest("Kitchen", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        assertFalse(kitchen.isRunning());
+        assertTrue(executor.tasks.isEmpty());
+        
+        release[0].run();
+        
+        assertTrue(kitchen.isRunning());
+        assertEquals(1, executor.tasks.size());
+    }
+    
+    @Test
+    public void testWaitingTicketIsToldWhenAdmitted() {
+        Runnable[] release = {null};
+        engine.submitTask("Office", r -> release[0] = r);
+        MeasurementEngine.Ticket kitchen = engine.submitSingleTest("Kitchen", "gaming", WAN,
+            mock(WiFiMeasurementService.MeasurementCallback.class));
+        boolean[] admitted = {false};
+        kitchen.setOnAdmitted(() -> admitted[0] = true);
+        
+        assertFalse(admitted[0]);
+        release[0].run();
+        assertTrue(admitted[0]);
+        
+        boolean[] joined = {false};
+        engine.submitSingleTest("Kitchen", "gaming", WAN, mock(WiFiMeasurementService.MeasurementCallback.class))
+            .setOnAdmitted(() -> joined[0] = true);
+        assertTrue("Joining a running test is admitted at once", joined[0]);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.hifiwifi.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the durable queue of /analyze payloads
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class OutboundQueueTest {
+    
+    private File file;
+    private OutboundQueue queue;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("outbound", ".json");
+        file.delete();
+        queue = new OutboundQueue(file);
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+    
+    private HTTPService.AnalyzeRequest.Measurement measurement(String room, String activity, String signal) {
+        HTTPService.AnalyzeRequest.Measurement measurement = new HTTPService.AnalyzeRequest.Measurement();
+        measurement.roomName = room;
+        measurement.activityType = activity;
+        measurement.frequencyBand = "5GHz";
+        measurement.classification = new HTTPService.AnalyzeRequest.Measurement.Classification();
+        measurement.classification.signal_strength = signal;
+        return measurement;
+    }
+    
+    @Test
+    public void testQueueSurvivesRestart() {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        queue.enqueue(measurement("Kitchen", "streaming", "bad"));
+        queue.flush();
+        
+        OutboundQueue reopened = new OutboundQueue(file);
+        List<OutboundQueue.Entry> batch = reopened.lease(10);
+        assertEquals(2, batch.size());
+        assertEquals("Office", batch.get(0).getMeasurement().roomName);
+        assertEquals("bad", batch.get(1).getMeasurement().classification.signal_strength);
+    }
+    
+    @Test
+    public void testNewerMeasurementReplacesWaitingOne() {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        queue.enqueue(measurement("Kitchen", "gaming", "okay"));
+        queue.enqueue(measurement("Office", "gaming", "bad"));
+        
+        List<OutboundQueue.Entry> batch = queue.lease(10);
+        assertEquals(2, batch.size());
+        // The replacement goes behind measurements that have waited longer
+        assertEquals("Kitchen", batch.get(0).getMeasurement().roomName);
+        assertEquals("bad", batch.get(1).getMeasurement().classification.signal_strength);
+    }
+    
+    @Test
+    public void testLeasedEntriesNotHandedOutTwice() {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        queue.enqueue(measurement("Kitchen", "gaming", "good"));
+        
+        assertEquals(1, queue.lease(1).size());
+        List<OutboundQueue.Entry> rest = queue.lease(10);
+        assertEquals(1, rest.size());
+        assertEquals("Kitchen", rest.get(0).getMeasurement().roomName);
+        assertTrue(queue.lease(10).isEmpty());
+        assertEquals(2, queue.size());
+    }
+    
+    @Test
+    public void testAcknowledgeKeepsNewerReplacement() {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        OutboundQueue.Entry inFlight = queue.lease(1).get(0);
+        queue.enqueue(measurement("Office", "gaming", "bad"));
+        
+        queue.acknowledge(inFlight);
+        assertEquals(1, queue.size());
+        assertEquals("bad", queue.lease(1).get(0).getMeasurement().classification.signal_strength);
+    }
+    
+    @Test
+    public void testReleasedEntryDroppedAfterMaxAttempts() {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        for (int attempt = 1; attempt < OutboundQueue.MAX_ATTEMPTS; attempt++) {
+            assertTrue(queue.release(queue.lease(1).get(0)));
+        }
+        assertFalse(queue.release(queue.lease(1).get(0)));
+        assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void testQueueBounded() {
+        for (int i = 0; i < OutboundQueue.MAX_ENTRIES + 10; i++) {
+            queue.enqueue(measurement("Room " + i, "gaming", "good"));
+        }
+        assertEquals(OutboundQueue.MAX_ENTRIES, queue.size());
+        assertEquals("Room 10", queue.lease(1).get(0).getMeasurement().roomName);
+    }
+    
+    @Test
+    public void testAsyncCallsRunBehindEarlierChanges() throws InterruptedException {
+        queue.enqueue(measurement("Office", "gaming", "good"));
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        queue.size(results::add);
+        queue.lease(10, results::add);
+        
+        assertEquals(1, results.poll(5, TimeUnit.SECONDS));
+        List<?> batch = (List<?>) results.poll(5, TimeUnit.SECONDS);
+        assertEquals(1, batch.size());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.hifiwifi.services;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for parsing replies from simple_api.py's discovery beacon and health check
+ */
+public class PiDiscoveryTest {
+    
+    @Test
+    public void testBeaconReplyBecomesBaseUrl() {
+        String reply = "{\"service\": \"hifiwifi\", \"port\": 5000, \"version\": \"1.0.0\"}";
+        assertEquals("http://192.168.1.42:5000", PiDiscovery.parseBeaconReply("192.168.1.42", reply));
+    }
+    
+    @Test
+    public void testBeaconReplyUsesAdvertisedPort() {
+        String reply = "{\"service\": \"hifiwifi\", \"port\": 8080}";
+        assertEquals("http://10.0.0.7:8080", PiDiscovery.parseBeaconReply("10.0.0.7", reply));
+    }
+    
+    @Test
+    public void testBeaconReplyDefaultsToApiPort() {
+        assertEquals("http://10.0.0.7:5000", PiDiscovery.parseBeaconReply("10.0.0.7", "{\"service\": \"hifiwifi\"}"));
+    }
+    
+    @Test
+    public void testRejectsOtherServices() {
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "{\"service\": \"printer\", \"port\": 5000}"));
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "{\"port\": 5000}"));
+    }
+    
+    @Test
+    public void testRejectsMalformedReplies() {
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "HIFIWIFI_DISCOVER"));
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "[1, 2]"));
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "{\"service\": \"hifiwifi\", \"port\": 70000}"));
+        assertNull(PiDiscovery.parseBeaconReply("10.0.0.7", "{\"service\": \"hifiwifi\", \"port\": \"http\"}"));
+    }
+    
+    @Test
+    public void testHealthReplyFromPiIsAccepted() {
+        String healthy = "{\"status\": \"healthy\", \"service\": \"WiFi Optimization API\", \"version\": \"1.0.0\"}";
+        String degraded = "{\"status\": \"degraded\", \"service\": \"WiFi Optimization API\"}";
+        assertTrue(PiDiscovery.isPiHealthResponse(200, healthy));
+        assertTrue("Ollama down is still the Pi", PiDiscovery.isPiHealthResponse(503, degraded));
+    }
+    
+    @Test
+    public void testHealthReplyFromOtherServicesIsRejected() {
+        assertFalse(PiDiscovery.isPiHealthResponse(200, "{\"status\": \"ok\"}"));
+        assertFalse(PiDiscovery.isPiHealthResponse(200, "<html>Router login</html>"));
+        assertFalse(PiDiscovery.isPiHealthResponse(503, "Service Unavailable"));
+        assertFalse(PiDiscovery.isPiHealthResponse(404, "{\"service\": \"WiFi Optimization API\"}"));
+        assertFalse(PiDiscovery.isPiHealthResponse(200, null));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.hifiwifi.services;
+
+import com.example.hifiwifi.classifier.ActivityImportanceFactory;
+import com.example.hifiwifi.classifier.ClassificationResult;
+import com.example.hifiwifi.classifier.Metric;
+import com.example.hifiwifi.classifier.MetricClassification;
+import com.example.hifiwifi.classifier.WiFiClassification;
+import com.example.hifiwifi.events.ClassificationChanged;
+import com.example.hifiwifi.events.MeasurementEventBus;
+import com.example.hifiwifi.events.QueuedAnalysisReceived;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for sending changed classifications to the Pi
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class PiSyncTest {
+    
+    /**
+     * Runs the sync on the publishing thread
+     */
+    private static class DirectExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+        
+        @Override
+        public void shutdown() {
+        }
+        
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+        
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+        
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+        
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+    
+    private HTTPService httpService;
+    private MeasurementEventBus eventBus;
+    
+    @Before
+    public void setUp() {
+        httpService = mock(HTTPService.class);
+        eventBus = new MeasurementEventBus();
+        new PiSync(httpService, eventBus, new DirectExecutor());
+    }
+    
+    private ClassificationResult result(String roomName, WiFiClassification bandwidth) {
+        MetricClassification metrics = new MetricClassification();
+        for (Metric metric : Metric.values()) {
+            metrics.set(metric, WiFiClassification.GOOD);
+        }
+        metrics.set(Metric.BANDWIDTH, bandwidth);
+        ClassificationResult result = new ClassificationResult(roomName, roomName, "gaming", WiFiClassification.GOOD,
+            metrics, ActivityImportanceFactory.getActivityImportance("gaming"));
+        result.setFrequencyBand("5GHz");
+        return result;
+    }
+    
+    @Test
+    public void testChangedClassificationIsQueuedForThePi() {
+        eventBus.publish(new ClassificationChanged(result("Office", WiFiClassification.BAD)));
+        
+        verify(httpService).enqueueAnalysis("Office", "gaming", "GOOD", "GOOD", "BAD", "GOOD", "GOOD", "5GHz");
+    }
+    
+    @Test
+    public void testUnchangedGradesAreNotSentAgain() {
+        eventBus.publish(new ClassificationChanged(result("Office", WiFiClassification.BAD)));
+        eventBus.publish(new ClassificationChanged(result("Office", WiFiClassification.BAD)));
+        eventBus.publish(new ClassificationChanged(result("Kitchen", WiFiClassification.BAD)));
+        eventBus.publish(new ClassificationChanged(result("Office", WiFiClassification.GOOD)));
+        
+        verify(httpService, times(2)).enqueueAnalysis(eq("Office"), anyString(), anyString(), anyString(),
+            anyString(), anyString(), anyString(), anyString());
+        verify(httpService, times(1)).enqueueAnalysis(eq("Kitchen"), anyString(), anyString(), anyString(),
+            anyString(), anyString(), anyString(), anyString());
+    }
+    
+    @Test
+    public void testReplayedAnalysisIsPublished() {
+        ArgumentCaptor<HTTPService.QueuedAnalysisListener> listener =
+            ArgumentCaptor.forClass(HTTPService.QueuedAnalysisListener.class);
+        verify(httpService).ownReplay(listener.capture());
+        QueuedAnalysisReceived[] received = {null};
+        eventBus.subscribe(QueuedAnalysisReceived.class, Runnable::run, event -> received[0] = event);
+        
+        HTTPService.AnalyzeRequest.Measurement measurement = new HTTPService.AnalyzeRequest.Measurement();
+        HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+        listener.getValue().onQueuedAnalysisReceived(measurement, response);
+        
+        assertSame(measurement, received[0].getMeasurement());
+        assertSame(response, received[0].getResponse());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.hifiwifi.services;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for single-flight request coalescing
+ */
+public class RequestCoalescerTest {
+    
+    private RequestCoalescer coalescer;
+    
+    @Before
+    public void setUp() {
+        coalescer = new RequestCoalescer();
+    }
+    
+    private HTTPService.HTTPCallback recording(List<String> received) {
+        return new HTTPService.HTTPCallback() {
+            @Override
+            public void onExplanationReceived(String explanation) {
+                received.add(explanation);
+            }
+            
+            @Override
+            public void onHealthCheckSuccess() {
+            }
+            
+            @Override
+            public void onError(String error) {
+                received.add("error: " + error);
+            }
+        };
+    }
+    
+    @Test
+    public void testIdenticalRequestsShareOneResult() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        
+        HTTPService.HTTPCallback flight = coalescer.join("chat|hello", recording(first));
+        assertNotNull(flight);
+        assertNull(coalescer.join("chat|hello", recording(second)));
+        
+        flight.onExplanationReceived("hi there");
+        assertEquals(1, first.size());
+        assertEquals("hi there", second.get(0));
+        assertEquals(1, coalescer.getIssuedCount());
+        assertEquals(1, coalescer.getCoalescedCount());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+    
+    @Test
+    public void testDifferentFingerprintsNotCoalesced() {
+        assertNotNull(coalescer.join("chat|hello", recording(new ArrayList<>())));
+        assertNotNull(coalescer.join("chat|bye", recording(new ArrayList<>())));
+        assertEquals(2, coalescer.getInFlightCount());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+    
+    @Test
+    public void testErrorsFanOutAndEndFlight() {
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        HTTPService.HTTPCallback flight = coalescer.join("explain|office", recording(first));
+        coalescer.join("explain|office", recording(second));
+        
+        flight.onError("timeout");
+        assertEquals("error: timeout", first.get(0));
+        assertEquals("error: timeout", second.get(0));
+        
+        // A request after completion goes to the network again
+        assertNotNull(coalescer.join("explain|office", recording(new ArrayList<>())));
+        assertEquals(2, coalescer.getIssuedCount());
+    }
+    
+    @Test
+    public void testAnalysisDeliveredThroughEachCallback() {
+        List<String> received = new ArrayList<>();
+        HTTPService.HTTPCallback flight = coalescer.join("analyze|office", recording(received));
+        coalescer.join("analyze|office", recording(received));
+        
+        HTTPService.AnalyzeResponse response = new HTTPService.AnalyzeResponse();
+        response.recommendation = new HTTPService.AnalyzeResponse.Recommendation();
+        response.recommendation.reason = "Stay put";
+        flight.onAnalysisReceived(response);
+        
+        assertEquals(2, received.size());
+        assertEquals("Stay put", received.get(1));
+    }
+    
+    @Test
+    public void testAbandonOnlyUnjoinedFlights() {
+        // A speculative request has no caller of its own
+        HTTPService.HTTPCallback speculative = coalescer.join("explain|office", null);
+        assertTrue(coalescer.abandon("explain|office", speculative));
+        assertEquals(0, coalescer.getInFlightCount());
+        
+        // Once a caller joins, the flight must run to completion
+        List<String> received = new ArrayList<>();
+        HTTPService.HTTPCallback joined = coalescer.join("explain|kitchen", null);
+        assertNull(coalescer.join("explain|kitchen", recording(received)));
+        assertFalse(coalescer.abandon("explain|kitchen", joined));
+        
+        joined.onExplanationReceived("Move closer");
+        assertEquals("Move closer", received.get(0));
+        
+        // An abandoned flight finishing late doesn't end its replacement
+        HTTPService.HTTPCallback replacement = coalescer.join("explain|office", recording(received));
+        speculative.onExplanationReceived("late");
+        assertEquals(1, coalescer.getInFlightCount());
+        assertNotNull(replacement);
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.hifiwifi.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit tests for the streaming response adapters, plus a microbenchmark against reflective Gson.
+ * Responses are built from the scenarios in test-scenarios/ at the project root.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class ResponseAdaptersTest {
+    
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int BENCHMARK_ITERATIONS = 20000;
+    
+    private final Gson reflective = new Gson();
+    private List<String> analyzeResponses;
+    private List<String> explainResponses;
+    private List<String> chatResponses;
+    
+    @Before
+    public void setUp() throws IOException {
+        analyzeResponses = new ArrayList<>();
+        explainResponses = new ArrayList<>();
+        chatResponses = new ArrayList<>();
+        
+        File scenarios = findScenarios();
+        if (scenarios == null) {
+            return;
+        }
+        File[] files = scenarios.listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            JsonObject scenario = reflective.fromJson(
+                new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), JsonObject.class);
+            if (scenario.has("measurement")) {
+                analyzeResponses.add(analyzeResponseFor(scenario));
+            } else if (scenario.has("input")) {
+                explainResponses.add(explainResponseFor(scenario));
+                chatResponses.add(chatResponseFor(scenario));
+            }
+        }
+    }
+    
+    @Test
+    public void testAnalyzeMatchesReflectiveParse() {
+        assumeTrue("test-scenarios not found", !analyzeResponses.isEmpty());
+        for (String json : analyzeResponses) {
+            HTTPService.AnalyzeResponse expected = reflective.fromJson(json, HTTPService.AnalyzeResponse.class);
+            HTTPService.AnalyzeResponse actual = ResponseAdapters.GSON.fromJson(json, HTTPService.AnalyzeResponse.class);
+            
+            assertEquals(expected.status, actual.status);
+            assertEquals(expected.recommendation.action, actual.recommendation.action);
+            assertEquals(expected.recommendation.target_location, actual.recommendation.target_location);
+            assertEquals(expected.analysis.location, actual.analysis.location);
+            assertEquals(expected.analysis.metrics.packet_loss, actual.analysis.metrics.packet_loss);
+            assertEquals(expected.toDisplayMessage(), actual.toDisplayMessage());
+        }
+    }
+    
+    @Test
+    public void testExplainMessageExtractedWhileParsing() {
+        assumeTrue("test-scenarios not found", !explainResponses.isEmpty());
+        for (String json : explainResponses) {
+            HTTPService.ExplainResponse actual = ResponseAdapters.GSON.fromJson(json, HTTPService.ExplainResponse.class);
+            
+            assertNotNull(actual.message);
+            assertEquals(reflective.fromJson(json, HTTPService.ExplainResponse.class).getMessage(), actual.getMessage());
+            assertNotNull(actual.metadata.location);
+        }
+    }
+    
+    @Test
+    public void testChatMessageMatchesReflectiveParse() {
+        assumeTrue("test-scenarios not found", !chatResponses.isEmpty());
+        for (String json : chatResponses) {
+            assertEquals(reflective.fromJson(json, HTTPService.ChatResponse.class).getMessage(),
+                ResponseAdapters.GSON.fromJson(json, HTTPService.ChatResponse.class).getMessage());
+        }
+    }
+    
+    @Test
+    public void testPlainTextExplanationReturnedAsIs() {
+        HTTPService.ExplainResponse response = ResponseAdapters.GSON.fromJson(
+            "{\"status\":\"success\",\"explanation\":\"Your WiFi is great here.\"}", HTTPService.ExplainResponse.class);
+        assertEquals("Your WiFi is great here.", response.getMessage());
+    }
+    
+    @Test
+    public void testEmbeddedExplanationObjectReadInPlace() {
+        HTTPService.ExplainResponse response = ResponseAdapters.GSON.fromJson(
+            "{\"status\":\"success\",\"explanation\":{\"recommendation\":{\"reason\":\"Move closer\"}}}",
+            HTTPService.ExplainResponse.class);
+        assertEquals("Move closer", response.getMessage());
+    }
+    
+    @Test
+    public void testUnexpectedFieldsAndTypesTolerated() {
+        HTTPService.AnalyzeResponse response = ResponseAdapters.GSON.fromJson(
+            "{\"status\":\"error\",\"recommendation\":null,\"analysis\":[1,2],\"extra\":{\"a\":1},\"error\":42}",
+            HTTPService.AnalyzeResponse.class);
+        assertEquals("error", response.status);
+        assertNull(response.recommendation);
+        assertNull(response.analysis);
+        assertEquals("42", response.error);
+    }
+    
+    @Test
+    public void testAdaptersRoundTrip() {
+        assumeTrue("test-scenarios not found", !analyzeResponses.isEmpty());
+        HTTPService.AnalyzeResponse parsed = ResponseAdapters.GSON.fromJson(
+            analyzeResponses.get(0), HTTPService.AnalyzeResponse.class);
+        HTTPService.AnalyzeResponse again = ResponseAdapters.GSON.fromJson(
+            ResponseAdapters.GSON.toJson(parsed), HTTPService.AnalyzeResponse.class);
+        assertEquals(parsed.analysis.current_quality, again.analysis.current_quality);
+        assertEquals(parsed.recommendation.reason, again.recommendation.reason);
+    }
+    
+    @Test
+    public void benchmarkAgainstReflectiveGson() {
+        assumeTrue("test-scenarios not found", !analyzeResponses.isEmpty() && !explainResponses.isEmpty());
+        
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parseAllReflective();
+            parseAllStreaming();
+        }
+        long reflectiveStart = System.nanoTime();
+        int reflectiveChars = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            reflectiveChars += parseAllReflective();
+        }
+        long reflectiveNanos = System.nanoTime() - reflectiveStart;
+        
+        long streamingStart = System.nanoTime();
+        int streamingChars = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            streamingChars += parseAllStreaming();
+        }
+        long streamingNanos = System.nanoTime() - streamingStart;
+        
+        int responses = analyzeResponses.size() + explainResponses.size() + chatResponses.size();
+        System.out.println("ResponseAdapters benchmark: " + responses + " responses x " + BENCHMARK_ITERATIONS
+            + " iterations - reflective " + (reflectiveNanos / BENCHMARK_ITERATIONS / responses) + " ns/response"
+            + ", streaming " + (streamingNanos / BENCHMARK_ITERATIONS / responses) + " ns/response");
+        
+        // Both paths must have produced the same messages
+        assertEquals(reflectiveChars, streamingChars);
+    }
+    
+    /**
+     * Parse every response the way HTTPService used to, including re-parsing nested payloads
+     * @return total message length, so the work can't be optimized away
+     */
+    @SuppressWarnings("deprecation")
+    private int parseAllReflective() {
+        int chars = 0;
+        for (String json : analyzeResponses) {
+            chars += reflective.fromJson(json, HTTPService.AnalyzeResponse.class).toDisplayMessage().length();
+        }
+        for (String json : explainResponses) {
+            HTTPService.ExplainResponse response = reflective.fromJson(json, HTTPService.ExplainResponse.class);
+            JsonObject nested = reflective.fromJson(response.explanation, JsonObject.class);
+            chars += nested.getAsJsonObject("recommendation").get("message").getAsString().length();
+        }
+        for (String json : chatResponses) {
+            HTTPService.ChatResponse response = reflective.fromJson(json, HTTPService.ChatResponse.class);
+            String cleaned = response.response.trim().replaceFirst("^```json\\s*", "").replaceFirst("```\\s*$", "").trim();
+            chars += new Gson().fromJson(cleaned, JsonObject.class).get("message").getAsString().length();
+        }
+        return chars;
+    }
+    
+    private int parseAllStreaming() {
+        int chars = 0;
+        for (String json : analyzeResponses) {
+            chars += ResponseAdapters.GSON.fromJson(json, HTTPService.AnalyzeResponse.class).toDisplayMessage().length();
+        }
+        for (String json : explainResponses) {
+            chars += ResponseAdapters.GSON.fromJson(json, HTTPService.ExplainResponse.class).getMessage().length();
+        }
+        for (String json : chatResponses) {
+            chars += ResponseAdapters.GSON.fromJson(json, HTTPService.ChatResponse.class).getMessage().length();
+        }
+        return chars;
+    }
+    
+    /**
+     * Build the /analyze response the Pi would send for an analyzer scenario
+     */
+    private String analyzeResponseFor(JsonObject scenario) {
+        JsonObject measurement = scenario.getAsJsonObject("measurement");
+        JsonObject expected = scenario.getAsJsonObject("expected_outcome");
+        
+        JsonObject recommendation = new JsonObject();
+        recommendation.addProperty("action", expected.get("recommended_action").getAsString());
+        recommendation.addProperty("reason", scenario.get("description").getAsString());
+        recommendation.addProperty("priority", expected.get("suitable_for_activity").getAsBoolean() ? "low" : "high");
+        
+        JsonObject metrics = new JsonObject();
+        for (String metric : new String[] {"signal_strength", "latency", "bandwidth", "jitter", "packet_loss"}) {
+            metrics.add(metric, measurement.get(metric));
+        }
+        JsonObject analysis = new JsonObject();
+        analysis.add("location", measurement.get("location"));
+        analysis.add("activity", measurement.get("activity"));
+        analysis.add("current_quality", expected.get("current_quality"));
+        analysis.add("metrics", metrics);
+        
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "success");
+        response.add("recommendation", recommendation);
+        response.add("analysis", analysis);
+        return response.toString();
+    }
+    
+    /**
+     * Build the /explain response for an explainer scenario, with the message nested as a JSON string
+     */
+    private String explainResponseFor(JsonObject scenario) {
+        JsonObject input = scenario.getAsJsonObject("input");
+        
+        JsonObject metadata = new JsonObject();
+        metadata.add("location", input.get("location"));
+        metadata.add("activity", input.get("activity"));
+        metadata.add("recommendation", input.getAsJsonObject("recommendation").get("action"));
+        
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "success");
+        response.addProperty("explanation", nestedMessageFor(scenario).toString());
+        response.add("metadata", metadata);
+        return response.toString();
+    }
+    
+    /**
+     * Build a /chat response for an explainer scenario, as markdown-fenced JSON like the SLM often returns
+     */
+    private String chatResponseFor(JsonObject scenario) {
+        JsonObject nested = new JsonObject();
+        nested.addProperty("message", scenario.get("description").getAsString());
+        
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "success");
+        response.addProperty("response", "```json\n" + nested + "\n```");
+        return response.toString();
+    }
+    
+    private JsonObject nestedMessageFor(JsonObject scenario) {
+        JsonObject recommendation = new JsonObject();
+        recommendation.addProperty("message", scenario.get("description").getAsString());
+        recommendation.add("should_contain", scenario.getAsJsonObject("expected_explanation").get("should_contain"));
+        JsonObject nested = new JsonObject();
+        nested.addProperty("status", "success");
+        nested.add("recommendation", recommendation);
+        return nested;
+    }
+    
+    /**
+     * Locate test-scenarios/ by walking up from the working directory (the module directory under Gradle)
+     */
+    private static File findScenarios() {
+        File dir = new File(System.getProperty("user.dir")).getAbsoluteFile();
+        while (dir != null) {
+            File scenarios = new File(dir, "test-scenarios");
+            if (scenarios.isDirectory()) {
+                return scenarios;
+            }
+            dir = dir.getParentFile();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.hifiwifi.speedtest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for draining speed test downloads
+ */
+public class DownloadSinkTest {
+    
+    /**
+     * A CPU clock that advances a fixed amount per reading
+     */
+    private static DownloadSink.CpuClock steppingClock(long stepNanos) {
+        AtomicLong now = new AtomicLong();
+        return () -> now.getAndAdd(stepNanos);
+    }
+    
+    /**
+     * A stream that delivers its bytes in small reads with a pause before each
+     */
+    private static InputStream slowStream(int totalBytes, int chunkBytes, long pauseMs) {
+        return new InputStream() {
+            private int remaining = totalBytes;
+            
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+            
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining == 0) {
+                    return -1;
+                }
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                int count = Math.min(Math.min(len, chunkBytes), remaining);
+                remaining -= count;
+                return count;
+            }
+        };
+    }
+    
+    @Test
+    public void testDrainsWholeStreamAndRecordsCpu() throws IOException {
+        DownloadSink sink = new DownloadSink(64 * 1024, steppingClock(2_000_000));
+        byte[] body = new byte[3_000_000];
+        
+        DownloadSink.Result result = sink.drain(new ByteArrayInputStream(body), null);
+        
+        assertEquals(body.length, result.getBytesRead());
+        assertTrue(result.getElapsedNanos() > 0);
+        assertTrue(result.getMbps() > 0);
+        assertEquals(2_000_000, result.getCpuNanos());
+        assertEquals("2ms of CPU over 3MB", 2.0 / 3.0, result.getCpuMsPerMb(), 0.001);
+    }
+    
+    @Test
+    public void testUnsupportedCpuClockReportsUnknown() throws IOException {
+        DownloadSink sink = new DownloadSink(1024, () -> -1);
+        
+        DownloadSink.Result result = sink.drain(new ByteArrayInputStream(new byte[10_000]), null);
+        
+        assertEquals(10_000, result.getBytesRead());
+        assertEquals(-1, result.getCpuNanos());
+        assertEquals(-1, result.getCpuMsPerMb(), 0.0);
+        assertFalse(result.isCpuBound());
+    }
+    
+    @Test
+    public void testStopsAtMaxDuration() throws IOException {
+        DownloadSink sink = new DownloadSink(1024, steppingClock(0)).setMaxDurationMs(100);
+        
+        DownloadSink.Result result = sink.drain(slowStream(1_000_000, 1000, 20), null);
+        
+        assertTrue("Should stop early, read " + result.getBytesRead(), result.getBytesRead() < 1_000_000);
+        assertTrue(result.getElapsedNanos() >= 100_000_000L);
+    }
+    
+    @Test
+    public void testListenerReceivesProgressAndCanStop() throws IOException {
+        DownloadSink sink = new DownloadSink(1024, steppingClock(0)).setProgressIntervalMs(30);
+        AtomicInteger calls = new AtomicInteger();
+        
+        DownloadSink.Result result = sink.drain(slowStream(1_000_000, 1000, 10), (bytesRead, elapsedNanos) -> {
+            assertTrue(bytesRead > 0);
+            return calls.incrementAndGet() < 2;
+        });
+        
+        assertEquals(2, calls.get());
+        assertTrue(result.getBytesRead() < 1_000_000);
+    }
+    
+    @Test
+    public void testStreamIsReadStraightIntoOneReusedArray() throws IOException {
+        DownloadSink sink = new DownloadSink(4096, steppingClock(0));
+        Set<byte[]> arrays = Collections.newSetFromMap(new IdentityHashMap<>());
+        InputStream stream = new ByteArrayInputStream(new byte[100_000]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                arrays.add(b);
+                assertEquals("Whole buffer offered per read", 4096, len);
+                return super.read(b, off, len);
+            }
+        };
+        
+        sink.drain(stream, null);
+        DownloadSink.Result again = sink.drain(new ByteArrayInputStream(new byte[10_000]) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                arrays.add(b);
+                return super.read(b, off, len);
+            }
+        }, null);
+        
+        assertEquals(10_000, again.getBytesRead());
+        assertEquals(1, arrays.size());
+    }
+    
+    @Test
+    public void testDrainsChannel() throws IOException {
+        DownloadSink sink = new DownloadSink(4096, steppingClock(0));
+        
+        DownloadSink.Result result = sink.drain(Channels.newChannel(new ByteArrayInputStream(new byte[50_000])), null);
+        
+        assertEquals(50_000, result.getBytesRead());
+    }
+    
+    @Test
+    public void testCpuBoundWhenReadingKeepsCoreBusy() {
+        DownloadSink.Result busy = new DownloadSink.Result(1_000_000, 100_000_000L, 90_000_000L);
+        DownloadSink.Result idle = new DownloadSink.Result(1_000_000, 100_000_000L, 5_000_000L);
+        
+        assertTrue(busy.isCpuBound());
+        assertFalse(idle.isCpuBound());
+        assertEquals(0.05, idle.getCpuLoad(), 0.0001);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.hifiwifi.speedtest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for asynchronous, per-listener event delivery
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class ListenerRegistryTest {
+    
+    /**
+     * An executor that only runs its tasks when told to, like a busy thread catching up
+     */
+    private static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+        
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+    
+    private ManualExecutor defaultExecutor;
+    private ListenerRegistry<List<String>> registry;
+    
+    @Before
+    public void setUp() {
+        defaultExecutor = new ManualExecutor();
+        registry = new ListenerRegistry<>(defaultExecutor);
+    }
+    
+    @Test
+    public void testEventsAreDeliveredInOrderOnTheListenersExecutor() {
+        List<String> received = new ArrayList<>();
+        registry.add(received);
+        
+        registry.dispatch(listener -> listener.add("started"));
+        registry.dispatch(listener -> listener.add("completed"));
+        assertTrue("Nothing is delivered on the sending thread", received.isEmpty());
+        
+        defaultExecutor.runAll();
+        assertEquals("[started, completed]", received.toString());
+    }
+    
+    @Test
+    public void testSlowListenerDoesNotDelayOthers() {
+        ManualExecutor slowExecutor = new ManualExecutor();
+        List<String> slow = new ArrayList<>();
+        List<String> fast = new ArrayList<>();
+        registry.add(slow, slowExecutor);
+        registry.add(fast, Runnable::run);
+        
+        registry.dispatch(listener -> listener.add("completed"));
+        
+        assertEquals("[completed]", fast.toString());
+        assertTrue(slow.isEmpty());
+        slowExecutor.runAll();
+        assertEquals("[completed]", slow.toString());
+    }
+    
+    @Test
+    public void testProgressIsCoalescedForSlowListener() {
+        List<String> received = new ArrayList<>();
+        registry.add(received);
+        
+        registry.dispatch(listener -> listener.add("started"));
+        registry.dispatchCoalesced("test-1", listener -> listener.add("10%"));
+        registry.dispatchCoalesced("test-1", listener -> listener.add("50%"));
+        registry.dispatchCoalesced("test-2", listener -> listener.add("other 20%"));
+        registry.dispatchCoalesced("test-1", listener -> listener.add("90%"));
+        registry.dispatch(listener -> listener.add("completed"));
+        
+        defaultExecutor.runAll();
+        assertEquals("[started, 90%, other 20%, completed]", received.toString());
+    }
+    
+    @Test
+    public void testRemovedListenerMissesQueuedEvents() {
+        List<String> received = new ArrayList<>();
+        registry.add(received);
+        
+        registry.dispatch(listener -> listener.add("started"));
+        registry.remove(received);
+        registry.dispatch(listener -> listener.add("completed"));
+        defaultExecutor.runAll();
+        
+        assertTrue(received.isEmpty());
+        assertEquals(0, registry.size());
+    }
+    
+    @Test
+    public void testFailingListenerDoesNotStopDelivery() {
+        List<String> received = new ArrayList<>();
+        registry.add(received, Runnable::run);
+        
+        registry.dispatch(listener -> {
+            throw new IllegalStateException("listener bug");
+        });
+        registry.dispatch(listener -> listener.add("completed"));
+        
+        assertEquals("[completed]", received.toString());
+    }
+}
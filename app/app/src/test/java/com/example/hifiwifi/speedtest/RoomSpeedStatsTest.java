@@ -0,0 +1,95 @@
+package com.example.hifiwifi.speedtest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for running per-room speed statistics
+ */
+public class RoomSpeedStatsTest {
+    
+    private static SpeedTestResult success(double speedMbps) {
+        return new SpeedTestResult(System.currentTimeMillis(), speedMbps, "Office", "test");
+    }
+    
+    @Test
+    public void testEmptyRoomReportsZeros() {
+        RoomSpeedStats stats = new RoomSpeedStats("Office");
+        
+        assertEquals(0, stats.getCount());
+        assertEquals(0.0, stats.getMeanMbps(), 0.0);
+        assertEquals(0.0, stats.getMinMbps(), 0.0);
+        assertEquals(0.0, stats.getMaxMbps(), 0.0);
+        assertEquals(0.0, stats.getEwmaMbps(), 0.0);
+    }
+    
+    @Test
+    public void testAggregatesSuccessfulResults() {
+        RoomSpeedStats stats = new RoomSpeedStats("Office");
+        
+        stats.record(success(20.0));
+        stats.record(success(60.0));
+        stats.record(success(4.0));
+        stats.record(new SpeedTestResult(System.currentTimeMillis(), "Network error", "Office", "test"));
+        
+        assertEquals(3, stats.getCount());
+        assertEquals(1, stats.getFailureCount());
+        assertEquals(28.0, stats.getMeanMbps(), 0.001);
+        assertEquals(4.0, stats.getMinMbps(), 0.001);
+        assertEquals(60.0, stats.getMaxMbps(), 0.001);
+        
+        long[] histogram = stats.getHistogram();
+        assertEquals(RoomSpeedStats.getBucketUpperBoundsMbps().length + 1, histogram.length);
+        assertEquals("4 Mbps is under 5", 1, histogram[0]);
+        assertEquals("20 Mbps is under 25", 1, histogram[2]);
+        assertEquals("60 Mbps is under 100", 1, histogram[4]);
+    }
+    
+    @Test
+    public void testEwmaFollowsRecentResults() {
+        RoomSpeedStats stats = new RoomSpeedStats("Office");
+        
+        stats.record(success(100.0));
+        assertEquals("First result seeds the average", 100.0, stats.getEwmaMbps(), 0.001);
+        
+        stats.record(success(0.0));
+        assertEquals(100.0 * (1 - RoomSpeedStats.EWMA_ALPHA), stats.getEwmaMbps(), 0.001);
+        assertEquals(50.0, stats.getMeanMbps(), 0.001);
+    }
+    
+    @Test
+    public void testFastestBucketIsOpenEnded() {
+        double[] bounds = RoomSpeedStats.getBucketUpperBoundsMbps();
+        
+        assertEquals(0, RoomSpeedStats.bucketOf(0.0));
+        assertEquals(bounds.length, RoomSpeedStats.bucketOf(bounds[bounds.length - 1]));
+        assertEquals(bounds.length, RoomSpeedStats.bucketOf(5000.0));
+    }
+    
+    @Test
+    public void testConcurrentRecordsAreAllCounted() throws InterruptedException {
+        RoomSpeedStats stats = new RoomSpeedStats("Office");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    stats.record(success(10.0));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(4000, stats.getCount());
+        assertEquals(10.0, stats.getMeanMbps(), 0.001);
+        assertEquals(10.0, stats.getEwmaMbps(), 0.001);
+        assertEquals(4000, stats.getHistogram()[2]);
+    }
+}
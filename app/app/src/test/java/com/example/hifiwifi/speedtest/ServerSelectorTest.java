@@ -0,0 +1,114 @@
+package com.example.hifiwifi.speedtest;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for speed test server ranking
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class ServerSelectorTest {
+    
+    private static final String SLOW = "http://slow.example/10MB.zip";
+    private static final String FAST = "http://fast.example/10MB.zip";
+    private static final String DEAD = "http://dead.example/10MB.zip";
+    private static final String DOWN = "http://down.example/10MB.zip";
+    
+    private final Map<String, Long> rttMs = new HashMap<>();
+    private final AtomicInteger probes = new AtomicInteger();
+    
+    private ServerSelector newSelector() {
+        rttMs.put(SLOW, 300L);
+        rttMs.put(FAST, 20L);
+        rttMs.put(DEAD, -1L);
+        rttMs.put(DOWN, -1L);
+        return new ServerSelector(null, url -> {
+            probes.incrementAndGet();
+            long rtt = rttMs.get(url);
+            if (rtt < 0) {
+                return -1;
+            }
+            try {
+                Thread.sleep(rtt);
+            } catch (InterruptedException e) {
+                return -1;
+            }
+            return rtt * 1_000_000L;
+        });
+    }
+    
+    @Test
+    public void testRanksByRoundTripWithUnreachableServersLast() {
+        List<String> ranked = newSelector().rank(DEAD, SLOW, DOWN, FAST);
+        
+        assertEquals(Arrays.asList(FAST, SLOW, DEAD, DOWN), ranked);
+    }
+    
+    @Test
+    public void testProbesRunConcurrently() {
+        ServerSelector selector = newSelector();
+        rttMs.put(FAST, 300L);
+        
+        long start = System.nanoTime();
+        selector.rank(SLOW, FAST, DEAD);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        
+        // Sequential probes would take at least 600 ms
+        assertTrue("Ranking took " + elapsedMs + " ms", elapsedMs < 550);
+    }
+    
+    @Test
+    public void testFreshRankingIsReused() {
+        ServerSelector selector = newSelector();
+        selector.rank(SLOW, FAST, DEAD);
+        assertEquals(3, probes.get());
+        
+        List<String> ranked = selector.rank(DEAD, FAST, SLOW);
+        
+        assertEquals("Same candidate set should not be probed again", 3, probes.get());
+        assertEquals(Arrays.asList(FAST, SLOW, DEAD), ranked);
+    }
+    
+    @Test
+    public void testReportFailureDemotesServer() {
+        ServerSelector selector = newSelector();
+        selector.rank(SLOW, FAST, DEAD);
+        
+        selector.reportFailure(FAST);
+        
+        assertEquals(Arrays.asList(SLOW, DEAD, FAST), selector.rank(SLOW, FAST, DEAD));
+    }
+    
+    @Test
+    public void testHeadProbeAgainstLocalServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/10MB.zip", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        try {
+            assertTrue(ServerSelector.headRttNanos(base + "/10MB.zip", 1000) >= 0);
+            assertEquals(-1, ServerSelector.headRttNanos(base + "/missing.zip", 1000));
+        } finally {
+            server.stop(0);
+        }
+        assertEquals(-1, ServerSelector.headRttNanos(base + "/10MB.zip", 1000));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.hifiwifi.speedtest;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests for the speed test executor
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 33)
+public class SpeedTestEngineTest {
+    
+    private SpeedTestEngine engine;
+    
+    @Before
+    public void setUp() {
+        engine = new SpeedTestEngine(1, 1);
+    }
+    
+    @After
+    public void tearDown() {
+        engine.shutdownNow();
+    }
+    
+    /**
+     * Records which outcome a test reported
+     */
+    private static class RecordingHandler<T> implements SpeedTestEngine.ResultHandler<T> {
+        final List<String> outcomes = new ArrayList<>();
+        T result;
+        Throwable error;
+        
+        @Override
+        public void onResult(T result) {
+            this.result = result;
+            outcomes.add("result");
+        }
+        
+        @Override
+        public void onFailure(Throwable error) {
+            this.error = error;
+            outcomes.add("failure");
+        }
+        
+        @Override
+        public void onCancelled() {
+            outcomes.add("cancelled");
+        }
+    }
+    
+    /**
+     * Wait for a test to finish and run what it posted to the main thread
+     */
+    private static void awaitDelivery(Future<?> future) throws InterruptedException {
+        for (int i = 0; i < 100 && !future.isDone(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(future.isDone());
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+    
+    @Test
+    public void testResultIsDeliveredOnMainThread() throws InterruptedException {
+        RecordingHandler<Double> handler = new RecordingHandler<>();
+        
+        Future<Double> future = engine.submit(() -> 42.5, handler);
+        awaitDelivery(future);
+        
+        assertEquals(1, handler.outcomes.size());
+        assertEquals(42.5, handler.result, 0.001);
+        assertEquals(1, engine.getThreadBudget());
+    }
+    
+    @Test
+    public void testExceptionIsDeliveredAsFailure() throws InterruptedException {
+        RecordingHandler<Double> handler = new RecordingHandler<>();
+        
+        Future<Double> future = engine.submit(() -> {
+            throw new IOException("connection reset");
+        }, handler);
+        awaitDelivery(future);
+        
+        assertEquals("[failure]", handler.outcomes.toString());
+        assertTrue(handler.error instanceof IOException);
+    }
+    
+    @Test
+    public void testCancelInterruptsRunningTest() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        RecordingHandler<Double> handler = new RecordingHandler<>();
+        
+        Future<Double> future = engine.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 1.0;
+        }, handler);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        future.cancel(true);
+        
+        assertTrue("Test thread should be interrupted", interrupted.await(1, TimeUnit.SECONDS));
+        awaitDelivery(future);
+        assertEquals("[cancelled]", handler.outcomes.toString());
+    }
+    
+    @Test
+    public void testTestsBeyondQueueAreRejected() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        engine.submit(() -> {
+            started.countDown();
+            return release.await(1, TimeUnit.SECONDS);
+        }, null);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        engine.submit(() -> true, null);
+        
+        try {
+            engine.submit(() -> true, null);
+            fail("Third test should not fit the thread budget or the queue");
+        } catch (RejectedExecutionException e) {
+            assertEquals(2, engine.getPendingCount());
+        } finally {
+            release.countDown();
+        }
+    }
+}
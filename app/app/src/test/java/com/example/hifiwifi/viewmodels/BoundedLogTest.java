@@ -0,0 +1,53 @@
+package com.example.hifiwifi.viewmodels;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the bounded append-only log behind the measurement LiveData
+ */
+public class BoundedLogTest {
+    
+    @Test
+    public void testKeepsOnlyTheLatestEntries() {
+        BoundedLog<Integer> log = new BoundedLog<>(3);
+        for (int i = 0; i < 100; i++) {
+            log.add(i);
+        }
+        
+        assertEquals(3, log.size());
+        assertEquals(Arrays.asList(97, 98, 99), log.view());
+    }
+    
+    @Test
+    public void testViewDoesNotChangeAfterLaterAppends() {
+        BoundedLog<Integer> log = new BoundedLog<>(4);
+        log.add(1);
+        log.add(2);
+        List<Integer> view = log.view();
+        
+        for (int i = 3; i < 50; i++) {
+            log.add(i);
+        }
+        log.clear();
+        
+        assertEquals(Arrays.asList(1, 2), view);
+        assertTrue(log.view().isEmpty());
+    }
+    
+    @Test
+    public void testViewIsImmutable() {
+        BoundedLog<Integer> log = new BoundedLog<>(2);
+        log.add(1);
+        try {
+            log.view().add(2);
+            fail("Views handed to LiveData should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
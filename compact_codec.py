@@ -0,0 +1,318 @@
+"""
+Compact binary encoding for /analyze requests and responses
+
+Mirrors CompactCodec.java in the Android app. The app offers the encoding through its
+Accept header; once the Pi answers in it, the app sends its requests compactly too.
+JSON stays the fallback for clients that don't ask for it.
+
+Layout: a magic byte and a version byte, then the fields in a fixed order.
+Integers are unsigned LEB128 varints. Each string is a varint tag: 0 for None, an odd tag
+(2i + 1) for entry i of the shared DICTIONARY, and an even tag (2(n + 1)) for a literal of
+n UTF-8 bytes that follow. A nested object is preceded by 1 if present and 0 if None.
+
+Usage:
+    python3 compact_codec.py    # size and timing benchmark over test-scenarios/analyze_*.json
+"""
+
+from typing import Dict, Any, List, Optional
+
+MEDIA_TYPE = "application/x-hifiwifi-compact"
+
+MAGIC = 0x48  # 'H'
+VERSION = 1
+
+# Append-only: entries are referenced by position, so changing the order breaks old peers
+DICTIONARY = [
+    "success", "error",
+    "excellent", "good", "okay", "bad", "marginal", "fair", "poor",
+    "stay_current", "move_location", "switch_band",
+    "high", "medium", "low",
+    "2.4GHz", "5GHz", "6GHz",
+    "general", "gaming", "streaming", "video_call", "browsing", "work", "iot"
+]
+DICTIONARY_INDEX = {value: index for index, value in enumerate(DICTIONARY)}
+
+CLASSIFICATION_FIELDS = ["signal_strength", "latency", "bandwidth", "jitter", "packet_loss"]
+RECOMMENDATION_FIELDS = ["action", "reason", "message", "priority", "target_location"]
+ANALYSIS_FIELDS = ["location", "activity", "current_quality"]
+
+
+class CompactCodecError(ValueError):
+    """Raised when a payload is not a valid compact encoding."""
+
+
+class _Writer:
+    def __init__(self):
+        self.buffer = bytearray([MAGIC, VERSION])
+
+    def varint(self, value: int):
+        if value < 0:
+            raise CompactCodecError(f"Cannot encode negative integer {value}")
+        while value > 0x7F:
+            self.buffer.append((value & 0x7F) | 0x80)
+            value >>= 7
+        self.buffer.append(value)
+
+    def string(self, value: Any):
+        if value is None:
+            self.varint(0)
+            return
+        if not isinstance(value, str):
+            # Booleans and numbers the model returns travel as text, as the app reads them
+            value = json_scalar(value)
+        index = DICTIONARY_INDEX.get(value)
+        if index is not None:
+            self.varint(2 * index + 1)
+            return
+        encoded = value.encode("utf-8")
+        self.varint(2 * (len(encoded) + 1))
+        self.buffer.extend(encoded)
+
+    def present(self, value: Any) -> bool:
+        is_present = isinstance(value, dict)
+        self.buffer.append(1 if is_present else 0)
+        return is_present
+
+
+class _Reader:
+    def __init__(self, data: bytes):
+        if len(data) < 2 or data[0] != MAGIC:
+            raise CompactCodecError("Not a compact payload")
+        if data[1] != VERSION:
+            raise CompactCodecError(f"Unsupported compact payload version {data[1]}")
+        self.data = data
+        self.position = 2
+
+    def _next(self) -> int:
+        if self.position >= len(self.data):
+            raise CompactCodecError("Malformed compact payload: truncated")
+        value = self.data[self.position]
+        self.position += 1
+        return value
+
+    def varint(self) -> int:
+        value = 0
+        for shift in range(0, 64, 7):
+            byte = self._next()
+            value |= (byte & 0x7F) << shift
+            if not byte & 0x80:
+                return value
+        raise CompactCodecError("Malformed compact payload: varint too long")
+
+    def string(self) -> Optional[str]:
+        tag = self.varint()
+        if tag == 0:
+            return None
+        if tag & 1:
+            index = tag >> 1
+            if index >= len(DICTIONARY):
+                raise CompactCodecError(f"Malformed compact payload: unknown dictionary entry {index}")
+            return DICTIONARY[index]
+        length = (tag >> 1) - 1
+        end = self.position + length
+        if end > len(self.data):
+            raise CompactCodecError("Malformed compact payload: truncated string")
+        value = self.data[self.position:end].decode("utf-8")
+        self.position = end
+        return value
+
+    def present(self) -> bool:
+        flag = self._next()
+        if flag > 1:
+            raise CompactCodecError(f"Malformed compact payload: bad presence flag {flag}")
+        return flag == 1
+
+    def finish(self):
+        if self.position != len(self.data):
+            raise CompactCodecError(
+                f"Malformed compact payload: {len(self.data) - self.position} trailing bytes")
+
+
+def json_scalar(value: Any) -> str:
+    """Render a non-string scalar the way it appears in JSON (true, 3, 0.5)."""
+    if isinstance(value, bool):
+        return "true" if value else "false"
+    return str(value)
+
+
+def encode_request(data: Dict[str, Any]) -> bytes:
+    """Encode an /analyze request in the Android measurements-array format."""
+    out = _Writer()
+    measurements: List[Dict[str, Any]] = data.get("measurements") or []
+    out.varint(len(measurements))
+    for measurement in measurements:
+        out.string(measurement.get("roomName"))
+        out.string(measurement.get("activityType"))
+        out.string(measurement.get("frequencyBand"))
+        classification = measurement.get("classification")
+        if out.present(classification):
+            for field in CLASSIFICATION_FIELDS:
+                out.string(classification.get(field))
+    summary = data.get("summary")
+    if out.present(summary):
+        out.varint(int(summary.get("totalMeasurements", 0)))
+        out.varint(int(summary.get("timestamp", 0)))
+    return bytes(out.buffer)
+
+
+def decode_request(payload: bytes) -> Dict[str, Any]:
+    """Decode an /analyze request into the same dict the JSON body would produce."""
+    reader = _Reader(payload)
+    count = reader.varint()
+    if count > len(payload):
+        raise CompactCodecError(f"Malformed compact payload: {count} measurements")
+    measurements = []
+    for _ in range(count):
+        measurement = {
+            "roomName": reader.string(),
+            "activityType": reader.string(),
+            "frequencyBand": reader.string()
+        }
+        if reader.present():
+            measurement["classification"] = {field: reader.string() for field in CLASSIFICATION_FIELDS}
+        measurements.append(_drop_none(measurement))
+    data: Dict[str, Any] = {"measurements": measurements}
+    if reader.present():
+        data["summary"] = {
+            "totalMeasurements": reader.varint(),
+            "timestamp": reader.varint()
+        }
+    reader.finish()
+    return data
+
+
+def encode_response(result: Dict[str, Any]) -> bytes:
+    """
+    Encode an /analyze response.
+
+    Only the fields the app reads are carried; anything else in the result is dropped.
+    """
+    out = _Writer()
+    out.string(result.get("status"))
+    recommendation = result.get("recommendation")
+    if out.present(recommendation):
+        for field in RECOMMENDATION_FIELDS:
+            out.string(recommendation.get(field))
+    analysis = result.get("analysis")
+    if out.present(analysis):
+        for field in ANALYSIS_FIELDS:
+            out.string(analysis.get(field))
+        metrics = analysis.get("metrics")
+        if out.present(metrics):
+            for field in CLASSIFICATION_FIELDS:
+                out.string(metrics.get(field))
+    out.string(result.get("error"))
+    return bytes(out.buffer)
+
+
+def decode_response(payload: bytes) -> Dict[str, Any]:
+    """Decode an /analyze response."""
+    reader = _Reader(payload)
+    result: Dict[str, Any] = {"status": reader.string()}
+    if reader.present():
+        result["recommendation"] = _drop_none({field: reader.string() for field in RECOMMENDATION_FIELDS})
+    if reader.present():
+        analysis: Dict[str, Any] = {field: reader.string() for field in ANALYSIS_FIELDS}
+        if reader.present():
+            analysis["metrics"] = _drop_none({field: reader.string() for field in CLASSIFICATION_FIELDS})
+        result["analysis"] = _drop_none(analysis)
+    result["error"] = reader.string()
+    reader.finish()
+    return _drop_none(result)
+
+
+def accepts_compact(accept_header: Optional[str]) -> bool:
+    """Whether an Accept header asks for the compact encoding."""
+    if not accept_header:
+        return False
+    for part in accept_header.split(","):
+        media_type, *params = [piece.strip() for piece in part.split(";")]
+        if media_type != MEDIA_TYPE:
+            continue
+        for param in params:
+            if param.startswith("q="):
+                try:
+                    return float(param[2:]) > 0
+                except ValueError:
+                    return False
+        return True
+    return False
+
+
+def _drop_none(values: Dict[str, Any]) -> Dict[str, Any]:
+    return {key: value for key, value in values.items() if value is not None}
+
+
+def _benchmark(iterations: int = 20000):
+    """Compare payload size and encode/decode time against JSON for the analyzer scenarios."""
+    import glob
+    import json
+    import os
+    import time
+
+    scenario_dir = os.path.join(os.path.dirname(os.path.abspath(__file__)), "test-scenarios")
+    requests_, responses = [], []
+    for path in sorted(glob.glob(os.path.join(scenario_dir, "analyze_*.json"))):
+        with open(path) as f:
+            scenario = json.load(f)
+        measurement = scenario["measurement"]
+        expected = scenario["expected_outcome"]
+        requests_.append({
+            "measurements": [{
+                "roomName": measurement["location"].replace("_", " ").title(),
+                "activityType": measurement["activity"],
+                "frequencyBand": measurement["frequency"],
+                "classification": {field: measurement[field] for field in CLASSIFICATION_FIELDS}
+            }],
+            "summary": {"totalMeasurements": 1, "timestamp": int(time.time() * 1000)}
+        })
+        responses.append({
+            "status": "success",
+            "recommendation": {
+                "action": expected["recommended_action"],
+                "priority": "low" if expected["suitable_for_activity"] else "high",
+                "message": scenario["description"]
+            },
+            "analysis": {
+                "location": measurement["location"],
+                "activity": measurement["activity"],
+                "current_quality": expected["current_quality"],
+                "metrics": {field: measurement[field] for field in CLASSIFICATION_FIELDS}
+            }
+        })
+
+    if not requests_:
+        print(f"No analyzer scenarios found in {scenario_dir}")
+        return
+
+    for name, payloads, encode, decode in (
+        ("request", requests_, encode_request, decode_request),
+        ("response", responses, encode_response, decode_response)
+    ):
+        json_bytes = [json.dumps(p).encode("utf-8") for p in payloads]
+        compact_bytes = [encode(p) for p in payloads]
+        for payload, compact in zip(payloads, compact_bytes):
+            assert decode(compact) == _drop_none(payload), "round trip changed the payload"
+
+        start = time.perf_counter()
+        for _ in range(iterations):
+            for p in payloads:
+                json.loads(json.dumps(p).encode("utf-8"))
+        json_time = time.perf_counter() - start
+
+        start = time.perf_counter()
+        for _ in range(iterations):
+            for p in payloads:
+                decode(encode(p))
+        compact_time = time.perf_counter() - start
+
+        operations = iterations * len(payloads)
+        json_size = sum(map(len, json_bytes)) / len(payloads)
+        compact_size = sum(map(len, compact_bytes)) / len(payloads)
+        print(f"{name:8s}  json {json_size:6.1f} B  {json_time / operations * 1e6:6.2f} us   "
+              f"compact {compact_size:6.1f} B  {compact_time / operations * 1e6:6.2f} us   "
+              f"({100 * (1 - compact_size / json_size):.0f}% smaller)")
+
+
+if __name__ == "__main__":
+    _benchmark()
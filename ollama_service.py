@@ -294,13 +294,19 @@ Explain to the user in a friendly, conversational way WHY this recommendation ma
                 "explanation": None
             }
     
-    def chat_query(self, query: str, format_json: bool = False) -> Dict[str, Any]:
+    def chat_query(
+        self,
+        query: str,
+        format_json: bool = False,
+        context: Optional[str] = None
+    ) -> Dict[str, Any]:
         """
         Send a natural language query to the WiFi optimization assistant.
         
         Args:
             query: Natural language question or request
             format_json: Whether to request JSON formatted response
+            context: Optional classification context the answer should draw on
             
         Returns:
             Dictionary containing the response
@@ -310,7 +316,10 @@ Explain to the user in a friendly, conversational way WHY this recommendation ma
             >>> print(result['response'])
         """
         try:
-            raw_response = self._make_request(query, format_json=format_json)
+            prompt = query
+            if context:
+                prompt = f"Context:\n{context}\nUser Query: {query}"
+            raw_response = self._make_request(prompt, format_json=format_json)
             
             if format_json:
                 return self._parse_response(raw_response)
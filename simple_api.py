@@ -10,11 +10,14 @@ Usage:
 The API will be available at http://0.0.0.0:5000/analyze
 """
 
-from flask import Flask, request, jsonify
+from flask import Flask, Response, request, jsonify
 from flask_cors import CORS
 from ollama_service import OllamaService, OllamaConfig
+import compact_codec
 import logging
 import json
+import socket
+import threading
 import time
 
 # Configure logging
@@ -36,6 +39,16 @@ config = OllamaConfig(
 )
 service = OllamaService(config)
 
+# UDP discovery beacon, so the app can find the Pi without a hard-coded IP
+API_PORT = 5000
+BEACON_PORT = 5001
+BEACON_REQUEST = b"HIFIWIFI_DISCOVER"
+
+# LAN throughput test: payloads never touch the internet, so they measure only the Wi-Fi link
+THROUGHPUT_CHUNK = b"\0" * (64 * 1024)
+THROUGHPUT_DEFAULT_BYTES = 25 * 1024 * 1024
+THROUGHPUT_MAX_BYTES = 200 * 1024 * 1024
+
 
 @app.route('/health', methods=['GET'])
 def health_check():
@@ -51,10 +64,21 @@ def health_check():
         "status": "healthy" if ollama_healthy else "degraded",
         "service": "WiFi Optimization API",
         "ollama_available": ollama_healthy,
-        "version": "1.0.0"
+        "version": "1.0.0",
+        "encodings": ["application/json", compact_codec.MEDIA_TYPE]
     }), 200 if ollama_healthy else 503
 
 
+def analysis_response(result, status):
+    """
+    Reply to /analyze in the compact encoding if the client asked for it, JSON otherwise.
+    """
+    if compact_codec.accepts_compact(request.headers.get("Accept")):
+        return Response(compact_codec.encode_response(result), status=status,
+                        mimetype=compact_codec.MEDIA_TYPE)
+    return jsonify(result), status
+
+
 @app.route('/analyze', methods=['POST'])
 def analyze_wifi():
     """
@@ -80,22 +104,36 @@ def analyze_wifi():
         }
     
     Legacy format still supported (single measurement without array).
+    The same request may also be sent in the compact encoding (see compact_codec.py).
     
     Returns:
         JSON with recommendation and analysis, or error message (timeout: 90s)
+        Sent in the compact encoding instead if the Accept header asks for it
     """
     try:
         start_time = time.time()
         
+        # Decode compact request body if the app sent one
+        if request.mimetype == compact_codec.MEDIA_TYPE:
+            try:
+                data = compact_codec.decode_request(request.get_data())
+            except compact_codec.CompactCodecError as e:
+                logger.warning(f"Invalid compact request body: {e}")
+                return jsonify({
+                    "status": "error",
+                    "error": f"Invalid compact request body: {str(e)}"
+                }), 400
+        
         # Validate request has JSON body
-        if not request.is_json:
+        elif not request.is_json:
             logger.warning("Request missing JSON body")
             return jsonify({
                 "status": "error",
                 "error": "Request must include JSON body with Content-Type: application/json"
             }), 400
         
-        data = request.json
+        else:
+            data = request.json
         logger.info(f"Received request: {json.dumps(data, indent=2)}")
         print("\n" + "="*70)
         print("📥 INCOMING REQUEST FROM ANDROID APP")
@@ -266,7 +304,7 @@ def analyze_wifi():
         print(f"\n⏱️  Total processing time: {total_time:.1f}s")
         print("="*70 + "\n")
         
-        return jsonify(result), 200
+        return analysis_response(result, 200)
         
     except Exception as e:
         logger.error(f"✗ Unexpected error: {str(e)}", exc_info=True)
@@ -376,7 +414,8 @@ def chat_query():
     Request Body (JSON):
         {
             "query": str,              # Natural language question
-            "format_json": bool        # Optional, default False
+            "format_json": bool,       # Optional, default False
+            "context": str             # Optional classification context for the prompt
         }
     
     Returns:
@@ -392,6 +431,7 @@ def chat_query():
         data = request.json
         query = data.get("query")
         format_json = data.get("format_json", False)
+        context = data.get("context")
         
         if not query:
             return jsonify({
@@ -401,7 +441,7 @@ def chat_query():
         
         logger.info(f"Chat query: {query[:50]}...")
         
-        result = service.chat_query(query, format_json=format_json)
+        result = service.chat_query(query, format_json=format_json, context=context)
         
         return jsonify(result), 200
         
@@ -413,6 +453,111 @@ def chat_query():
         }), 500
 
 
+@app.route('/throughput/download', methods=['GET'])
+def throughput_download():
+    """
+    Stream zero bytes for the app's LAN download test.
+    
+    Query Parameters:
+        bytes: int    # Optional, default 25 MB, capped at 200 MB
+    
+    Returns:
+        application/octet-stream body of the requested length
+    """
+    try:
+        size = int(request.args.get("bytes", THROUGHPUT_DEFAULT_BYTES))
+    except ValueError:
+        return jsonify({
+            "status": "error",
+            "error": "'bytes' must be an integer"
+        }), 400
+    size = max(0, min(size, THROUGHPUT_MAX_BYTES))
+    
+    def generate():
+        remaining = size
+        while remaining > 0:
+            chunk = THROUGHPUT_CHUNK if remaining >= len(THROUGHPUT_CHUNK) else THROUGHPUT_CHUNK[:remaining]
+            remaining -= len(chunk)
+            yield chunk
+    
+    return Response(generate(), mimetype="application/octet-stream", headers={
+        "Content-Length": str(size),
+        "Cache-Control": "no-store"
+    })
+
+
+@app.route('/throughput/upload', methods=['POST'])
+def throughput_upload():
+    """
+    Drain and discard an upload for the app's LAN upload test.
+    
+    Returns:
+        JSON with the bytes received and how long receiving them took on the Pi
+    """
+    start = time.perf_counter()
+    received = 0
+    stream = request.stream
+    while received < THROUGHPUT_MAX_BYTES:
+        chunk = stream.read(len(THROUGHPUT_CHUNK))
+        if not chunk:
+            break
+        received += len(chunk)
+    seconds = time.perf_counter() - start
+    
+    return jsonify({
+        "status": "success",
+        "bytes": received,
+        "seconds": round(seconds, 4),
+        "mbps": round(received * 8 / seconds / 1e6, 2) if seconds > 0 else 0.0
+    }), 200
+
+
+def beacon_reply():
+    """Payload sent back to a discovery request."""
+    return json.dumps({
+        "service": "hifiwifi",
+        "port": API_PORT,
+        "version": "1.0.0"
+    }).encode("utf-8")
+
+
+def run_discovery_beacon(port=BEACON_PORT):
+    """
+    Answer the app's UDP broadcast discovery requests.
+
+    The app broadcasts BEACON_REQUEST to this port and health-checks the
+    address each reply comes from, racing it against its cached endpoint.
+    """
+    sock = socket.socket(socket.AF_INET, socket.SOCK_DGRAM)
+    sock.setsockopt(socket.SOL_SOCKET, socket.SO_REUSEADDR, 1)
+    sock.bind(("0.0.0.0", port))
+    logger.info(f"Discovery beacon listening on UDP port {port}")
+    reply = beacon_reply()
+
+    while True:
+        try:
+            data, address = sock.recvfrom(512)
+            if data.strip() == BEACON_REQUEST:
+                sock.sendto(reply, address)
+                logger.debug(f"Answered discovery request from {address[0]}")
+        except OSError as e:
+            logger.warning(f"Discovery beacon error: {e}")
+            time.sleep(1)
+
+
+def start_discovery_beacon():
+    """Run the discovery beacon on a daemon thread; a busy port only disables discovery."""
+    def run():
+        try:
+            run_discovery_beacon()
+        except OSError as e:
+            logger.warning(f"Discovery beacon disabled: {e}")
+
+    thread = threading.Thread(target=run, name="discovery-beacon", daemon=True)
+    thread.start()
+    return thread
+
+
 @app.errorhandler(404)
 def not_found(error):
     """Handle 404 errors."""
@@ -423,7 +568,9 @@ def not_found(error):
             "GET /health",
             "POST /analyze",
             "POST /explain",
-            "POST /chat"
+            "POST /chat",
+            "GET /throughput/download",
+            "POST /throughput/upload"
         ]
     }), 404
 
@@ -448,18 +595,21 @@ if __name__ == '__main__':
         logger.warning("⚠️  Ollama service is not accessible at localhost:11434")
         logger.warning("Please ensure Ollama is running: ollama serve")
     
+    start_discovery_beacon()
+    
     # Start Flask server
-    logger.info("Starting Flask server on http://0.0.0.0:5000")
+    logger.info(f"Starting Flask server on http://0.0.0.0:{API_PORT}")
     logger.info("API endpoints:")
     logger.info("  GET  /health  - Health check")
     logger.info("  POST /analyze - WiFi analysis (accepts new Android format with measurements array)")
     logger.info("                  Timeout: 120s (may take 10-30s on Raspberry Pi)")
     logger.info("  POST /explain - Get friendly explanation for recommendation")
     logger.info("  POST /chat    - Natural language queries")
+    logger.info("  GET  /throughput/download, POST /throughput/upload - LAN throughput test")
     
     app.run(
         host='0.0.0.0',  # Accessible from any device on network
-        port=5000,
+        port=API_PORT,
         debug=False,      # Set to True for development
         threaded=True     # Handle multiple requests
     )